@@ -56,6 +56,7 @@ public class CBRConnection extends Connection {
 			this.msgOnFly = newMessage;
 			this.transferDoneTime = SimClock.getTime() +
 			(1.0*m.getSize()) / this.speed;
+			scheduleTransferDone(this.transferDoneTime);
 		}
 
 		return retVal;
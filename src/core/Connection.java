@@ -20,6 +20,9 @@ public abstract class Connection {
 	protected Message msgOnFly;
 	/** how many bytes this connection has transferred */
 	protected int bytesTransferred;
+	/** the time when the ongoing transfer was last scheduled to be done
+	 * (see {@link TransferScheduler}) */
+	double scheduledDoneTime;
 
 	/**
 	 * Creates a new connection between nodes and sets the connection
@@ -37,6 +40,7 @@ public abstract class Connection {
 		this.toInterface = toInterface;
 		this.isUp = true;
 		this.bytesTransferred = 0;
+		this.scheduledDoneTime = -1;
 	}
 
 
@@ -115,6 +119,20 @@ public abstract class Connection {
 	 */
 	public abstract int getRemainingByteCount();
 
+	/**
+	 * Tells the transfer scheduler of the sending host (if there is one)
+	 * when the ongoing transfer is expected to be done. Subclasses should
+	 * call this when a transfer starts and whenever the estimate changes.
+	 * @param time The expected completion time
+	 * @see TransferScheduler
+	 */
+	protected void scheduleTransferDone(double time) {
+		TransferScheduler scheduler = msgFromNode.getTransferScheduler();
+		if (scheduler != null) {
+			scheduler.schedule(this, time);
+		}
+	}
+
 	/**
 	 * Clears the message that is currently being transferred.
 	 * Calls to {@link #getMessage()} will return null after this.
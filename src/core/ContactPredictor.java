@@ -0,0 +1,497 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import input.EventQueue;
+import input.ExternalEvent;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * <P>
+ * Event-driven contact detection. Instead of checking on every update
+ * interval which interfaces are within range of each other, the predictor
+ * stores the straight line segment every host is currently moving on and
+ * computes the exact times when pairs of interfaces get in and out of range.
+ * The predictions are made when a host starts moving towards a new waypoint
+ * (see {@link DTNHost#move(double)}) and they are valid until either host of
+ * a pair gets its next waypoint.</P>
+ * <P>
+ * The predicted link up and link down events are given to the World through
+ * the {@link EventQueue} interface, so the contact times are not quantized
+ * to the update interval. Only the two hosts of the link are updated after
+ * an event. The interfaces' own range checks are not used, so
+ * interface-specific connectivity features (scanning intervals, interference
+ * etc.) are not simulated. The ranges of the interfaces are the ones they
+ * had when the predictor was created. Radio activeness is checked only at
+ * the predicted link up times: if either radio is inactive, the link up is
+ * tried again after the retry interval for as long as the interfaces are
+ * within range.</P>
+ * <P>
+ * The segments go through the simulated host locations at the end of every
+ * update interval. Hosts must not be moved by other means than
+ * {@link DTNHost#move(double)} and {@link DTNHost#moveOnPath(double)}, and
+ * pauses caused by inactive movement models are not taken into account.</P>
+ */
+public class ContactPredictor implements EventQueue {
+	/** Events that would end the contact within this time (seconds) after
+	 * the contact started are ignored ({@value}). Prevents repeated events
+	 * caused by rounding errors at the edge of the range. */
+	public static final double TIME_EPSILON = 1e-9;
+
+	/** motion state of the hosts */
+	private HashMap<DTNHost, HostMotion> motions;
+	/** interfaces of all hosts by interface type */
+	private HashMap<String, List<NetworkInterface>> interfacesByType;
+	/** transmit ranges of the interfaces */
+	private HashMap<NetworkInterface, Double> ranges;
+	/** time after which a refused link up is tried again */
+	private double retryInterval;
+	/** pending link up and down events */
+	private PriorityQueue<ContactEvent> events;
+	/** sequence number of the next event (orders events with same time) */
+	private long nextSeq;
+	/** have the initial predictions been made */
+	private boolean initialized;
+
+	/**
+	 * Constructor. Registers the predictor to the hosts.
+	 * @param hosts The hosts whose contacts are predicted
+	 * @param retryInterval Time after which a link up that was refused
+	 * because of an inactive radio is tried again (e.g., the update
+	 * interval). Must be positive.
+	 */
+	public ContactPredictor(List<DTNHost> hosts, double retryInterval) {
+		this.motions = new HashMap<DTNHost, HostMotion>();
+		this.interfacesByType = new HashMap<String, List<NetworkInterface>>();
+		this.ranges = new HashMap<NetworkInterface, Double>();
+		this.retryInterval = retryInterval;
+		this.events = new PriorityQueue<ContactEvent>(11,
+				new Comparator<ContactEvent>() {
+			public int compare(ContactEvent e1, ContactEvent e2) {
+				int c = Double.compare(e1.getTime(), e2.getTime());
+				if (c == 0) {
+					c = e1.seq < e2.seq ? -1 : (e1.seq == e2.seq ? 0 : 1);
+				}
+				return c;
+			}
+		});
+		this.nextSeq = 0;
+		this.initialized = false;
+
+		for (DTNHost host : hosts) {
+			motions.put(host, new HostMotion(host.getLocation()));
+			for (NetworkInterface ni : host.getInterfaces()) {
+				List<NetworkInterface> list =
+					interfacesByType.get(ni.getInterfaceType());
+				if (list == null) {
+					list = new ArrayList<NetworkInterface>();
+					interfacesByType.put(ni.getInterfaceType(), list);
+				}
+				list.add(ni);
+				ranges.put(ni, ni.getTransmitRange());
+			}
+			host.setContactPredictor(this);
+		}
+	}
+
+	/**
+	 * Makes the predictions for all pairs of interfaces starting from the
+	 * current simulation time. Called by the World before the first update.
+	 */
+	public void init() {
+		double now = SimClock.getTime();
+		for (List<NetworkInterface> list : interfacesByType.values()) {
+			for (int i=0, n = list.size(); i < n; i++) {
+				for (int j=i+1; j < n; j++) {
+					predict(list.get(i), list.get(j), now);
+				}
+			}
+		}
+		this.initialized = true;
+	}
+
+	/**
+	 * Called by a host when it starts moving towards a new waypoint. All
+	 * predictions involving the host are made again.
+	 * @param host The host
+	 * @param from Location where the host starts from
+	 * @param to The waypoint
+	 * @param speed Speed of the host
+	 * @param departure The time when the host was (or would have been) at
+	 * the starting location
+	 */
+	public void newWaypoint(DTNHost host, Coord from, Coord to, double speed,
+			double departure) {
+		HostMotion motion = motions.get(host);
+		if (motion == null) {
+			return; /* not a host of this predictor */
+		}
+		double now = SimClock.getTime();
+		motion.addSegment(new Segment(from, to, speed, departure), now);
+
+		if (!initialized) {
+			return;
+		}
+
+		for (NetworkInterface ni : host.getInterfaces()) {
+			for (NetworkInterface other :
+					interfacesByType.get(ni.getInterfaceType())) {
+				if (other.getHost() != host) {
+					predict(ni, other, now);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the next valid event or event with time Double.MAX_VALUE if
+	 * there are no events left
+	 * @return the next event
+	 */
+	public ExternalEvent nextEvent() {
+		removeStaleEvents();
+		if (events.isEmpty()) {
+			return new ExternalEvent(Double.MAX_VALUE);
+		}
+		return events.poll();
+	}
+
+	/**
+	 * Returns the time of the next valid event or Double.MAX_VALUE if there
+	 * are no events left
+	 * @return the time of the next event
+	 */
+	public double nextEventsTime() {
+		removeStaleEvents();
+		if (events.isEmpty()) {
+			return Double.MAX_VALUE;
+		}
+		return events.peek().getTime();
+	}
+
+	/**
+	 * Removes the events predicted using outdated segments from the head of
+	 * the event queue
+	 */
+	private void removeStaleEvents() {
+		while (!events.isEmpty() && events.peek().isStale()) {
+			events.poll();
+		}
+	}
+
+	/**
+	 * Predicts the next link up or down event for a pair of interfaces and
+	 * schedules it (if there is one)
+	 * @param a One of the interfaces
+	 * @param b The other interface
+	 * @param now Time where to start the prediction from
+	 */
+	private void predict(NetworkInterface a, NetworkInterface b, double now) {
+		if (a.getHost().getAddress() > b.getHost().getAddress()) {
+			NetworkInterface tmp = a;
+			a = b;
+			b = tmp;
+		}
+		HostMotion ma = motions.get(a.getHost());
+		HostMotion mb = motions.get(b.getHost());
+		/* inactive radios have zero range, so the range is not asked from
+		   the interfaces */
+		double range = Math.min(ranges.get(a), ranges.get(b));
+		boolean connected = a.isConnected(b);
+		double start = now;
+
+		/* go through the pieces where both hosts move linearly */
+		while (true) {
+			Segment sa = ma.segmentAt(start);
+			Segment sb = mb.segmentAt(start);
+			double end = Math.min(ma.nextChange(sa, start),
+					mb.nextChange(sb, start));
+
+			double dx = sa.getX(start) - sb.getX(start);
+			double dy = sa.getY(start) - sb.getY(start);
+			double wx = sa.getVx(start) - sb.getVx(start);
+			double wy = sa.getVy(start) - sb.getVy(start);
+
+			double delay = nextEvent(dx, dy, wx, wy, range, connected);
+			if (delay != Double.POSITIVE_INFINITY && delay <= end - start) {
+				events.add(new ContactEvent(start + delay, a, b, ma, mb,
+						!connected));
+				return;
+			}
+			if (end == Double.POSITIVE_INFINITY) {
+				return;
+			}
+			start = end;
+		}
+	}
+
+	/**
+	 * Computes when the distance of two linearly moving hosts crosses the
+	 * range
+	 * @param dx Difference of the x coordinates
+	 * @param dy Difference of the y coordinates
+	 * @param wx Difference of the x velocities
+	 * @param wy Difference of the y velocities
+	 * @param range The range
+	 * @param connected Are the hosts currently connected
+	 * @return Time from now when the hosts get out of range (if connected)
+	 * or in range (if not connected), or Double.POSITIVE_INFINITY if that
+	 * never happens
+	 */
+	private double nextEvent(double dx, double dy, double wx, double wy,
+			double range, boolean connected) {
+		double a = wx * wx + wy * wy;
+		double b = dx * wx + dy * wy;
+		double c = dx * dx + dy * dy - range * range;
+
+		if (a == 0) { /* not moving relative to each other */
+			if (connected == (c > 0)) {
+				return 0;
+			}
+			return Double.POSITIVE_INFINITY;
+		}
+
+		double disc = b * b - a * c;
+		if (disc < 0) { /* never within range */
+			return connected ? 0 : Double.POSITIVE_INFINITY;
+		}
+
+		double sqrt = Math.sqrt(disc);
+		double leaves = (-b + sqrt) / a;
+		if (connected) {
+			return Math.max(leaves, 0);
+		}
+
+		if (leaves <= TIME_EPSILON) {
+			return Double.POSITIVE_INFINITY; /* range was left already */
+		}
+		return Math.max((-b - sqrt) / a, 0);
+	}
+
+	/**
+	 * Processes a link up or down event: creates or destroys the connection,
+	 * predicts the next event for the pair and updates the hosts. If a link
+	 * up is refused, the next prediction is made from the retry time, since
+	 * a prediction from the current time would give the same link up again.
+	 * @param e The event
+	 */
+	private void process(ContactEvent e) {
+		DTNHost hostA = e.a.getHost();
+		DTNHost hostB = e.b.getHost();
+		double next = e.getTime();
+
+		if (e.up) {
+			if (!e.a.isConnected(e.b) && hostA.isRadioActive() &&
+					hostB.isRadioActive()) {
+				e.a.createConnection(e.b);
+			}
+			if (!e.a.isConnected(e.b)) {
+				next += retryInterval; /* refused */
+			}
+		} else if (e.a.isConnected(e.b)) {
+			e.a.destroyConnection(e.b);
+		}
+
+		predict(e.a, e.b, next);
+		hostA.update(false);
+		hostB.update(false);
+	}
+
+	/**
+	 * A link up or down event of a pair of interfaces
+	 */
+	private class ContactEvent extends ExternalEvent {
+		private static final long serialVersionUID = 1L;
+
+		private NetworkInterface a;
+		private NetworkInterface b;
+		private HostMotion ma;
+		private HostMotion mb;
+		private int versionA;
+		private int versionB;
+		private boolean up;
+		private long seq;
+
+		public ContactEvent(double time, NetworkInterface a,
+				NetworkInterface b, HostMotion ma, HostMotion mb,
+				boolean up) {
+			super(time);
+			this.a = a;
+			this.b = b;
+			this.ma = ma;
+			this.mb = mb;
+			this.versionA = ma.version;
+			this.versionB = mb.version;
+			this.up = up;
+			this.seq = nextSeq++;
+		}
+
+		/**
+		 * Returns true if either host has got a new waypoint after this
+		 * event was predicted
+		 * @return true if the event is not valid anymore
+		 */
+		public boolean isStale() {
+			return ma.version != versionA || mb.version != versionB;
+		}
+
+		@Override
+		public void processEvent(World world) {
+			process(this);
+		}
+
+		@Override
+		public String toString() {
+			return "CONN " + (up ? "up" : "down") + " @" + this.time + " " +
+				a.getHost() + "<->" + b.getHost();
+		}
+	}
+
+	/**
+	 * The segments of a host's path that are needed for predictions
+	 */
+	private static class HostMotion {
+		/** segments in the order of their start times */
+		private ArrayList<Segment> segments;
+		/** incremented whenever the host gets a new segment */
+		private int version;
+
+		/**
+		 * Creates a motion of a host that stays at the given location
+		 * @param location The location
+		 */
+		public HostMotion(Coord location) {
+			this.segments = new ArrayList<Segment>();
+			this.segments.add(new Segment(location, location, 0,
+					Double.NEGATIVE_INFINITY));
+			this.version = 0;
+		}
+
+		/**
+		 * Adds a new segment. Segments starting at the same time or later
+		 * are replaced and segments that have ended before the current time
+		 * are removed.
+		 * @param s The segment
+		 * @param now Current time
+		 */
+		public void addSegment(Segment s, double now) {
+			int last = segments.size() - 1;
+			while (last > 0 && segments.get(last).t0 >= s.t0) {
+				segments.remove(last--);
+			}
+			segments.add(s);
+			while (segments.size() > 1 && segments.get(1).t0 <= now) {
+				segments.remove(0);
+			}
+			version++;
+		}
+
+		/**
+		 * Returns the segment the host is on at the given time
+		 * @param time The time
+		 * @return The segment
+		 */
+		public Segment segmentAt(double time) {
+			for (int i = segments.size() - 1; i > 0; i--) {
+				if (segments.get(i).t0 <= time) {
+					return segments.get(i);
+				}
+			}
+			return segments.get(0);
+		}
+
+		/**
+		 * Returns the next time after the given time when the velocity of
+		 * the host changes
+		 * @param s The segment the host is on at the given time
+		 * @param time The time
+		 * @return The next time when the velocity changes or
+		 * Double.POSITIVE_INFINITY if it doesn't change
+		 */
+		public double nextChange(Segment s, double time) {
+			double next = Double.POSITIVE_INFINITY;
+			if (s.t0 > time) {
+				next = s.t0;
+			} else if (s.t1 > time) {
+				next = s.t1;
+			}
+			int i = segments.indexOf(s) + 1;
+			if (i < segments.size() && segments.get(i).t0 < next) {
+				next = segments.get(i).t0;
+			}
+			return next;
+		}
+	}
+
+	/**
+	 * Movement from a location to another with constant speed. Before the
+	 * start time the host is considered to be at the start location and after
+	 * the end time at the end location.
+	 */
+	private static class Segment {
+		private double t0, t1;
+		private double x0, y0;
+		private double x1, y1;
+		private double vx, vy;
+
+		/**
+		 * Constructor.
+		 * @param from The start location
+		 * @param to The end location
+		 * @param speed The speed
+		 * @param departure The time the host is at the start location
+		 */
+		public Segment(Coord from, Coord to, double speed, double departure) {
+			double distance = from.distance(to);
+			this.t0 = departure;
+			this.x0 = from.getX();
+			this.y0 = from.getY();
+
+			if (speed <= 0 || distance == 0) {
+				/* host stays at the start location */
+				this.t1 = departure;
+				this.x1 = x0;
+				this.y1 = y0;
+			} else {
+				this.x1 = to.getX();
+				this.y1 = to.getY();
+				this.t1 = departure + distance / speed;
+				this.vx = (x1 - x0) / distance * speed;
+				this.vy = (y1 - y0) / distance * speed;
+			}
+		}
+
+		private boolean isMoving(double time) {
+			return time >= t0 && time < t1;
+		}
+
+		public double getX(double time) {
+			if (time >= t1) {
+				return x1;
+			}
+			return time <= t0 ? x0 : x0 + vx * (time - t0);
+		}
+
+		public double getY(double time) {
+			if (time >= t1) {
+				return y1;
+			}
+			return time <= t0 ? y0 : y0 + vy * (time - t0);
+		}
+
+		public double getVx(double time) {
+			return isMoving(time) ? vx : 0;
+		}
+
+		public double getVy(double time) {
+			return isMoving(time) ? vy : 0;
+		}
+	}
+}
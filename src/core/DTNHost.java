@@ -6,6 +6,7 @@ package core;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import movement.MovementModel;
@@ -34,7 +35,15 @@ public class DTNHost implements Comparable<DTNHost> {
 	private List<MessageListener> msgListeners;
 	private List<MovementListener> movListeners;
 	private List<NetworkInterface> net;
+	/** Read-only list of the connections of all the interfaces */
+	private List<Connection> connections;
+	/** Versions of the interfaces' connection lists when
+	 * {@link #connections} was built */
+	private int[] connectionsVersions;
 	private ModuleCommunicationBus comBus;
+	/** predictor of the contacts (null if contacts are not predicted) */
+	private ContactPredictor contactPredictor;
+	private TransferScheduler transferScheduler;
 
 	static {
 		DTNSim.registerForReset(DTNHost.class.getCanonicalName());
@@ -173,17 +182,44 @@ public class DTNHost implements Comparable<DTNHost> {
 	}
 
 	/**
-	 * Returns a copy of the list of connections this host has with other hosts
-	 * @return a copy of the list of connections this host has with other hosts
+	 * Returns a read-only list of connections this host has with other hosts.
+	 * The same list is returned until a connection of some interface comes
+	 * up or goes down, and the list doesn't change after it is returned.
+	 * @return a list of connections this host has with other hosts
 	 */
 	public List<Connection> getConnections() {
-		List<Connection> lc = new ArrayList<Connection>();
+		if (this.connections == null || connectionsChanged()) {
+			List<Connection> lc = new ArrayList<Connection>();
+			int[] versions = new int[net.size()];
+
+			for (int i = 0; i < versions.length; i++) {
+				NetworkInterface ni = net.get(i);
+				lc.addAll(ni.getConnections());
+				versions[i] = ni.getConnectionsVersion();
+			}
 
-		for (NetworkInterface i : net) {
-			lc.addAll(i.getConnections());
+			this.connections = Collections.unmodifiableList(lc);
+			this.connectionsVersions = versions;
 		}
 
-		return lc;
+		return this.connections;
+	}
+
+	/**
+	 * Returns true if the connections of some interface have changed since
+	 * the list of connections was built
+	 * @return true if the list of connections must be rebuilt
+	 */
+	private boolean connectionsChanged() {
+		if (connectionsVersions.length != net.size()) {
+			return true;
+		}
+		for (int i = 0; i < connectionsVersions.length; i++) {
+			if (net.get(i).getConnectionsVersion() != connectionsVersions[i]) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	/**
@@ -346,6 +382,56 @@ public class DTNHost implements Comparable<DTNHost> {
 		this.router.update();
 	}
 
+	/**
+	 * Returns true if all the network interfaces of this node are always
+	 * active (see {@link NetworkInterface#isAlwaysActive()})
+	 * @return true if the radio of this node is always active
+	 */
+	public boolean isRadioAlwaysActive() {
+		for (NetworkInterface i : net) {
+			if (!i.isAlwaysActive()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Prepares a phased update of this node: updates the locations of the
+	 * network interfaces in the search copies of their connectivity
+	 * optimizers. Modifies shared state, so this must be called from a
+	 * single thread for all nodes before {@link #findNearInterfaces()}.
+	 */
+	public void prepareUpdate() {
+		for (NetworkInterface i : net) {
+			i.updateSearchLocation();
+		}
+	}
+
+	/**
+	 * Finds the interfaces that are within range of this node's network
+	 * interfaces (see {@link NetworkInterface#findNearInterfaces()}). Only
+	 * reads the shared state, so this can be called concurrently for
+	 * different nodes (after {@link #prepareUpdate()}).
+	 */
+	public void findNearInterfaces() {
+		for (NetworkInterface i : net) {
+			i.findNearInterfaces();
+		}
+	}
+
+	/**
+	 * Completes the search of interfaces within range (see
+	 * {@link NetworkInterface#shareNearInterfaces()}). The results are used
+	 * in the next {@link #update(boolean)} call. Must be called from a single
+	 * thread for all nodes after {@link #findNearInterfaces()}.
+	 */
+	public void shareNearInterfaces() {
+		for (NetworkInterface i : net) {
+			i.shareNearInterfaces();
+		}
+	}
+
 	/**
 	 * Tears down all connections for this host.
 	 */
@@ -375,7 +461,6 @@ public class DTNHost implements Comparable<DTNHost> {
 	public void move(double timeIncrement) {
 		double possibleMovement;
 		double distance;
-		double dx, dy;
 
 		if (!isMovementActive() || SimClock.getTime() < this.nextTimeToMove) {
 			return;
@@ -384,6 +469,7 @@ public class DTNHost implements Comparable<DTNHost> {
 			if (!setNextWaypoint()) {
 				return;
 			}
+			departed(SimClock.getTime());
 		}
 
 		possibleMovement = timeIncrement * speed;
@@ -396,9 +482,94 @@ public class DTNHost implements Comparable<DTNHost> {
 			if (!setNextWaypoint()) { // get a new waypoint
 				return; // no more waypoints left
 			}
+			departed(SimClock.getTime() + timeIncrement -
+					(speed > 0 ? possibleMovement / speed : 0));
 			distance = this.location.distance(this.destination);
 		}
 
+		moveTowardsDestination(possibleMovement, distance);
+	}
+
+	/**
+	 * Informs the contact predictor (if any) that the node started moving
+	 * from its current location towards the current destination
+	 * @param departure The time when the node was at its current location
+	 * (so that it is at the right location at the end of the move)
+	 */
+	private void departed(double departure) {
+		if (this.contactPredictor != null) {
+			this.contactPredictor.newWaypoint(this, this.location,
+					this.destination, this.speed, departure);
+		}
+	}
+
+	/**
+	 * Sets the contact predictor that is informed when this node starts
+	 * moving towards a new waypoint
+	 * @param predictor The predictor
+	 */
+	void setContactPredictor(ContactPredictor predictor) {
+		this.contactPredictor = predictor;
+	}
+
+	/**
+	 * Sets the scheduler of the transfer completions of this node's
+	 * connections
+	 * @param scheduler The scheduler
+	 */
+	void setTransferScheduler(TransferScheduler scheduler) {
+		this.transferScheduler = scheduler;
+	}
+
+	/**
+	 * Returns the scheduler of the transfer completions
+	 * @return The scheduler or null if transfers are not scheduled
+	 */
+	TransferScheduler getTransferScheduler() {
+		return this.transferScheduler;
+	}
+
+	/**
+	 * Moves the node towards the current waypoint if that can be done without
+	 * asking for a new waypoint (or path) from the movement model. Unlike
+	 * {@link #move(double)}, this method only modifies the state of this
+	 * node, so it can be called concurrently for different nodes.
+	 * @param timeIncrement How long time the node moves
+	 * @return True if the node was moved (or it didn't need to move), false
+	 * if the node needs a new waypoint during the move and
+	 * {@link #move(double)} should be called instead
+	 */
+	public boolean moveOnPath(double timeIncrement) {
+		double possibleMovement;
+		double distance;
+
+		if (!isMovementActive() || SimClock.getTime() < this.nextTimeToMove) {
+			return true;
+		}
+		if (this.destination == null) {
+			return false;
+		}
+
+		possibleMovement = timeIncrement * speed;
+		distance = this.location.distance(this.destination);
+
+		if (possibleMovement >= distance) {
+			return false; // node would move past its next destination
+		}
+
+		moveTowardsDestination(possibleMovement, distance);
+		return true;
+	}
+
+	/**
+	 * Moves the node towards the current destination
+	 * @param possibleMovement How far the node moves
+	 * @param distance Distance from the current location to the destination
+	 */
+	private void moveTowardsDestination(double possibleMovement,
+			double distance) {
+		double dx, dy;
+
 		// move towards the point for possibleMovement amount
 		dx = (possibleMovement/distance) * (this.destination.getX() -
 				this.location.getX());
@@ -4,11 +4,10 @@
  */
 package core;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * A message that is created at a node or passed between nodes.
@@ -20,14 +19,21 @@ public class Message implements Comparable<Message> {
 	private DTNHost to;
 	/** Identifier of the message */
 	private String id;
+	/** Dense int identifier of the message (same for all replicates) */
+	private int intId;
 	/** Size of the message (bytes) */
 	private int size;
-	/** List of nodes this message has passed */
-	private List<DTNHost> path;
+	/** Last node this message has passed. The earlier nodes are linked from
+	 * it and the links are shared with the replicates of the message. */
+	private Hop lastHop;
+	/** List view of the nodes this message has passed (created lazily) */
+	private HopList path;
 	/** Next unique identifier to be given */
 	private static int nextUniqueId;
 	/** Unique ID of this message */
 	private int uniqueId;
+	/** Int identifiers of the message identifiers given so far */
+	private static Map<String, Integer> intIds;
 	/** The time this message was received */
 	private double timeReceived;
 	/** The time when this message was created */
@@ -45,6 +51,8 @@ public class Message implements Comparable<Message> {
 	 * stored in the properties should be immutable because only a shallow
 	 * copy of the properties is made when replicating messages */
 	private Map<String, Object> properties;
+	/** Are the properties shared with another message (copy before write) */
+	private boolean propertiesShared;
 
 	/** Application ID of the application that created the message */
 	private String	appID;
@@ -63,11 +71,27 @@ public class Message implements Comparable<Message> {
 	 * @param size Size of the message (in bytes)
 	 */
 	public Message(DTNHost from, DTNHost to, String id, int size) {
+		this(from, to, id, internId(id), size);
+		addNodeOnPath(from);
+	}
+
+	/**
+	 * Creates a new Message with a known int identifier and an empty path
+	 * @param from Who the message is (originally) from
+	 * @param to Who the message is (originally) to
+	 * @param id Message identifier
+	 * @param intId Int identifier of the message identifier
+	 * @param size Size of the message (in bytes)
+	 */
+	private Message(DTNHost from, DTNHost to, String id, int intId,
+			int size) {
 		this.from = from;
 		this.to = to;
 		this.id = id;
+		this.intId = intId;
 		this.size = size;
-		this.path = new ArrayList<DTNHost>();
+		this.lastHop = null;
+		this.path = null;
 		this.uniqueId = nextUniqueId;
 
 		this.timeCreated = SimClock.getTime();
@@ -76,10 +100,10 @@ public class Message implements Comparable<Message> {
 		this.responseSize = 0;
 		this.requestMsg = null;
 		this.properties = null;
+		this.propertiesShared = false;
 		this.appID = null;
 
 		Message.nextUniqueId++;
-		addNodeOnPath(from);
 	}
 
 	/**
@@ -106,6 +130,43 @@ public class Message implements Comparable<Message> {
 		return this.id;
 	}
 
+	/**
+	 * Returns the int identifier of the message. Int identifiers are given
+	 * in the order new message IDs are seen (starting from 0), and all
+	 * messages with the same ID (e.g. replicates) have the same int
+	 * identifier.
+	 * @return The int identifier
+	 */
+	public int getIntId() {
+		return this.intId;
+	}
+
+	/**
+	 * Returns the int identifier of a message ID
+	 * @param id The message ID
+	 * @return The int identifier or -1 if no message has the ID
+	 * @see #getIntId()
+	 */
+	public static int getIntId(String id) {
+		Integer intId = intIds.get(id);
+		return intId == null ? -1 : intId;
+	}
+
+	/**
+	 * Returns the int identifier of a message ID, giving it a new one if
+	 * the ID is new
+	 * @param id The message ID
+	 * @return The int identifier
+	 */
+	private static int internId(String id) {
+		Integer intId = intIds.get(id);
+		if (intId == null) {
+			intId = intIds.size();
+			intIds.put(id, intId);
+		}
+		return intId;
+	}
+
 	/**
 	 * Returns an ID that is unique per message instance
 	 * (different for replicates too)
@@ -128,14 +189,20 @@ public class Message implements Comparable<Message> {
 	 * @param node The node to add
 	 */
 	public void addNodeOnPath(DTNHost node) {
-		this.path.add(node);
+		this.lastHop = new Hop(node, this.lastHop);
 	}
 
 	/**
-	 * Returns a list of nodes this message has passed so far
-	 * @return The list as vector
+	 * Returns a list of nodes this message has passed so far. The list is
+	 * a live view of the path: it reflects the nodes added later and
+	 * changes made to it change the path of this message (but not the
+	 * paths of the replicates).
+	 * @return The list of nodes
 	 */
 	public List<DTNHost> getHops() {
+		if (this.path == null) {
+			this.path = new HopList();
+		}
 		return this.path;
 	}
 
@@ -144,7 +211,15 @@ public class Message implements Comparable<Message> {
 	 * @return the amount of hops this message has passed
 	 */
 	public int getHopCount() {
-		return this.path.size() -1;
+		return pathLength() - 1;
+	}
+
+	/**
+	 * Returns the number of nodes on the path
+	 * @return The number of nodes this message has passed
+	 */
+	private int pathLength() {
+		return this.lastHop == null ? 0 : this.lastHop.index + 1;
 	}
 
 	/**
@@ -164,6 +239,21 @@ public class Message implements Comparable<Message> {
 	}
 
 
+	/**
+	 * Returns the time after which the TTL of the message is zero or less
+	 * (see {@link #getTtl()}). The TTL is given in whole minutes rounded
+	 * towards zero, so it reaches zero one minute before the initial TTL
+	 * has passed completely.
+	 * @return The expiry time or Double.POSITIVE_INFINITY if the TTL is
+	 * infinite
+	 */
+	public double getExpiryTime() {
+		if (this.initTtl == INFINITE_TTL) {
+			return Double.POSITIVE_INFINITY;
+		}
+		return this.timeCreated + (this.initTtl * 60 - 60);
+	}
+
 	/**
 	 * Sets the initial TTL (time-to-live) for this message. The initial
 	 * TTL is the TTL when the original message was created. The current TTL
@@ -250,24 +340,25 @@ public class Message implements Comparable<Message> {
 	}
 
 	/**
-	 * Deep copies message data from other message. If new fields are
+	 * Copies message data from other message. If new fields are
 	 * introduced to this class, most likely they should be copied here too
-	 * (unless done in constructor).
+	 * (unless done in constructor). The path and the properties are shared
+	 * with the other message until either of the messages changes them, so
+	 * the messages still behave as if they had their own copies.
 	 * @param m The message where the data is copied
 	 */
 	protected void copyFrom(Message m) {
-		this.path = new ArrayList<DTNHost>(m.path);
+		this.lastHop = m.lastHop;
 		this.timeCreated = m.timeCreated;
 		this.responseSize = m.responseSize;
 		this.requestMsg  = m.requestMsg;
 		this.initTtl = m.initTtl;
 		this.appID = m.appID;
 
+		this.properties = m.properties;
 		if (m.properties != null) {
-			Set<String> keys = m.properties.keySet();
-			for (String key : keys) {
-				updateProperty(key, m.getProperty(key));
-			}
+			this.propertiesShared = true;
+			m.propertiesShared = true;
 		}
 	}
 
@@ -317,6 +408,10 @@ public class Message implements Comparable<Message> {
 			   that don't use the property feature  */
 			this.properties = new HashMap<String, Object>();
 		}
+		else if (this.propertiesShared) {
+			this.properties = new HashMap<String, Object>(this.properties);
+			this.propertiesShared = false;
+		}
 
 		this.properties.put(key, value);
 	}
@@ -326,7 +421,7 @@ public class Message implements Comparable<Message> {
 	 * @return A replicate of the message
 	 */
 	public Message replicate() {
-		Message m = new Message(from, to, id, size);
+		Message m = new Message(from, to, id, intId, size);
 		m.copyFrom(this);
 		return m;
 	}
@@ -344,6 +439,7 @@ public class Message implements Comparable<Message> {
 	 */
 	public static void reset() {
 		nextUniqueId = 0;
+		intIds = new HashMap<String, Integer>();
 	}
 
 	/**
@@ -360,4 +456,128 @@ public class Message implements Comparable<Message> {
 		this.appID = appID;
 	}
 
+	/**
+	 * A node on the path of a message. Hops are never modified after
+	 * creation, so the same hops can be shared by many messages.
+	 */
+	private static class Hop {
+		private final DTNHost node;
+		/** The previous hop or null if this is the first one */
+		private final Hop previous;
+		/** Index of the hop on the path */
+		private final int index;
+
+		private Hop(DTNHost node, Hop previous) {
+			this.node = node;
+			this.previous = previous;
+			this.index = previous == null ? 0 : previous.index + 1;
+		}
+	}
+
+	/**
+	 * List view of the path of the message. The nodes are read from the
+	 * hops when the path changes. Changes to the list replace the hops of
+	 * this message (the old hops may be in use by other messages).
+	 */
+	private class HopList extends AbstractList<DTNHost> {
+		/** The nodes of the path up to {@link #nodesOf} */
+		private DTNHost[] nodes;
+		/** The last hop of the path that {@link #nodes} was read from */
+		private Hop nodesOf;
+
+		private DTNHost[] nodes() {
+			if (nodesOf != lastHop || nodes == null) {
+				nodes = new DTNHost[pathLength()];
+				for (Hop h = lastHop; h != null; h = h.previous) {
+					nodes[h.index] = h.node;
+				}
+				nodesOf = lastHop;
+			}
+			return nodes;
+		}
+
+		/**
+		 * Replaces the hops of the message with new ones for the nodes
+		 * @param newNodes The nodes of the new path
+		 * @param count Number of nodes from the start of the array to use
+		 */
+		private void setPath(DTNHost[] newNodes, int count) {
+			lastHop = null;
+			for (int i = 0; i < count; i++) {
+				lastHop = new Hop(newNodes[i], lastHop);
+			}
+		}
+
+		@Override
+		public DTNHost get(int index) {
+			if (index < 0 || index >= pathLength()) {
+				throw new IndexOutOfBoundsException("Index: " + index +
+						", size: " + pathLength());
+			}
+			return nodes()[index];
+		}
+
+		@Override
+		public int size() {
+			return pathLength();
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			for (Hop h = lastHop; h != null; h = h.previous) {
+				if (o == null ? h.node == null : o.equals(h.node)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public DTNHost set(int index, DTNHost node) {
+			DTNHost[] copy = nodes().clone();
+			DTNHost old = get(index);
+			copy[index] = node;
+			setPath(copy, copy.length);
+			modCount++;
+			return old;
+		}
+
+		@Override
+		public void add(int index, DTNHost node) {
+			int length = pathLength();
+			if (index == length) {
+				addNodeOnPath(node);
+			} else {
+				if (index < 0 || index > length) {
+					throw new IndexOutOfBoundsException("Index: " + index +
+							", size: " + length);
+				}
+				DTNHost[] copy = new DTNHost[length + 1];
+				DTNHost[] old = nodes();
+				System.arraycopy(old, 0, copy, 0, index);
+				copy[index] = node;
+				System.arraycopy(old, index, copy, index + 1, length - index);
+				setPath(copy, copy.length);
+			}
+			modCount++;
+		}
+
+		@Override
+		public DTNHost remove(int index) {
+			DTNHost old = get(index);
+			DTNHost[] copy = nodes().clone();
+			System.arraycopy(copy, index + 1, copy, index,
+					copy.length - index - 1);
+			setPath(copy, copy.length - 1);
+			modCount++;
+			return old;
+		}
+
+		@Override
+		public void clear() {
+			lastHop = null;
+			modCount++;
+		}
+	}
+
 }
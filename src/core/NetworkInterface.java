@@ -4,8 +4,8 @@
  */
 package core;
 
-import interfaces.ConnectivityGrid;
 import interfaces.ConnectivityOptimizer;
+import interfaces.ConnectivityOptimizer.InterfaceVisitor;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -60,6 +60,34 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	protected double oldTransmitRange;
 	protected int transmitSpeed;
 	protected ConnectivityOptimizer optimizer = null;
+	/** index of this interface in the connectivity optimizer (-1 if none)*/
+	private int optimizerIndex = -1;
+	/** interfaces within range found by {@link #findNearInterfaces()} */
+	private final List<NetworkInterface> nearInterfaces =
+		new ArrayList<NetworkInterface>();
+	/** how many of the near interfaces were found from the optimizer's
+	 * half neighborhood of this interface */
+	private int nrofHalfNear;
+	/** should the near interfaces be used in the next update (instead of
+	 * querying the optimizer) */
+	private boolean nearInterfacesFound = false;
+	/** simulation time when the near interfaces were found */
+	private double nearInterfacesTime;
+
+	/** visitor that tries to connect to the visited interfaces */
+	private final InterfaceVisitor connector = new InterfaceVisitor() {
+		public void visit(NetworkInterface ni) {
+			connect(ni);
+		}
+	};
+	/** visitor that collects the visited interfaces within range */
+	private final InterfaceVisitor nearFinder = new InterfaceVisitor() {
+		public void visit(NetworkInterface ni) {
+			if (isWithinRange(ni)) {
+				nearInterfaces.add(ni);
+			}
+		}
+	};
 	/** scanning interval, or 0.0 if n/a */
 	private double scanInterval;
 	private double lastScanTime;
@@ -88,7 +116,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 */
 	public NetworkInterface(Settings s) {
 		this.interfacetype = s.getNameSpace();
-		this.connections = new ArrayList<Connection>();
+		this.connections = new ConnectionList();
 
 		this.transmitRange = s.getDouble(TRANSMIT_RANGE_S);
 		this.transmitSpeed = s.getInt(TRANSMIT_SPEED_S);
@@ -101,14 +129,14 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 */
 	public NetworkInterface() {
 		this.interfacetype = "Default";
-		this.connections = new ArrayList<Connection>();
+		this.connections = new ConnectionList();
 	}
 
 	/**
 	 * copy constructor
 	 */
 	public NetworkInterface(NetworkInterface ni) {
-		this.connections = new ArrayList<Connection>();
+		this.connections = new ConnectionList();
 		this.host = ni.host;
 		this.cListeners = ni.cListeners;
 		this.interfacetype = ni.interfacetype;
@@ -155,7 +183,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		}
 
 		if (transmitRange > 0) {
-			optimizer = ConnectivityGrid.ConnectivityGridFactory(
+			optimizer = ConnectivityOptimizer.getOptimizer(
 					this.interfacetype.hashCode(), transmitRange);
 			optimizer.addInterface(this);
 		} else {
@@ -224,6 +252,15 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		return this.connections;
 	}
 
+	/**
+	 * Returns the version of the connection list. The version changes
+	 * every time a connection is added to or removed from the list.
+	 * @return The version of the connection list
+	 */
+	public int getConnectionsVersion() {
+		return ((ConnectionList)this.connections).getVersion();
+	}
+
 	/**
 	 * Returns true if the interface is on at the moment (false if not)
 	 * @return true if the interface is on at the moment (false if not)
@@ -364,6 +401,104 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 				anotherInterface.getHost().getLocation()) <= smallerRange;
 	}
 
+	/**
+	 * Returns the index of this interface in its connectivity optimizer
+	 * @return the index or -1 if the interface is not in an optimizer
+	 */
+	public int getOptimizerIndex() {
+		return this.optimizerIndex;
+	}
+
+	/**
+	 * Sets the index of this interface in its connectivity optimizer. Only
+	 * for the use of the optimizer.
+	 * @param index The index or -1 if the interface is not in an optimizer
+	 */
+	public void setOptimizerIndex(int index) {
+		this.optimizerIndex = index;
+	}
+
+	/**
+	 * Updates the location of this interface in the search copy of the
+	 * connectivity optimizer (if the interface uses one). The optimizer
+	 * itself isn't changed (see
+	 * {@link ConnectivityOptimizer#updateSearchLocation(NetworkInterface)}).
+	 */
+	public void updateSearchLocation() {
+		if (optimizer != null) {
+			optimizer.updateSearchLocation(this);
+		}
+	}
+
+	/**
+	 * Returns true if this interface is active and scanning all the time,
+	 * i.e., the interface has no scan interval, active times or periods, and
+	 * the host has no energy model that could run out of energy. The range
+	 * of such interface never changes during an update.
+	 * @return true if the interface is always active
+	 */
+	public boolean isAlwaysActive() {
+		return scanInterval == 0 && (ah == null || ah.isAlwaysActive()) &&
+			!host.getComBus().containsProperty(EnergyModel.ENERGY_VALUE_ID);
+	}
+
+	/**
+	 * Finds the interfaces that are within range of this interface among the
+	 * optimizer's "half neighborhood" of this interface (see
+	 * {@link ConnectivityOptimizer#forEachSearchHalfNearInterface}) and
+	 * stores them for the next {@link #update()}. Doesn't modify any shared
+	 * state so this can be called concurrently for different interfaces as
+	 * long as the locations of the interfaces don't change. After this has been
+	 * called for all interfaces, {@link #shareNearInterfaces()} must be
+	 * called for all of them to complete the results.
+	 */
+	public void findNearInterfaces() {
+		nearInterfaces.clear();
+		if (optimizer != null) {
+			optimizer.forEachSearchHalfNearInterface(this, nearFinder);
+		}
+		nrofHalfNear = nearInterfaces.size();
+		nearInterfacesFound = true;
+		nearInterfacesTime = SimClock.getTime();
+	}
+
+	/**
+	 * Adds this interface to the near interfaces of all the interfaces that
+	 * this interface found within range in {@link #findNearInterfaces()}.
+	 * Since the range check is symmetric, every in-range pair of interfaces
+	 * needs to be checked from one side only. Modifies the other interfaces,
+	 * so this must be called from a single thread.
+	 */
+	public void shareNearInterfaces() {
+		for (int i=0; i < nrofHalfNear; i++) {
+			nearInterfaces.get(i).nearInterfaces.add(this);
+		}
+	}
+
+	/**
+	 * Tries to connect this interface to all interfaces that might be close
+	 * enough for a connection (using {@link #connect(NetworkInterface)}).
+	 * If {@link #findNearInterfaces()} was called before this update (at
+	 * the same simulation time), only the interfaces that were found are
+	 * tried (once). They are still tried in the order the connectivity
+	 * optimizer visits the near interfaces (see
+	 * {@link ConnectivityOptimizer#forEachNearInterfaceOf}), so the
+	 * connections are created in the same order as without the search.
+	 */
+	protected void connectToNearInterfaces() {
+		if (!nearInterfacesFound ||
+				nearInterfacesTime != SimClock.getTime()) {
+			nearInterfacesFound = false;
+			optimizer.forEachNearInterface(this, connector);
+			return;
+		}
+
+		nearInterfacesFound = false;
+		if (nearInterfaces.size() > 0) {
+			optimizer.forEachNearInterfaceOf(this, nearInterfaces, connector);
+		}
+	}
+
 	/**
 	 * Returns true if the given NetworkInterface is connected to this host.
 	 * @param netinterface The other NetworkInterface to check
@@ -514,4 +649,15 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 			". Connections: " +	this.connections;
 	}
 
+	/**
+	 * List of connections that exposes the structural modification count of
+	 * the list as its version
+	 */
+	private static class ConnectionList extends ArrayList<Connection> {
+		private static final long serialVersionUID = 1L;
+
+		private int getVersion() {
+			return this.modCount;
+		}
+	}
 }
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import input.EventQueue;
+import input.ExternalEvent;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * <P>
+ * Event-driven completion of message transfers. When a connection starts a
+ * transfer, it tells the scheduler when the transfer will be done, and at
+ * that time the scheduler updates the two hosts of the connection. The
+ * sending router finalizes the transfer in its update and both routers
+ * can start new transfers right away, so the transfer times are not
+ * quantized to the update interval.</P>
+ * <P>
+ * Constant bit rate connections know the exact completion time when the
+ * transfer starts. Variable bit rate connections schedule the completion
+ * again every time their speed changes. An event is ignored if the
+ * transfer was aborted or scheduled again after the event was created.</P>
+ * <P>
+ * The transfers are still finalized also in the normal host updates, so
+ * the routers don't need to know about the scheduler.</P>
+ */
+public class TransferScheduler implements EventQueue {
+	/** pending transfer completion events */
+	private PriorityQueue<TransferEvent> events;
+	/** sequence number of the next event (orders events with same time) */
+	private long nextSeq;
+
+	/**
+	 * Constructor. Registers the scheduler to the hosts.
+	 * @param hosts The hosts whose transfers are scheduled
+	 */
+	public TransferScheduler(List<DTNHost> hosts) {
+		this.events = new PriorityQueue<TransferEvent>(11,
+				new Comparator<TransferEvent>() {
+			public int compare(TransferEvent e1, TransferEvent e2) {
+				int c = Double.compare(e1.getTime(), e2.getTime());
+				if (c == 0) {
+					c = e1.seq < e2.seq ? -1 : (e1.seq == e2.seq ? 0 : 1);
+				}
+				return c;
+			}
+		});
+		this.nextSeq = 0;
+
+		for (DTNHost host : hosts) {
+			host.setTransferScheduler(this);
+		}
+	}
+
+	/**
+	 * Schedules the completion of the ongoing transfer of a connection.
+	 * Replaces the earlier schedule of the same transfer. Times in the past
+	 * are moved to the current time and infinite times are not scheduled.
+	 * @param con The connection
+	 * @param time The time when the transfer is expected to be done
+	 */
+	public void schedule(Connection con, double time) {
+		if (con.getMessage() == null || Double.isInfinite(time) ||
+				Double.isNaN(time)) {
+			return;
+		}
+		time = Math.max(time, SimClock.getTime());
+		if (time == con.scheduledDoneTime) {
+			return; /* already scheduled */
+		}
+
+		con.scheduledDoneTime = time;
+		events.add(new TransferEvent(time, con, con.getMessage()));
+	}
+
+	/**
+	 * Returns the next transfer completion event or an event with time
+	 * Double.MAX_VALUE if there aren't any.
+	 * @return the next event
+	 */
+	public ExternalEvent nextEvent() {
+		removeStaleEvents();
+		if (events.isEmpty()) {
+			return new ExternalEvent(Double.MAX_VALUE);
+		}
+		return events.poll();
+	}
+
+	/**
+	 * Returns the time of the next valid event or Double.MAX_VALUE if there
+	 * are no events left
+	 * @return the time of the next event
+	 */
+	public double nextEventsTime() {
+		removeStaleEvents();
+		if (events.isEmpty()) {
+			return Double.MAX_VALUE;
+		}
+		return events.peek().getTime();
+	}
+
+	/**
+	 * Removes the events of the transfers that have been aborted, finalized
+	 * or scheduled again from the head of the event queue
+	 */
+	private void removeStaleEvents() {
+		while (!events.isEmpty() && events.peek().isStale()) {
+			events.poll();
+		}
+	}
+
+	/**
+	 * Processes a transfer completion event: brings the connection's
+	 * transferred byte count up to date and updates the hosts of the
+	 * connection.
+	 * @param e The event
+	 */
+	private void process(TransferEvent e) {
+		if (e.isStale()) {
+			return;
+		}
+
+		DTNHost from = e.con.msgFromNode;
+		DTNHost to = e.con.getOtherNode(from);
+		e.con.update();
+		from.update(false);
+		to.update(false);
+	}
+
+	/**
+	 * A transfer completion event of a connection
+	 */
+	private class TransferEvent extends ExternalEvent {
+		private static final long serialVersionUID = 1L;
+
+		private Connection con;
+		private Message msg;
+		private long seq;
+
+		public TransferEvent(double time, Connection con, Message msg) {
+			super(time);
+			this.con = con;
+			this.msg = msg;
+			this.seq = nextSeq++;
+		}
+
+		/**
+		 * Returns true if the transfer is not going on anymore or it has
+		 * been scheduled to another time
+		 * @return true if the event is not valid anymore
+		 */
+		public boolean isStale() {
+			return con.getMessage() != msg || !con.isUp() ||
+				con.scheduledDoneTime != this.time;
+		}
+
+		@Override
+		public void processEvent(World world) {
+			process(this);
+		}
+
+		@Override
+		public String toString() {
+			return "TRANSFER done @" + this.time + " " + msg + " " + con;
+		}
+	}
+}
@@ -56,6 +56,7 @@ public class VBRConnection extends Connection {
 			this.msgOnFly = newMessage;
 			this.msgsize = m.getSize();
 			this.msgsent = 0;
+			scheduleTransferDone(estimateTransferDone());
 		}
 
 		return retVal;
@@ -67,6 +68,7 @@ public class VBRConnection extends Connection {
 	 *
 	 */
 	public void update() {
+		int oldspeed = currentspeed;
 		currentspeed =  this.fromInterface.getTransmitSpeed(toInterface);
 		int othspeed =  this.toInterface.getTransmitSpeed(fromInterface);
 		double now = core.SimClock.getTime();
@@ -78,6 +80,24 @@ public class VBRConnection extends Connection {
 
 		msgsent += currentspeed * (now - this.lastUpdate);
 		this.lastUpdate = now;
+
+		/* the speed changed or the estimate was a bit early */
+		if (msgOnFly != null && !isMessageTransferred() &&
+				(currentspeed != oldspeed || now >= scheduledDoneTime)) {
+			scheduleTransferDone(estimateTransferDone());
+		}
+	}
+
+	/**
+	 * Estimates when the ongoing transfer will be done if the current speed
+	 * doesn't change
+	 * @return The estimated time or infinity if the speed is zero
+	 */
+	private double estimateTransferDone() {
+		if (currentspeed <= 0) {
+			return Double.POSITIVE_INFINITY;
+		}
+		return this.lastUpdate + (1.0 * (msgsize - msgsent)) / currentspeed;
 	}
 
 	/**
@@ -12,6 +12,11 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * World contains all the nodes and is responsible for updating their
@@ -37,6 +42,43 @@ public class World {
 	 */
 	public static final String SIMULATE_CON_ONCE_S = "simulateConnectionsOnce";
 
+	/**
+	 * Number of threads used for updating the hosts -setting id ({@value}).
+	 * Integer. With value 0 (the default) all hosts are moved and updated
+	 * one at a time. With a positive value, host movement and connectivity
+	 * updates are split into phases and the phases that only touch the
+	 * state of a single host are run in parallel using the given number of
+	 * threads. The phases are committed in the same order as in the
+	 * sequential update, so the results are identical to the sequential
+	 * update for every value. The interfaces within range are searched in
+	 * parallel once per update interval and only when all the hosts' radios
+	 * are always active (see {@link DTNHost#isRadioAlwaysActive()});
+	 * otherwise, and in the extra updates after external events, the
+	 * connectivity of the hosts is updated sequentially.
+	 */
+	public static final String PARALLEL_HOSTS_S = "parallelHosts";
+	/** default number of host update threads ({@value}) */
+	public static final int DEF_PARALLEL_HOSTS = 0;
+
+	/**
+	 * Should the contacts be predicted from the hosts' paths -setting id
+	 * ({@value}). Boolean (true/false) variable. Default is false. If true,
+	 * connections are created and destroyed at the exact (predicted) times
+	 * the hosts get in and out of range instead of checking the ranges on
+	 * every update (see {@link ContactPredictor}). Has no effect if
+	 * connections are not simulated.
+	 */
+	public static final String PREDICT_CONTACTS_S = "predictContacts";
+
+	/**
+	 * Should the transfers be finalized at their exact completion times
+	 * -setting id ({@value}). Boolean (true/false) variable. Default is
+	 * false. If true, the hosts of a connection are updated when its
+	 * transfer is done instead of waiting for the next update interval
+	 * (see {@link TransferScheduler}).
+	 */
+	public static final String SCHEDULE_TRANSFERS_S = "scheduleTransfers";
+
 	private int sizeX;
 	private int sizeY;
 	private List<EventQueue> eventQueues;
@@ -56,6 +98,20 @@ public class World {
 	/** Queue of scheduled update requests */
 	private ScheduledUpdatesQueue scheduledUpdates;
 	private boolean simulateConOnce;
+	/** is the phased (possibly parallel) host update in use */
+	private boolean phasedUpdate;
+	/** number of threads that run the parallel phases */
+	private int nrofWorkers;
+	/** pool of the extra threads for parallel phases (null if none) */
+	private ExecutorService workers;
+	/** which hosts were moved in the parallel movement phase */
+	private boolean[] movedOnPath;
+	/** predictor of the contacts (null if contacts are not predicted) */
+	private ContactPredictor contactPredictor;
+	/** scheduler of the transfer completions (null if not scheduled) */
+	private TransferScheduler transferScheduler;
+	/** has the first update been done */
+	private boolean started;
 
 	/**
 	 * Constructor.
@@ -74,9 +130,10 @@ public class World {
 		this.simClock = SimClock.getInstance();
 		this.scheduledUpdates = new ScheduledUpdatesQueue();
 		this.isCancelled = false;
+		this.started = false;
 
-		setNextEventQueue();
 		initSettings();
+		setNextEventQueue();
 	}
 
 	/**
@@ -91,6 +148,41 @@ public class World {
 		}
 		simulateConOnce = s.getBoolean(SIMULATE_CON_ONCE_S, false);
 
+		this.nrofWorkers = s.getInt(PARALLEL_HOSTS_S, DEF_PARALLEL_HOSTS);
+		if (nrofWorkers < 0) {
+			throw new SettingsError("Negative value (" + nrofWorkers +
+					") for " + OPTIMIZATION_SETTINGS_NS + "." +
+					PARALLEL_HOSTS_S);
+		}
+		this.phasedUpdate = nrofWorkers > 0;
+		if (phasedUpdate) {
+			this.movedOnPath = new boolean[hosts.size()];
+		}
+		if (nrofWorkers > 1) {
+			/* the calling thread works too, so one thread less is needed */
+			this.workers = Executors.newFixedThreadPool(nrofWorkers - 1,
+					new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "World-worker");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+
+		if (simulateConnections && s.getBoolean(PREDICT_CONTACTS_S, false)) {
+			this.contactPredictor = new ContactPredictor(hosts,
+					updateInterval);
+			this.eventQueues = new ArrayList<EventQueue>(eventQueues);
+			this.eventQueues.add(contactPredictor);
+		}
+
+		if (s.getBoolean(SCHEDULE_TRANSFERS_S, false)) {
+			this.transferScheduler = new TransferScheduler(hosts);
+			this.eventQueues = new ArrayList<EventQueue>(this.eventQueues);
+			this.eventQueues.add(transferScheduler);
+		}
+
 		if(randomizeUpdates) {
 			// creates the update order array that can be shuffled
 			this.updateOrder = new ArrayList<DTNHost>(this.hosts);
@@ -150,6 +242,16 @@ public class World {
 	public void update () {
 		double runUntil = SimClock.getTime() + this.updateInterval;
 
+		if (contactPredictor != null) {
+			if (!started) {
+				contactPredictor.init();
+			}
+			/* hosts are moved first so that the contacts during this
+			 * interval are predicted before the events are processed */
+			moveHosts(this.updateInterval);
+		}
+		started = true;
+
 		setNextEventQueue();
 
 		/* process all events that are due until next interval update */
@@ -157,13 +259,24 @@ public class World {
 			simClock.setTime(this.nextQueueEventTime);
 			ExternalEvent ee = this.nextEventQueue.nextEvent();
 			ee.processEvent(this);
-			updateHosts(); // update all hosts after every event
+			if (this.nextEventQueue != contactPredictor &&
+					this.nextEventQueue != transferScheduler) {
+				updateHosts(); // update all hosts after every event
+			} // (contact and transfer events update only their hosts)
 			setNextEventQueue();
 		}
 
-		moveHosts(this.updateInterval);
+		if (contactPredictor == null) {
+			moveHosts(this.updateInterval);
+		}
 		simClock.setTime(runUntil);
 
+		/* the near interfaces are searched once per update interval; the
+		 * updates after the external events are sequential */
+		if (phasedUpdate && simulateConnections && contactPredictor == null &&
+				radiosAlwaysActive()) {
+			prepareHostUpdates();
+		}
 		updateHosts();
 
 		/* inform all update listeners */
@@ -178,6 +291,10 @@ public class World {
 	 * are made in random order.
 	 */
 	private void updateHosts() {
+		/* with predicted contacts, the ranges don't need to be checked */
+		boolean simulateConnections = this.simulateConnections &&
+			contactPredictor == null;
+
 		if (this.updateOrder == null) { // randomizing is off
 			for (int i=0, n = hosts.size();i < n; i++) {
 				if (this.isCancelled) {
@@ -199,8 +316,53 @@ public class World {
 			}
 		}
 
-		if (simulateConOnce && simulateConnections) {
-			simulateConnections = false;
+		if (simulateConOnce && this.simulateConnections) {
+			this.simulateConnections = false;
+		}
+	}
+
+	/**
+	 * Returns true if the radios of all hosts are always active, i.e., the
+	 * ranges of the interfaces can't change during the host updates
+	 * @return true if all radios are always active
+	 */
+	private boolean radiosAlwaysActive() {
+		for (int i=0, n = hosts.size(); i < n; i++) {
+			if (!hosts.get(i).isRadioAlwaysActive()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Runs the first phases of the phased host update of an update
+	 * interval: first the current locations of all hosts' interfaces are
+	 * updated to the search copies of the connectivity optimizers
+	 * (sequentially), then every pair of near interfaces is checked once
+	 * for being within range (in parallel), and finally the pairs found are
+	 * shared with the interfaces on the other side (sequentially). The
+	 * connections are created when the hosts are updated in the update
+	 * order: the optimizers themselves are updated like in the sequential
+	 * update and only the pairs found within range are tried, in the order
+	 * the optimizers give them (see
+	 * {@link interfaces.ConnectivityOptimizer#forEachNearInterfaceOf}), so
+	 * the results are the same.
+	 */
+
+	private void prepareHostUpdates() {
+		for (int i=0, n = hosts.size(); i < n; i++) {
+			hosts.get(i).prepareUpdate();
+		}
+
+		runForAllHosts(new HostTask() {
+			public void run(int index, DTNHost host) {
+				host.findNearInterfaces();
+			}
+		});
+
+		for (int i=0, n = hosts.size(); i < n; i++) {
+			hosts.get(i).shareNearInterfaces();
 		}
 	}
 
@@ -209,12 +371,105 @@ public class World {
 	 * @param timeIncrement The time how long all nodes should move
 	 */
 	private void moveHosts(double timeIncrement) {
+		if (phasedUpdate) {
+			moveHostsPhased(timeIncrement);
+			return;
+		}
+
 		for (int i=0,n = hosts.size(); i<n; i++) {
 			DTNHost host = hosts.get(i);
 			host.move(timeIncrement);
 		}
 	}
 
+	/**
+	 * Moves all hosts in two phases. First all hosts that don't need a new
+	 * waypoint are moved in parallel, and then the rest of the hosts are
+	 * moved in the order of their addresses. Movement models (and their
+	 * random number generators) and movement listeners are used only in the
+	 * latter phase, so the result is the same as when moving all hosts
+	 * sequentially.
+	 * @param timeIncrement The time how long all nodes should move
+	 */
+	private void moveHostsPhased(final double timeIncrement) {
+		final boolean[] moved = this.movedOnPath;
+
+		runForAllHosts(new HostTask() {
+			public void run(int index, DTNHost host) {
+				moved[index] = host.moveOnPath(timeIncrement);
+			}
+		});
+
+		for (int i=0,n = hosts.size(); i<n; i++) {
+			if (!moved[i]) {
+				hosts.get(i).move(timeIncrement);
+			}
+		}
+	}
+
+	/**
+	 * Runs a task for all hosts. The hosts are split into even slices by
+	 * their addresses and each slice is handled by one thread. Returns
+	 * after the task has been run for all hosts.
+	 * @param task The task to run
+	 */
+	private void runForAllHosts(final HostTask task) {
+		int n = hosts.size();
+		int sliceSize = (n + nrofWorkers - 1) / nrofWorkers;
+		List<Future<?>> slices = new ArrayList<Future<?>>();
+
+		for (int start = sliceSize; start < n; start += sliceSize) {
+			final int from = start;
+			final int to = Math.min(n, start + sliceSize);
+			slices.add(workers.submit(new Runnable() {
+				public void run() {
+					runForHosts(task, from, to);
+				}
+			}));
+		}
+		runForHosts(task, 0, Math.min(n, sliceSize));
+
+		for (Future<?> f : slices) {
+			try {
+				f.get();
+			} catch (InterruptedException e) {
+				throw new SimError(e);
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException)cause;
+				} else if (cause instanceof Error) {
+					throw (Error)cause;
+				}
+				throw new SimError(e);
+			}
+		}
+	}
+
+	/**
+	 * Runs a task for a slice of the hosts
+	 * @param task The task to run
+	 * @param from Index of the first host of the slice
+	 * @param to Index after the last host of the slice
+	 */
+	private void runForHosts(HostTask task, int from, int to) {
+		for (int i = from; i < to; i++) {
+			task.run(i, hosts.get(i));
+		}
+	}
+
+	/**
+	 * Stops the threads used for parallel host updates (if any). Any
+	 * further updates are run using only the calling thread.
+	 */
+	public void shutdown() {
+		if (this.workers != null) {
+			this.workers.shutdown();
+			this.workers = null;
+			this.nrofWorkers = 1;
+		}
+	}
+
 	/**
 	 * Asynchronously cancels the currently running simulation
 	 */
@@ -272,4 +527,17 @@ public class World {
 	public void scheduleUpdate(double simTime) {
 		scheduledUpdates.addUpdate(simTime);
 	}
+
+	/**
+	 * A task that is run for every host in a phase of the phased update.
+	 * Tasks may be run concurrently for different hosts.
+	 */
+	private interface HostTask {
+		/**
+		 * Runs the task for a host
+		 * @param index Index of the host in the hosts list
+		 * @param host The host
+		 */
+		public void run(int index, DTNHost host);
+	}
 }
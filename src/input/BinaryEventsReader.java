@@ -6,71 +6,299 @@ package input;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import core.SimError;
 
 /**
+ * <P>
  * Reads External Events from a binary file. Can also create binary files
- * from a list of external events.
+ * from a list of external events (see also {@link BinaryEventsWriter}).
+ * </P>
+ * <P>
+ * Format: the file starts with the bytes {@link #MAGIC} and the format
+ * version byte ({@value #FORMAT_VERSION}). Then there is one record per
+ * event. Each record starts with the type byte (one of the type constants)
+ * and the time of the event. If the {@link #RAW_TIME} flag is set in the
+ * type byte, the time is an 8-byte double. Otherwise the time is stored in
+ * milliseconds as the difference to the previous non-raw time. The rest of
+ * the record depends on the type:
+ * </P>
+ * <UL>
+ * <LI>{@link #CREATE}: from, to, size, response size, message ID</LI>
+ * <LI>{@link #SEND}, {@link #DELIVERED}, {@link #ABORT}: from, to,
+ * message ID</LI>
+ * <LI>{@link #DROP}, {@link #REMOVE}: host, message ID</LI>
+ * <LI>{@link #CONN_UP}, {@link #CONN_DOWN}: host1, host2, interface ID</LI>
+ * <LI>{@link #EVENT}: (nothing)</LI>
+ * </UL>
+ * <P>
+ * Time differences, host addresses and sizes are zigzag coded variable
+ * length integers (7 bits per byte). Strings are references to a string
+ * table: 0 is null, value <CODE>i</CODE> refers to the i<SUP>th</SUP> string
+ * of the table, and the value one bigger than the size of the table adds a
+ * new string to the table. The new string's UTF-8 bytes follow the reference
+ * (prefixed with their count).
+ * </P>
  */
 public class BinaryEventsReader implements ExternalEventsReader {
 	/** Extension of binary external events file */
 	public static final String BINARY_EXT = ".binee";
+	/** The first bytes of a binary external events file */
+	static final byte[] MAGIC = {'O', 'N', 'E', 'E'};
+	/** The version of the format */
+	static final int FORMAT_VERSION = 1;
 
-	private ObjectInputStream in;
-	private int eventsLeft;
+	/** Type of message creation events ({@value}) */
+	static final int CREATE = 1;
+	/** Type of message transfer start events ({@value}) */
+	static final int SEND = 2;
+	/** Type of message delivered events ({@value}) */
+	static final int DELIVERED = 3;
+	/** Type of message transfer aborted events ({@value}) */
+	static final int ABORT = 4;
+	/** Type of message dropped events ({@value}) */
+	static final int DROP = 5;
+	/** Type of message removed events ({@value}) */
+	static final int REMOVE = 6;
+	/** Type of connection up events ({@value}) */
+	static final int CONN_UP = 7;
+	/** Type of connection down events ({@value}) */
+	static final int CONN_DOWN = 8;
+	/** Type of plain external events ({@value}) */
+	static final int EVENT = 9;
+	/** Flag of a type byte that tells that the time is a raw double */
+	static final int RAW_TIME = 0x80;
+	/** Number of time units per second in delta coded times */
+	static final long TIME_SCALE = 1000;
+	/** Times with bigger absolute values are always stored as doubles */
+	static final double MAX_DELTA_TIME = 1e12;
+
+	/** Size of the input buffer (bytes) */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private File eventsFile;
+	private FileChannel channel;
+	private ByteBuffer buffer;
+	/** has the end of the file been reached */
+	private boolean eof;
+	/** the string table */
+	private String[] strings;
+	private int nrofStrings;
+	/** time of the previous event with a delta-coded time (milliseconds) */
+	private long prevTime;
 
 	/**
 	 * Constructor.
 	 * @param eventsFile The file where the events are read
 	 */
 	public BinaryEventsReader(File eventsFile) {
+		this.eventsFile = eventsFile;
+		this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		this.buffer.flip(); // empty
+		this.eof = false;
+		this.strings = new String[64];
+		this.nrofStrings = 0;
+		this.prevTime = 0;
+
 		try {
-			FileInputStream fis = new FileInputStream(eventsFile);
-			in = new ObjectInputStream(fis);
-			// first object should tell the amount of events
-			eventsLeft = (Integer)in.readObject();
+			this.channel = new FileInputStream(eventsFile).getChannel();
+			if (!fill(MAGIC.length + 1)) {
+				throw new IOException("File is too short");
+			}
+			byte[] magic = new byte[MAGIC.length];
+			buffer.get(magic);
+			int version = buffer.get() & 0xFF;
+			if (!Arrays.equals(magic, MAGIC)) {
+				throw new IOException("Not a binary external events file");
+			}
+			if (version != FORMAT_VERSION) {
+				throw new IOException("Unsupported format version " +
+						version);
+			}
 		} catch (IOException e) {
-			throw new SimError(e);
-		} catch (ClassNotFoundException e) {
+			close();
 			throw new SimError("Invalid binary input file for external " +
-					"events:" + eventsFile.getAbsolutePath(), e);
+					"events: " + eventsFile.getAbsolutePath() + " (" +
+					e.getMessage() + ")", e);
 		}
-
 	}
 
 	/**
 	 * Read events from a binary file created with storeBinaryFile method
+	 * or {@link BinaryEventsWriter}
 	 * @param nrof Maximum number of events to read
 	 * @return Events in an ArrayList (empty list if didn't read any)
 	 * @see #storeToBinaryFile(String, List)
 	 */
-	@SuppressWarnings("unchecked") // suppress cast warnings
 	public List<ExternalEvent> readEvents(int nrof) {
 		ArrayList<ExternalEvent> events = new ArrayList<ExternalEvent>(nrof);
 
-		if (eventsLeft == 0) {
-			return events;
+		try {
+			while (events.size() < nrof && fill(1)) {
+				events.add(readEvent());
+			}
+		} catch (IOException e) {
+			throw new SimError("Can't read event " + (events.size() + 1) +
+					" of the read batch from " +
+					eventsFile.getAbsolutePath() + ": " + e.getMessage(), e);
 		}
+		return events;
+	}
 
-		try {
-			for (int i=0; i < nrof && eventsLeft > 0; i++) {
-				events.add((ExternalEvent)in.readObject());
-				eventsLeft--;
+	/**
+	 * Reads the next event record
+	 * @return The event
+	 */
+	private ExternalEvent readEvent() throws IOException {
+		int type = getByte();
+		double time;
+		if ((type & RAW_TIME) != 0) {
+			fillOrFail(8);
+			time = buffer.getDouble();
+			type &= ~RAW_TIME;
+		}
+		else {
+			prevTime += getSignedVarLong();
+			time = prevTime / (double)TIME_SCALE;
+		}
+
+		int from;
+		int to;
+		switch (type) {
+		case CREATE:
+			from = getInt();
+			to = getInt();
+			int size = getInt();
+			int responseSize = getInt();
+			return new MessageCreateEvent(from, to, getString(), size,
+					responseSize, time);
+		case SEND:
+		case DELIVERED:
+		case ABORT:
+			from = getInt();
+			to = getInt();
+			int stage = (type == SEND ? MessageRelayEvent.SENDING :
+				(type == DELIVERED ? MessageRelayEvent.TRANSFERRED :
+					MessageRelayEvent.ABORTED));
+			return new MessageRelayEvent(from, to, getString(), time, stage);
+		case DROP:
+		case REMOVE:
+			from = getInt();
+			return new MessageDeleteEvent(from, getString(), time,
+					type == DROP);
+		case CONN_UP:
+		case CONN_DOWN:
+			from = getInt();
+			to = getInt();
+			return new ConnectionEvent(from, to, getString(),
+					type == CONN_UP, time);
+		case EVENT:
+			return new ExternalEvent(time);
+		default:
+			throw new IOException("Unknown event type " + type);
+		}
+	}
+
+	/**
+	 * Makes sure that the buffer contains at least the given amount of bytes
+	 * (unless the file ends before that)
+	 * @param bytes Number of bytes
+	 * @return true if there are enough bytes, false if the file ended
+	 */
+	private boolean fill(int bytes) throws IOException {
+		if (buffer.remaining() >= bytes) {
+			return true;
+		}
+		buffer.compact();
+		while (!eof && buffer.position() < bytes) {
+			if (channel.read(buffer) < 0) {
+				eof = true;
+			}
+		}
+		buffer.flip();
+		return buffer.remaining() >= bytes;
+	}
+
+	private void fillOrFail(int bytes) throws IOException {
+		if (!fill(bytes)) {
+			throw new IOException("Unexpected end of file");
+		}
+	}
+
+	private int getByte() throws IOException {
+		fillOrFail(1);
+		return buffer.get() & 0xFF;
+	}
+
+	private int getInt() throws IOException {
+		return (int)getSignedVarLong();
+	}
+
+	private long getSignedVarLong() throws IOException {
+		long value = getVarLong();
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private long getVarLong() throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = getByte();
+			value |= (long)(b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
 			}
-			if (eventsLeft == 0) {
-				in.close();
+		}
+		throw new IOException("Invalid variable length integer");
+	}
+
+	/**
+	 * Reads a string table reference (and a new string)
+	 * @return The string
+	 */
+	private String getString() throws IOException {
+		long ref = getVarLong();
+		if (ref == 0) {
+			return null;
+		}
+		if (ref <= nrofStrings) {
+			return strings[(int)ref - 1];
+		}
+		if (ref != nrofStrings + 1) {
+			throw new IOException("Invalid string reference " + ref);
+		}
+
+		int length = (int)getVarLong();
+		String s;
+		if (length <= buffer.capacity()) {
+			fillOrFail(length);
+			s = new String(buffer.array(), buffer.arrayOffset() +
+					buffer.position(), length, StandardCharsets.UTF_8);
+			buffer.position(buffer.position() + length);
+		}
+		else { /* longer than the buffer */
+			byte[] bytes = new byte[length];
+			int read = 0;
+			while (read < length) {
+				fillOrFail(1);
+				int n = Math.min(buffer.remaining(), length - read);
+				buffer.get(bytes, read, n);
+				read += n;
 			}
-		} catch (Exception e) { // FIXME: quick 'n' dirty exception handling
-			throw new SimError(e);
+			s = new String(bytes, StandardCharsets.UTF_8);
 		}
-		return events;
+
+		if (nrofStrings == strings.length) {
+			strings = Arrays.copyOf(strings, nrofStrings * 2);
+		}
+		strings[nrofStrings++] = s;
+		return s;
 	}
 
 	/**
@@ -83,10 +311,9 @@ public class BinaryEventsReader implements ExternalEventsReader {
 			return false;
 		}
 
-		// extension matches, try to read an event
+		// extension matches, check the header
 		try {
 			BinaryEventsReader r = new BinaryEventsReader(file);
-			r.readEvents(1);
 			r.close();
 		}
 		catch (SimError e) {
@@ -107,27 +334,25 @@ public class BinaryEventsReader implements ExternalEventsReader {
 
 		// make sure the file name ends with binary extension
 		if (!fileName.endsWith(BINARY_EXT)) {
-			fileName += "BINARY_EXT";
+			fileName += BINARY_EXT;
 		}
 
-		ObjectOutputStream out;
-		FileOutputStream fos = new FileOutputStream(fileName);
-		out = new ObjectOutputStream(fos);
-
-		// store the number of events
-		out.writeObject(new Integer(events.size()));
-
-		// store events
-		for (ExternalEvent ee : events) {
-			out.writeObject(ee);
+		BinaryEventsWriter out = new BinaryEventsWriter(fileName);
+		try {
+			for (ExternalEvent ee : events) {
+				out.write(ee);
+			}
+		} finally {
+			out.close();
 		}
-
-		out.close();
 	}
 
 	public void close() {
+		if (this.channel == null) {
+			return;
+		}
 		try {
-			this.in.close();
+			this.channel.close();
 		}
 		catch (IOException ioe) {
 			throw new SimError(ioe);
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import core.SimError;
+
+/**
+ * Writes external events to a file in the binary external events format
+ * (see {@link BinaryEventsReader} for the format).
+ */
+public class BinaryEventsWriter {
+	/** Size of the output buffer (bytes) */
+	private static final int BUFFER_SIZE = 64 * 1024;
+	/** Maximum size of a record without the string (bytes) */
+	private static final int MAX_RECORD_SIZE = 64;
+
+	private FileChannel channel;
+	private ByteBuffer buffer;
+	/** string table: string -> index in the table */
+	private Map<String, Integer> strings;
+	/** time of the previous event with a delta-coded time (milliseconds) */
+	private long prevTime;
+	private int nrofEvents;
+
+	/**
+	 * Creates a new writer and the output file
+	 * @param fileName Name (&path) of the file to create
+	 * @throws IOException if the file can't be created
+	 */
+	public BinaryEventsWriter(String fileName) throws IOException {
+		this.channel = new FileOutputStream(fileName).getChannel();
+		this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		this.strings = new HashMap<String, Integer>();
+		this.prevTime = 0;
+		this.nrofEvents = 0;
+
+		buffer.put(BinaryEventsReader.MAGIC);
+		buffer.put((byte)BinaryEventsReader.FORMAT_VERSION);
+	}
+
+	/**
+	 * Writes an event. Supported events are message create, relay and delete
+	 * events, connection events and plain {@link ExternalEvent}s.
+	 * @param ee The event to write
+	 * @throws IOException if writing fails
+	 * @throws SimError if the event is of unsupported type
+	 */
+	public void write(ExternalEvent ee) throws IOException {
+		ensureSpace(MAX_RECORD_SIZE);
+
+		int type;
+		if (ee instanceof MessageCreateEvent) {
+			type = BinaryEventsReader.CREATE;
+		}
+		else if (ee instanceof MessageRelayEvent) {
+			switch (((MessageRelayEvent)ee).getStage()) {
+			case MessageRelayEvent.SENDING:
+				type = BinaryEventsReader.SEND;
+				break;
+			case MessageRelayEvent.TRANSFERRED:
+				type = BinaryEventsReader.DELIVERED;
+				break;
+			default:
+				type = BinaryEventsReader.ABORT;
+			}
+		}
+		else if (ee instanceof MessageDeleteEvent) {
+			type = ((MessageDeleteEvent)ee).isDrop() ?
+					BinaryEventsReader.DROP : BinaryEventsReader.REMOVE;
+		}
+		else if (ee instanceof ConnectionEvent) {
+			type = ((ConnectionEvent)ee).isUp ?
+					BinaryEventsReader.CONN_UP : BinaryEventsReader.CONN_DOWN;
+		}
+		else if (ee.getClass() == ExternalEvent.class) {
+			type = BinaryEventsReader.EVENT;
+		}
+		else {
+			throw new SimError("Can't write event " + ee + " of type " +
+					ee.getClass().getName() + " in binary format");
+		}
+
+		writeTypeAndTime(type, ee.getTime());
+
+		switch (type) {
+		case BinaryEventsReader.CREATE:
+			MessageCreateEvent ce = (MessageCreateEvent)ee;
+			putInt(ce.fromAddr);
+			putInt(ce.toAddr);
+			putInt(ce.getSize());
+			putInt(ce.getResponseSize());
+			putString(ce.id);
+			break;
+		case BinaryEventsReader.DROP:
+		case BinaryEventsReader.REMOVE:
+			MessageEvent de = (MessageEvent)ee;
+			putInt(de.fromAddr);
+			putString(de.id);
+			break;
+		case BinaryEventsReader.CONN_UP:
+		case BinaryEventsReader.CONN_DOWN:
+			ConnectionEvent conn = (ConnectionEvent)ee;
+			putInt(conn.fromAddr);
+			putInt(conn.toAddr);
+			putString(conn.interfaceId);
+			break;
+		case BinaryEventsReader.EVENT:
+			break;
+		default: /* relay events */
+			MessageEvent re = (MessageEvent)ee;
+			putInt(re.fromAddr);
+			putInt(re.toAddr);
+			putString(re.id);
+		}
+
+		nrofEvents++;
+	}
+
+	/**
+	 * Returns the number of events written so far
+	 * @return the number of events
+	 */
+	public int getNrofEvents() {
+		return this.nrofEvents;
+	}
+
+	/**
+	 * Writes the rest of the buffered events and closes the file
+	 * @throws IOException if writing fails
+	 */
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Writes the type byte and the time of a record. Times that are whole
+	 * milliseconds are written as a difference to the previous such time,
+	 * other times as raw doubles (with the {@link BinaryEventsReader#RAW_TIME}
+	 * flag in the type byte).
+	 */
+	private void writeTypeAndTime(int type, double time) {
+		if (Math.abs(time) < BinaryEventsReader.MAX_DELTA_TIME) {
+			long ms = Math.round(time * BinaryEventsReader.TIME_SCALE);
+			if (Double.doubleToLongBits(ms /
+					(double)BinaryEventsReader.TIME_SCALE) ==
+					Double.doubleToLongBits(time)) {
+				buffer.put((byte)type);
+				putSignedVarLong(ms - prevTime);
+				prevTime = ms;
+				return;
+			}
+		}
+
+		buffer.put((byte)(type | BinaryEventsReader.RAW_TIME));
+		buffer.putDouble(time);
+	}
+
+	/**
+	 * Writes a (zigzag coded) variable length integer
+	 * @param value The value
+	 */
+	private void putInt(int value) {
+		putSignedVarLong(value);
+	}
+
+	private void putSignedVarLong(long value) {
+		putVarLong((value << 1) ^ (value >> 63));
+	}
+
+	/**
+	 * Writes an unsigned variable length integer: 7 bits per byte, least
+	 * significant bits first, highest bit set in all but the last byte
+	 * @param value The value
+	 */
+	private void putVarLong(long value) {
+		while ((value & ~0x7FL) != 0) {
+			buffer.put((byte)((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte)value);
+	}
+
+	/**
+	 * Writes a reference to the string table. A string that is not yet in
+	 * the table is added to it and written after the reference.
+	 * @param s The string (or null)
+	 */
+	private void putString(String s) throws IOException {
+		if (s == null) {
+			putVarLong(0);
+			return;
+		}
+
+		Integer index = strings.get(s);
+		if (index != null) {
+			putVarLong(index + 1);
+			return;
+		}
+
+		index = strings.size();
+		strings.put(s, index);
+		putVarLong(index + 1);
+
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		putVarLong(bytes.length);
+		ensureSpace(bytes.length);
+		buffer.put(bytes);
+	}
+
+	/**
+	 * Makes sure that the buffer has space for at least the given amount of
+	 * bytes
+	 * @param bytes Number of bytes
+	 */
+	private void ensureSpace(int bytes) throws IOException {
+		if (buffer.remaining() >= bytes) {
+			return;
+		}
+		flush();
+		if (buffer.remaining() < bytes) {
+			buffer = ByteBuffer.allocate(bytes);
+		}
+	}
+
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+
+import core.SimError;
+
+/**
+ * <P>
+ * Command line converter between the standard (text) external events format
+ * of {@link StandardEventsReader} and the binary format of
+ * {@link BinaryEventsReader}.
+ * </P>
+ * <P>
+ * Usage: <CODE>java input.EventsConverter &lt;input file&gt;
+ * &lt;output file&gt;</CODE><BR>
+ * If the input file is a binary events file, it is converted to text.
+ * Otherwise the input file is converted to the binary format (the binary
+ * extension {@value BinaryEventsReader#BINARY_EXT} is added to the output
+ * file name if it is missing).
+ * </P>
+ */
+public class EventsConverter {
+	/** How many events are read at a time */
+	private static final int BATCH_SIZE = 10000;
+
+	/**
+	 * Converts events from a standard events file to a binary file
+	 * @param textFile The standard events file
+	 * @param binaryFileName Path of the binary file to create
+	 * @return Number of converted events
+	 * @throws IOException if writing fails
+	 */
+	public static int toBinary(File textFile, String binaryFileName)
+			throws IOException {
+		if (!binaryFileName.endsWith(BinaryEventsReader.BINARY_EXT)) {
+			binaryFileName += BinaryEventsReader.BINARY_EXT;
+		}
+
+		ExternalEventsReader reader = new StandardEventsReader(textFile);
+		BinaryEventsWriter out = new BinaryEventsWriter(binaryFileName);
+		try {
+			List<ExternalEvent> events = reader.readEvents(BATCH_SIZE);
+			while (events.size() > 0) {
+				for (ExternalEvent ee : events) {
+					out.write(ee);
+				}
+				events = reader.readEvents(BATCH_SIZE);
+			}
+		} finally {
+			reader.close();
+			out.close();
+		}
+		return out.getNrofEvents();
+	}
+
+	/**
+	 * Converts events from a binary file to a standard events file
+	 * @param binaryFile The binary events file
+	 * @param textFileName Path of the standard events file to create
+	 * @return Number of converted events
+	 * @throws IOException if writing fails
+	 */
+	public static int toText(File binaryFile, String textFileName)
+			throws IOException {
+		ExternalEventsReader reader = new BinaryEventsReader(binaryFile);
+		PrintWriter out = new PrintWriter(new BufferedWriter(
+				new FileWriter(textFileName)));
+		int nrofEvents = 0;
+		try {
+			List<ExternalEvent> events = reader.readEvents(BATCH_SIZE);
+			while (events.size() > 0) {
+				for (ExternalEvent ee : events) {
+					out.println(toText(ee));
+				}
+				nrofEvents += events.size();
+				events = reader.readEvents(BATCH_SIZE);
+			}
+		} finally {
+			reader.close();
+			out.close();
+		}
+		if (out.checkError()) {
+			throw new IOException("Couldn't write to " + textFileName);
+		}
+		return nrofEvents;
+	}
+
+	/**
+	 * Returns the standard events file line of an event
+	 * @param ee The event
+	 * @return The line
+	 * @throws SimError if the event has no text presentation
+	 */
+	public static String toText(ExternalEvent ee) {
+		StringBuilder line = new StringBuilder();
+		line.append(ee.getTime()).append(' ');
+
+		if (ee instanceof MessageCreateEvent) {
+			MessageCreateEvent ce = (MessageCreateEvent)ee;
+			line.append(StandardEventsReader.CREATE).append(' ').
+				append(ce.id).append(' ').append(ce.fromAddr).append(' ').
+				append(ce.toAddr).append(' ').append(ce.getSize());
+			if (ce.getResponseSize() > 0) {
+				line.append(' ').append(ce.getResponseSize());
+			}
+		}
+		else if (ee instanceof MessageRelayEvent) {
+			MessageRelayEvent re = (MessageRelayEvent)ee;
+			String action;
+			switch (re.getStage()) {
+			case MessageRelayEvent.SENDING:
+				action = StandardEventsReader.SEND;
+				break;
+			case MessageRelayEvent.TRANSFERRED:
+				action = StandardEventsReader.DELIVERED;
+				break;
+			default:
+				action = StandardEventsReader.ABORT;
+			}
+			line.append(action).append(' ').append(re.id).append(' ').
+				append(re.fromAddr).append(' ').append(re.toAddr);
+		}
+		else if (ee instanceof MessageDeleteEvent) {
+			MessageDeleteEvent de = (MessageDeleteEvent)ee;
+			line.append(de.isDrop() ? StandardEventsReader.DROP :
+				StandardEventsReader.REMOVE).append(' ').append(de.id).
+				append(' ').append(de.fromAddr);
+		}
+		else if (ee instanceof ConnectionEvent) {
+			ConnectionEvent conn = (ConnectionEvent)ee;
+			line.append(StandardEventsReader.CONNECTION).append(' ').
+				append(conn.fromAddr).append(' ').append(conn.toAddr).
+				append(' ').append(conn.isUp ?
+					StandardEventsReader.CONNECTION_UP :
+					StandardEventsReader.CONNECTION_DOWN);
+			if (conn.interfaceId != null) {
+				line.append(' ').append(conn.interfaceId);
+			}
+		}
+		else {
+			throw new SimError("Event " + ee + " has no text presentation");
+		}
+
+		return line.toString();
+	}
+
+	/**
+	 * Runs the converter
+	 * @param args The input and output file names
+	 */
+	public static void main(String[] args) {
+		if (args.length != 2) {
+			System.err.println("Usage: java input.EventsConverter " +
+					"<input file> <output file>");
+			System.err.println("Converts standard external events files " +
+					"to binary (" + BinaryEventsReader.BINARY_EXT +
+					") files and binary files back to text");
+			System.exit(1);
+		}
+
+		File inFile = new File(args[0]);
+		try {
+			int nrof;
+			if (BinaryEventsReader.isBinaryEeFile(inFile)) {
+				nrof = toText(inFile, args[1]);
+			}
+			else {
+				nrof = toBinary(inFile, args[1]);
+			}
+			System.out.println("Converted " + nrof + " events");
+		} catch (IOException e) {
+			System.err.println("Conversion failed: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+}
@@ -21,6 +21,10 @@ public class ExternalEventsQueue implements EventQueue {
 	public static final String PRELOAD_SETTING = "nrofPreload";
 	/** path of external events file -setting id ({@value})*/
 	public static final String PATH_SETTING = "filePath";
+	/** read the events in a background thread -setting id ({@value}).
+	 * Boolean. If true, the next {@link #PRELOAD_SETTING} events are read
+	 * while the previous ones are being processed. Default is false. */
+	public static final String READ_AHEAD_SETTING = "readAhead";
 
 	/** default number of preloaded events */
 	public static final int DEFAULT_NROF_PRELOAD = 500;
@@ -31,6 +35,7 @@ public class ExternalEventsQueue implements EventQueue {
 	private int nrofPreload;
 	private List<ExternalEvent> queue;
 	private boolean allEventsRead = false;
+	private boolean readAhead = false;
 
 	/**
 	 * Creates a new Queue from a file
@@ -47,8 +52,9 @@ public class ExternalEventsQueue implements EventQueue {
 	}
 
 	/**
-	 * Create a new Queue based on the given settings: {@link #PRELOAD_SETTING}
-	 * and {@link #PATH_SETTING}. The path setting supports value filling.
+	 * Create a new Queue based on the given settings: {@link #PRELOAD_SETTING},
+	 * {@link #PATH_SETTING}, and {@link #READ_AHEAD_SETTING}. The path
+	 * setting supports value filling.
 	 * @param s The settings
 	 */
 	public ExternalEventsQueue(Settings s) {
@@ -58,6 +64,7 @@ public class ExternalEventsQueue implements EventQueue {
 		else {
 			setNrofPreload(DEFAULT_NROF_PRELOAD);
 		}
+		this.readAhead = s.getBoolean(READ_AHEAD_SETTING, false);
         String eeFilePath = s.valueFillString(s.getSetting(PATH_SETTING));
         init(eeFilePath);
     }
@@ -83,6 +90,9 @@ public class ExternalEventsQueue implements EventQueue {
 		else {
 			this.reader = new StandardEventsReader(eventsFile);
 		}
+		if (readAhead) {
+			this.reader = new ReadAheadEventsReader(reader, nrofPreload);
+		}
 
 		this.queue = readEvents(nrofPreload);
 		this.nextEventIndex = 0;
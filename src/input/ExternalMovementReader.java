@@ -6,9 +6,11 @@ package input;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Scanner;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 import util.Tuple;
 
@@ -39,9 +41,11 @@ import core.SettingsError;
 public class ExternalMovementReader {
 	/* Prefix for comment lines (lines starting with this are ignored) */
 	public static final String COMMENT_PREFIX = "#";
-	private Scanner scanner;
+	/** tokenizer of the file's lines */
+	private FileTokenizer lineScan;
 	private double lastTimeStamp = -1;
-	private String lastLine;
+	/** time stamp of the last time instance read from the file */
+	private double readTime = -1;
 	private double minTime;
 	private double maxTime;
 	private double minX;
@@ -50,6 +54,12 @@ public class ExternalMovementReader {
 	private double maxY;
 	private boolean normalize;
 
+	/** time instances read in the background (in read-ahead mode) */
+	private BlockingQueue<TimeInstance> readAheadQueue;
+	private Thread readAheadThread;
+	/** error that stopped the background reading (if any) */
+	private volatile RuntimeException readAheadError;
+
 
 	/**
 	 * Constructor. Creates a new reader that reads the data from a file.
@@ -60,16 +70,18 @@ public class ExternalMovementReader {
 		this.normalize = true;
 		File inFile = new File(inFilePath);
 		try {
-			scanner = new Scanner(inFile);
+			lineScan = new FileTokenizer(inFile);
 		} catch (FileNotFoundException e) {
 			throw new SettingsError("Couldn't find external movement input " +
 					"file " + inFile);
 		}
 
-		String offsets = scanner.nextLine();
+		if (!nextLine()) {
+			throw new SettingsError("No offset line in the external " +
+					"movement input file " + inFile);
+		}
 
 		try {
-			Scanner lineScan = new Scanner(offsets);
 			minTime = lineScan.nextDouble();
 			maxTime = lineScan.nextDouble();
 			minX = lineScan.nextDouble();
@@ -77,10 +89,11 @@ public class ExternalMovementReader {
 			minY = lineScan.nextDouble();
 			maxY = lineScan.nextDouble();
 		} catch (Exception e) {
-			throw new SettingsError("Invalid offset line '" + offsets + "'");
+			throw new SettingsError("Invalid offset line '" +
+					lineScan.getLine() + "'");
 		}
 
-		lastLine = scanner.nextLine();
+		nextLine(); // the first line of the first time instance
 	}
 
 	/**
@@ -93,24 +106,110 @@ public class ExternalMovementReader {
 		this.normalize = normalize;
 	}
 
+	/**
+	 * Starts reading the following time instances in a background thread.
+	 * After this, {@link #readNextMovements()} returns the instances that
+	 * the background thread has read and waits only if the thread hasn't
+	 * read the next instance yet.
+	 * @param nrofInstances Maximum number of time instances that are read
+	 * ahead
+	 */
+	public void setReadAhead(int nrofInstances) {
+		if (readAheadThread != null) {
+			return;
+		}
+		readAheadQueue = new ArrayBlockingQueue<TimeInstance>(
+				Math.max(nrofInstances, 1));
+		readAheadThread = new Thread(new Runnable() {
+			public void run() {
+				readAhead();
+			}
+		}, "ExternalMovementReader");
+		readAheadThread.setDaemon(true);
+		readAheadThread.start();
+	}
+
+	/**
+	 * The read-ahead thread's loop: reads time instances until the end of
+	 * the file (that is marked with an empty instance)
+	 */
+	private void readAhead() {
+		TimeInstance instance;
+		do {
+			try {
+				List<Tuple<String, Coord>> moves = readInstance();
+				instance = new TimeInstance(readTime, moves);
+			} catch (RuntimeException e) {
+				readAheadError = e;
+				instance = new TimeInstance(readTime,
+						new ArrayList<Tuple<String, Coord>>(0));
+			}
+			try {
+				readAheadQueue.put(instance);
+			} catch (InterruptedException e) {
+				return;
+			}
+		} while (instance.moves.size() > 0);
+		closeFile();
+	}
+
 	/**
 	 * Reads all new id-coordinate tuples that belong to the same time instance
 	 * @return A list of tuples or empty list if there were no more moves
 	 * @throws SettingError if an invalid line was read
 	 */
 	public List<Tuple<String, Coord>> readNextMovements() {
+		if (readAheadQueue == null) {
+			List<Tuple<String, Coord>> moves = readInstance();
+			lastTimeStamp = readTime;
+			return moves;
+		}
+
+		TimeInstance instance;
+		try {
+			instance = readAheadQueue.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SettingsError("Interrupted while reading external " +
+					"movement");
+		}
+		if (instance.moves.size() == 0) {
+			readAheadQueue.offer(instance); // the end stays in the queue
+			if (readAheadError != null) {
+				throw readAheadError;
+			}
+		}
+		lastTimeStamp = instance.time;
+		return instance.moves;
+	}
+
+	/**
+	 * Reads the tuples of the next time instance from the file
+	 * @return A list of tuples or empty list if there were no more moves
+	 */
+	private List<Tuple<String, Coord>> readInstance() {
 		ArrayList<Tuple<String, Coord>> moves =
 			new ArrayList<Tuple<String, Coord>>();
 
-		if (!scanner.hasNextLine()) {
+		if (!hasNextLine()) {
 			return moves;
 		}
 
-		Scanner lineScan = new Scanner(lastLine);
-		double time = lineScan.nextDouble();
-		String id = lineScan.next();
-		double x = lineScan.nextDouble();
-		double y = lineScan.nextDouble();
+		double time;
+		String id;
+		double x;
+		double y;
+
+		try {
+			lineScan.resetLine();
+			time = lineScan.nextDouble();
+			id = lineScan.next();
+			x = lineScan.nextDouble();
+			y = lineScan.nextDouble();
+		} catch (Exception e) {
+			throw new SettingsError("Invalid line '" + lineScan.getLine() +
+					"'");
+		}
 
 		if (normalize) {
 			time -= minTime;
@@ -118,28 +217,27 @@ public class ExternalMovementReader {
 			y -= minY;
 		}
 
-		lastTimeStamp = time;
+		readTime = time;
 
-		while (scanner.hasNextLine() && lastTimeStamp == time) {
-			lastLine = scanner.nextLine();
+		while (hasNextLine() && readTime == time) {
+			nextLine();
 
-			if (lastLine.trim().length() == 0 ||
-					lastLine.startsWith(COMMENT_PREFIX)) {
+			if (!lineScan.hasNext() ||
+					lineScan.lineStartsWith(COMMENT_PREFIX.charAt(0))) {
 				continue; /* skip empty and comment lines */
 			}
 
 			// add previous line's tuple
 			moves.add(new Tuple<String, Coord>(id, new Coord(x,y)));
 
-			lineScan = new Scanner(lastLine);
-
 			try {
 				time = lineScan.nextDouble();
 				id = lineScan.next();
 				x = lineScan.nextDouble();
 				y = lineScan.nextDouble();
 			} catch (Exception e) {
-				throw new SettingsError("Invalid line '" + lastLine + "'");
+				throw new SettingsError("Invalid line '" + lineScan.getLine() +
+						"'");
 			}
 
 			if (normalize) {
@@ -149,13 +247,58 @@ public class ExternalMovementReader {
 			}
 		}
 
-		if (!scanner.hasNextLine()) {	// add the last tuple of the file
+		if (!hasNextLine()) {	// add the last tuple of the file
 			moves.add(new Tuple<String, Coord>(id, new Coord(x,y)));
 		}
 
 		return moves;
 	}
 
+	/**
+	 * Moves to the next line of the file
+	 * @return true if there was a next line, false if the file ended
+	 */
+	private boolean nextLine() {
+		try {
+			return lineScan.nextLine();
+		} catch (IOException e) {
+			throw new SettingsError("Couldn't read external movement " +
+					"input: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns true if there is a line after the current line
+	 * @return true if the file has more lines
+	 */
+	private boolean hasNextLine() {
+		try {
+			return lineScan.hasNextLine();
+		} catch (IOException e) {
+			throw new SettingsError("Couldn't read external movement " +
+					"input: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Stops the reading (also in the background) and closes the input file
+	 */
+	public void close() {
+		if (readAheadThread != null) {
+			readAheadThread.interrupt();
+			try {
+				readAheadThread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		closeFile();
+	}
+
+	private void closeFile() {
+		lineScan.close();
+	}
+
 	/**
 	 * Returns the time stamp where the last moves read with
 	 * {@link #readNextMovements()} belong to.
@@ -213,4 +356,17 @@ public class ExternalMovementReader {
 		return minY;
 	}
 
+	/**
+	 * The tuples of a time instance (read in the background)
+	 */
+	private static class TimeInstance {
+		private double time;
+		private List<Tuple<String, Coord>> moves;
+
+		public TimeInstance(double time, List<Tuple<String, Coord>> moves) {
+			this.time = time;
+			this.moves = moves;
+		}
+	}
+
 }
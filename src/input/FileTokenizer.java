@@ -0,0 +1,431 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * <P>
+ * Reads a text file line by line and splits the lines to whitespace
+ * separated tokens. The file is read to a large byte buffer and the lines
+ * and tokens are handled directly in the buffer: numbers are parsed from the
+ * bytes without creating Strings, and only the tokens that are requested as
+ * Strings are decoded (with the default charset, like
+ * {@link java.io.FileReader} does).
+ * </P>
+ * <P>
+ * Lines end like with {@link java.io.BufferedReader#readLine()}: with
+ * "\n", "\r", or "\r\n". Whitespace is the ASCII whitespace of
+ * {@link Character#isWhitespace(char)}, so the charset of the file must be
+ * ASCII compatible (e.g., UTF-8 or ISO-8859-1). Numbers are parsed with the
+ * same results as {@link Double#parseDouble(String)} and
+ * {@link Integer#parseInt(String)}: the common cases are parsed directly
+ * from the bytes and the rest with those methods.
+ * </P>
+ */
+public class FileTokenizer {
+	/** Maximum initial size of the read buffer (bytes) */
+	private static final int BUFFER_SIZE = 1024 * 1024;
+	/** Minimum initial size of the read buffer (bytes) */
+	private static final int MIN_BUFFER_SIZE = 8 * 1024;
+	/** Maximum number of significant digits of directly parsed doubles */
+	private static final int MAX_DOUBLE_DIGITS = 15;
+	/** Exactly representable powers of ten */
+	private static final double[] POW10 = new double[23];
+	static {
+		POW10[0] = 1;
+		for (int i = 1; i < POW10.length; i++) {
+			POW10[i] = POW10[i - 1] * 10;
+		}
+	}
+
+	private FileChannel channel;
+	private Charset charset;
+	private byte[] buf;
+	/** number of valid bytes in the buffer */
+	private int limit;
+	/** has the end of the file been reached */
+	private boolean eof;
+	/** is there a current line */
+	private boolean hasLine;
+	/** start and end of the current line in the buffer */
+	private int lineStart;
+	private int lineEnd;
+	/** parsing position in the current line */
+	private int pos;
+	/** start of the next line */
+	private int next;
+	/** did the current line end with "\r" (and "\n" should be skipped) */
+	private boolean skipLF;
+
+	/**
+	 * Creates a tokenizer for a file
+	 * @param file The file to read
+	 * @throws FileNotFoundException if the file can't be opened
+	 */
+	public FileTokenizer(File file) throws FileNotFoundException {
+		this.channel = new FileInputStream(file).getChannel();
+		this.charset = Charset.defaultCharset();
+		/* small files fit in a buffer of their own size */
+		this.buf = new byte[(int)Math.max(MIN_BUFFER_SIZE,
+				Math.min(BUFFER_SIZE, file.length() + 1))];
+		this.limit = 0;
+		this.eof = false;
+		this.hasLine = false;
+		this.next = 0;
+		this.skipLF = false;
+	}
+
+	/**
+	 * Moves to the next line
+	 * @return true if there was a next line, false if the file ended
+	 * @throws IOException if reading the file fails
+	 */
+	public boolean nextLine() throws IOException {
+		hasLine = false;
+		if (skipLF) {
+			if (available(0) && buf[next] == '\n') {
+				next++;
+			}
+			skipLF = false;
+		}
+		if (!available(0)) {
+			return false;
+		}
+
+		int i = next;
+		while (true) {
+			while (i < limit && buf[i] != '\n' && buf[i] != '\r') {
+				i++;
+			}
+			if (i < limit) {
+				break;
+			}
+			int scanned = i - next;
+			if (!available(scanned)) { // last line without a line end
+				i = limit;
+				break;
+			}
+			i = next + scanned; // the buffer may have been compacted
+		}
+
+		lineStart = next;
+		lineEnd = i;
+		pos = lineStart;
+		if (i < limit) {
+			skipLF = (buf[i] == '\r');
+			next = i + 1;
+		}
+		else {
+			next = limit;
+		}
+		hasLine = true;
+		return true;
+	}
+
+	/**
+	 * Returns true if there is a line after the current line
+	 * @return true if the file has more lines
+	 * @throws IOException if reading the file fails
+	 */
+	public boolean hasNextLine() throws IOException {
+		int offset = 0;
+		if (skipLF) {
+			if (!available(0)) {
+				return false;
+			}
+			if (buf[next] == '\n') {
+				offset = 1;
+			}
+		}
+		return available(offset);
+	}
+
+	/**
+	 * Starts parsing the current line again from its beginning
+	 */
+	public void resetLine() {
+		pos = lineStart;
+	}
+
+	/**
+	 * Returns true if the current line starts with the given character
+	 * @param c The (ASCII) character
+	 * @return true if the line's first character is c
+	 */
+	public boolean lineStartsWith(char c) {
+		return lineStart < lineEnd && buf[lineStart] == c;
+	}
+
+	/**
+	 * Returns the current line as a String (e.g., for error messages)
+	 * @return the current line or null if there is no current line
+	 */
+	public String getLine() {
+		if (!hasLine) {
+			return null;
+		}
+		return new String(buf, lineStart, lineEnd - lineStart, charset);
+	}
+
+	/**
+	 * Returns true if the current line has more tokens
+	 * @return true if there's a next token
+	 */
+	public boolean hasNext() {
+		skipWhitespace();
+		return pos < lineEnd;
+	}
+
+	/**
+	 * Returns true if the next token is an integer
+	 * @return true if there's a next token and it can be parsed as an int
+	 */
+	public boolean hasNextInt() {
+		int start = pos;
+		try {
+			nextInt();
+			return true;
+		} catch (RuntimeException e) {
+			return false;
+		} finally {
+			pos = start;
+		}
+	}
+
+	/**
+	 * Returns the next token
+	 * @return the next token
+	 * @throws NoSuchElementException if there are no more tokens
+	 */
+	public String next() {
+		int start = tokenStart();
+		return new String(buf, start, pos - start, charset);
+	}
+
+	/**
+	 * Parses the next token as a double
+	 * @return the parsed value
+	 * @throws NoSuchElementException if there are no more tokens
+	 * @throws NumberFormatException if the token isn't a number
+	 */
+	public double nextDouble() {
+		int start = tokenStart();
+		int i = start;
+		boolean negative = false;
+		if (buf[i] == '-' || buf[i] == '+') {
+			negative = (buf[i] == '-');
+			i++;
+		}
+
+		long mantissa = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean anyDigits = false;
+		boolean point = false;
+		for (; i < pos; i++) {
+			int b = buf[i];
+			if (b >= '0' && b <= '9') {
+				anyDigits = true;
+				if (mantissa != 0 || b != '0') {
+					if (++digits > MAX_DOUBLE_DIGITS) {
+						return parseDouble(start);
+					}
+				}
+				mantissa = mantissa * 10 + (b - '0');
+				if (point) {
+					exponent--;
+				}
+			}
+			else if (b == '.' && !point) {
+				point = true;
+			}
+			else {
+				break;
+			}
+		}
+		if (!anyDigits) {
+			return parseDouble(start);
+		}
+
+		if (i < pos && (buf[i] == 'e' || buf[i] == 'E')) {
+			i++;
+			boolean negativeExp = false;
+			if (i < pos && (buf[i] == '-' || buf[i] == '+')) {
+				negativeExp = (buf[i] == '-');
+				i++;
+			}
+			int exp = 0;
+			int expStart = i;
+			for (; i < pos && buf[i] >= '0' && buf[i] <= '9'; i++) {
+				if (i - expStart >= 4) {
+					return parseDouble(start);
+				}
+				exp = exp * 10 + (buf[i] - '0');
+			}
+			if (i == expStart) {
+				return parseDouble(start);
+			}
+			exponent += (negativeExp ? -exp : exp);
+		}
+		if (i < pos) { // e.g., a type suffix or an invalid number
+			return parseDouble(start);
+		}
+
+		double value;
+		if (mantissa == 0) {
+			value = 0;
+		}
+		else if (exponent == 0) {
+			value = mantissa;
+		}
+		else if (exponent > 0 && exponent < POW10.length) {
+			value = mantissa * POW10[exponent];
+		}
+		else if (exponent < 0 && -exponent < POW10.length) {
+			value = mantissa / POW10[-exponent];
+		}
+		else {
+			return parseDouble(start);
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Parses the next token as an integer
+	 * @return the parsed value
+	 * @throws NoSuchElementException if there are no more tokens
+	 * @throws NumberFormatException if the token isn't an integer
+	 */
+	public int nextInt() {
+		int start = tokenStart();
+		int i = start;
+		boolean negative = false;
+		if (buf[i] == '-' || buf[i] == '+') {
+			negative = (buf[i] == '-');
+			i++;
+		}
+		if (i == pos || pos - i > 9) { // no digits or maybe too big
+			return Integer.parseInt(new String(buf, start, pos - start,
+					charset));
+		}
+
+		int value = 0;
+		for (; i < pos; i++) {
+			int b = buf[i];
+			if (b < '0' || b > '9') {
+				return Integer.parseInt(new String(buf, start, pos - start,
+						charset));
+			}
+			value = value * 10 + (b - '0');
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Closes the file
+	 */
+	public void close() {
+		try {
+			channel.close();
+		} catch (IOException e) {}
+	}
+
+	/**
+	 * Parses a double from the token that ends at the current position with
+	 * {@link Double#parseDouble(String)}
+	 * @param start Start of the token
+	 * @return The value
+	 */
+	private double parseDouble(int start) {
+		return Double.parseDouble(new String(buf, start, pos - start,
+				charset));
+	}
+
+	/**
+	 * Skips the whitespace and the next token
+	 * @return the start index of the token
+	 */
+	private int tokenStart() {
+		skipWhitespace();
+		if (pos >= lineEnd) {
+			throw new NoSuchElementException("No more tokens in '" +
+					getLine() + "'");
+		}
+		int start = pos;
+		while (pos < lineEnd && !isWhitespace(buf[pos])) {
+			pos++;
+		}
+		return start;
+	}
+
+	private void skipWhitespace() {
+		while (pos < lineEnd && isWhitespace(buf[pos])) {
+			pos++;
+		}
+	}
+
+	/**
+	 * Returns true for the bytes of the ASCII characters that are
+	 * whitespace according to {@link Character#isWhitespace(char)}
+	 */
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || (b >= '\t' && b <= '\r') ||
+			(b >= 0x1C && b <= 0x1F);
+	}
+
+	/**
+	 * Checks if the byte at the given offset from the start of the next line
+	 * is in the buffer and reads more of the file if it isn't. The current
+	 * line stays in the buffer.
+	 * @param offset The offset
+	 * @return true if the byte is available, false if the file ended
+	 */
+	private boolean available(int offset) throws IOException {
+		while (next + offset >= limit) {
+			if (eof) {
+				return false;
+			}
+			fill();
+		}
+		return true;
+	}
+
+	/**
+	 * Reads more of the file to the buffer. Moves the data that is still
+	 * needed to the beginning of the buffer first, or grows the buffer if
+	 * it's full of needed data.
+	 */
+	private void fill() throws IOException {
+		int keep = hasLine ? lineStart : next;
+		if (keep > 0) {
+			System.arraycopy(buf, keep, buf, 0, limit - keep);
+			limit -= keep;
+			lineStart -= keep;
+			lineEnd -= keep;
+			pos -= keep;
+			next -= keep;
+		}
+		if (limit == buf.length) {
+			buf = Arrays.copyOf(buf, buf.length * 2);
+		}
+
+		int n = channel.read(ByteBuffer.wrap(buf, limit, buf.length - limit));
+		if (n < 0) {
+			eof = true;
+		}
+		else {
+			limit += n;
+		}
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import core.SimError;
+
+/**
+ * External events reader that reads the events of another reader in a
+ * background thread. The thread reads the next chunk of events while the
+ * previous chunk is being consumed (double buffering), so the simulation
+ * waits for the input only if it consumes the events faster than they can be
+ * parsed. The events and their order are the same as with the other reader.
+ */
+public class ReadAheadEventsReader implements ExternalEventsReader {
+	/** Number of chunks that are read ahead */
+	private static final int NROF_CHUNKS = 1;
+
+	private ExternalEventsReader reader;
+	private BlockingQueue<List<ExternalEvent>> chunks;
+	/** the chunk that is being consumed */
+	private List<ExternalEvent> chunk;
+	private int chunkIndex;
+	/** has the last (empty) chunk been received */
+	private boolean allRead;
+	private Thread readerThread;
+	/** error that stopped the background reading (if any) */
+	private volatile RuntimeException error;
+
+	/**
+	 * Creates a new reader and starts reading in the background
+	 * @param reader The reader whose events are read
+	 * @param chunkSize Number of events in a chunk
+	 */
+	public ReadAheadEventsReader(ExternalEventsReader reader,
+			final int chunkSize) {
+		this.reader = reader;
+		this.chunks = new ArrayBlockingQueue<List<ExternalEvent>>(NROF_CHUNKS);
+		this.chunk = new ArrayList<ExternalEvent>(0);
+		this.chunkIndex = 0;
+		this.allRead = false;
+
+		this.readerThread = new Thread(new Runnable() {
+			public void run() {
+				readChunks(Math.max(chunkSize, 1));
+			}
+		}, "ReadAheadEventsReader");
+		this.readerThread.setDaemon(true);
+		this.readerThread.start();
+	}
+
+	/**
+	 * The reader thread's loop: reads chunks until the reader returns no
+	 * more events (the empty chunk is passed on too)
+	 * @param chunkSize Number of events in a chunk
+	 */
+	private void readChunks(int chunkSize) {
+		List<ExternalEvent> events;
+		do {
+			try {
+				events = reader.readEvents(chunkSize);
+			} catch (RuntimeException e) {
+				error = e;
+				events = new ArrayList<ExternalEvent>(0);
+			}
+			try {
+				chunks.put(events);
+			} catch (InterruptedException e) {
+				return; // closed
+			}
+		} while (events.size() > 0);
+		reader.close();
+	}
+
+	public List<ExternalEvent> readEvents(int nrof) {
+		List<ExternalEvent> events = new ArrayList<ExternalEvent>(nrof);
+
+		while (events.size() < nrof) {
+			if (chunkIndex == chunk.size()) {
+				if (allRead || !nextChunk()) {
+					break;
+				}
+			}
+			int n = Math.min(nrof - events.size(), chunk.size() - chunkIndex);
+			events.addAll(chunk.subList(chunkIndex, chunkIndex + n));
+			chunkIndex += n;
+		}
+
+		return events;
+	}
+
+	/**
+	 * Takes the next chunk from the reader thread
+	 * @return true if a chunk with events was received, false if there are
+	 * no more events
+	 */
+	private boolean nextChunk() {
+		try {
+			chunk = chunks.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SimError("Interrupted while reading external events");
+		}
+		chunkIndex = 0;
+
+		if (chunk.size() == 0) {
+			allRead = true;
+			if (error != null) {
+				throw error;
+			}
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Stops the reader thread and closes the reader
+	 */
+	public void close() {
+		readerThread.interrupt();
+		try {
+			readerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		reader.close();
+	}
+}
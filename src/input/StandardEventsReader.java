@@ -4,17 +4,13 @@
  */
 package input;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.lang.Integer;
 import java.lang.NumberFormatException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Scanner;
-import java.util.regex.Pattern;
 
 import core.SimError;
 
@@ -66,13 +62,12 @@ public class StandardEventsReader implements ExternalEventsReader {
 	/** Message identifier to use to refer to all messages ({@value}) */
 	public static final String ALL_MESSAGES_ID = "*";
 
-	//private Scanner scanner;
-	private BufferedReader reader;
+	/** tokenizer of the file's lines */
+	private FileTokenizer lineScan;
 
 	public StandardEventsReader(File eventsFile){
 		try {
-			//this.scanner = new Scanner(eventsFile);
-			this.reader = new BufferedReader(new FileReader(eventsFile));
+			this.lineScan = new FileTokenizer(eventsFile);
 		} catch (FileNotFoundException e) {
 			throw new SimError(e.getMessage(),e);
 		}
@@ -82,26 +77,10 @@ public class StandardEventsReader implements ExternalEventsReader {
 	public List<ExternalEvent> readEvents(int nrof) {
 		ArrayList<ExternalEvent> events = new ArrayList<ExternalEvent>(nrof);
 		int eventsRead = 0;
-		// skip empty and comment lines
-		Pattern skipPattern = Pattern.compile("(#.*)|(^\\s*$)");
 
-		String line;
-		try {
-			line = this.reader.readLine();
-		} catch (IOException e1) {
-			throw new SimError("Reading from external event file failed.");
-		}
-		while (eventsRead < nrof && line != null) {
-			Scanner lineScan = new Scanner(line);
-			if (skipPattern.matcher(line).matches()) {
-				// skip empty and comment lines
-				try {
-					line = this.reader.readLine();
-				} catch (IOException e) {
-					throw new SimError("Reading from external event file " +
-							"failed.");
-				}
-				continue;
+		while (eventsRead < nrof && nextLine()) {
+			if (lineScan.lineStartsWith('#') || !lineScan.hasNext()) {
+				continue; // skip empty and comment lines
 			}
 
 			double time;
@@ -201,24 +180,30 @@ public class StandardEventsReader implements ExternalEventsReader {
 								msgId, time, stage));
 					}
 				}
-				// discard the newline in the end
-				if (lineScan.hasNextLine()) {
-					lineScan.nextLine(); // TODO: test
-				}
 				eventsRead++;
-				if (eventsRead < nrof) {
-					line = this.reader.readLine();
-				}
 			} catch (Exception e) {
 				e.printStackTrace();
 				throw new SimError("Can't parse external event " +
-						(eventsRead+1) + " from '" + line + "'", e);
+						(eventsRead+1) + " from '" + lineScan.getLine() +
+						"'", e);
 			}
 		}
 
 		return events;
 	}
 
+	/**
+	 * Moves to the next line of the file
+	 * @return true if there was a next line, false if the file ended
+	 */
+	private boolean nextLine() {
+		try {
+			return lineScan.nextLine();
+		} catch (IOException e) {
+			throw new SimError("Reading from external event file failed.", e);
+		}
+	}
+
 	/**
 	 * Parses a host address from a hostId string (the numeric part after
 	 * optional non-numeric part).
@@ -227,25 +212,28 @@ public class StandardEventsReader implements ExternalEventsReader {
 	 * @throws SimError if no address could be parsed from the id
 	 */
 	private int getHostAddress(String hostId) {
-		String addressPart = "";
-		if (hostId.matches("^\\d+$")) {
-			addressPart = hostId; // host id is only the address
+		int digitsStart = hostId.length();
+		while (digitsStart > 0 && isDigit(hostId.charAt(digitsStart - 1))) {
+			digitsStart--;
 		}
-		else if (hostId.matches("^\\D+\\d+$")) {
-			String [] parts = hostId.split("\\D");
-			addressPart = parts[parts.length-1]; // last occurence is the addr
-		}
-		else {
+		if (digitsStart == hostId.length()) {
 			throw new SimError("Invalid host ID '" + hostId + "'");
 		}
+		for (int i = 0; i < digitsStart; i++) {
+			if (isDigit(hostId.charAt(i))) { // digits in the prefix
+				throw new SimError("Invalid host ID '" + hostId + "'");
+			}
+		}
+
+		return Integer.parseInt(hostId.substring(digitsStart));
+	}
 
-		return Integer.parseInt(addressPart);
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
 	}
 
 	public void close() {
-		try {
-			this.reader.close();
-		} catch (IOException e) {}
+		this.lineScan.close();
 	}
 
 	private int convertToInteger(String str){
@@ -5,8 +5,11 @@
 package interfaces;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 
 import movement.MovementModel;
 
@@ -34,6 +37,10 @@ import core.World;
  * connection. Then only that subset of interfaces is checked for possible
  * connectivity.
  * </P>
+ * <P>The cells are stored in a flat array and every interface knows its
+ * own index in the grid ({@link NetworkInterface#getOptimizerIndex()}), so
+ * looking up an interface's cell and visiting the neighboring cells doesn't
+ * require hashing or allocating any objects.</P>
  * <P>
  * <strong>Note:</strong> this class does NOT support negative
  * coordinates. Also, it makes sense to normalize the coordinates to start
@@ -53,9 +60,20 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	public static final String CELL_SIZE_MULT_S = "cellSizeMult";
 	/** default value for cell size multiplier ({@value}) */
 	public static final int DEF_CON_CELL_SIZE_MULT = 5;
-
-	private GridCell[][] cells;
-	private HashMap<NetworkInterface, GridCell> ginterfaces;
+	/** initial size of the interface arrays */
+	private static final int EXPECTED_INTERFACE_COUNT = 64;
+
+	/** the cells, row by row, with empty cells on every side */
+	private GridCell[] cells;
+	/** number of cells on a row of the cells array */
+	private int width;
+	/** interfaces of the grid; indexed by their optimizer index */
+	private ArrayList<NetworkInterface> ginterfaces;
+	/** index of the cell of each interface; indexed by optimizer index */
+	private int[] cellIndexes;
+	/** position of each interface in its cell's list; indexed by optimizer
+	 * index */
+	private int[] slots;
 	private int cellSize;
 	private int rows;
 	private int cols;
@@ -101,15 +119,16 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		this.rows = worldSizeY/cellSize + 1;
 		this.cols = worldSizeX/cellSize + 1;
 		// leave empty cells on both sides to make neighbor search easier
-		this.cells = new GridCell[rows+2][cols+2];
+		this.width = cols+2;
+		this.cells = new GridCell[(rows+2) * width];
 		this.cellSize = cellSize;
 
-		for (int i=0; i<rows+2; i++) {
-			for (int j=0; j<cols+2; j++) {
-				this.cells[i][j] = new GridCell();
-			}
+		for (int i=0; i<cells.length; i++) {
+			this.cells[i] = new GridCell();
 		}
-		ginterfaces = new HashMap<NetworkInterface,GridCell>();
+		ginterfaces = new ArrayList<NetworkInterface>();
+		cellIndexes = new int[EXPECTED_INTERFACE_COUNT];
+		slots = new int[EXPECTED_INTERFACE_COUNT];
 	}
 
 	/**
@@ -122,7 +141,7 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	public static ConnectivityGrid ConnectivityGridFactory(int key,
 			double maxRange) {
 		if (gridobjects.containsKey((Integer)key)) {
-			return (ConnectivityGrid)gridobjects.get((Integer)key);
+			return gridobjects.get((Integer)key);
 		} else {
 			ConnectivityGrid newgrid =
 				new ConnectivityGrid((int)Math.ceil(maxRange *
@@ -132,14 +151,35 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		}
 	}
 
+	/**
+	 * Creates a new, empty grid with the same cell size
+	 * @return The new grid
+	 */
+	protected ConnectivityOptimizer newCopy() {
+		return new ConnectivityGrid(cellSize);
+	}
+
 	/**
 	 * Adds a network interface to the overlay grid
 	 * @param ni The new network interface
 	 */
 	public void addInterface(NetworkInterface ni) {
-		GridCell c = cellFromCoord(ni.getLocation());
-		c.addInterface(ni);
-		ginterfaces.put(ni,c);
+		int index = ni.getOptimizerIndex();
+		if (index >= 0 && index < ginterfaces.size() &&
+				ginterfaces.get(index) == ni) {
+			return; /* already in the grid */
+		}
+
+		index = ginterfaces.size();
+		if (index == cellIndexes.length) {
+			cellIndexes = Arrays.copyOf(cellIndexes, index * 2);
+			slots = Arrays.copyOf(slots, index * 2);
+		}
+		int cellIndex = cellIndexFromCoord(ni.getLocation());
+		ginterfaces.add(ni);
+		ni.setOptimizerIndex(index);
+		cells[cellIndex].addInterface(ni);
+		cellIndexes[index] = cellIndex;
 	}
 
 	/**
@@ -147,11 +187,25 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 * @param ni The interface to be removed
 	 */
 	public void removeInterface(NetworkInterface ni) {
-		GridCell c = ginterfaces.get(ni);
-		if (c != null) {
-			c.removeInterface(ni);
+		int index = ni.getOptimizerIndex();
+		if (index < 0 || index >= ginterfaces.size() ||
+				ginterfaces.get(index) != ni) {
+			return; /* not in the grid */
+		}
+
+		cells[cellIndexes[index]].removeInterface(ni);
+		ni.setOptimizerIndex(-1);
+		clearSearchCopy();
+
+		/* move the last interface to the freed index */
+		int last = ginterfaces.size() - 1;
+		NetworkInterface lastNi = ginterfaces.remove(last);
+		if (index != last) {
+			ginterfaces.set(index, lastNi);
+			cellIndexes[index] = cellIndexes[last];
+			slots[index] = slots[last];
+			lastNi.setOptimizerIndex(index);
 		}
-		ginterfaces.remove(ni);
 	}
 
 	/**
@@ -169,48 +223,22 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 * @param ni The interface to update
 	 */
 	public void updateLocation(NetworkInterface ni) {
-		GridCell oldCell = (GridCell)ginterfaces.get(ni);
-		GridCell newCell = cellFromCoord(ni.getLocation());
+		int index = ni.getOptimizerIndex();
+		int oldCellIndex = cellIndexes[index];
+		int newCellIndex = cellIndexFromCoord(ni.getLocation());
 
-		if (newCell != oldCell) {
-			oldCell.moveInterface(ni, newCell);
-			ginterfaces.put(ni,newCell);
+		if (newCellIndex != oldCellIndex) {
+			cells[oldCellIndex].moveInterface(ni, cells[newCellIndex]);
+			cellIndexes[index] = newCellIndex;
 		}
 	}
 
 	/**
-	 * Finds all neighboring cells and the cell itself based on the coordinates
-	 * @param c The coordinates
-	 * @return Array of neighboring cells
-	 */
-	private GridCell[] getNeighborCellsByCoord(Coord c) {
-		// +1 due empty cells on both sides of the matrix
-		int row = (int)(c.getY()/cellSize) + 1;
-		int col = (int)(c.getX()/cellSize) + 1;
-		return getNeighborCells(row,col);
-	}
-
-	/**
-	 * Returns an array of Cells that contains the neighbors of a certain
-	 * cell and the cell itself.
-	 * @param row Row index of the cell
-	 * @param col Column index of the cell
-	 * @return Array of neighboring Cells
-	 */
-	private GridCell[] getNeighborCells(int row, int col) {
-		return new GridCell[] {
-			cells[row-1][col-1],cells[row-1][col],cells[row-1][col+1],//1st row
-			cells[row][col-1],cells[row][col],cells[row][col+1],//2nd row
-			cells[row+1][col-1],cells[row+1][col],cells[row+1][col+1]//3rd row
-		};
-	}
-
-	/**
-	 * Get the cell having the specific coordinates
+	 * Get the index of the cell having the specific coordinates
 	 * @param c Coordinates
-	 * @return The cell
+	 * @return Index of the cell in the cells array
 	 */
-	private GridCell cellFromCoord(Coord c) {
+	private int cellIndexFromCoord(Coord c) {
 		// +1 due empty cells on both sides of the matrix
 		int row = (int)(c.getY()/cellSize) + 1;
 		int col = (int)(c.getX()/cellSize) + 1;
@@ -218,14 +246,25 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		assert row > 0 && row <= rows && col > 0 && col <= cols : "Location " +
 		c + " is out of world's bounds";
 
-		return this.cells[row][col];
+		return row * width + col;
+	}
+
+	/**
+	 * Returns true if the interface has been added to this grid
+	 * @param ni The interface
+	 * @return true if the interface has been added to this grid
+	 */
+	private boolean contains(NetworkInterface ni) {
+		int index = ni.getOptimizerIndex();
+		return index >= 0 && index < ginterfaces.size() &&
+			ginterfaces.get(index) == ni;
 	}
 
 	/**
 	 * Returns all interfaces that use the same technology and channel
 	 */
 	public Collection<NetworkInterface> getAllInterfaces() {
-		return (Collection<NetworkInterface>)ginterfaces.keySet();
+		return Collections.unmodifiableList(ginterfaces);
 	}
 
 	/**
@@ -236,20 +275,112 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 */
 	public Collection<NetworkInterface> getNearInterfaces(
 			NetworkInterface ni) {
-		ArrayList<NetworkInterface> niList = new ArrayList<NetworkInterface>();
-		GridCell loc = (GridCell)ginterfaces.get(ni);
-
-		if (loc != null) {
-			GridCell[] neighbors =
-				getNeighborCellsByCoord(ni.getLocation());
-			for (int i=0; i < neighbors.length; i++) {
-				niList.addAll(neighbors[i].getInterfaces());
+		final ArrayList<NetworkInterface> niList =
+			new ArrayList<NetworkInterface>();
+
+		forEachNearInterface(ni, new InterfaceVisitor() {
+			public void visit(NetworkInterface near) {
+				niList.add(near);
 			}
-		}
+		});
 
 		return niList;
 	}
 
+	/**
+	 * Calls the visitor for all interfaces that are in the same or
+	 * neighboring grid cells as the given interface's location
+	 * @param ni The interface whose neighboring interfaces are visited
+	 * @param visitor The visitor to call for every near interface
+	 */
+	@Override
+	public void forEachNearInterface(NetworkInterface ni,
+			InterfaceVisitor visitor) {
+		if (!contains(ni)) {
+			return;
+		}
+
+		Coord c = ni.getLocation();
+		// +1 due empty cells on both sides of the matrix
+		int row = (int)(c.getY()/cellSize) + 1;
+		int col = (int)(c.getX()/cellSize) + 1;
+
+		for (int r = row-1; r <= row+1; r++) {
+			int first = r * width + col - 1;
+			for (int i = first; i < first + 3; i++) {
+				cells[i].visitInterfaces(visitor, 0);
+			}
+		}
+	}
+
+	/**
+	 * Visits the candidates that are in the same or neighboring grid cells
+	 * as the given interface's location, ordered by the cell and their
+	 * position in the cell like
+	 * {@link #forEachNearInterface(NetworkInterface, InterfaceVisitor)}
+	 * orders them. Only the candidates are looked at.
+	 */
+	@Override
+	public void forEachNearInterfaceOf(NetworkInterface ni,
+			List<NetworkInterface> candidates, InterfaceVisitor visitor) {
+		int n = candidates.size();
+		if (n >= MAX_ORDERED_CANDIDATES) {
+			super.forEachNearInterfaceOf(ni, candidates, visitor);
+			return;
+		}
+		if (!contains(ni)) {
+			return;
+		}
+
+		Coord c = ni.getLocation();
+		// +1 due empty cells on both sides of the matrix
+		int row = (int)(c.getY()/cellSize) + 1;
+		int col = (int)(c.getX()/cellSize) + 1;
+
+		long[] keys = getOrderKeys(n);
+		int nrofKeys = 0;
+		for (int i=0; i < n; i++) {
+			NetworkInterface candidate = candidates.get(i);
+			if (!contains(candidate)) {
+				continue;
+			}
+			int index = candidate.getOptimizerIndex();
+			int cellIndex = cellIndexes[index];
+			int dRow = cellIndex / width - row + 1;
+			int dCol = cellIndex % width - col + 1;
+			if (dRow < 0 || dRow > 2 || dCol < 0 || dCol > 2) {
+				continue;
+			}
+			/* cells row by row, and the interfaces in their cell order */
+			long order = ((long)(dRow * 3 + dCol) << 32) | slots[index];
+			keys[nrofKeys++] = orderKey(order, i);
+		}
+		visitInOrder(candidates, keys, nrofKeys, visitor);
+	}
+
+	/**
+	 * Calls the visitor for the interfaces that are after the given interface
+	 * in the same grid cell and for all interfaces in the next cell of the
+	 * same row and the three neighboring cells of the next row. This way
+	 * every pair of interfaces in neighboring cells is visited once.
+	 * @param ni The interface whose neighboring interfaces are visited
+	 * @param visitor The visitor to call for every near interface
+	 */
+	public void forEachHalfNearInterface(NetworkInterface ni,
+			InterfaceVisitor visitor) {
+		if (!contains(ni)) {
+			return;
+		}
+
+		int cellIndex = cellIndexes[ni.getOptimizerIndex()];
+		GridCell cell = cells[cellIndex];
+		cell.visitInterfaces(visitor, slots[ni.getOptimizerIndex()] + 1);
+		cells[cellIndex + 1].visitInterfaces(visitor, 0);
+		for (int i = cellIndex + width - 1; i <= cellIndex + width + 1; i++) {
+			cells[i].visitInterfaces(visitor, 0);
+		}
+	}
+
 
 	/**
 	 * Returns a string representation of the ConnectivityCells object
@@ -283,19 +414,45 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		}
 
 		/**
-		 * Adds an interface to this cell
+		 * Adds an interface of the grid to this cell
 		 * @param ni The interface to add
 		 */
 		public void addInterface(NetworkInterface ni) {
+			slots[ni.getOptimizerIndex()] = this.interfaces.size();
 			this.interfaces.add(ni);
 		}
 
 		/**
-		 * Removes an interface from this cell
+		 * Removes an interface of the grid from this cell
 		 * @param ni The interface to remove
+		 * @return true if the interface was in this cell
 		 */
-		public void removeInterface(NetworkInterface ni) {
-			this.interfaces.remove(ni);
+		public boolean removeInterface(NetworkInterface ni) {
+			ArrayList<NetworkInterface> list = this.interfaces;
+			int slot = slots[ni.getOptimizerIndex()];
+			if (slot >= list.size() || list.get(slot) != ni) {
+				return false;
+			}
+
+			list.remove(slot);
+			/* the interfaces after the removed one moved one step back */
+			for (int i = slot, n = list.size(); i < n; i++) {
+				slots[list.get(i).getOptimizerIndex()] = i;
+			}
+			return true;
+		}
+
+		/**
+		 * Calls the visitor for the interfaces in this cell
+		 * @param visitor The visitor
+		 * @param from Index of the first interface (in the cell's list) to
+		 * visit
+		 */
+		private void visitInterfaces(InterfaceVisitor visitor, int from) {
+			ArrayList<NetworkInterface> list = this.interfaces;
+			for (int i = from, n = list.size(); i < n; i++) {
+				visitor.visit(list.get(i));
+			}
 		}
 
 		/**
@@ -304,8 +461,8 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		 * @param to The cell where the interface should be moved to
 		 */
 		public void moveInterface(NetworkInterface ni, GridCell to) {
+			boolean removeOk = removeInterface(ni);
 			to.addInterface(ni);
-			boolean removeOk = this.interfaces.remove(ni);
 			assert removeOk : "interface " + ni +
 				" not found from cell with " + interfaces.toString();
 		}
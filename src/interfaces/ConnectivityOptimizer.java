@@ -4,15 +4,117 @@
  */
 package interfaces;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 
+import core.DTNSim;
 import core.NetworkInterface;
+import core.Settings;
+import core.SettingsError;
+import core.World;
 
 /**
  * A superclass for schemes for optimizing the location of possible contacts
  * with network interfaces of a specific range
  */
 abstract public class ConnectivityOptimizer {
+	/**
+	 * Connectivity optimizer class -setting id ({@value}). Used in
+	 * {@link World#OPTIMIZATION_SETTINGS_NS} name space. Valid values are
+	 * {@link #GRID_OPTIMIZER} (default), {@link #SWEEP_OPTIMIZER}, and
+	 * {@link #KD_TREE_OPTIMIZER}.
+	 */
+	public static final String OPTIMIZER_S = "connectivityOptimizer";
+	/** Value for the {@link ConnectivityGrid} optimizer ({@value}) */
+	public static final String GRID_OPTIMIZER = "ConnectivityGrid";
+	/** Value for the {@link SortAndSweepOptimizer} optimizer ({@value}) */
+	public static final String SWEEP_OPTIMIZER = "SortAndSweepOptimizer";
+	/** Value for the {@link KdTreeOptimizer} optimizer ({@value}) */
+	public static final String KD_TREE_OPTIMIZER = "KdTreeOptimizer";
+
+	/** class name of the optimizers to create */
+	private static String optimizerType;
+	/** optimizers created with {@link #getOptimizer(int, double)} */
+	private static HashMap<Integer, ConnectivityOptimizer> optimizers;
+	/** number of bits of the candidate's index in the order keys */
+	private static final int CANDIDATE_BITS = 20;
+	/** maximum number of candidates that can be visited with order keys */
+	protected static final int MAX_ORDERED_CANDIDATES = 1 << CANDIDATE_BITS;
+
+	/** optimizer of the same type with the same interfaces, used for
+	 * searching the near interfaces with up-to-date locations (see
+	 * {@link #updateSearchLocation(NetworkInterface)}) */
+	private ConnectivityOptimizer searchCopy;
+	/** candidate interfaces by their index (see
+	 * {@link #forEachNearInterfaceOf(NetworkInterface, List,
+	 * InterfaceVisitor)}) */
+	private NetworkInterface[] candidateMarks;
+	/** order keys of the candidates (see {@link #orderKey(long, int)}) */
+	private long[] orderKeys;
+
+	static {
+		DTNSim.registerForReset(
+				ConnectivityOptimizer.class.getCanonicalName());
+		reset();
+	}
+
+	/**
+	 * Resets the optimizers and reads the optimizer type setting
+	 */
+	public static void reset() {
+		optimizers = new HashMap<Integer, ConnectivityOptimizer>();
+		Settings s = new Settings(World.OPTIMIZATION_SETTINGS_NS);
+		optimizerType = GRID_OPTIMIZER;
+		if (s.contains(OPTIMIZER_S)) {
+			optimizerType = s.getSetting(OPTIMIZER_S);
+		}
+
+		if (!optimizerType.equals(GRID_OPTIMIZER) &&
+				!optimizerType.equals(SWEEP_OPTIMIZER) &&
+				!optimizerType.equals(KD_TREE_OPTIMIZER)) {
+			throw new SettingsError("Unknown connectivity optimizer \"" +
+					optimizerType + "\" for " +
+					World.OPTIMIZATION_SETTINGS_NS + "." + OPTIMIZER_S);
+		}
+	}
+
+	/**
+	 * Returns a connectivity optimizer of the type selected with
+	 * {@link #OPTIMIZER_S} setting. All interfaces using the same technology
+	 * (i.e., with the same key) share the same optimizer.
+	 * @param key A hash value that separates different interfaces from each
+	 * other
+	 * @param maxRange Maximum range used by the radio technology using this
+	 * optimizer
+	 * @return The connectivity optimizer for a specific interface
+	 */
+	public static ConnectivityOptimizer getOptimizer(int key,
+			double maxRange) {
+		if (optimizerType.equals(GRID_OPTIMIZER)) {
+			return ConnectivityGrid.ConnectivityGridFactory(key, maxRange);
+		}
+
+		ConnectivityOptimizer optimizer = optimizers.get(key);
+		if (optimizer == null) {
+			if (optimizerType.equals(SWEEP_OPTIMIZER)) {
+				optimizer = new SortAndSweepOptimizer();
+			} else {
+				optimizer = new KdTreeOptimizer(maxRange);
+			}
+			optimizers.put(key, optimizer);
+		}
+		return optimizer;
+	}
+
+	/**
+	 * Creates a new, empty optimizer of the same type and with the same
+	 * parameters as this one
+	 * @return The new optimizer
+	 */
+	abstract protected ConnectivityOptimizer newCopy();
 
 	/**
 	 * Adds a network interface to the optimizer (unless it is already present)
@@ -40,9 +142,178 @@ abstract public class ConnectivityOptimizer {
 	abstract public Collection<NetworkInterface> getNearInterfaces(
 			NetworkInterface ni);
 
+	/**
+	 * Calls the visitor for all network interfaces that might be located so
+	 * that they can be connected with the network interface. The interfaces
+	 * are the same (and in the same order) as the ones returned by
+	 * {@link #getNearInterfaces(NetworkInterface)}, but no collection is
+	 * created. This implementation uses
+	 * {@link #getNearInterfaces(NetworkInterface)}; optimizers should
+	 * override it with an allocation-free version.
+	 * @param ni network interface that needs to be connected
+	 * @param visitor The visitor to call for every near interface
+	 */
+	public void forEachNearInterface(NetworkInterface ni,
+			InterfaceVisitor visitor) {
+		for (NetworkInterface near : getNearInterfaces(ni)) {
+			visitor.visit(near);
+		}
+	}
+
+	/**
+	 * Calls the visitor for those of the candidate interfaces that
+	 * {@link #forEachNearInterface(NetworkInterface, InterfaceVisitor)}
+	 * would visit, in the same order. This implementation goes through all
+	 * the near interfaces; optimizers that can tell where an interface is
+	 * in the visiting order should override it with a version that only
+	 * looks at the candidates (see {@link #visitInOrder}).
+	 * @param ni network interface that needs to be connected
+	 * @param candidates The interfaces to visit (if they are near)
+	 * @param visitor The visitor to call for the near candidates
+	 */
+	public void forEachNearInterfaceOf(NetworkInterface ni,
+			List<NetworkInterface> candidates, final InterfaceVisitor visitor) {
+		int capacity = getAllInterfaces().size();
+		if (candidateMarks == null || candidateMarks.length < capacity) {
+			candidateMarks = new NetworkInterface[capacity];
+		}
+		final NetworkInterface[] marks = candidateMarks;
+		for (int i=0, n = candidates.size(); i < n; i++) {
+			NetworkInterface c = candidates.get(i);
+			if (c.getOptimizerIndex() >= 0 &&
+					c.getOptimizerIndex() < capacity) {
+				marks[c.getOptimizerIndex()] = c;
+			}
+		}
+
+		forEachNearInterface(ni, new InterfaceVisitor() {
+			public void visit(NetworkInterface near) {
+				int index = near.getOptimizerIndex();
+				if (index >= 0 && index < marks.length &&
+						marks[index] == near) {
+					visitor.visit(near);
+				}
+			}
+		});
+
+		for (int i=0, n = candidates.size(); i < n; i++) {
+			NetworkInterface c = candidates.get(i);
+			if (c.getOptimizerIndex() >= 0 &&
+					c.getOptimizerIndex() < capacity) {
+				marks[c.getOptimizerIndex()] = null;
+			}
+		}
+	}
+
+	/**
+	 * Returns an array for at least the given number of order keys
+	 * @param n The number of keys
+	 * @return The array (reused between the calls)
+	 */
+	protected long[] getOrderKeys(int n) {
+		if (orderKeys == null || orderKeys.length < n) {
+			orderKeys = new long[Math.max(n, 16)];
+		}
+		return orderKeys;
+	}
+
+	/**
+	 * Returns an order key of a candidate interface for
+	 * {@link #visitInOrder}
+	 * @param order The place of the candidate in the visiting order
+	 * (non-negative and less than 2^43)
+	 * @param candidate Index of the candidate in the candidate list (less
+	 * than {@link #MAX_ORDERED_CANDIDATES})
+	 * @return The order key
+	 */
+	protected static long orderKey(long order, int candidate) {
+		return (order << CANDIDATE_BITS) | candidate;
+	}
+
+	/**
+	 * Calls the visitor for the candidates in the order of their order keys
+	 * @param candidates The candidate interfaces
+	 * @param keys Order keys of the candidates to visit (sorted here)
+	 * @param nrofKeys Number of keys in the array
+	 * @param visitor The visitor
+	 */
+	protected void visitInOrder(List<NetworkInterface> candidates,
+			long[] keys, int nrofKeys, InterfaceVisitor visitor) {
+		Arrays.sort(keys, 0, nrofKeys);
+		for (int i=0; i < nrofKeys; i++) {
+			visitor.visit(candidates.get((int)(keys[i] &
+					(MAX_ORDERED_CANDIDATES - 1))));
+		}
+	}
+
+	/**
+	 * Calls the visitor for "half" of the network interfaces that might be
+	 * located so that they can be connected with the network interface:
+	 * when this is called for all the interfaces of the optimizer, every
+	 * pair of near interfaces is visited exactly once (from the side of one
+	 * of the interfaces). The network interface itself is never visited.
+	 * Requires that the locations of all interfaces are up to date in the
+	 * optimizer.
+	 * @param ni network interface that needs to be connected
+	 * @param visitor The visitor to call for every near interface
+	 */
+	abstract public void forEachHalfNearInterface(NetworkInterface ni,
+			InterfaceVisitor visitor);
+
 	/**
 	 * Finds all other interfaces that are registered to the
 	 * ConnectivityOptimizer
 	 */
 	abstract public Collection<NetworkInterface> getAllInterfaces();
+
+	/**
+	 * Updates a network interface's location in the search copy of this
+	 * optimizer. The search copy is a separate optimizer with the same
+	 * interfaces (and interface indexes) whose locations can be updated
+	 * without changing the state of this optimizer, so the near interfaces
+	 * this optimizer gives during the host updates stay the same.
+	 * @param ni The interface to update
+	 */
+	public void updateSearchLocation(NetworkInterface ni) {
+		if (searchCopy == null || searchCopy.getAllInterfaces().size() !=
+				getAllInterfaces().size()) {
+			/* adding in the index order keeps the indexes the same */
+			searchCopy = newCopy();
+			searchCopy.addInterfaces(new ArrayList<NetworkInterface>(
+					getAllInterfaces()));
+		}
+		searchCopy.updateLocation(ni);
+	}
+
+	/**
+	 * Like {@link #forEachHalfNearInterface(NetworkInterface,
+	 * InterfaceVisitor)}, but uses the locations of the search copy (see
+	 * {@link #updateSearchLocation(NetworkInterface)}). Requires that the
+	 * locations of all interfaces are up to date in the search copy.
+	 * @param ni network interface that needs to be connected
+	 * @param visitor The visitor to call for every near interface
+	 */
+	public void forEachSearchHalfNearInterface(NetworkInterface ni,
+			InterfaceVisitor visitor) {
+		searchCopy.forEachHalfNearInterface(ni, visitor);
+	}
+
+	/**
+	 * Discards the search copy (e.g., because an interface was removed)
+	 */
+	protected void clearSearchCopy() {
+		searchCopy = null;
+	}
+
+	/**
+	 * Visitor of network interfaces found by the optimizer. Visitors must not
+	 * add, remove or update the locations of interfaces in the optimizer.
+	 */
+	public interface InterfaceVisitor {
+		/**
+		 * Called for every visited interface
+		 * @param ni The interface
+		 */
+		public void visit(NetworkInterface ni);
+	}
 }
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package interfaces;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import core.Coord;
+import core.NetworkInterface;
+
+/**
+ * Superclass for connectivity optimizers that keep the interfaces in arrays
+ * indexed by the interfaces' optimizer indexes
+ * ({@link NetworkInterface#getOptimizerIndex()}). The locations of the
+ * interfaces are stored in the x and y coordinate arrays whenever the
+ * locations are updated. Near interfaces are the ones whose stored location
+ * is within the querying interface's transmit range in both x and y
+ * direction, so also interfaces with different ranges are handled exactly.
+ */
+public abstract class IndexedOptimizer extends ConnectivityOptimizer {
+	/** initial size of the arrays */
+	private static final int EXPECTED_INTERFACE_COUNT = 64;
+
+	/** the interfaces; indexed by their optimizer index */
+	protected ArrayList<NetworkInterface> ginterfaces;
+	/** stored x coordinates of the interfaces */
+	protected double[] xs;
+	/** stored y coordinates of the interfaces */
+	protected double[] ys;
+
+	/**
+	 * Constructor.
+	 */
+	protected IndexedOptimizer() {
+		this.ginterfaces = new ArrayList<NetworkInterface>();
+		this.xs = new double[EXPECTED_INTERFACE_COUNT];
+		this.ys = new double[EXPECTED_INTERFACE_COUNT];
+	}
+
+	/**
+	 * Called when a new interface has been added. The location of the
+	 * interface has been stored to the coordinate arrays.
+	 * @param index Index of the new interface
+	 */
+	protected abstract void interfaceAdded(int index);
+
+	/**
+	 * Called before an interface is removed. After this, the interface with
+	 * the largest index is moved to the removed interface's index (see
+	 * {@link #indexChanged(int, int)}).
+	 * @param index Index of the interface to be removed
+	 */
+	protected abstract void interfaceRemoved(int index);
+
+	/**
+	 * Called when the index of an interface has changed because of removal
+	 * of another interface
+	 * @param oldIndex The old index of the interface
+	 * @param newIndex The new index of the interface
+	 */
+	protected abstract void indexChanged(int oldIndex, int newIndex);
+
+	/**
+	 * Called when the stored location of an interface has been updated
+	 * @param index Index of the interface
+	 */
+	protected abstract void locationUpdated(int index);
+
+	/**
+	 * Returns the capacity of the coordinate arrays. Subclasses with other
+	 * indexed arrays should keep them (at least) this big.
+	 * @return the capacity of the coordinate arrays
+	 */
+	protected int getCapacity() {
+		return xs.length;
+	}
+
+	/**
+	 * Adds a network interface to the optimizer (unless it is already present)
+	 * @param ni The new network interface
+	 */
+	public void addInterface(NetworkInterface ni) {
+		if (contains(ni)) {
+			return;
+		}
+
+		int index = ginterfaces.size();
+		if (index == xs.length) {
+			xs = Arrays.copyOf(xs, index * 2);
+			ys = Arrays.copyOf(ys, index * 2);
+		}
+		Coord c = ni.getLocation();
+		xs[index] = c.getX();
+		ys[index] = c.getY();
+		ginterfaces.add(ni);
+		ni.setOptimizerIndex(index);
+		interfaceAdded(index);
+	}
+
+	/**
+	 * Adds a collection of network interfaces to the optimizer
+	 * @param interfaces Collection of interfaces to add
+	 */
+	public void addInterfaces(Collection<NetworkInterface> interfaces) {
+		for (NetworkInterface n : interfaces) {
+			addInterface(n);
+		}
+	}
+
+	/**
+	 * Removes a network interface from the optimizer
+	 * @param ni The interface to be removed
+	 */
+	public void removeInterface(NetworkInterface ni) {
+		if (!contains(ni)) {
+			return;
+		}
+
+		int index = ni.getOptimizerIndex();
+		interfaceRemoved(index);
+		ni.setOptimizerIndex(-1);
+		clearSearchCopy();
+
+		/* move the last interface to the freed index */
+		int last = ginterfaces.size() - 1;
+		NetworkInterface lastNi = ginterfaces.remove(last);
+		if (index != last) {
+			ginterfaces.set(index, lastNi);
+			xs[index] = xs[last];
+			ys[index] = ys[last];
+			lastNi.setOptimizerIndex(index);
+			indexChanged(last, index);
+		}
+	}
+
+	/**
+	 * Stores the current location of the network interface
+	 * @param ni The interface to update
+	 */
+	public void updateLocation(NetworkInterface ni) {
+		int index = ni.getOptimizerIndex();
+		Coord c = ni.getLocation();
+		xs[index] = c.getX();
+		ys[index] = c.getY();
+		locationUpdated(index);
+	}
+
+	/**
+	 * Returns true if the interface has been added to this optimizer
+	 * @param ni The interface
+	 * @return true if the interface has been added to this optimizer
+	 */
+	protected boolean contains(NetworkInterface ni) {
+		int index = ni.getOptimizerIndex();
+		return index >= 0 && index < ginterfaces.size() &&
+			ginterfaces.get(index) == ni;
+	}
+
+	/**
+	 * Returns all interfaces that use the same technology and channel
+	 */
+	public Collection<NetworkInterface> getAllInterfaces() {
+		return Collections.unmodifiableList(ginterfaces);
+	}
+
+	/**
+	 * Returns all interfaces whose stored location is within the transmit
+	 * range of the given interface (in both x and y direction)
+	 * @param ni The interface whose near interfaces are returned
+	 * @return List of near interfaces
+	 */
+	public Collection<NetworkInterface> getNearInterfaces(
+			NetworkInterface ni) {
+		final ArrayList<NetworkInterface> niList =
+			new ArrayList<NetworkInterface>();
+
+		forEachNearInterface(ni, new InterfaceVisitor() {
+			public void visit(NetworkInterface near) {
+				niList.add(near);
+			}
+		});
+
+		return niList;
+	}
+
+	/**
+	 * Returns a string representation of the optimizer
+	 * @return a string representation of the optimizer
+	 */
+	public String toString() {
+		return getClass().getSimpleName() + " with " + ginterfaces.size() +
+			" interfaces";
+	}
+}
@@ -4,7 +4,6 @@
  */
 package interfaces;
 
-import java.util.Collection;
 
 import core.Connection;
 import core.NetworkInterface;
@@ -98,10 +97,7 @@ public class InterferenceLimitedInterface extends NetworkInterface {
 			}
 		}
 		// Then find new possible connections
-		Collection<NetworkInterface> interfaces =
-			optimizer.getNearInterfaces(this);
-		for (NetworkInterface i : interfaces)
-			connect(i);
+		connectToNearInterfaces();
 
 		// Find the current number of transmissions
 		// (to calculate the current transmission speed
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package interfaces;
+
+import core.NetworkInterface;
+
+/**
+ * <P>
+ * K-d tree connectivity optimizer. The interfaces are stored in a balanced
+ * two dimensional k-d tree that is built from a snapshot of the interface
+ * locations. Instead of updating the tree on every move, the tree keeps
+ * track of the largest distance (in x or y direction) any interface has
+ * moved since the tree was built and widens the queries with that
+ * distance. The tree is rebuilt when the distance exceeds
+ * {@link #REBUILD_FACTOR} times the maximum range of the interfaces.</P>
+ * <P>
+ * Unlike the grid, the tree adapts to the density of the nodes, so it works
+ * also when most of the nodes are clustered on small areas of a large
+ * world.</P>
+ */
+public class KdTreeOptimizer extends IndexedOptimizer {
+	/** How many times the maximum range the interfaces may move before the
+	 * tree is rebuilt ({@value}) */
+	public static final double REBUILD_FACTOR = 0.5;
+
+	/** number of interfaces in the tree */
+	private int size;
+	/** interface indexes in the implicit tree order: the root of range
+	 * [lo, hi) is at the middle of the range */
+	private int[] tree;
+	/** x coordinates of the interfaces when the tree was built (by index) */
+	private double[] buildXs;
+	/** y coordinates of the interfaces when the tree was built (by index) */
+	private double[] buildYs;
+	/** x coordinates of the tree nodes when the tree was built (in the
+	 * tree order) */
+	private double[] nodeXs;
+	/** y coordinates of the tree nodes when the tree was built (in the
+	 * tree order) */
+	private double[] nodeYs;
+	/** maximum distance any interface has moved since the tree was built */
+	private double maxMoved;
+	/** maximum range of the interfaces using this optimizer */
+	private double maxRange;
+	/** the distance after which the tree is rebuilt */
+	private double rebuildDistance;
+	/** true if the tree needs to be rebuilt before querying it */
+	private boolean dirty;
+
+	/**
+	 * Constructor.
+	 * @param maxRange Maximum range of the interfaces using this optimizer
+	 */
+	public KdTreeOptimizer(double maxRange) {
+		this.size = 0;
+		this.tree = new int[getCapacity()];
+		this.buildXs = new double[getCapacity()];
+		this.buildYs = new double[getCapacity()];
+		this.nodeXs = new double[getCapacity()];
+		this.nodeYs = new double[getCapacity()];
+		this.maxRange = maxRange;
+		this.rebuildDistance = maxRange * REBUILD_FACTOR;
+		this.dirty = false;
+	}
+
+	@Override
+	protected ConnectivityOptimizer newCopy() {
+		return new KdTreeOptimizer(maxRange);
+	}
+
+	@Override
+	protected void interfaceAdded(int index) {
+		dirty = true;
+	}
+
+	@Override
+	protected void interfaceRemoved(int index) {
+		dirty = true;
+	}
+
+	/**
+	 * Rebuilds the tree since it refers to the old index of the interface
+	 */
+	@Override
+	protected void indexChanged(int oldIndex, int newIndex) {
+		rebuild();
+	}
+
+	@Override
+	protected void locationUpdated(int index) {
+		if (dirty) {
+			rebuild();
+			return;
+		}
+
+		double moved = Math.max(Math.abs(xs[index] - buildXs[index]),
+				Math.abs(ys[index] - buildYs[index]));
+		if (moved > maxMoved) {
+			maxMoved = moved;
+			if (maxMoved > rebuildDistance) {
+				rebuild();
+			}
+		}
+	}
+
+	/**
+	 * Rebuilds the tree using the current stored locations
+	 */
+	private void rebuild() {
+		size = ginterfaces.size();
+		if (tree.length < getCapacity()) {
+			tree = new int[getCapacity()];
+			buildXs = new double[getCapacity()];
+			buildYs = new double[getCapacity()];
+			nodeXs = new double[getCapacity()];
+			nodeYs = new double[getCapacity()];
+		}
+
+		for (int i = 0; i < size; i++) {
+			tree[i] = i;
+		}
+		System.arraycopy(xs, 0, buildXs, 0, size);
+		System.arraycopy(ys, 0, buildYs, 0, size);
+		build(0, size, true);
+		for (int i = 0; i < size; i++) {
+			nodeXs[i] = buildXs[tree[i]];
+			nodeYs[i] = buildYs[tree[i]];
+		}
+
+		maxMoved = 0;
+		dirty = false;
+	}
+
+	/**
+	 * Builds the subtree of the range [lo, hi) of the tree array
+	 * @param lo First index of the range
+	 * @param hi Index after the last index of the range
+	 * @param xAxis True if the range is split by x coordinate, false if by
+	 * y coordinate
+	 */
+	private void build(int lo, int hi, boolean xAxis) {
+		if (hi - lo <= 1) {
+			return;
+		}
+		int mid = (lo + hi) >>> 1;
+		select(lo, hi, mid, xAxis ? buildXs : buildYs);
+		build(lo, mid, !xAxis);
+		build(mid + 1, hi, !xAxis);
+	}
+
+	/**
+	 * Partially sorts the range [lo, hi) of the tree array so that the
+	 * interface at position k has the k:th smallest coordinate, the ones
+	 * before it have smaller or equal coordinates, and the ones after it
+	 * larger or equal coordinates.
+	 */
+	private void select(int lo, int hi, int k, double[] coords) {
+		hi--;
+		while (hi > lo) {
+			double pivot = coords[tree[(lo + hi) >>> 1]];
+			int i = lo;
+			int j = hi;
+			while (i <= j) {
+				while (coords[tree[i]] < pivot) {
+					i++;
+				}
+				while (coords[tree[j]] > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					int tmp = tree[i];
+					tree[i] = tree[j];
+					tree[j] = tmp;
+					i++;
+					j--;
+				}
+			}
+			if (k <= j) {
+				hi = j;
+			} else if (k >= i) {
+				lo = i;
+			} else {
+				return;
+			}
+		}
+	}
+
+	@Override
+	public void forEachNearInterface(NetworkInterface ni,
+			InterfaceVisitor visitor) {
+		query(ni, false, visitor);
+	}
+
+	/**
+	 * Visits the near interfaces with larger optimizer index than the given
+	 * interface has.
+	 */
+	@Override
+	public void forEachHalfNearInterface(NetworkInterface ni,
+			InterfaceVisitor visitor) {
+		query(ni, true, visitor);
+	}
+
+	/**
+	 * Visits the interfaces whose stored location is within the transmit
+	 * range of the given interface in both x and y direction. If an
+	 * interface has been added or removed after the last location update,
+	 * the tree is rebuilt first (this must not happen while the tree is
+	 * queried concurrently).
+	 * @param ni The interface whose neighbors are visited
+	 * @param half If true, only interfaces with larger index are visited
+	 * @param visitor The visitor
+	 */
+	private void query(NetworkInterface ni, boolean half,
+			InterfaceVisitor visitor) {
+		if (!contains(ni)) {
+			return;
+		}
+		if (dirty) {
+			rebuild();
+		}
+
+		int index = ni.getOptimizerIndex();
+		double range = ni.getTransmitRange();
+		visit(0, size, true, index, half, xs[index], ys[index], range,
+				range + maxMoved, visitor);
+	}
+
+	/**
+	 * Visits the near interfaces in the subtree of range [lo, hi)
+	 * @param lo First index of the range
+	 * @param hi Index after the last index of the range
+	 * @param xAxis True if the range is split by x coordinate
+	 * @param index Index of the interface whose neighbors are visited
+	 * @param half If true, only interfaces with larger index are visited
+	 * @param x The x coordinate of the interface
+	 * @param y The y coordinate of the interface
+	 * @param range The range of the interface
+	 * @param treeRange The range widened with the maximum moved distance
+	 * @param visitor The visitor
+	 */
+	private void visit(int lo, int hi, boolean xAxis, int index, boolean half,
+			double x, double y, double range, double treeRange,
+			InterfaceVisitor visitor) {
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			double nodeX = nodeXs[mid];
+			double nodeY = nodeYs[mid];
+
+			/* the current location can't be in range if the build time
+			 * location isn't within the widened range */
+			if (Math.abs(nodeX - x) <= treeRange &&
+					Math.abs(nodeY - y) <= treeRange) {
+				int other = tree[mid];
+				if (other != index && (!half || other > index) &&
+						Math.abs(xs[other] - x) <= range &&
+						Math.abs(ys[other] - y) <= range) {
+					visitor.visit(ginterfaces.get(other));
+				}
+			}
+
+			double split = xAxis ? nodeX : nodeY;
+			double coord = xAxis ? x : y;
+			boolean left = coord - treeRange <= split;
+			boolean right = coord + treeRange >= split;
+
+			if (left && right) {
+				visit(lo, mid, !xAxis, index, half, x, y, range, treeRange,
+						visitor);
+				lo = mid + 1;
+			} else if (left) {
+				hi = mid;
+			} else {
+				lo = mid + 1;
+			}
+			xAxis = !xAxis;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return super.toString() + " (rebuild distance " + rebuildDistance +
+			")";
+	}
+}
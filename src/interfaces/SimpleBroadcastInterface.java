@@ -4,7 +4,6 @@
  */
 package interfaces;
 
-import java.util.Collection;
 
 import core.CBRConnection;
 import core.Connection;
@@ -87,11 +86,7 @@ public class SimpleBroadcastInterface extends NetworkInterface {
 			}
 		}
 		// Then find new possible connections
-		Collection<NetworkInterface> interfaces =
-			optimizer.getNearInterfaces(this);
-		for (NetworkInterface i : interfaces) {
-			connect(i);
-		}
+		connectToNearInterfaces();
 	}
 
 	/**
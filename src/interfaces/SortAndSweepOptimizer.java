@@ -0,0 +1,214 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package interfaces;
+
+import java.util.Arrays;
+import java.util.List;
+
+import core.NetworkInterface;
+
+/**
+ * <P>
+ * Sort-and-sweep connectivity optimizer. The interfaces are kept sorted by
+ * their x coordinate and near interfaces are found by sweeping the sorted
+ * array to both directions until the x distance exceeds the transmit range.
+ * Since the nodes move only a little between updates, the order is restored
+ * with insertion sort moves when a location is updated; this is (nearly)
+ * constant time per update.</P>
+ * <P>
+ * Works well when the nodes are spread on the x axis; if many nodes have
+ * (nearly) the same x coordinate, {@link KdTreeOptimizer} is a better
+ * choice.</P>
+ */
+public class SortAndSweepOptimizer extends IndexedOptimizer {
+	/** number of interfaces in the sorted array */
+	private int size;
+	/** interface indexes sorted by their x coordinate */
+	private int[] sorted;
+	/** x coordinates of the interfaces in the sorted order */
+	private double[] sortedX;
+	/** positions of the interfaces in the sorted array (by index) */
+	private int[] positions;
+
+	/**
+	 * Constructor.
+	 */
+	public SortAndSweepOptimizer() {
+		this.size = 0;
+		this.sorted = new int[getCapacity()];
+		this.sortedX = new double[getCapacity()];
+		this.positions = new int[getCapacity()];
+	}
+
+	@Override
+	protected ConnectivityOptimizer newCopy() {
+		return new SortAndSweepOptimizer();
+	}
+
+	@Override
+	protected void interfaceAdded(int index) {
+		if (size == sorted.length) {
+			int capacity = getCapacity();
+			sorted = Arrays.copyOf(sorted, capacity);
+			sortedX = Arrays.copyOf(sortedX, capacity);
+			positions = Arrays.copyOf(positions, capacity);
+		}
+		sorted[size] = index;
+		sortedX[size] = xs[index];
+		positions[index] = size;
+		size++;
+		locationUpdated(index);
+	}
+
+	@Override
+	protected void interfaceRemoved(int index) {
+		int pos = positions[index];
+		System.arraycopy(sorted, pos + 1, sorted, pos, size - pos - 1);
+		System.arraycopy(sortedX, pos + 1, sortedX, pos, size - pos - 1);
+		size--;
+		for (int i = pos; i < size; i++) {
+			positions[sorted[i]] = i;
+		}
+	}
+
+	@Override
+	protected void indexChanged(int oldIndex, int newIndex) {
+		int pos = positions[oldIndex];
+		sorted[pos] = newIndex;
+		positions[newIndex] = pos;
+	}
+
+	/**
+	 * Moves the interface to its place in the sorted array. Interfaces with
+	 * equal x coordinates keep their relative order.
+	 */
+	@Override
+	protected void locationUpdated(int index) {
+		int pos = positions[index];
+		double x = xs[index];
+
+		while (pos > 0 && sortedX[pos - 1] > x) {
+			sorted[pos] = sorted[pos - 1];
+			sortedX[pos] = sortedX[pos - 1];
+			positions[sorted[pos]] = pos;
+			pos--;
+		}
+		while (pos < size - 1 && sortedX[pos + 1] < x) {
+			sorted[pos] = sorted[pos + 1];
+			sortedX[pos] = sortedX[pos + 1];
+			positions[sorted[pos]] = pos;
+			pos++;
+		}
+
+		sorted[pos] = index;
+		sortedX[pos] = x;
+		positions[index] = pos;
+	}
+
+	/**
+	 * Calls the visitor for all the interfaces whose stored location is
+	 * within the transmit range of the given interface in both x and y
+	 * direction. The interfaces are visited in the order of their x
+	 * coordinate.
+	 */
+	@Override
+	public void forEachNearInterface(NetworkInterface ni,
+			InterfaceVisitor visitor) {
+		if (!contains(ni)) {
+			return;
+		}
+
+		int index = ni.getOptimizerIndex();
+		int pos = positions[index];
+		double range = ni.getTransmitRange();
+		double x = xs[index];
+
+		int first = pos;
+		while (first > 0 && x - sortedX[first - 1] <= range) {
+			first--;
+		}
+		sweep(index, first, range, visitor);
+	}
+
+	/**
+	 * Visits the candidates that
+	 * {@link #forEachNearInterface(NetworkInterface, InterfaceVisitor)}
+	 * would visit in the order of their x coordinate. Only the candidates
+	 * are looked at.
+	 */
+	@Override
+	public void forEachNearInterfaceOf(NetworkInterface ni,
+			List<NetworkInterface> candidates, InterfaceVisitor visitor) {
+		int n = candidates.size();
+		if (n >= MAX_ORDERED_CANDIDATES) {
+			super.forEachNearInterfaceOf(ni, candidates, visitor);
+			return;
+		}
+		if (!contains(ni)) {
+			return;
+		}
+
+		int index = ni.getOptimizerIndex();
+		int pos = positions[index];
+		double range = ni.getTransmitRange();
+		double x = xs[index];
+		double y = ys[index];
+
+		long[] keys = getOrderKeys(n);
+		int nrofKeys = 0;
+		for (int i=0; i < n; i++) {
+			NetworkInterface candidate = candidates.get(i);
+			if (!contains(candidate)) {
+				continue;
+			}
+			int other = candidate.getOptimizerIndex();
+			int otherPos = positions[other];
+			/* the same checks as the sweeps to both directions do; they
+			 * can't stop before an interface that passes the check */
+			boolean inX = otherPos < pos ? x - sortedX[otherPos] <= range :
+				sortedX[otherPos] - x <= range;
+			if (other != index && inX && Math.abs(ys[other] - y) <= range) {
+				keys[nrofKeys++] = orderKey(otherPos, i);
+			}
+		}
+		visitInOrder(candidates, keys, nrofKeys, visitor);
+	}
+
+	/**
+	 * Calls the visitor for the interfaces that are after the given interface
+	 * in the sorted order and within its transmit range.
+	 */
+	@Override
+	public void forEachHalfNearInterface(NetworkInterface ni,
+			InterfaceVisitor visitor) {
+		if (!contains(ni)) {
+			return;
+		}
+
+		int index = ni.getOptimizerIndex();
+		sweep(index, positions[index] + 1, ni.getTransmitRange(), visitor);
+	}
+
+	/**
+	 * Visits the interfaces within the range of an interface starting from
+	 * the given position in the sorted array
+	 * @param index Index of the interface whose neighbors are visited
+	 * @param from The position where to start
+	 * @param range The range to use
+	 * @param visitor The visitor
+	 */
+	private void sweep(int index, int from, double range,
+			InterfaceVisitor visitor) {
+		double x = xs[index];
+		double y = ys[index];
+
+		for (int i = from; i < size && sortedX[i] - x <= range; i++) {
+			int other = sorted[i];
+			if (other != index && Math.abs(ys[other] - y) <= range) {
+				visitor.visit(ginterfaces.get(other));
+			}
+		}
+	}
+}
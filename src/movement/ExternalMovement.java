@@ -29,6 +29,10 @@ public class ExternalMovement extends MovementModel {
 	public static final String MOVEMENT_FILE_S = "file";
 	/** number of preloaded intervals per preload run -setting id ({@value})*/
 	public static final String NROF_PRELOAD_S = "nrofPreload";
+	/** read the locations in a background thread -setting id ({@value}).
+	 * Boolean. If true, the following time intervals are read while the
+	 * previous ones are being used. Default is false. */
+	public static final String READ_AHEAD_S = "readAhead";
 
 	/** default initial location for excess nodes */
 	private static final Coord DEF_INIT_LOC = new Coord(0,0);
@@ -96,6 +100,9 @@ public class ExternalMovement extends MovementModel {
 					nrofPreload = 1;
 				}
 			}
+			if (s.getBoolean(READ_AHEAD_S, false)) {
+				reader.setReadAhead((int)nrofPreload);
+			}
 		}
 	}
 
@@ -271,6 +278,9 @@ public class ExternalMovement extends MovementModel {
 	 * Reset state so that next instance will have a fresh state
 	 */
 	public static void reset() {
+		if (idMapping != null && reader != null) {
+			reader.close();
+		}
 		idMapping = null;
 	}
 
@@ -5,6 +5,7 @@
 package movement;
 
 import java.util.Random;
+import java.util.SplittableRandom;
 
 import util.ActivenessHandler;
 
@@ -44,9 +45,26 @@ public abstract class MovementModel {
 	public static final String WORLD_SIZE = "worldSize";
 	/** movement models' rng seed -setting id ({@value})*/
 	public static final String RNG_SEED = "rngSeed";
+	/**
+	 * Per-host random number generators -setting id ({@value}). Boolean.
+	 * If true, every movement model instance (i.e., every host) gets its
+	 * own random number generator stream so that the movement of a host
+	 * doesn't depend on the movement of the other hosts or the order in which
+	 * hosts are moved. The streams are derived from the {@link #RNG_SEED}
+	 * and the order in which the movement models are replicated for the
+	 * hosts, so they are the same in every run with the same settings.
+	 * Default is false (all movement models share one generator).
+	 */
+	public static final String PER_HOST_RNG_S = "perHostRng";
 
 	/** common rng for all movement models in the simulation */
-	protected static Random rng;
+	private static Random sharedRng;
+	/** source of per-host rng seeds (null if per-host rngs are not used) */
+	private static SplittableRandom hostRngSeeds;
+
+	/** rng of this movement model; the common rng unless per-host rngs are
+	 * used */
+	protected Random rng;
 
 	/** DTNHost to which this movement model is attached */
 	protected DTNHost host;
@@ -93,6 +111,7 @@ public abstract class MovementModel {
 	 */
 	public MovementModel() {
 		super();
+		this.rng = sharedRng;
 	}
 
 	/**
@@ -103,6 +122,7 @@ public abstract class MovementModel {
 		double[] speeds;
 		double[] times;
 
+		this.rng = sharedRng;
 		ah = new ActivenessHandler(settings);
 
 		if (settings.contains(SPEED)) {
@@ -141,6 +161,7 @@ public abstract class MovementModel {
 	 * @param mm The MovementModel prototype to base the new object to
 	 */
 	public MovementModel(MovementModel mm) {
+		this.rng = newInstanceRng();
 		this.maxSpeed = mm.maxSpeed;
 		this.minSpeed = mm.minSpeed;
 		this.maxWaitTime = mm.maxWaitTime;
@@ -271,17 +292,35 @@ public abstract class MovementModel {
 	 */
 	public abstract MovementModel replicate();
 
+	/**
+	 * Returns a random number generator for a new movement model instance:
+	 * a new generator with the next per-host seed if per-host rngs are used
+	 * or the common generator if not.
+	 * @return A random number generator for a new instance
+	 */
+	private static Random newInstanceRng() {
+		if (hostRngSeeds == null) {
+			return sharedRng;
+		}
+		return new Random(hostRngSeeds.nextLong());
+	}
+
 	/**
 	 * Resets all static fields to default values
 	 */
 	public static void reset() {
 		Settings s = new Settings(MOVEMENT_MODEL_NS);
+		int seed = 0;
 		if (s.contains(RNG_SEED)) {
-			int seed = s.getInt(RNG_SEED);
-			rng = new Random(seed);
+			seed = s.getInt(RNG_SEED);
+		}
+		sharedRng = new Random(seed);
+
+		if (s.getBoolean(PER_HOST_RNG_S, false)) {
+			hostRngSeeds = new SplittableRandom(seed);
 		}
 		else {
-			rng = new Random(0);
+			hostRngSeeds = null;
 		}
 	}
 
@@ -160,7 +160,8 @@ public class OfficeActivityMovement extends MapBasedMovement implements
 		officeMaxWaitTime = proto.officeMaxWaitTime;
 
 		deskLocation = getRandomCoorinateInsideOffice();
-		this.paretoRNG = proto.paretoRNG;
+		paretoRNG = new ParetoRNG(rng, officeWaitTimeParetoCoeff,
+				officeMinWaitTime, officeMaxWaitTime);
 	}
 
 	public Coord getRandomCoorinateInsideOffice() {
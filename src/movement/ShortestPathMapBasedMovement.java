@@ -42,7 +42,7 @@ public class ShortestPathMapBasedMovement extends MapBasedMovement implements
 	protected ShortestPathMapBasedMovement(ShortestPathMapBasedMovement mbm) {
 		super(mbm);
 		this.pathFinder = mbm.pathFinder;
-		this.pois = mbm.pois;
+		this.pois = new PointsOfInterest(mbm.pois, rng);
 	}
 
 	@Override
@@ -67,6 +67,20 @@ public class PointsOfInterest {
 		readPois(settings);
 	}
 
+	/**
+	 * Copy constructor. The new object shares the POIs of the original but
+	 * uses its own random number generator.
+	 * @param pois The object whose POIs are shared
+	 * @param rng The random number generator to use
+	 */
+	public PointsOfInterest(PointsOfInterest pois, Random rng) {
+		this.poiLists = pois.poiLists;
+		this.poiProbs = pois.poiProbs;
+		this.map = pois.map;
+		this.okMapNodeTypes = pois.okMapNodeTypes;
+		this.rng = rng;
+	}
+
 	/**
 	 * Selects a random destination from POIs or all MapNodes. Selecting among
 	 * POI groups is done by their probabilities. If sum of their probabilities
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package report;
+
+import java.io.IOException;
+
+import core.ConnectionListener;
+import core.DTNHost;
+import core.Message;
+import core.MessageListener;
+import core.SimError;
+import input.BinaryEventsReader;
+import input.BinaryEventsWriter;
+import input.ConnectionEvent;
+import input.ExternalEvent;
+import input.MessageCreateEvent;
+import input.MessageDeleteEvent;
+import input.MessageRelayEvent;
+
+/**
+ * Report that logs the same events as {@link EventLogReport} but in the
+ * binary external events format (see {@link BinaryEventsReader}). The
+ * output file gets the binary extension
+ * {@value input.BinaryEventsReader#BINARY_EXT} instead of the normal suffix
+ * and it can be used as an external events file or converted to text with
+ * {@link input.EventsConverter}. Unlike in the text log, message delivery
+ * events don't tell whether the message reached its final destination.
+ * Intervalled output is not supported.
+ */
+public class BinaryEventLogReport extends Report
+	implements ConnectionListener, MessageListener {
+
+	private BinaryEventsWriter writer;
+
+	/**
+	 * Writes an event to the binary log
+	 * @param ee The event
+	 */
+	private void log(ExternalEvent ee) {
+		if (writer == null) {
+			createWriter();
+		}
+		try {
+			writer.write(ee);
+		} catch (IOException e) {
+			throw new SimError("Couldn't write binary event log\n" +
+					e.getMessage(), e);
+		}
+	}
+
+	private void createWriter() {
+		String fileName = getOutFileName();
+		if (fileName.endsWith(OUT_SUFFIX)) {
+			fileName = fileName.substring(0,
+					fileName.length() - OUT_SUFFIX.length());
+		}
+		fileName += BinaryEventsReader.BINARY_EXT;
+
+		try {
+			writer = new BinaryEventsWriter(fileName);
+		} catch (IOException e) {
+			throw new SimError("Couldn't open file '" + fileName +
+					"' for report output\n" + e.getMessage(), e);
+		}
+	}
+
+	public void hostsConnected(DTNHost host1, DTNHost host2) {
+		log(new ConnectionEvent(host1.getAddress(), host2.getAddress(),
+				null, true, getSimTime()));
+	}
+
+	public void hostsDisconnected(DTNHost host1, DTNHost host2) {
+		log(new ConnectionEvent(host1.getAddress(), host2.getAddress(),
+				null, false, getSimTime()));
+	}
+
+	public void messageDeleted(Message m, DTNHost where, boolean dropped) {
+		log(new MessageDeleteEvent(where.getAddress(), m.getId(),
+				getSimTime(), dropped));
+	}
+
+	public void messageTransferred(Message m, DTNHost from, DTNHost to,
+			boolean firstDelivery) {
+		log(new MessageRelayEvent(from.getAddress(), to.getAddress(),
+				m.getId(), getSimTime(), MessageRelayEvent.TRANSFERRED));
+	}
+
+	public void newMessage(Message m) {
+		log(new MessageCreateEvent(m.getFrom().getAddress(),
+				m.getTo().getAddress(), m.getId(), m.getSize(),
+				m.getResponseSize(), getSimTime()));
+	}
+
+	public void messageTransferAborted(Message m, DTNHost from, DTNHost to) {
+		log(new MessageRelayEvent(from.getAddress(), to.getAddress(),
+				m.getId(), getSimTime(), MessageRelayEvent.ABORTED));
+	}
+
+	public void messageTransferStarted(Message m, DTNHost from, DTNHost to) {
+		log(new MessageRelayEvent(from.getAddress(), to.getAddress(),
+				m.getId(), getSimTime(), MessageRelayEvent.SENDING));
+	}
+
+	@Override
+	public void done() {
+		if (writer == null) {
+			createWriter(); // empty log
+		}
+		try {
+			writer.close();
+		} catch (IOException e) {
+			throw new SimError("Couldn't write binary event log\n" +
+					e.getMessage(), e);
+		}
+		super.done();
+	}
+}
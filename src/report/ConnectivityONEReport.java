@@ -4,6 +4,8 @@
  */
 package report;
 
+import java.util.Formatter;
+
 import core.ConnectionListener;
 import core.DTNHost;
 
@@ -27,7 +29,7 @@ public class ConnectivityONEReport extends Report
 			return;
 		}
 		newEvent();
-		write(createTimeStamp() + " CONN " + connectionString(h1, h2) + " up");
+		write(new ConnectionRecord(getSimTime(), h1, h2, true));
 	}
 
 	public void hostsDisconnected(DTNHost h1, DTNHost h2) {
@@ -38,16 +40,7 @@ public class ConnectivityONEReport extends Report
 			return;
 		}
 
-		write(createTimeStamp() + " CONN " + conString + " down");
-	}
-
-	/**
-	 * Creates and returns a "@" prefixed time stamp of the current simulation
-	 * time
-	 * @return time stamp of the current simulation time
-	 */
-	private String createTimeStamp() {
-		return String.format("%.2f", getSimTime());
+		write(new ConnectionRecord(getSimTime(), h1, h2, false));
 	}
 
 	/**
@@ -66,4 +59,30 @@ public class ConnectivityONEReport extends Report
 		}
 	}
 
+	/**
+	 * A connection up or down line. The line is formatted in the report
+	 * writer's thread.
+	 */
+	private static class ConnectionRecord implements ReportRecord {
+		private double time;
+		/** address of the node with the lower address */
+		private int address1;
+		private int address2;
+		private boolean up;
+
+		public ConnectionRecord(double time, DTNHost h1, DTNHost h2,
+				boolean up) {
+			this.time = time;
+			this.address1 = Math.min(h1.getAddress(), h2.getAddress());
+			this.address2 = Math.max(h1.getAddress(), h2.getAddress());
+			this.up = up;
+		}
+
+		public void appendTo(StringBuilder line, Formatter formatter) {
+			formatter.format("%.2f", time);
+			line.append(" CONN ").append(address1).append(' ').
+				append(address2).append(up ? " up" : " down");
+		}
+	}
+
 }
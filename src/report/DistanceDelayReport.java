@@ -6,7 +6,6 @@ package report;
 
 import java.util.HashMap;
 
-import core.Coord;
 import core.DTNHost;
 import core.Message;
 import core.MessageListener;
@@ -51,7 +50,7 @@ public class DistanceDelayReport extends Report implements MessageListener {
 			return; /* message was created before the warm up period */
 		}
 
-		report(m.getId(), info.getLoc1().distance(info.getLoc2()),
+		report(m.getId(), info.getDistance(),
 				getSimTime() - info.getTime(), m.getHops().size()-1);
 	}
 
@@ -66,8 +65,8 @@ public class DistanceDelayReport extends Report implements MessageListener {
 
 		this.creationInfos.put( m.getId(),
 				new InfoTuple(getSimTime(),
-						m.getFrom().getLocation().clone(),
-						m.getTo().getLocation().clone()) );
+						m.getFrom().getLocation().distance(
+								m.getTo().getLocation())) );
 	}
 
 	/**
@@ -100,32 +99,27 @@ public class DistanceDelayReport extends Report implements MessageListener {
 		// report rest of the messages as 'not delivered' (time == -1)
 		for (String id : creationInfos.keySet()) {
 			InfoTuple info = creationInfos.get(id);
-			report(id, info.getLoc1().distance(info.getLoc2()), -1, -1);
+			report(id, info.getDistance(), -1, -1);
 		}
 
 		super.done();
 	}
 
 	/**
-	 * Private class that encapsulates time and location related information
+	 * Private class that encapsulates the creation time and the distance of
+	 * the nodes at the creation time
 	 */
-	private class InfoTuple {
+	private static class InfoTuple {
 		private double time;
-		private Coord loc1;
-		private Coord loc2;
+		private double distance;
 
-		public InfoTuple(double time, Coord loc1, Coord loc2) {
+		public InfoTuple(double time, double distance) {
 			this.time = time;
-			this.loc1 = loc1;
-			this.loc2 = loc2;
+			this.distance = distance;
 		}
 
-		public Coord getLoc1() {
-			return loc1;
-		}
-
-		public Coord getLoc2() {
-			return loc2;
+		public double getDistance() {
+			return distance;
 		}
 
 		public double getTime() {
@@ -4,6 +4,8 @@
  */
 package report;
 
+import java.util.Formatter;
+
 import core.ConnectionListener;
 import core.DTNHost;
 import core.Message;
@@ -37,10 +39,49 @@ public class EventLogReport extends Report
 	 */
 	private void processEvent(final String action, final DTNHost host1,
 			final DTNHost host2, final Message message, final String extra) {
-		write(getSimTime() + " " + action + " " + (host1 != null ? host1 : "")
-				+ (host2 != null ? (" " + host2) : "")
-				+ (message != null ? " " + message : "")
-				+ (extra != null ? " " + extra : ""));
+		write(new EventRecord(getSimTime(), action,
+				host1 != null ? host1.toString() : null,
+				host2 != null ? host2.toString() : null,
+				message != null ? message.getId() : null, extra));
+	}
+
+	/**
+	 * A line of the event log. The line is formatted in the report writer's
+	 * thread.
+	 */
+	private static class EventRecord implements ReportRecord {
+		private double time;
+		private String action;
+		private String host1;
+		private String host2;
+		private String messageId;
+		private String extra;
+
+		public EventRecord(double time, String action, String host1,
+				String host2, String messageId, String extra) {
+			this.time = time;
+			this.action = action;
+			this.host1 = host1;
+			this.host2 = host2;
+			this.messageId = messageId;
+			this.extra = extra;
+		}
+
+		public void appendTo(StringBuilder line, Formatter formatter) {
+			line.append(time).append(' ').append(action).append(' ');
+			if (host1 != null) {
+				line.append(host1);
+			}
+			if (host2 != null) {
+				line.append(' ').append(host2);
+			}
+			if (messageId != null) {
+				line.append(' ').append(messageId);
+			}
+			if (extra != null) {
+				line.append(' ').append(extra);
+			}
+		}
 	}
 
 	public void hostsConnected(DTNHost host1, DTNHost host2) {
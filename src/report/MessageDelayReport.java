@@ -4,23 +4,23 @@
  */
 package report;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import core.DTNHost;
 import core.Message;
 import core.MessageListener;
+import util.StreamingStatistics;
 
 /**
  * Reports delivered messages' delays (one line per delivered message)
  * and cumulative delivery probability sorted by message delays.
  * Ignores the messages that were created during the warm up period.
+ * If the {@link Report#PERCENTILE_DIGITS_S} setting is used, the delays are
+ * rounded to that precision and there is one line per distinct delay.
  */
 public class MessageDelayReport extends Report implements MessageListener {
 	public static final String HEADER =
 	    "# messageDelay  cumulativeProbability";
 	/** all message delays */
-	private List<Double> delays;
+	private StreamingStatistics delays;
 	private int nrofCreated;
 
 	/**
@@ -34,7 +34,7 @@ public class MessageDelayReport extends Report implements MessageListener {
 	public void init() {
 		super.init();
 		write(HEADER);
-		this.delays = new ArrayList<Double>();
+		this.delays = newStatistics();
 		this.nrofCreated = 0;
 	}
 
@@ -57,19 +57,22 @@ public class MessageDelayReport extends Report implements MessageListener {
 
 	@Override
 	public void done() {
-		if (delays.size() == 0) {
+		if (delays.getCount() == 0) {
 			write("# no messages delivered in sim time "+format(getSimTime()));
 			super.done();
 			return;
 		}
-		double cumProb = 0; // cumulative probability
 
-		java.util.Collections.sort(delays);
+		delays.forEachValue(new StreamingStatistics.ValueVisitor() {
+			private double cumProb = 0; // cumulative probability
 
-		for (int i=0; i < delays.size(); i++) {
-			cumProb += 1.0/nrofCreated;
-			write(format(delays.get(i)) + " " + format(cumProb));
-		}
+			public void visit(double delay, long count) {
+				for (long i = 0; i < count; i++) {
+					cumProb += 1.0/nrofCreated;
+				}
+				write(format(delay) + " " + format(cumProb));
+			}
+		});
 		super.done();
 	}
 
@@ -4,6 +4,8 @@
  */
 package report;
 
+import java.util.Formatter;
+
 import core.DTNHost;
 import core.Message;
 import core.MessageListener;
@@ -36,14 +38,10 @@ public class MessageReport extends Report implements MessageListener {
 	public void messageTransferred(Message m, DTNHost from, DTNHost to,
 			boolean firstDelivery) {
 		if (firstDelivery) {
-			write(m.getId() + " "
-					+ format(m.getCreationTime()) + " "
-					+ format(getSimTime()));
+			write(new DeliveryRecord(getDoubleFormat(), m, getSimTime(), false));
 		} else {
 			if (to.getAddress() == m.getTo().getAddress()) {
-				write(m.getId() + " "
-						+ format(m.getCreationTime()) + " "
-						+ format(getSimTime()) + " duplicate");
+				write(new DeliveryRecord(getDoubleFormat(), m, getSimTime(), true));
 			}
 		}
 	}
@@ -53,6 +51,37 @@ public class MessageReport extends Report implements MessageListener {
 		super.done();
 	}
 
+	/**
+	 * A message delivery line. The line is formatted in the report writer's
+	 * thread.
+	 */
+	private static class DeliveryRecord implements ReportRecord {
+		private String format;
+		private String id;
+		private double creationTime;
+		private double deliveryTime;
+		private boolean duplicate;
+
+		public DeliveryRecord(String format, Message m, double deliveryTime,
+				boolean duplicate) {
+			this.format = format;
+			this.id = m.getId();
+			this.creationTime = m.getCreationTime();
+			this.deliveryTime = deliveryTime;
+			this.duplicate = duplicate;
+		}
+
+		public void appendTo(StringBuilder line, Formatter formatter) {
+			line.append(id).append(' ');
+			formatter.format(format, creationTime);
+			line.append(' ');
+			formatter.format(format, deliveryTime);
+			if (duplicate) {
+				line.append(" duplicate");
+			}
+		}
+	}
+
 	// nothing to implement for the rest
 	public void messageDeleted(Message m, DTNHost where, boolean dropped) {}
 	public void messageTransferAborted(Message m, DTNHost from, DTNHost to) {}
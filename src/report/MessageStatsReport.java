@@ -4,14 +4,10 @@
  */
 package report;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
 import core.DTNHost;
 import core.Message;
 import core.MessageListener;
+import util.StreamingStatistics;
 
 /**
  * Report for generating different kind of total statistics about message
@@ -22,11 +18,10 @@ import core.MessageListener;
  * double values and zero for integer median(s).
  */
 public class MessageStatsReport extends Report implements MessageListener {
-	private Map<String, Double> creationTimes;
-	private List<Double> latencies;
-	private List<Integer> hopCounts;
-	private List<Double> msgBufferTime;
-	private List<Double> rtt; // round trip times
+	private StreamingStatistics latencies;
+	private StreamingStatistics hopCounts;
+	private StreamingStatistics msgBufferTime;
+	private StreamingStatistics rtt; // round trip times
 
 	private int nrofDropped;
 	private int nrofRemoved;
@@ -48,11 +43,10 @@ public class MessageStatsReport extends Report implements MessageListener {
 	@Override
 	protected void init() {
 		super.init();
-		this.creationTimes = new HashMap<String, Double>();
-		this.latencies = new ArrayList<Double>();
-		this.msgBufferTime = new ArrayList<Double>();
-		this.hopCounts = new ArrayList<Integer>();
-		this.rtt = new ArrayList<Double>();
+		this.latencies = newStatistics();
+		this.msgBufferTime = newStatistics();
+		this.hopCounts = newStatistics();
+		this.rtt = newStatistics();
 
 		this.nrofDropped = 0;
 		this.nrofRemoved = 0;
@@ -99,8 +93,7 @@ public class MessageStatsReport extends Report implements MessageListener {
 
 		this.nrofRelayed++;
 		if (finalTarget) {
-			this.latencies.add(getSimTime() -
-				this.creationTimes.get(m.getId()) );
+			this.latencies.add(getSimTime() - m.getCreationTime());
 			this.nrofDelivered++;
 			this.hopCounts.add(m.getHops().size() - 1);
 
@@ -118,7 +111,6 @@ public class MessageStatsReport extends Report implements MessageListener {
 			return;
 		}
 
-		this.creationTimes.put(m.getId(), getSimTime());
 		this.nrofCreated++;
 		if (m.getResponseSize() > 0) {
 			this.nrofResponseReqCreated++;
@@ -167,7 +159,7 @@ public class MessageStatsReport extends Report implements MessageListener {
 			"\noverhead_ratio: " + format(overHead) +
 			"\nlatency_avg: " + getAverage(this.latencies) +
 			"\nlatency_med: " + getMedian(this.latencies) +
-			"\nhopcount_avg: " + getIntAverage(this.hopCounts) +
+			"\nhopcount_avg: " + getAverage(this.hopCounts) +
 			"\nhopcount_med: " + getIntMedian(this.hopCounts) +
 			"\nbuffertime_avg: " + getAverage(this.msgBufferTime) +
 			"\nbuffertime_med: " + getMedian(this.msgBufferTime) +
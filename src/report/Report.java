@@ -5,9 +5,7 @@
 package report;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
@@ -18,6 +16,7 @@ import core.Settings;
 import core.SimClock;
 import core.SimError;
 import core.SimScenario;
+import util.StreamingStatistics;
 
 /**
  * Abstract superclass for all reports. All settings defined in this class
@@ -40,6 +39,13 @@ public abstract class Report {
 	public static final String PRECISION_SETTING = "precision";
 	/** Default precision of formatted double values */
 	public static final int DEF_PRECISION = 4;
+	/** Precision of medians and other percentiles -setting id ({@value}).
+	 * Number of significant digits of the percentiles of reports that use
+	 * {@link StreamingStatistics}. If the value is bigger than 0, the values
+	 * are counted in a histogram with that precision instead of storing
+	 * all of them (see {@link StreamingStatistics#MAX_DIGITS}). Default
+	 * value is 0 (exact percentiles). */
+	public static final String PERCENTILE_DIGITS_S = "percentileDigits";
 	/** The default output directory of reports (can be overridden per report
 	 * with {@link Report#OUTPUT_SETTING}) -setting id ({@value})*/
 	public static final String REPORTDIR_SETTING = "Report.reportDir";
@@ -53,12 +59,15 @@ public abstract class Report {
 	public static final String OUT_SUFFIX = ".txt";
 	/** Suffix for reports that are created on n second intervals */
 	public static final String INTERVALLED_FORMAT ="%04d" + OUT_SUFFIX;
-	/** The print writer used to write output. See {@link #write(String)} */
-	protected PrintWriter out;
+	/** The writer used to write output. See {@link #write(String)} */
+	protected ReportWriter out;
 	/** String value for values that could not be calculated */
 	public static final String NAN = "NaN";
 	private String prefix = "";
 	private int precision;
+	/** format string of double values with the precision */
+	private String doubleFormat;
+	private int percentileDigits;
 	protected int warmupTime;
 	protected Set<String> warmupIDs;
 
@@ -106,6 +115,14 @@ public abstract class Report {
 		else {
 			precision = DEF_PRECISION;
 		}
+		doubleFormat = "%." + precision + "f";
+
+		if (settings.contains(PERCENTILE_DIGITS_S)) {
+			percentileDigits = settings.getInt(PERCENTILE_DIGITS_S);
+		}
+		else {
+			percentileDigits = 0;
+		}
 
 		if (settings.contains(OUTPUT_SETTING)) {
 			outFileName = settings.getSetting(OUTPUT_SETTING);
@@ -192,7 +209,7 @@ public abstract class Report {
 	 */
 	private void createOutput(String outFileName) {
 		try {
-			this.out = new PrintWriter(new FileWriter(outFileName));
+			this.out = new ReportWriter(outFileName);
 		} catch (IOException e) {
 			throw new SimError("Couldn't open file '" + outFileName +
 					"' for report output\n" + e.getMessage(), e);
@@ -228,6 +245,7 @@ public abstract class Report {
 
 	/**
 	 * Writes a line to report using defined prefix and {@link #out} writer.
+	 * The line is written to the file in the writer's background thread.
 	 * @param txt Line to write
 	 * @see #setPrefix(String)
 	 */
@@ -235,7 +253,21 @@ public abstract class Report {
 		if (out == null) {
 			init();
 		}
-		out.println(prefix + txt);
+		out.println(prefix, txt);
+	}
+
+	/**
+	 * Writes a line created from a record to report using defined prefix.
+	 * The record is formatted only in the writer's background thread, so
+	 * the simulation doesn't need to wait for the formatting.
+	 * @param record The record to write
+	 * @see #write(String)
+	 */
+	protected void write(ReportRecord record) {
+		if (out == null) {
+			init();
+		}
+		out.println(prefix, record);
 	}
 
 	/**
@@ -245,7 +277,16 @@ public abstract class Report {
 	 * @return Formatted value in a string
 	 */
 	protected String format(double value) {
-		return String.format("%." + precision + "f", value);
+		return String.format(doubleFormat, value);
+	}
+
+	/**
+	 * Returns the format string that {@link #format(double)} uses (for
+	 * formatting values of {@link ReportRecord}s)
+	 * @return the format string of double values
+	 */
+	protected String getDoubleFormat() {
+		return this.doubleFormat;
 	}
 
 	/**
@@ -256,6 +297,15 @@ public abstract class Report {
 		this.prefix = txt;
 	}
 
+	/**
+	 * Returns the name (&path) of the report's output file (without the
+	 * suffix of intervalled reports)
+	 * @return the output file name
+	 */
+	protected String getOutFileName() {
+		return this.outFileName;
+	}
+
 	/**
 	 * Returns the name of the scenario as read from the settings
 	 * @return the name of the scenario as read from the settings
@@ -335,6 +385,63 @@ public abstract class Report {
 		}
 	}
 
+	/**
+	 * Creates new statistics with the percentile precision of this report
+	 * (see {@link #PERCENTILE_DIGITS_S})
+	 * @return new, empty statistics
+	 */
+	protected StreamingStatistics newStatistics() {
+		return new StreamingStatistics(this.percentileDigits);
+	}
+
+	/**
+	 * Returns the average of the values of statistics
+	 * @param stats The statistics
+	 * @return the formatted average or "NaN" if there are no values
+	 */
+	public String getAverage(StreamingStatistics stats) {
+		if (stats.getCount() == 0) {
+			return NAN;
+		}
+		return format(stats.getMean());
+	}
+
+	/**
+	 * Returns the median of the values of statistics
+	 * @param stats The statistics
+	 * @return the formatted median or "NaN" if there are no values
+	 */
+	public String getMedian(StreamingStatistics stats) {
+		if (stats.getCount() == 0) {
+			return NAN;
+		}
+		return format(stats.getMedian());
+	}
+
+	/**
+	 * Returns the median of the integer values of statistics
+	 * @param stats The statistics
+	 * @return the median (rounded) or 0 if there are no values
+	 */
+	public int getIntMedian(StreamingStatistics stats) {
+		if (stats.getCount() == 0) {
+			return 0;
+		}
+		return (int)Math.round(stats.getMedian());
+	}
+
+	/**
+	 * Returns the variance of the values of statistics
+	 * @param stats The statistics
+	 * @return the formatted variance or "NaN" if there are no values
+	 */
+	public String getVariance(StreamingStatistics stats) {
+		if (stats.getCount() == 0) {
+			return NAN;
+		}
+		return format(stats.getVariance());
+	}
+
 	/**
 	 * Returns the average of double values stored in a List or "NaN" for
 	 * empty lists.
@@ -0,0 +1,23 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package report;
+
+import java.util.Formatter;
+
+/**
+ * A line of report output whose text is created only when it is written.
+ * Records are formatted in the {@link ReportWriter}'s writer thread, so they
+ * must contain only values that don't change after the record is created
+ * (e.g., numbers, strings and IDs; not the simulation objects themselves).
+ */
+public interface ReportRecord {
+
+	/**
+	 * Appends the text of the record to the line being written
+	 * @param line The line (without a line separator)
+	 * @param formatter Formatter that writes to the line
+	 */
+	public void appendTo(StringBuilder line, Formatter formatter);
+}
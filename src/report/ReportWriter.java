@@ -0,0 +1,287 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package report;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Formatter;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import core.SimError;
+
+/**
+ * <P>
+ * Writes the lines of a report file in a background thread. The lines
+ * (strings or {@link ReportRecord}s) are collected to batches in the
+ * simulation thread and the full batches are passed to the writer thread
+ * through a bounded queue, so the simulation waits only if the writer falls
+ * far behind. The writer thread formats the lines to a reused buffer and
+ * writes them to the file's channel in large blocks.
+ * </P>
+ * <P>
+ * The output is the same as with a {@link java.io.PrintWriter} that writes
+ * to a {@link java.io.FileWriter}: text is encoded with the default
+ * charset and lines end with the system's line separator.
+ * {@link #close()} returns only after all the lines have been written.
+ * </P>
+ */
+public class ReportWriter {
+	/** Number of lines in a batch */
+	private static final int BATCH_SIZE = 512;
+	/** Maximum number of full batches waiting for the writer */
+	private static final int QUEUE_CAPACITY = 64;
+	/** Size of the output buffer (bytes) */
+	private static final int BUFFER_SIZE = 256 * 1024;
+	private static final String LINE_SEPARATOR = System.lineSeparator();
+
+	private String fileName;
+	private FileChannel channel;
+	/** full batches waiting to be written */
+	private BlockingQueue<Batch> fullBatches;
+	/** written batches that can be reused */
+	private BlockingQueue<Batch> freeBatches;
+	/** the batch that is being filled */
+	private Batch batch;
+	private Thread writerThread;
+	/** error that stopped writing the output (if any) */
+	private volatile IOException error;
+	private boolean closed;
+
+	/**
+	 * Creates a new writer and the output file
+	 * @param fileName Name (&path) of the file to create
+	 * @throws IOException if the file can't be created
+	 */
+	public ReportWriter(String fileName) throws IOException {
+		this.fileName = fileName;
+		this.channel = new FileOutputStream(fileName).getChannel();
+		this.fullBatches = new ArrayBlockingQueue<Batch>(QUEUE_CAPACITY);
+		this.freeBatches = new ArrayBlockingQueue<Batch>(QUEUE_CAPACITY + 1);
+		this.batch = new Batch();
+		this.closed = false;
+
+		this.writerThread = new Thread(new Runnable() {
+			public void run() {
+				writeBatches();
+			}
+		}, "ReportWriter " + fileName);
+		this.writerThread.setDaemon(true);
+		this.writerThread.start();
+	}
+
+	/**
+	 * Writes a line
+	 * @param prefix Text to write before the line (or null)
+	 * @param line The line
+	 */
+	public void println(String prefix, String line) {
+		add(prefix, line);
+	}
+
+	/**
+	 * Writes a line that is created from a record
+	 * @param prefix Text to write before the line (or null)
+	 * @param record The record
+	 */
+	public void println(String prefix, ReportRecord record) {
+		add(prefix, record);
+	}
+
+	/**
+	 * Adds a line to the current batch and passes the batch to the writer
+	 * when it is full. Lines written after closing are ignored.
+	 * @param prefix Text to write before the line (or null)
+	 * @param line The line (String or ReportRecord)
+	 */
+	private void add(String prefix, Object line) {
+		if (closed) {
+			return;
+		}
+		batch.prefixes[batch.size] = prefix;
+		batch.lines[batch.size] = line;
+		batch.size++;
+
+		if (batch.size == BATCH_SIZE) {
+			send(batch);
+			batch = freeBatches.poll();
+			if (batch == null) {
+				batch = new Batch();
+			}
+		}
+	}
+
+	/**
+	 * Passes a batch to the writer thread
+	 * @param b The batch
+	 */
+	private void send(Batch b) {
+		checkError();
+		try {
+			fullBatches.put(b);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SimError("Interrupted while writing report file '" +
+					fileName + "'", e);
+		}
+	}
+
+	/**
+	 * Writes all the remaining lines, closes the file and waits until
+	 * everything is done
+	 */
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		batch.last = true;
+		send(batch);
+		batch = null;
+
+		try {
+			writerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SimError("Interrupted while closing report file '" +
+					fileName + "'", e);
+		}
+		checkError();
+	}
+
+	/**
+	 * Throws a SimError if the writer thread has failed to write the output
+	 */
+	private void checkError() {
+		if (error != null) {
+			throw new SimError("Couldn't write report file '" + fileName +
+					"'\n" + error.getMessage(), error);
+		}
+	}
+
+	/**
+	 * The writer thread's loop: formats and writes the lines of the batches
+	 * until the last batch. After an error the batches are just discarded,
+	 * so that the simulation thread never waits for a failed writer.
+	 */
+	private void writeBatches() {
+		StringBuilder line = new StringBuilder(256);
+		Formatter formatter = new Formatter(line);
+		CharsetEncoder encoder = Charset.defaultCharset().newEncoder().
+			onMalformedInput(CodingErrorAction.REPLACE).
+			onUnmappableCharacter(CodingErrorAction.REPLACE);
+		ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		boolean last;
+
+		do {
+			Batch b;
+			try {
+				b = fullBatches.take();
+			} catch (InterruptedException e) {
+				error = new IOException("Report writer interrupted");
+				closeChannel();
+				return;
+			}
+			last = b.last; /* b may be reused as soon as it is freed */
+
+			if (error == null) {
+				try {
+					for (int i = 0; i < b.size; i++) {
+						line.setLength(0);
+						if (b.prefixes[i] != null) {
+							line.append(b.prefixes[i]);
+						}
+						Object l = b.lines[i];
+						if (l instanceof ReportRecord) {
+							((ReportRecord)l).appendTo(line, formatter);
+						}
+						else {
+							line.append((String)l);
+						}
+						line.append(LINE_SEPARATOR);
+						encode(encoder, CharBuffer.wrap(line), buffer, false);
+					}
+					if (last) {
+						encode(encoder, CharBuffer.allocate(0), buffer, true);
+						while (encoder.flush(buffer) == CoderResult.OVERFLOW) {
+							writeBuffer(buffer);
+						}
+						writeBuffer(buffer);
+					}
+				} catch (IOException e) {
+					error = e;
+				} catch (RuntimeException e) { /* e.g., a failing record */
+					error = new IOException(e.toString(), e);
+				}
+			}
+
+			b.clear();
+			freeBatches.offer(b);
+		} while (!last);
+
+		closeChannel();
+	}
+
+	/**
+	 * Encodes characters to the output buffer and writes the buffer to the
+	 * file whenever it is full
+	 */
+	private void encode(CharsetEncoder encoder, CharBuffer chars,
+			ByteBuffer buffer, boolean endOfInput) throws IOException {
+		while (encoder.encode(chars, buffer, endOfInput) ==
+				CoderResult.OVERFLOW) {
+			writeBuffer(buffer);
+		}
+	}
+
+	/**
+	 * Writes the contents of the output buffer to the file
+	 * @param buffer The buffer
+	 */
+	private void writeBuffer(ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	private void closeChannel() {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			if (error == null) {
+				error = e;
+			}
+		}
+	}
+
+	/**
+	 * A batch of lines
+	 */
+	private static class Batch {
+		private String[] prefixes = new String[BATCH_SIZE];
+		private Object[] lines = new Object[BATCH_SIZE];
+		private int size = 0;
+		/** is this the last batch of the output */
+		private boolean last = false;
+
+		private void clear() {
+			for (int i = 0; i < size; i++) {
+				prefixes[i] = null;
+				lines[i] = null;
+			}
+			size = 0;
+			last = false;
+		}
+	}
+}
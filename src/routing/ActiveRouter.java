@@ -5,12 +5,14 @@
 package routing;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
 
 import routing.util.EnergyModel;
+import routing.util.MessageBuffer;
 import routing.util.MessageTransferAcceptPolicy;
 import routing.util.RoutingInfo;
 import util.Tuple;
@@ -39,12 +41,15 @@ public abstract class ActiveRouter extends MessageRouter {
 
 	/** prefix of all response message IDs */
 	public static final String RESPONSE_PREFIX = "R_";
-	/** how often TTL check (discarding old messages) is performed */
+	/**
+	 * how often TTL check (discarding old messages) was performed
+	 * @deprecated Expired messages are dropped at every update; this value
+	 * is no longer used
+	 */
+	@Deprecated
 	public static int TTL_CHECK_INTERVAL = 60;
 	/** connection(s) that are currently used for sending */
 	protected ArrayList<Connection> sendingConnections;
-	/** sim time when the last TTL check was done */
-	private double lastTtlCheck;
 
 	private MessageTransferAcceptPolicy policy;
 	private EnergyModel energy;
@@ -83,7 +88,6 @@ public abstract class ActiveRouter extends MessageRouter {
 	public void init(DTNHost host, List<MessageListener> mListeners) {
 		super.init(host, mListeners);
 		this.sendingConnections = new ArrayList<Connection>(1);
-		this.lastTtlCheck = 0;
 	}
 
 	/**
@@ -106,15 +110,10 @@ public abstract class ActiveRouter extends MessageRouter {
 		}
 
 		DTNHost other = con.getOtherNode(getHost());
-		/* do a copy to avoid concurrent modification exceptions
-		 * (startTransfer may remove messages) */
-		ArrayList<Message> temp =
-			new ArrayList<Message>(this.getMessageCollection());
-		for (Message m : temp) {
-			if (other == m.getTo()) {
-				if (startTransfer(m, con) == RCV_OK) {
-					return true;
-				}
+		/* the list is a copy, so startTransfer may remove messages */
+		for (Message m : getMessageBuffer().getMessagesTo(other)) {
+			if (startTransfer(m, con) == RCV_OK) {
+				return true;
 			}
 		}
 		return false;
@@ -233,7 +232,7 @@ public abstract class ActiveRouter extends MessageRouter {
 		}
 
 		if ( hasMessage(m.getId()) || isDeliveredMessage(m) ||
-				super.isBlacklistedMessage(m.getId())) {
+				super.isBlacklistedMessage(m)) {
 			return DENIED_OLD; // already seen this message -> reject it
 		}
 
@@ -288,14 +287,18 @@ public abstract class ActiveRouter extends MessageRouter {
 	}
 
 	/**
-	 * Drops messages whose TTL is less than zero.
+	 * Drops messages whose TTL is zero or less. Only the messages whose
+	 * expiry time has passed are checked.
 	 */
 	protected void dropExpiredMessages() {
-		Message[] messages = getMessageCollection().toArray(new Message[0]);
-		for (int i=0; i<messages.length; i++) {
-			int ttl = messages[i].getTtl();
-			if (ttl <= 0) {
-				deleteMessage(messages[i].getId(), true);
+		double now = SimClock.getTime();
+		if (!(getMessageBuffer().getFirstExpiryTime() < now)) {
+			return; /* nothing has expired */
+		}
+
+		for (Message m : getMessageBuffer().getMessagesExpiringBefore(now)) {
+			if (m.getTtl() <= 0) {
+				deleteMessage(m.getId(), true);
 			}
 		}
 	}
@@ -323,23 +326,18 @@ public abstract class ActiveRouter extends MessageRouter {
 	 * exludeMsgBeingSent is true)
 	 */
 	protected Message getNextMessageToRemove(boolean excludeMsgBeingSent) {
-		Collection<Message> messages = this.getMessageCollection();
-		Message oldest = null;
-		for (Message m : messages) {
-
+		/* the buffer is indexed by receive time: the first message that is
+		 * not skipped is the oldest one */
+		Iterator<Message> i = getMessageBuffer().receiveTimeIterator();
+		while (i.hasNext()) {
+			Message m = i.next();
 			if (excludeMsgBeingSent && isSending(m.getId())) {
 				continue; // skip the message(s) that router is sending
 			}
-
-			if (oldest == null ) {
-				oldest = m;
-			}
-			else if (oldest.getReceiveTime() > m.getReceiveTime()) {
-				oldest = m;
-			}
+			return m;
 		}
 
-		return oldest;
+		return null;
 	}
 
 	/**
@@ -353,17 +351,26 @@ public abstract class ActiveRouter extends MessageRouter {
 			return new ArrayList<Tuple<Message, Connection>>(0);
 		}
 
+		MessageBuffer buffer = getMessageBuffer();
 		List<Tuple<Message, Connection>> forTuples =
 			new ArrayList<Tuple<Message, Connection>>();
-		for (Message m : getMessageCollection()) {
-			for (Connection con : getConnections()) {
-				DTNHost to = con.getOtherNode(getHost());
-				if (m.getTo() == to) {
-					forTuples.add(new Tuple<Message, Connection>(m,con));
-				}
+		for (Connection con : getConnections()) {
+			DTNHost to = con.getOtherNode(getHost());
+			for (Message m : buffer.getMessagesTo(to)) {
+				forTuples.add(new Tuple<Message, Connection>(m,con));
 			}
 		}
 
+		/* messages in buffer order, connections of the same message in the
+		 * order of the connections list (the sort is stable) */
+		final Comparator<Message> order = buffer.bufferOrder();
+		Collections.sort(forTuples, new Comparator<Tuple<Message, Connection>>() {
+			public int compare(Tuple<Message, Connection> t1,
+					Tuple<Message, Connection> t2) {
+				return order.compare(t1.getKey(), t2.getKey());
+			}
+		});
+
 		return forTuples;
 	}
 
@@ -442,7 +449,7 @@ public abstract class ActiveRouter extends MessageRouter {
 	/**
 	 * Tries to send all messages that this router is carrying to all
 	 * connections this node has. Messages are ordered using the
-	 * {@link MessageRouter#sortByQueueMode(List)}. See
+	 * {@link MessageRouter#getMessagesInQueueOrder()}. See
 	 * {@link #tryMessagesToConnections(List, List)} for sending details.
 	 * @return The connections that started a transfer or null if no connection
 	 * accepted a message.
@@ -453,9 +460,7 @@ public abstract class ActiveRouter extends MessageRouter {
 			return null;
 		}
 
-		List<Message> messages =
-			new ArrayList<Message>(this.getMessageCollection());
-		this.sortByQueueMode(messages);
+		List<Message> messages = getMessagesInQueueOrder();
 
 		return tryMessagesToConnections(messages, connections);
 	}
@@ -617,11 +622,9 @@ public abstract class ActiveRouter extends MessageRouter {
 			}
 		}
 
-		/* time to do a TTL check and drop old messages? Only if not sending */
-		if (SimClock.getTime() - lastTtlCheck >= TTL_CHECK_INTERVAL &&
-				sendingConnections.size() == 0) {
+		/* drop the messages that have expired. Only if not sending */
+		if (sendingConnections.size() == 0) {
 			dropExpiredMessages();
-			lastTtlCheck = SimClock.getTime();
 		}
 
 		if (energy != null) {
@@ -6,7 +6,9 @@ package routing;
 
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
@@ -16,6 +18,7 @@ import core.DTNHost;
 import core.Message;
 import core.NetworkInterface;
 import core.Settings;
+import core.SettingsError;
 import core.SimClock;
 import core.SimScenario;
 import routing.cgr.ContactPlanHandler;
@@ -37,6 +40,10 @@ public class ContactGraphRouter extends ActiveRouter {
 	private boolean create_cplan;
 	private Graph cg;
 	private RouteSearch route_search;
+	private boolean use_route_cache;
+	private int nrof_routes;
+	/* routes to destinations, by destination address */
+	private Map<Integer, CachedRoutes> route_cache;
 	private static final String NEXT_CONTACT = "contact";
 	private static final String STARTING_TIME = "starting_time";
 	/** CGR router's setting namespace ({@value})*/
@@ -46,6 +53,20 @@ public class ContactGraphRouter extends ActiveRouter {
 	public static final String CGR_DEFAULT_DISTANCE_ALGO = "least_latency";
 	/* avoid create plan on testing */
 	public static final String CREATE_CPLAN = "create_cplan";
+	/**
+	 * Route cache -setting id ({@value}) in the CGR namespace. Boolean. If true,
+	 * the routes found to a destination are kept and reused for the next
+	 * messages to it while they can still carry the message, until the
+	 * contacts of the graph change. Default = false (search a route for every
+	 * message).
+	 */
+	public static final String ROUTE_CACHE_S = "routeCache";
+	/**
+	 * Number of routes -setting id ({@value}) in the CGR namespace. How many
+	 * routes, each with a different first hop, are searched to a destination
+	 * at once when the route cache is used. Default = 1.
+	 */
+	public static final String NROF_ROUTES_S = "nrofRoutes";
 
 
 	/**
@@ -64,6 +85,15 @@ public class ContactGraphRouter extends ActiveRouter {
 		} else {
 			create_cplan = true;
 		}
+
+		Settings cgrSettings = new Settings(CGR_NS);
+		use_route_cache = cgrSettings.getBoolean(ROUTE_CACHE_S, false);
+		nrof_routes = cgrSettings.getInt(NROF_ROUTES_S, 1);
+		if (nrof_routes < 1) {
+			throw new SettingsError("Invalid value for " +
+					cgrSettings.getFullPropertyName(NROF_ROUTES_S) + ": " + nrof_routes);
+		}
+		route_cache = new HashMap<>();
 	}
 
 	/**
@@ -79,6 +109,9 @@ public class ContactGraphRouter extends ActiveRouter {
 		create_cplan = r.create_cplan;
 		cg = new Graph(cg);
 		route_search = new RouteSearch(cg);
+		use_route_cache = r.use_route_cache;
+		nrof_routes = r.nrof_routes;
+		route_cache = new HashMap<>();
 }
 
 	
@@ -87,6 +120,7 @@ public class ContactGraphRouter extends ActiveRouter {
 	 * */
 	public void set_route_search(RouteSearch rs) {
 		this.route_search = rs;
+		route_cache.clear(); // the routes were found on another graph
 	}
 	
 	/**
@@ -263,11 +297,16 @@ public class ContactGraphRouter extends ActiveRouter {
 	boolean isMessageDeliverable(Message m) {
 		boolean result = false;
 		double now = SimClock.getTime();
-		Vertex last_hop = route_search.search(getHost(), now, m, msgTtl);
-		if (last_hop == null) {
+		Path path;
+		if (use_route_cache) {
+			path = get_cached_route(m, now);
+		} else {
+			Vertex last_hop = route_search.search(getHost(), now, m, msgTtl);
+			path = last_hop == null ? null : route_search.get_path(last_hop);
+		}
+		if (path == null) {
 			return false;
 		}
-		Path path = route_search.get_path(last_hop);
 		List<Vertex> path_list = path.get_path_as_list();
 		if (path_list.size() > 0) {
 			DTNHost next_hop = path_list.get(0).get_other_host(getHost());
@@ -279,6 +318,86 @@ public class ContactGraphRouter extends ActiveRouter {
 		return result;
 	}
 
+	/**
+	 * Return the route of the route cache that delivers the message first. If
+	 * the contacts of the graph changed since the routes to the message's
+	 * destination were found, or none of them can be used anymore (a contact
+	 * ended, has not enough capacity left, ...), new routes are searched.
+	 * @param m the message
+	 * @param now current simulation time
+	 * @return the route or null if there is no route
+	 */
+	private Path get_cached_route(Message m, double now) {
+		int dst = m.getTo().getAddress();
+		int version = cg.get_contact_version();
+		CachedRoutes cached = route_cache.get(dst);
+		Path path = null;
+		if (cached != null && cached.contact_version == version) {
+			path = best_route(cached.routes, m, now);
+		}
+		if (path == null) {
+			cached = new CachedRoutes(version);
+			for (Path p : route_search.search_routes(getHost(), now, m, msgTtl, nrof_routes)) {
+				cached.routes.add(vertex_ids(p.get_path_as_list()));
+			}
+			route_cache.put(dst, cached);
+			path = best_route(cached.routes, m, now);
+		}
+		return path;
+	}
+
+	/**
+	 * Choose the route that delivers the message first. Routes whose contacts
+	 * were pruned are removed from the list, and contacts that were split are
+	 * replaced by the fragments the message can use.
+	 * @param routes the routes
+	 * @param m the message
+	 * @param now current simulation time
+	 * @return the best route or null if none of the routes can be used
+	 */
+	private Path best_route(List<List<String>> routes, Message m, double now) {
+		List<Vertex> best = null;
+		double best_arrival = Double.POSITIVE_INFINITY;
+		for (ListIterator<List<String>> i = routes.listIterator(); i.hasNext();) {
+			List<Vertex> route = route_search.get_route_vertices(i.next());
+			if (route == null) {
+				i.remove(); // contact expired
+				continue;
+			}
+			double arrival = route_search.route_arrival(route, getHost(), now, m);
+			if (arrival < best_arrival) {
+				best = route;
+				best_arrival = arrival;
+			}
+			if (arrival < Double.POSITIVE_INFINITY) {
+				i.set(vertex_ids(route)); // keep the fragments in use
+			}
+		}
+		return best == null ? null : new Path(best);
+	}
+
+	private static List<String> vertex_ids(List<Vertex> route) {
+		List<String> ids = new ArrayList<>(route.size());
+		for (Vertex v : route) {
+			ids.add(v.get_id());
+		}
+		return ids;
+	}
+
+	/**
+	 * Routes to a destination and the contact version of the graph when they
+	 * were found
+	 */
+	private static class CachedRoutes {
+		private int contact_version;
+		private List<List<String>> routes;
+
+		private CachedRoutes(int contact_version) {
+			this.contact_version = contact_version;
+			this.routes = new ArrayList<>();
+		}
+	}
+
 	/**
 	 * A node just completed a message transmission. 
 	 * Recalculate path, exclude message if it is not reachable, set next hop otherwise.
@@ -17,6 +17,7 @@ import java.util.Set;
 import routing.maxprop.MaxPropDijkstra;
 import routing.maxprop.MeetingProbabilitySet;
 import routing.util.RoutingInfo;
+import util.IntHashSet;
 import util.Tuple;
 import core.Connection;
 import core.DTNHost;
@@ -51,19 +52,22 @@ public class MaxPropRouter extends ActiveRouter {
 	/** meeting probabilities of all hosts from this host's point of view
 	 * mapped using host's network address */
 	private Map<Integer, MeetingProbabilitySet> allProbs;
+	/** number of probability sets put to allProbs so far */
+	private long allProbsChanges;
+	/** number of changes in the allProbs of other hosts when this host
+	 * last exchanged the transitive probabilities with them */
+	private Map<DTNHost, Long> seenProbsChanges;
 	/** the cost-to-node calculator */
 	private MaxPropDijkstra dijkstra;
 	/** IDs of the messages that are known to have reached the final dst */
-	private Set<String> ackedMessageIds;
-	/** mapping of the current costs for all messages. This should be set to
-	 * null always when the costs should be updated (a host is met or a new
-	 * message is received) */
-	private Map<Integer, Double> costsForMessages;
-	/** From host of the last cost calculation */
-	private DTNHost lastCostFrom;
+	private IntHashSet ackedMessageIds;
+	/** cached costs from the hosts where messages can come from */
+	private Map<DTNHost, CostCache> costCaches;
+	/** version of the probabilities the cached costs were calculated with */
+	private long costsVersion;
 
 	/** Map of which messages have been sent to which hosts from this host */
-	private Map<DTNHost, Set<String>> sentMessages;
+	private Map<DTNHost, IntHashSet> sentMessages;
 
 	/** Over how many samples the "average number of bytes transferred per
 	 * transfer opportunity" is taken */
@@ -114,10 +118,14 @@ public class MaxPropRouter extends ActiveRouter {
 		this.alpha = r.alpha;
 		this.probs = new MeetingProbabilitySet(probSetMaxSize, this.alpha);
 		this.allProbs = new HashMap<Integer, MeetingProbabilitySet>();
+		this.allProbsChanges = 0;
+		this.seenProbsChanges = new HashMap<DTNHost, Long>();
+		this.costCaches = new HashMap<DTNHost, CostCache>();
+		this.costsVersion = -1;
 		this.dijkstra = new MaxPropDijkstra(this.allProbs);
-		this.ackedMessageIds = new HashSet<String>();
+		this.ackedMessageIds = new IntHashSet();
 		this.avgSamples = new int[BYTES_TRANSFERRED_AVG_SAMPLES];
-		this.sentMessages = new HashMap<DTNHost, Set<String>>();
+		this.sentMessages = new HashMap<DTNHost, IntHashSet>();
 	}
 
 	@Override
@@ -125,8 +133,6 @@ public class MaxPropRouter extends ActiveRouter {
 		super.changedConnection(con);
 
 		if (con.isUp()) { // new connection
-			this.costsForMessages = null; // invalidate old cost estimates
-
 			if (con.isInitiator(getHost())) {
 				/* initiator performs all the actions on behalf of the
 				 * other node too (so that the meeting probs are updated
@@ -149,12 +155,19 @@ public class MaxPropRouter extends ActiveRouter {
 				otherRouter.probs.updateMeetingProbFor(getHost().getAddress());
 
 				/* exchange the transitive probabilities */
-				this.updateTransitiveProbs(otherRouter.allProbs);
-				otherRouter.updateTransitiveProbs(this.allProbs);
-				this.allProbs.put(otherHost.getAddress(),
+				this.updateTransitiveProbs(otherRouter);
+				otherRouter.updateTransitiveProbs(this);
+				this.putProbs(otherHost.getAddress(),
 						otherRouter.probs.replicate());
-				otherRouter.allProbs.put(getHost().getAddress(),
+				otherRouter.putProbs(getHost().getAddress(),
 						this.probs.replicate());
+
+				/* now both hosts have (at least as recent) copies of all
+				 * the probability sets of the other */
+				this.seenProbsChanges.put(otherHost,
+						otherRouter.allProbsChanges);
+				otherRouter.seenProbsChanges.put(getHost(),
+						this.allProbsChanges);
 			}
 		}
 		else {
@@ -165,38 +178,94 @@ public class MaxPropRouter extends ActiveRouter {
 
 	/**
 	 * Updates transitive probability values by replacing the current
-	 * MeetingProbabilitySets with the values from the given mapping
-	 * if the given sets have more recent updates.
-	 * @param p Mapping of the values of the other host
+	 * MeetingProbabilitySets with the values from the other host's mapping
+	 * if the other host's sets have more recent updates. If no sets have
+	 * been put to the other host's mapping since the last exchange with it,
+	 * only the sets that can change in place (the other host's own set and
+	 * this host's set) are checked.
+	 * @param other The router of the other host
 	 */
-	private void updateTransitiveProbs(Map<Integer, MeetingProbabilitySet> p) {
-		for (Map.Entry<Integer, MeetingProbabilitySet> e : p.entrySet()) {
-			MeetingProbabilitySet myMps = this.allProbs.get(e.getKey());
-			if (myMps == null ||
-				e.getValue().getLastUpdateTime() > myMps.getLastUpdateTime() ) {
-				this.allProbs.put(e.getKey(), e.getValue().replicate());
+	private void updateTransitiveProbs(MaxPropRouter other) {
+		Map<Integer, MeetingProbabilitySet> p = other.allProbs;
+		Long seenChanges = this.seenProbsChanges.get(other.getHost());
+
+		if (seenChanges == null || seenChanges != other.allProbsChanges) {
+			for (Map.Entry<Integer, MeetingProbabilitySet> e : p.entrySet()) {
+				updateTransitiveProbs(e.getKey(), e.getValue());
+			}
+			return;
+		}
+
+		int[] addresses = {other.getHost().getAddress(),
+				getHost().getAddress()};
+		for (int address : addresses) {
+			MeetingProbabilitySet mps = p.get(address);
+			if (mps != null) {
+				updateTransitiveProbs(address, mps);
 			}
 		}
 	}
 
+	/**
+	 * Replaces the MeetingProbabilitySet of a host with a copy of the given
+	 * set if the given set has more recent updates
+	 * @param address Address of the host
+	 * @param mps The probability set of the other host
+	 */
+	private void updateTransitiveProbs(int address, MeetingProbabilitySet mps) {
+		MeetingProbabilitySet myMps = this.allProbs.get(address);
+		if (myMps == null ||
+			mps.getLastUpdateTime() > myMps.getLastUpdateTime() ) {
+			putProbs(address, mps.replicate());
+		}
+	}
+
+	/**
+	 * Puts a probability set to the mapping of all meeting probabilities
+	 * @param address Address of the host whose set it is
+	 * @param mps The probability set
+	 */
+	private void putProbs(int address, MeetingProbabilitySet mps) {
+		this.allProbs.put(address, mps);
+		this.allProbsChanges++;
+	}
+
+	/**
+	 * Returns the version of the meeting probabilities known by this host.
+	 * The version changes when any of the probabilities change.
+	 * @return the version of the probabilities
+	 */
+	private long getProbsVersion() {
+		/* the sets in allProbs are not modified, except for this host's own
+		 * set, so the number of puts and own set's version define the
+		 * contents */
+		return this.allProbsChanges + this.probs.getVersion();
+	}
+
 	/**
 	 * Deletes the messages from the message buffer that are known to be ACKed
 	 */
 	private void deleteAckedMessages() {
-		for (String id : this.ackedMessageIds) {
-			if (this.hasMessage(id) && !isSending(id)) {
-				this.deleteMessage(id, false);
+		/* the buffer is usually much smaller than the set of all ACKed
+		 * messages, so go through the buffer */
+		List<String> acked = new ArrayList<String>();
+		for (Message m : getMessageCollection()) {
+			if (this.ackedMessageIds.contains(m.getIntId()) &&
+					!isSending(m.getId())) {
+				acked.add(m.getId());
 			}
 		}
+		for (String id : acked) {
+			this.deleteMessage(id, false);
+		}
 	}
 
 	@Override
 	public Message messageTransferred(String id, DTNHost from) {
-		this.costsForMessages = null; // new message -> invalidate costs
 		Message m = super.messageTransferred(id, from);
 		/* was this node the final recipient of the message? */
 		if (isDeliveredMessage(m)) {
-			this.ackedMessageIds.add(id);
+			this.ackedMessageIds.add(Message.getIntId(id));
 		}
 		return m;
 	}
@@ -210,19 +279,19 @@ public class MaxPropRouter extends ActiveRouter {
 	@Override
 	protected void transferDone(Connection con) {
 		Message m = con.getMessage();
-		String id = m.getId();
+		int id = m.getIntId();
 		DTNHost recipient = con.getOtherNode(getHost());
-		Set<String> sentMsgIds = this.sentMessages.get(recipient);
+		IntHashSet sentMsgIds = this.sentMessages.get(recipient);
 
 		/* was the message delivered to the final recipient? */
 		if (m.getTo() == recipient) {
-			this.ackedMessageIds.add(m.getId()); // yes, add to ACKed messages
+			this.ackedMessageIds.add(m.getIntId()); // yes, add to ACKed messages
 			this.deleteMessage(m.getId(), false); // delete from buffer
 		}
 
 		/* update the map of where each message is already sent */
 		if (sentMsgIds == null) {
-			sentMsgIds = new HashSet<String>();
+			sentMsgIds = new IntHashSet();
 			this.sentMessages.put(recipient, sentMsgIds);
 		}
 		sentMsgIds.add(id);
@@ -304,32 +373,52 @@ public class MaxPropRouter extends ActiveRouter {
 	 * Returns the message delivery cost between two hosts from this host's
 	 * point of view. If there is no path between "from" and "to" host,
 	 * Double.MAX_VALUE is returned. Paths are calculated only to hosts
-	 * that this host has messages to.
+	 * that this host has messages to (and to the requested host). The costs
+	 * are cached until the meeting probabilities change.
 	 * @param from The host where a message is coming from
 	 * @param to The host where a message would be destined to
 	 * @return The cost of the cheapest path to the destination or
 	 * Double.MAX_VALUE if such a path doesn't exist
 	 */
 	public double getCost(DTNHost from, DTNHost to) {
+		if (this.allProbs.get(getHost().getAddress()) != this.probs) {
+			putProbs(getHost().getAddress(), this.probs);
+		}
+
 		/* check if the cached values are OK */
-		if (this.costsForMessages == null || lastCostFrom != from) {
-			/* cached costs are invalid -> calculate new costs */
-			this.allProbs.put(getHost().getAddress(), this.probs);
-			int fromIndex = from.getAddress();
+		long version = getProbsVersion();
+		if (this.costsVersion != version) {
+			/* probabilities have changed -> all cached costs are invalid */
+			this.costCaches.clear();
+			this.costsVersion = version;
+		}
 
+		CostCache costs = this.costCaches.get(from);
+		if (costs == null) {
+			costs = new CostCache();
+			this.costCaches.put(from, costs);
+		}
+
+		int toIndex = to.getAddress();
+		if (!costs.targets.contains(toIndex)) {
 			/* calculate paths only to nodes we have messages to
-			 * (optimization) */
+			 * (optimization) and whose costs are not known yet */
 			Set<Integer> toSet = new HashSet<Integer>();
+			toSet.add(toIndex);
 			for (Message m : getMessageCollection()) {
-				toSet.add(m.getTo().getAddress());
+				int address = m.getTo().getAddress();
+				if (!costs.targets.contains(address)) {
+					toSet.add(address);
+				}
 			}
 
-			this.costsForMessages = dijkstra.getCosts(fromIndex, toSet);
-			this.lastCostFrom = from; // store source host for caching checks
+			costs.costs.putAll(dijkstra.getCosts(from.getAddress(), toSet));
+			costs.targets.addAll(toSet);
 		}
 
-		if (costsForMessages.containsKey(to.getAddress())) {
-			return costsForMessages.get(to.getAddress());
+		Double cost = costs.costs.get(toIndex);
+		if (cost != null) {
+			return cost;
 		}
 		else {
 			/* there's no known path to the given host */
@@ -353,7 +442,7 @@ public class MaxPropRouter extends ActiveRouter {
 		for (Connection con : getConnections()) {
 			DTNHost other = con.getOtherNode(getHost());
 			MaxPropRouter othRouter = (MaxPropRouter)other.getRouter();
-			Set<String> sentMsgIds = this.sentMessages.get(other);
+			IntHashSet sentMsgIds = this.sentMessages.get(other);
 
 			if (othRouter.isTransferring()) {
 				continue; // skip hosts that are transferring
@@ -368,7 +457,7 @@ public class MaxPropRouter extends ActiveRouter {
 				}
 				/* skip message if this host has already sent it to the other
 				   host (regardless of if the other host still has it) */
-				if (sentMsgIds != null && sentMsgIds.contains(m.getId())) {
+				if (sentMsgIds != null && sentMsgIds.contains(m.getIntId())) {
 					continue;
 				}
 				/* message was a good candidate for sending */
@@ -571,6 +660,17 @@ public class MaxPropRouter extends ActiveRouter {
 	}
 
 
+	/**
+	 * Costs from one host to the destinations they have been calculated for
+	 */
+	private static class CostCache {
+		/** costs to the destinations that have a path */
+		private Map<Integer, Double> costs = new HashMap<Integer, Double>();
+		/** all the destinations the costs have been calculated for */
+		private Set<Integer> targets = new HashSet<Integer>();
+	}
+
+
 	@Override
 	public RoutingInfo getRoutingInfo() {
 		RoutingInfo top = super.getRoutingInfo();
@@ -17,6 +17,7 @@ import java.util.Set;
 import routing.maxprop.MaxPropDijkstra;
 import routing.maxprop.MeetingProbabilitySet;
 import routing.util.RoutingInfo;
+import util.IntHashSet;
 import util.Tuple;
 import core.Connection;
 import core.DTNHost;
@@ -52,7 +53,7 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 	/** the cost-to-node calculator */
 	private MaxPropDijkstra dijkstra;
 	/** IDs of the messages that are known to have reached the final dst */
-	private Set<String> ackedMessageIds;
+	private IntHashSet ackedMessageIds;
 	/** mapping of the current costs for all messages. This should be set to
 	 * null always when the costs should be updated (a host is met or a new
 	 * message is received) */
@@ -122,7 +123,7 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 				MeetingProbabilitySet.INFINITE_SET_SIZE, this.alpha);
 		this.allProbs = new HashMap<Integer, MeetingProbabilitySet>();
 		this.dijkstra = new MaxPropDijkstra(this.allProbs);
-		this.ackedMessageIds = new HashSet<String>();
+		this.ackedMessageIds = new IntHashSet();
 		this.avgSamples = new int[BYTES_TRANSFERRED_AVG_SAMPLES];
 		initMeetings();
 	}
@@ -323,11 +324,18 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 	 * Deletes the messages from the message buffer that are known to be ACKed
 	 */
 	private void deleteAckedMessages() {
-		for (String id : this.ackedMessageIds) {
-			if (this.hasMessage(id) && !isSending(id)) {
-				this.deleteMessage(id, false);
+		/* the buffer is usually much smaller than the set of all ACKed
+		 * messages, so go through the buffer */
+		List<String> acked = new ArrayList<String>();
+		for (Message m : getMessageCollection()) {
+			if (this.ackedMessageIds.contains(m.getIntId()) &&
+					!isSending(m.getId())) {
+				acked.add(m.getId());
 			}
 		}
+		for (String id : acked) {
+			this.deleteMessage(id, false);
+		}
 	}
 
 	@Override
@@ -336,7 +344,7 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 		Message m = super.messageTransferred(id, from);
 		/* was this node the final recipient of the message? */
 		if (isDeliveredMessage(m)) {
-			this.ackedMessageIds.add(id);
+			this.ackedMessageIds.add(Message.getIntId(id));
 		}
 		return m;
 	}
@@ -352,7 +360,7 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 		Message m = con.getMessage();
 		/* was the message delivered to the final recipient? */
 		if (m.getTo() == con.getOtherNode(getHost())) {
-			this.ackedMessageIds.add(m.getId()); // yes, add to ACKed messages
+			this.ackedMessageIds.add(m.getIntId()); // yes, add to ACKed messages
 			this.deleteMessage(m.getId(), false); // delete from buffer
 		}
 	}
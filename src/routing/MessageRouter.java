@@ -4,13 +4,13 @@
  */
 package routing;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Random;
 import core.Application;
 import core.Connection;
 import core.DTNHost;
@@ -20,7 +20,10 @@ import core.Settings;
 import core.SettingsError;
 import core.SimClock;
 import core.SimError;
+import routing.util.MessageBuffer;
 import routing.util.RoutingInfo;
+import util.IntHashMap;
+import util.IntHashSet;
 import util.Tuple;
 
 /**
@@ -41,7 +44,8 @@ public abstract class MessageRouter {
 	 * one message can be sent directly to the final recipient).
 	 * Valid values are<BR>
 	 * <UL>
-	 * <LI/> 1 : random (message order is randomized every time; default option)
+	 * <LI/> 1 : random (each router keeps its messages in a random order
+	 * that changes only when messages are added or removed; default option)
 	 * <LI/> 2 : FIFO (most recently received messages are sent last)
 	 * </UL>
 	 */
@@ -86,11 +90,13 @@ public abstract class MessageRouter {
 	/** The messages being transferred with msgID_hostName keys */
 	private HashMap<String, Message> incomingMessages;
 	/** The messages this router is carrying */
-	private HashMap<String, Message> messages;
-	/** The messages this router has received as the final recipient */
-	private HashMap<String, Message> deliveredMessages;
-	/** The messages that Applications on this router have blacklisted */
-	private HashMap<String, Object> blacklistedMessages;
+	private MessageBuffer messages;
+	/** The messages this router has received as the final recipient
+	 * (by int id) */
+	private IntHashMap<Message> deliveredMessages;
+	/** Int ids of the messages that Applications on this router have
+	 * blacklisted */
+	private IntHashSet blacklistedMessages;
 	/** Host where this router belongs to */
 	private DTNHost host;
 	/** size of the buffer */
@@ -152,9 +158,14 @@ public abstract class MessageRouter {
 	 */
 	public void init(DTNHost host, List<MessageListener> mListeners) {
 		this.incomingMessages = new HashMap<String, Message>();
-		this.messages = new HashMap<String, Message>();
-		this.deliveredMessages = new HashMap<String, Message>();
-		this.blacklistedMessages = new HashMap<String, Object>();
+		if (sendQueueMode == Q_MODE_RANDOM) {
+			/* the queue keys are seeded by host so runs are repeatable */
+			this.messages = new MessageBuffer((long)host.getAddress());
+		} else {
+			this.messages = new MessageBuffer();
+		}
+		this.deliveredMessages = new IntHashMap<Message>();
+		this.blacklistedMessages = new IntHashSet();
 		this.mListeners = mListeners;
 		this.host = host;
 	}
@@ -210,7 +221,7 @@ public abstract class MessageRouter {
 	 * @return True if the router has message with this id, false if not
 	 */
 	public boolean hasMessage(String id) {
-		return this.messages.containsKey(id);
+		return this.messages.contains(id);
 	}
 
 	/**
@@ -222,7 +233,7 @@ public abstract class MessageRouter {
 	 * this host as the final recipient.
 	 */
 	protected boolean isDeliveredMessage(Message m) {
-		return (this.deliveredMessages.containsKey(m.getId()));
+		return (this.deliveredMessages.containsKey(m.getIntId()));
 	}
 
 	/**
@@ -235,11 +246,23 @@ public abstract class MessageRouter {
 	 * @return <code>true</code> if blacklisted, <code>false</code> otherwise.
 	 */
 	protected boolean isBlacklistedMessage(String id) {
-		return this.blacklistedMessages.containsKey(id);
+		return this.blacklistedMessages.contains(Message.getIntId(id));
+	}
+
+	/**
+	 * Returns <code>true</code> if the message has been blacklisted
+	 * (see {@link #isBlacklistedMessage(String)}).
+	 *
+	 * @param m	the message
+	 * @return <code>true</code> if blacklisted, <code>false</code> otherwise.
+	 */
+	protected boolean isBlacklistedMessage(Message m) {
+		return this.blacklistedMessages.contains(m.getIntId());
 	}
 
 	/**
 	 * Returns a reference to the messages of this router in collection.
+	 * The messages are in the order they were added to the buffer.
 	 * <b>Note:</b> If there's a chance that some message(s) from the collection
 	 * could be deleted (or added) while iterating through the collection, a
 	 * copy of the collection should be made to avoid concurrent modification
@@ -247,7 +270,17 @@ public abstract class MessageRouter {
 	 * @return a reference to the messages of this router in collection
 	 */
 	public Collection<Message> getMessageCollection() {
-		return this.messages.values();
+		return this.messages.getMessages();
+	}
+
+	/**
+	 * Returns the message buffer of this router. The buffer must be modified
+	 * only through {@link #addToMessages(Message, boolean)} and
+	 * {@link #removeFromMessages(String)}.
+	 * @return The message buffer
+	 */
+	protected MessageBuffer getMessageBuffer() {
+		return this.messages;
 	}
 
 	/**
@@ -274,17 +307,11 @@ public abstract class MessageRouter {
 	 * size isn't defined)
 	 */
 	public long getFreeBufferSize() {
-		long occupancy = 0;
-
 		if (this.getBufferSize() == Integer.MAX_VALUE) {
 			return Integer.MAX_VALUE;
 		}
 
-		for (Message m : getMessageCollection()) {
-			occupancy += m.getSize();
-		}
-
-		return this.getBufferSize() - occupancy;
+		return this.getBufferSize() - this.messages.getOccupancy();
 	}
 
 	/**
@@ -383,11 +410,11 @@ public abstract class MessageRouter {
 			// -> put to buffer
 			addToMessages(aMessage, false);
 		} else if (isFirstDelivery) {
-			this.deliveredMessages.put(id, aMessage);
+			this.deliveredMessages.put(incoming.getIntId(), aMessage);
 		} else if (outgoing == null) {
 			// Blacklist messages that an app wants to drop.
 			// Otherwise the peer will just try to send it back again.
-			this.blacklistedMessages.put(id, null);
+			this.blacklistedMessages.add(incoming.getIntId());
 		}
 
 		for (MessageListener ml : this.mListeners) {
@@ -437,7 +464,7 @@ public abstract class MessageRouter {
 	 * message, if false, nothing is informed.
 	 */
 	protected void addToMessages(Message m, boolean newMessage) {
-		this.messages.put(m.getId(), m);
+		this.messages.add(m);
 
 		if (newMessage) {
 			for (MessageListener ml : this.mListeners) {
@@ -507,51 +534,64 @@ public abstract class MessageRouter {
 	}
 
 	/**
-	 * Sorts/shuffles the given list according to the current sending queue
-	 * mode. The list can contain either Message or Tuple<Message, Connection>
-	 * objects. Other objects cause error.
-	 * @param list The list to sort or shuffle
-	 * @return The sorted/shuffled list
+	 * Returns the sending queue mode of this router
+	 * @return {@link #Q_MODE_RANDOM} or {@link #Q_MODE_FIFO}
 	 */
-	@SuppressWarnings(value = "unchecked") /* ugly way to make this generic */
-	protected List sortByQueueMode(List list) {
+	protected int getSendQueueMode() {
+		return this.sendQueueMode;
+	}
+
+	/**
+	 * Returns the messages of this router in the sending queue order: a new
+	 * list ordered as {@link #sortByQueueMode(List)} would order a list of
+	 * the messages in buffer order. The order is maintained by the message
+	 * buffer, so the list is not sorted.
+	 * @return The messages in queue order
+	 */
+	protected List<Message> getMessagesInQueueOrder() {
 		switch (sendQueueMode) {
 		case Q_MODE_RANDOM:
-			Collections.shuffle(list, new Random(SimClock.getIntTime()));
-			break;
+			return this.messages.getMessagesInRandomOrder();
 		case Q_MODE_FIFO:
-			Collections.sort(list,
-					new Comparator() {
-				/** Compares two tuples by their messages' receiving time */
-				public int compare(Object o1, Object o2) {
-					double diff;
-					Message m1, m2;
-
-					if (o1 instanceof Tuple) {
-						m1 = ((Tuple<Message, Connection>)o1).getKey();
-						m2 = ((Tuple<Message, Connection>)o2).getKey();
-					}
-					else if (o1 instanceof Message) {
-						m1 = (Message)o1;
-						m2 = (Message)o2;
-					}
-					else {
-						throw new SimError("Invalid type of objects in " +
-								"the list");
-					}
-
-					diff = m1.getReceiveTime() - m2.getReceiveTime();
-					if (diff == 0) {
-						return 0;
-					}
-					return (diff < 0 ? -1 : 1);
-				}
-			});
-			break;
+			return this.messages.getMessagesByReceiveTime();
 		/* add more queue modes here */
 		default:
 			throw new SimError("Unknown queue mode " + sendQueueMode);
 		}
+	}
+
+	/**
+	 * Sorts the given list according to the current sending queue
+	 * mode (see {@link #compareByQueueMode(Message, Message)} for the
+	 * sorting modes). The list can contain either Message or
+	 * Tuple<Message, Connection> objects. Other objects cause error.
+	 * @param list The list to sort
+	 * @return The sorted list
+	 */
+	@SuppressWarnings(value = "unchecked") /* ugly way to make this generic */
+	protected List sortByQueueMode(List list) {
+		Collections.sort(list,
+				new Comparator() {
+			/** Compares two tuples or messages by the queue mode */
+			public int compare(Object o1, Object o2) {
+				Message m1, m2;
+
+				if (o1 instanceof Tuple) {
+					m1 = ((Tuple<Message, Connection>)o1).getKey();
+					m2 = ((Tuple<Message, Connection>)o2).getKey();
+				}
+				else if (o1 instanceof Message) {
+					m1 = (Message)o1;
+					m2 = (Message)o2;
+				}
+				else {
+					throw new SimError("Invalid type of objects in " +
+							"the list");
+				}
+
+				return compareByQueueMode(m1, m2);
+			}
+		});
 
 		return list;
 	}
@@ -567,6 +607,14 @@ public abstract class MessageRouter {
 	protected int compareByQueueMode(Message m1, Message m2) {
 		switch (sendQueueMode) {
 		case Q_MODE_RANDOM:
+			boolean in1 = messages.contains(m1.getId());
+			boolean in2 = messages.contains(m2.getId());
+			if (in1 && in2) {
+				/* the random order of the buffer */
+				return messages.randomOrder().compare(m1, m2);
+			} else if (in1 != in2) {
+				return in1 ? -1 : 1; /* buffered messages first */
+			}
 			/* return randomly (enough) but consistently -1, 0 or 1 */
 			int hash_diff = m1.hashCode() - m2.hashCode();
 			if (hash_diff == 0) {
@@ -6,6 +6,7 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -64,6 +65,20 @@ public class ContactJson {
 		return c;
 	}
 	
+	/**
+	 * Create the contact using a lookup table for the hosts
+	 * @param hosts Hosts of the scenario by their address
+	 * @return The contact
+	 */
+	public Contact toContact(Map<Integer, DTNHost> hosts) {
+		DTNHost a = hosts.get(host_a_addr);
+		DTNHost b = hosts.get(host_b_addr);
+		assert(a != null && b != null);
+		Contact c = new Contact(a, b, start, end);
+		c.set_transmission_speed(transmission_speed);
+		return c;
+	}
+	
 	public int scenario_hash() {
 		return this.scenario_hash;
 	}
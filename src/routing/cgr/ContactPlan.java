@@ -0,0 +1,157 @@
+package routing.cgr;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import core.DTNHost;
+
+/**
+ * Immutable contact plan shared by all the routers of a simulation run.
+ * <p>
+ * The plan is loaded once and never modified: the capacity each router
+ * consumes is kept in the router's own {@link Graph}, which uses the plan
+ * as its base layer. Instead of storing the edges of the contact graph, the
+ * contacts are indexed by host. The edges of a vertex are the contacts of its
+ * two hosts that end after the vertex begins, so they are found with a
+ * binary search on the host's contacts ordered by end time.
+ */
+public class ContactPlan {
+
+	private static final Comparator<Vertex> BY_END =
+			Comparator.comparing(Vertex::end).thenComparing(Vertex::get_id);
+
+	private Map<String, Vertex> vertices;
+	private List<Vertex> vertex_list;
+	private Map<DTNHost, List<Vertex>> host_vertices;
+
+	/**
+	 * Creates the plan and the host index
+	 * @param contacts Contacts of the plan (without duplicates)
+	 */
+	public ContactPlan(Collection<Contact> contacts) {
+		vertices = new HashMap<>();
+		vertex_list = new ArrayList<>(contacts.size());
+		host_vertices = new HashMap<>();
+
+		for (Contact c : contacts) {
+			String v_id = "vertex_" + c.contact_id();
+			Vertex v = new Vertex(v_id, c, false);
+			vertices.put(v_id, v);
+			vertex_list.add(v);
+			for (DTNHost h : v.get_hosts()) {
+				host_vertices.computeIfAbsent(h, k -> new ArrayList<>()).add(v);
+			}
+		}
+
+		vertex_list.sort(BY_END);
+		for (List<Vertex> lv : host_vertices.values()) {
+			lv.sort(BY_END);
+		}
+		vertex_list = Collections.unmodifiableList(vertex_list);
+		vertices = Collections.unmodifiableMap(vertices);
+	}
+
+	/**
+	 * Return the vertex of the plan with the given id
+	 * @param id Vertex id
+	 * @return The vertex or null if the plan doesn't have it
+	 */
+	public Vertex get_vertex(String id) {
+		return vertices.get(id);
+	}
+
+	/**
+	 * @return All the vertices of the plan ordered by their end time
+	 */
+	public List<Vertex> get_vertices() {
+		return vertex_list;
+	}
+
+	/**
+	 * Return the vertices that the host participates in
+	 * @param h The host
+	 * @return The vertices ordered by their end time
+	 */
+	public List<Vertex> get_vertices(DTNHost h) {
+		List<Vertex> lv = host_vertices.get(h);
+		if (lv == null) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(lv);
+	}
+
+	public int size() {
+		return vertex_list.size();
+	}
+
+	/**
+	 * Create the edges parting from a vertex: one to each contact that has a
+	 * common host with it and ends after it begins. Contacts of the same pair of
+	 * hosts are not connected.
+	 * @param v Vertex of this plan
+	 * @return List of edges
+	 */
+	public List<Edge> get_edges(Vertex v) {
+		List<Edge> le = new ArrayList<>();
+		for (DTNHost h : v.get_hosts()) {
+			List<Vertex> lv = host_vertices.get(h);
+			if (lv == null) {
+				continue;
+			}
+			for (int i = first_ending_after(lv, v.begin()), n = lv.size(); i < n; i++) {
+				Vertex dst = lv.get(i);
+				if (!dst.get_hosts().equals(v.get_hosts())) {
+					le.add(new Edge(v, dst));
+				}
+			}
+		}
+		return le;
+	}
+
+	/**
+	 * Find the vertices of the plan that have an edge to a vertex
+	 * (see {@link #get_edges(Vertex)})
+	 * @param v Vertex of this plan
+	 * @return List of the source vertices
+	 */
+	public List<Vertex> get_sources(Vertex v) {
+		List<Vertex> sources = new ArrayList<>();
+		for (DTNHost h : v.get_hosts()) {
+			List<Vertex> lv = host_vertices.get(h);
+			if (lv == null) {
+				continue;
+			}
+			for (Vertex src : lv) {
+				if (src.begin() < v.end() && !src.get_hosts().equals(v.get_hosts())) {
+					sources.add(src);
+				}
+			}
+		}
+		return sources;
+	}
+
+	/**
+	 * Binary search for the first vertex of the list ending after time t
+	 * @param lv Vertices ordered by end time
+	 * @param t The time
+	 * @return Index of the vertex or lv.size() if all end before t
+	 */
+	static int first_ending_after(List<Vertex> lv, double t) {
+		int lo = 0;
+		int hi = lv.size();
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (lv.get(mid).end() > t) {
+				hi = mid;
+			} else {
+				lo = mid + 1;
+			}
+		}
+		return lo;
+	}
+}
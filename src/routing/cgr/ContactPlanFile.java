@@ -0,0 +1,152 @@
+package routing.cgr;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import core.DTNHost;
+
+/**
+ * Binary contact plan file with all the contacts of a scenario.
+ * <p>
+ * Each contact is saved once and the contacts are stored by column, so
+ * the file can be read with a single memory mapping. Layout (big endian):
+ * <pre>
+ * int    magic ("CPLN")
+ * int    version
+ * int    scenario hash
+ * int    number of hosts (h)
+ * h x    (int address, short name length, UTF-8 name)
+ * int    number of contacts (n)
+ * int[n]    address of host a
+ * int[n]    address of host b
+ * double[n] begin
+ * double[n] end
+ * int[n]    transmission speed
+ * </pre>
+ */
+public class ContactPlanFile {
+
+	private static final int MAGIC = 0x43504c4e;
+	private static final int VERSION = 1;
+
+	/**
+	 * Write a contact plan
+	 * @param f The file
+	 * @param scenario_hash Hash of the scenario
+	 * @param hosts Hosts of the scenario
+	 * @param contacts Contacts of the plan
+	 * @throws IOException if the file could not be written
+	 */
+	public static void write(File f, int scenario_hash, List<DTNHost> hosts,
+			Collection<Contact> contacts) throws IOException {
+		List<byte[]> names = new ArrayList<>(hosts.size());
+		int size = 5 * Integer.BYTES;
+		for (DTNHost h : hosts) {
+			byte[] name = h.toString().getBytes(StandardCharsets.UTF_8);
+			names.add(name);
+			size += Integer.BYTES + Short.BYTES + name.length;
+		}
+		int n = contacts.size();
+		size += n * (3 * Integer.BYTES + 2 * Double.BYTES);
+
+		ByteBuffer buf = ByteBuffer.allocate(size);
+		buf.putInt(MAGIC).putInt(VERSION).putInt(scenario_hash).putInt(hosts.size());
+		for (int i = 0; i < hosts.size(); i++) {
+			buf.putInt(hosts.get(i).getAddress());
+			buf.putShort((short)names.get(i).length).put(names.get(i));
+		}
+		buf.putInt(n);
+		for (Contact c : contacts) {
+			buf.putInt(c.get_hosts().get(0).getAddress());
+		}
+		for (Contact c : contacts) {
+			buf.putInt(c.get_hosts().get(1).getAddress());
+		}
+		for (Contact c : contacts) {
+			buf.putDouble(c.begin());
+		}
+		for (Contact c : contacts) {
+			buf.putDouble(c.end());
+		}
+		for (Contact c : contacts) {
+			buf.putInt(c.get_transmission_speed());
+		}
+		buf.flip();
+
+		try (RandomAccessFile raf = new RandomAccessFile(f, "rw");
+				FileChannel fc = raf.getChannel()) {
+			fc.truncate(0);
+			while (buf.hasRemaining()) {
+				fc.write(buf);
+			}
+		}
+	}
+
+	/**
+	 * Read a contact plan
+	 * @param f The file
+	 * @param scenario_hash Hash of the current scenario
+	 * @param hosts Hosts of the current scenario
+	 * @return The contacts or null if the file does not exist or was created
+	 * for another scenario
+	 * @throws IOException if the file could not be read
+	 */
+	public static List<Contact> read(File f, int scenario_hash, List<DTNHost> hosts)
+			throws IOException {
+		if (!f.exists()) {
+			return null;
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(f, "r");
+				FileChannel fc = raf.getChannel()) {
+			MappedByteBuffer buf = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+			if (buf.remaining() < 4 * Integer.BYTES || buf.getInt() != MAGIC) {
+				System.out.println("Not a contact plan file: " + f);
+				return null;
+			}
+			if (buf.getInt() != VERSION || buf.getInt() != scenario_hash ||
+					buf.getInt() != hosts.size()) {
+				return null;
+			}
+
+			Map<Integer, DTNHost> by_address = new HashMap<>();
+			for (DTNHost h : hosts) {
+				int address = buf.getInt();
+				byte[] name = new byte[buf.getShort()];
+				buf.get(name);
+				if (address != h.getAddress() ||
+						!h.toString().equals(new String(name, StandardCharsets.UTF_8))) {
+					return null; // hosts differ although the hash is the same
+				}
+				by_address.put(address, h);
+			}
+
+			int n = buf.getInt();
+			int a_pos = buf.position();
+			int b_pos = a_pos + n * Integer.BYTES;
+			int begin_pos = b_pos + n * Integer.BYTES;
+			int end_pos = begin_pos + n * Double.BYTES;
+			int speed_pos = end_pos + n * Double.BYTES;
+
+			List<Contact> contacts = new ArrayList<>(n);
+			for (int i = 0; i < n; i++) {
+				DTNHost a = by_address.get(buf.getInt(a_pos + i * Integer.BYTES));
+				DTNHost b = by_address.get(buf.getInt(b_pos + i * Integer.BYTES));
+				Contact c = new Contact(a, b, buf.getDouble(begin_pos + i * Double.BYTES),
+						buf.getDouble(end_pos + i * Double.BYTES));
+				c.set_transmission_speed(buf.getInt(speed_pos + i * Integer.BYTES));
+				contacts.add(c);
+			}
+			return contacts;
+		}
+	}
+}
@@ -5,21 +5,20 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 
 import core.DTNHost;
+import core.DTNSim;
 import core.SimClock;
 import core.SimScenario;
 
@@ -29,13 +28,29 @@ public class ContactPlanHandler {
 	Map<String, Contact> contact_map;
 	Map<String, Contact> contacts_ready;
 	private int scenario_hash;
+	/* contact plan shared by all routers, loaded on the first request */
+	private ContactPlan plan;
+	private boolean plan_loaded;
+	private boolean plan_saved;
 	private static boolean finished;
 	private static int counter;
 	
     private static final String CONTACT_PLAN_D = File.separatorChar + 
     		"data" + File.separatorChar + "contact_plans" + File.separatorChar;
+    /** Name of the binary contact plan file ({@value}) */
+    public static final String CONTACT_PLAN_F = "contact_plan.bin";
     private static String CPLAN_DIR;
 
+	static {
+		DTNSim.registerForReset(ContactPlanHandler.class.getCanonicalName());
+	}
+
+	/**
+	 * Forget the handler (and the loaded contact plan) of the previous run
+	 */
+	public static void reset() {
+		cpl = null;
+	}
 
 	
 	static public ContactPlanHandler get() {
@@ -164,107 +179,108 @@ public class ContactPlanHandler {
      * @return True if all hosts are found with the right hash. False otherwise.
      */
     public boolean has_contact_plan() {
-    	boolean ret = true;
-    	for (DTNHost host : SimScenario.getInstance().getHosts()) {
-    		List<ContactJson> contacts_json = load_contacts(absolute_filename(host));
-    		if (contacts_json == null) { 
-    			ret = false;			// some host file was not present 
-    			break;
-    		} 
-    		if (contacts_json.size() > 0) {
-    			ContactJson cj = contacts_json.get(0);
-    			if (getScenarioHash() != cj.scenario_hash()) {
-    				ret = false; 		// host has a different hash
-    				break;
-    			}
-    		}
-    	}  	
-    	return ret;
+    	return get_contact_plan() != null;
     }
     
     /**
-     * After verifying that there is a contact plan (has_contact_plan()), 
-     * we can load the contacts as vertices 
-     * @return
+     * Return the contact plan of this scenario. The plan is read from disk only
+     * once and shared by all the routers.
+     * @return The contact plan or null if there is no plan for this scenario
      */
-    public Map<String, Vertex> load_vertices_from_file() {
-    	Map<String, Vertex> vertices = new HashMap<>();
-    	Set<Contact> cs = new HashSet<>();
-    	
-    	for (DTNHost host : SimScenario.getInstance().getHosts()) {
-    		List<ContactJson> contacts_json = load_contacts(absolute_filename(host));
-    		for (ContactJson cj : contacts_json) {
-    			cs.add(cj.toContact());
-    		}
+    public ContactPlan get_contact_plan() {
+    	if (!plan_loaded) {
+    		plan = load_contact_plan();
+    		plan_loaded = true;
     	}
-    	
-    	for (Contact c : cs) {
-    		String v_id = "vertex_" + c.contact_id();
-    		vertices.put(v_id, new Vertex(v_id, c, false));
+    	return plan;
+    }
+    
+    /**
+     * Read the contact plan from the binary contact plan file. If there is no
+     * binary plan for this scenario, the contacts are read from the JSON files of
+     * the hosts (older format) and converted to a binary plan.
+     * @return The contact plan or null if there is no plan for this scenario
+     */
+    private ContactPlan load_contact_plan() {
+    	List<Contact> contacts = null;
+    	try {
+    		contacts = ContactPlanFile.read(plan_file(), getScenarioHash(),
+    				SimScenario.getInstance().getHosts());
+    	} catch (IOException e) {
+    		e.printStackTrace();
     	}
-    	
-    	return vertices;
+    	if (contacts == null) {
+    		contacts = load_json_contacts();
+    		if (contacts != null) {
+    			save_plan_file(contacts);
+    		}
+    	}
+    	return contacts == null ? null : new ContactPlan(contacts);
     }
     
     /**
-     * Create a Map of vertices to list of edges
-     * @param v_hashmap The vertices hashmap
-     * @return
+     * Read the contacts of all hosts from the JSON files. Each contact is saved
+     * in the files of both its hosts, but returned only once.
+     * @return The contacts or null if some host file was not present or
+     * has a different hash
      */
-    public Map<String, List<Edge>> edges_from_vertices(Map<String, Vertex> v_hashmap){
-    	Map<String, List<Edge>> edges = new HashMap<>();
-    	Set<Vertex> v_set = new HashSet<>();
-		for (Vertex v : v_hashmap.values()) {
-			v_set.add(v);
-		}
-    	
-		for (Vertex v1 : v_set) {
-			edges.put(v1.get_id(), new LinkedList<>());
-			for (Vertex v2 : v_set) {
-				if (v1.get_common_host(v2) != null && v1.begin() < v2.end()) {
-					if ( v1.get_hosts().equals(v2.get_hosts()) ) {
-						continue; // do not create vertices to itself
-					}
-					edges.get(v1.get_id()).add(new Edge(v1, v2));
-				}
-			}
-		}
+    private List<Contact> load_json_contacts() {
+    	Map<Integer, DTNHost> hosts = new HashMap<>();
+    	for (DTNHost host : SimScenario.getInstance().getHosts()) {
+    		hosts.put(host.getAddress(), host);
+    	}
     	
-    	return edges;
+    	Map<String, Contact> contacts = new LinkedHashMap<>();
+    	for (DTNHost host : SimScenario.getInstance().getHosts()) {
+    		List<ContactJson> contacts_json = load_contacts(absolute_filename(host));
+    		if (contacts_json == null) {
+    			return null;			// some host file was not present 
+    		}
+    		for (ContactJson cj : contacts_json) {
+    			if (getScenarioHash() != cj.scenario_hash()) {
+    				return null; 		// host has a different hash
+    			}
+    			Contact c = cj.toContact(hosts);
+    			contacts.putIfAbsent(c.contact_id(), c);
+    		}
+    	}
+    	return new ArrayList<>(contacts.values());
     }
 
     /**
-     * Create the graph from disk
+     * Create the graph of a router. The graph keeps the router's changes on top
+     * of the shared contact plan.
      * @return	Contact Graph
      */
     public Graph load_graph() {
-    	Map<String, Vertex> vertices = load_vertices_from_file();
-    	Map<String, List<Edge>> edges = edges_from_vertices(vertices);
-    	return new Graph(vertices, edges);
+    	return new Graph(get_contact_plan());
     }
     
     /**
-     * Save all contacts from this hosts that are still not saved
+     * Save the contact plan. All contacts are saved to the binary contact plan
+     * file when the first host is saved; for the other hosts there is nothing
+     * left to do.
      * @param h Host to be saved
      */
     public void save_contacts(DTNHost h) {
-    	List<String> json_list = new LinkedList<>();
-    	ContactJson cj;
-    	for (Contact c : contacts_ready.values()) {
-    		if (c.get_hosts().contains(h)) {
-    			cj = new ContactJson(c, getScenarioHash());
-    			json_list.add(cj.toJson());
-    		}
+    	if (!plan_saved) {
+    		save_plan_file(contacts_ready.values());
+    		plan_saved = true;
     	}
-        try ( PrintWriter writer = new PrintWriter(absolute_filename(h))) {
-            writer.write("[" + String.join(",", json_list) + "]");
-            writer.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
     }
     
-
+    private File plan_file() {
+    	return new File(CPLAN_DIR + CONTACT_PLAN_F);
+    }
+    
+    private void save_plan_file(Collection<Contact> contacts) {
+    	try {
+    		ContactPlanFile.write(plan_file(), getScenarioHash(),
+    				SimScenario.getInstance().getHosts(), contacts);
+    	} catch (IOException e) {
+    		e.printStackTrace();
+    	}
+    }
 
     // TODO: AUXILIARY METHODS --> COULD BE MOVED TO UTILS
     
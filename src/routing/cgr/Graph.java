@@ -1,20 +1,80 @@
 package routing.cgr;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 
+import core.DTNHost;
 import core.Message;
+import util.Tuple;
 
+/**
+ * Contact graph of a router.
+ * <p>
+ * A graph created from a shared {@link ContactPlan} keeps only its own changes:
+ * the vertices whose capacity was consumed (copied on the first change), the
+ * vertices created by splitting contacts and the edges from/to them.
+ * Everything else is read from the plan, which is never modified. A graph
+ * created from maps has all its vertices and edges in the maps.
+ * <p>
+ * The ids kept on the maps are also queued by their end time, so pruning
+ * removes the ended ones from the front of the queue instead of scanning the
+ * maps. The pivots of a route search are never added to the graph.
+ * <p>
+ * The contact version changes when contacts or edges are added to or removed
+ * from the graph from outside, i.e., when routes found earlier may no longer
+ * be the best ones. Consuming capacity does not change it: a contact that is
+ * split by {@link #consume_path(Path, Message, double)} remembers the fragment
+ * split off its end, so a route found earlier can continue on the fragment.
+ */
 public class Graph {
 
 	private Map<String, Vertex> vertices;
 	private Map<String, List<Edge>> edges;
+	/* shared base layer, null if everything is in the maps */
+	private ContactPlan plan;
+	/* vertices ending before this time are pruned */
+	private double pruned_until;
+	/* (end, id) of the ids on the maps, the ones ending first at the head */
+	private PriorityQueue<Tuple<Double, String>> expiry;
+	/* id of the fragment split off the end of a contact, by contact id */
+	private Map<String, String> fragments;
+	private int contact_version;
 	
 	public Graph(Map<String, Vertex> vmap , Map<String, List<Edge>> le) {
 		vertices = vmap;
 		edges = le;
+		pruned_until = Double.NEGATIVE_INFINITY;
+		expiry = new PriorityQueue<>(Comparator.comparing(Tuple::getKey));
+		fragments = new HashMap<>();
+		contact_version = 0;
+		for (String id : vertices.keySet()) {
+			track(id);
+		}
+		for (String id : edges.keySet()) {
+			if (!vertices.containsKey(id)) {
+				track(id);
+			}
+		}
+	}
+	
+	/**
+	 * Create a graph on top of a shared contact plan
+	 * @param cp the contact plan
+	 */
+	public Graph(ContactPlan cp) {
+		vertices = new HashMap<>();
+		edges = new HashMap<>();
+		plan = cp;
+		pruned_until = Double.NEGATIVE_INFINITY;
+		expiry = new PriorityQueue<>(Comparator.comparing(Tuple::getKey));
+		fragments = new HashMap<>();
+		contact_version = 0;
 	}
 	
 	/**
@@ -24,6 +84,18 @@ public class Graph {
 	public Graph(Graph graph) {
 		init_vertices(graph);
 		init_edges(graph);
+		if (graph == null) {
+			pruned_until = Double.NEGATIVE_INFINITY;
+			expiry = new PriorityQueue<>(Comparator.comparing(Tuple::getKey));
+			fragments = new HashMap<>();
+			contact_version = 0;
+		} else {
+			plan = graph.plan;
+			pruned_until = graph.pruned_until;
+			expiry = new PriorityQueue<>(graph.expiry);
+			fragments = new HashMap<>(graph.fragments);
+			contact_version = graph.contact_version;
+		}
 	}
 	
 	private void init_vertices(Graph g) {
@@ -58,14 +130,246 @@ public class Graph {
 		return copy;
 	}
 	
+	/**
+	 * @return the vertices kept on this graph (not the ones of the contact plan)
+	 */
 	public Map<String, Vertex> get_vertice_map() {
 		return vertices;
 	}
 	
+	/**
+	 * @return the edges kept on this graph (not the ones of the contact plan)
+	 */
 	public Map<String, List<Edge>> get_edges() {
 		return edges;
 	}
 	
+	/**
+	 * @param id vertex id
+	 * @return the current version of the vertex or null if there is no such vertex
+	 * or it was pruned
+	 */
+	public Vertex get_vertex(String id) {
+		Vertex v = vertices.get(id);
+		if (v == null && plan != null) {
+			v = plan.get_vertex(id);
+		}
+		if (v == null || v.end() < pruned_until) {
+			return null;
+		}
+		return v;
+	}
+	
+	/**
+	 * @return all the vertices that are not pruned
+	 */
+	public List<Vertex> get_vertices() {
+		if (plan == null) {
+			return new ArrayList<>(vertices.values());
+		}
+		List<Vertex> lv = new ArrayList<>(plan.size() + vertices.size());
+		add_plan_vertices(plan.get_vertices(), lv);
+		add_local_vertices(null, lv);
+		return lv;
+	}
+	
+	/**
+	 * @param h a host
+	 * @return the vertices (not pruned) that the host participates in
+	 */
+	public List<Vertex> get_vertices(DTNHost h) {
+		List<Vertex> lv = new ArrayList<>();
+		if (plan != null) {
+			add_plan_vertices(plan.get_vertices(h), lv);
+		}
+		add_local_vertices(h, lv);
+		return lv;
+	}
+	
+	private void add_plan_vertices(List<Vertex> pv, List<Vertex> lv) {
+		/* the plan vertices are ordered by end time: skip the ones ending before
+		 * pruned_until */
+		int first = ContactPlan.first_ending_after(pv, Math.nextDown(pruned_until));
+		for (int i = first, n = pv.size(); i < n; i++) {
+			Vertex v = get_vertex(pv.get(i).get_id());
+			if (v != null) {
+				lv.add(v);
+			}
+		}
+	}
+	
+	private void add_local_vertices(DTNHost h, List<Vertex> lv) {
+		for (Vertex v : vertices.values()) {
+			if (plan != null && plan.get_vertex(v.get_id()) != null) {
+				continue; // already added from the plan
+			}
+			if (h == null || v.get_hosts().contains(h)) {
+				lv.add(v);
+			}
+		}
+	}
+	
+	/**
+	 * @param v a vertex of this graph
+	 * @return the edges parting from the vertex
+	 */
+	public List<Edge> get_edges(Vertex v) {
+		List<Edge> local = edges.get(v.get_id());
+		if (local != null) {
+			// edges to pruned vertices are dropped when they are first seen
+			local.removeIf(e -> get_vertex(e.get_dest_id()) == null);
+		}
+		Vertex pv = plan == null ? null : plan.get_vertex(v.get_id());
+		if (pv == null) {
+			return local == null ? Collections.emptyList() : local;
+		}
+		List<Edge> le = plan.get_edges(pv);
+		if (local != null) {
+			le.addAll(local);
+		}
+		return le;
+	}
+	
+	/**
+	 * @return the contact version, which changes when contacts or edges are
+	 * added or removed (but not when capacity is consumed)
+	 */
+	public int get_contact_version() {
+		return contact_version;
+	}
+	
+	/**
+	 * @param v a vertex of this graph
+	 * @return the fragment that was split off the end of the vertex's contact
+	 * when its capacity was consumed, or null if there is none (or it was pruned)
+	 */
+	public Vertex get_fragment(Vertex v) {
+		String id = fragments.get(v.get_id());
+		return id == null ? null : get_vertex(id);
+	}
+	
+	/**
+	 * Add a vertex (with no edges) to this graph
+	 * @param v the vertex
+	 */
+	public void add_vertex(Vertex v) {
+		put_vertex(v);
+		contact_version++;
+	}
+	
+	public void add_edge(Edge e) {
+		put_edge(e);
+		contact_version++;
+	}
+	
+	private void put_vertex(Vertex v) {
+		boolean known = is_kept(v.get_id());
+		vertices.put(v.get_id(), v);
+		edges.put(v.get_id(), new LinkedList<>());
+		if (!known) {
+			track(v.get_id());
+		}
+	}
+	
+	private void put_edge(Edge e) {
+		String src = e.get_src_id();
+		boolean known = is_kept(src);
+		edges.computeIfAbsent(src, k -> new LinkedList<>()).add(e);
+		if (!known) {
+			track(src);
+		}
+	}
+	
+	/**
+	 * @param id vertex id
+	 * @return true if the vertex or its edges are kept on this graph's maps
+	 */
+	private boolean is_kept(String id) {
+		return vertices.containsKey(id) || edges.containsKey(id);
+	}
+	
+	/**
+	 * Return the time until the maps must keep a vertex: the end of the plan's
+	 * vertex if it has one (a consumed copy hides it until then), else the
+	 * end of the vertex on the maps.
+	 * @param id vertex id
+	 * @return the end time or -infinity if the vertex is unknown
+	 */
+	private double kept_until(String id) {
+		Vertex v = plan == null ? null : plan.get_vertex(id);
+		if (v == null) {
+			v = vertices.get(id);
+		}
+		return v == null ? Double.NEGATIVE_INFINITY : v.end();
+	}
+	
+	/**
+	 * Queue an id of the maps for pruning
+	 * @param id vertex id
+	 */
+	private void track(String id) {
+		expiry.add(new Tuple<>(kept_until(id), id));
+	}
+	
+	public void remove_edge(Edge e) {
+		String src = e.get_src_id();
+		List<Edge> le = edges.get(src);
+		if (le == null) {
+			return;
+		}
+		le.remove(e);
+		if (le.isEmpty() && plan != null && plan.get_vertex(src) != null) {
+			edges.remove(src); // nothing left over the plan edges
+		}
+		contact_version++;
+	}
+	
+	/**
+	 * Delete ended contacts and their edges. The edges that point to them are
+	 * dropped when the edges of their source are next read.
+	 * <p>
+	 * Only the ids ending before now are taken from the head of the expiry
+	 * queue, so the cost is proportional to the number of pruned vertices.
+	 * 
+	 * @param now current simulation time
+	 */
+	public void prune(double now) {
+		while (!expiry.isEmpty() && expiry.peek().getKey() < now) {
+			String id = expiry.poll().getValue();
+			double end = kept_until(id);
+			if (end < now) {
+				vertices.remove(id);
+				edges.remove(id);
+				fragments.remove(id);
+			} else if (is_kept(id)) {
+				expiry.add(new Tuple<>(end, id)); // still needed
+			}
+		}
+		pruned_until = Math.max(pruned_until, now);
+	}
+	
+	/**
+	 * Return the vertex whose capacity can be consumed. Vertices of the contact
+	 * plan are copied to this graph first.
+	 * @param v vertex of the graph
+	 * @return the vertex to change
+	 */
+	private Vertex local_vertex(Vertex v) {
+		if (plan == null) {
+			return v;
+		}
+		Vertex lv = vertices.get(v.get_id());
+		if (lv == null) {
+			boolean known = is_kept(v.get_id());
+			lv = v.deep_copy();
+			vertices.put(lv.get_id(), lv);
+			if (!known) {
+				track(lv.get_id());
+			}
+		}
+		return lv;
+	}
+	
 	/**
 	 * Split a contact if the communication starts in the middle and finishes before its end
 	 * @param n_start
@@ -77,11 +381,14 @@ public class Graph {
 	private void split_contact(double n_start, double o_end, double n_end, Vertex o_v, double epslon) {
 		Vertex n_v;
 		o_v.set_end(n_start);	// reduce original
+		if (plan == null || plan.get_vertex(o_v.get_id()) == null) {
+			track(o_v.get_id()); // ends earlier now
+		}
 		if((n_start + epslon * .001) < o_end) { // needs new vertices at the end
 			n_v = new Vertex(o_v, n_end, o_end);
-			vertices.put(n_v.get_id(), n_v);
-			edges.put(n_v.get_id(), new LinkedList<>());
-			for (Edge e: edges.get(o_v.get_id())) {
+			put_vertex(n_v);
+			fragments.put(o_v.get_id(), n_v.get_id());
+			for (Edge e: get_edges(o_v)) {
 				edges.get(n_v.get_id()).add(new Edge(n_v, e.get_dst_vertex()));
 			}
 			// copy the edges that arrived at the original node to the new created one
@@ -93,9 +400,15 @@ public class Graph {
 					}
 				}
 			}
+			Vertex pv = plan == null ? null : plan.get_vertex(o_v.get_id());
+			if (pv != null) {
+				for (Vertex src : plan.get_sources(pv)) {
+					to_add.add(new Edge(src, n_v));
+				}
+			}
 
 			for (Edge e: to_add) {
-				edges.get(e.get_src_vertex().get_id()).add(e);
+				put_edge(e);
 			}
 		}		
 	}
@@ -131,6 +444,7 @@ public class Graph {
 		List<Vertex> fragmented_vertices = new LinkedList<>();
 		
 		for (Vertex v : path_as_list) {
+			v = local_vertex(v);
 			comm_start = Math.max(comm_start, v.adjusted_begin()); // time when transmission takes place
 			// TODO: iri move the round function to another place, together with a contains for tuple
 			comm_ends = ContactPlanHandler.round(comm_start + (double)msize/v.get_transmission_speed(), 2); 
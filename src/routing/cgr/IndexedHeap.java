@@ -0,0 +1,152 @@
+package routing.cgr;
+
+import java.util.Arrays;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * Binary min-heap of int elements (vertex indexes) ordered by a double key.
+ * The heap position of each element is tracked, so the key of a queued element
+ * can be changed (decrease-key) and any element can be removed in O(log n).
+ * Elements with equal keys are ordered by the tie breaker.
+ */
+class IndexedHeap {
+
+	private int[] heap;
+	private int size;
+	/* position of each element in the heap, -1 if not queued */
+	private int[] pos;
+	private double[] key;
+	private IntBinaryOperator tie_breaker;
+
+	IndexedHeap(IntBinaryOperator tie_breaker) {
+		this.tie_breaker = tie_breaker;
+		heap = new int[16];
+		pos = new int[16];
+		key = new double[16];
+		Arrays.fill(pos, -1);
+		size = 0;
+	}
+
+	void clear() {
+		for (int i = 0; i < size; i++) {
+			pos[heap[i]] = -1;
+		}
+		size = 0;
+	}
+
+	boolean is_empty() {
+		return size == 0;
+	}
+
+	boolean contains(int e) {
+		return e < pos.length && pos[e] >= 0;
+	}
+
+	/**
+	 * @return the element with the smallest key
+	 */
+	int peek() {
+		return heap[0];
+	}
+
+	/**
+	 * Add an element or change the key of a queued element
+	 * @param e the element
+	 * @param k its key
+	 */
+	void push_or_update(int e, double k) {
+		ensure_capacity(e + 1);
+		if (pos[e] < 0) {
+			heap[size] = e;
+			pos[e] = size;
+			key[e] = k;
+			sift_up(size++);
+		} else {
+			double old = key[e];
+			key[e] = k;
+			if (k < old) {
+				sift_up(pos[e]);
+			} else {
+				sift_down(pos[e]);
+			}
+		}
+	}
+
+	/**
+	 * Remove an element from the heap (if queued)
+	 * @param e the element
+	 */
+	void remove(int e) {
+		if (!contains(e)) {
+			return;
+		}
+		int p = pos[e];
+		pos[e] = -1;
+		size--;
+		if (p != size) {
+			int last = heap[size];
+			heap[p] = last;
+			pos[last] = p;
+			sift_down(p);
+			sift_up(pos[last]);
+		}
+	}
+
+	private boolean less(int a, int b) {
+		int c = Double.compare(key[a], key[b]);
+		if (c == 0) {
+			c = tie_breaker.applyAsInt(a, b);
+		}
+		return c < 0;
+	}
+
+	private void sift_up(int p) {
+		int e = heap[p];
+		while (p > 0) {
+			int parent = (p - 1) >>> 1;
+			int pe = heap[parent];
+			if (!less(e, pe)) {
+				break;
+			}
+			heap[p] = pe;
+			pos[pe] = p;
+			p = parent;
+		}
+		heap[p] = e;
+		pos[e] = p;
+	}
+
+	private void sift_down(int p) {
+		int e = heap[p];
+		while (true) {
+			int child = 2 * p + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && less(heap[child + 1], heap[child])) {
+				child++;
+			}
+			int ce = heap[child];
+			if (!less(ce, e)) {
+				break;
+			}
+			heap[p] = ce;
+			pos[ce] = p;
+			p = child;
+		}
+		heap[p] = e;
+		pos[e] = p;
+	}
+
+	private void ensure_capacity(int n) {
+		if (n <= pos.length) {
+			return;
+		}
+		int old = pos.length;
+		int len = Math.max(n, 2 * old);
+		heap = Arrays.copyOf(heap, len);
+		key = Arrays.copyOf(key, len);
+		pos = Arrays.copyOf(pos, len);
+		Arrays.fill(pos, old, len, -1);
+	}
+}
@@ -11,6 +11,14 @@ public class Path {
 	public Path () {
 	}
 
+	/**
+	 * Create a path from its vertices
+	 * @param vertices the vertices, starting from the first hop
+	 */
+	public Path (List<Vertex> vertices) {
+		path = new ArrayList<>(vertices);
+	}
+
 	private void init() {
 		if (path == null) {
 			path = new ArrayList<>();
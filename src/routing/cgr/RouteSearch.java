@@ -1,13 +1,17 @@
 package routing.cgr;
 
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
@@ -18,47 +22,149 @@ import util.Tuple;
 
 public class RouteSearch {
 
+	private Graph graph;
+	/* read-only views of the graph together with the pivots of the search */
 	private Map<String, Vertex> vertices;
 	private Map<String, List<Edge>> edges;
+	/* 
+	 * The pivots of the last search are kept here (not in the graph) until
+	 * the next search: the edges from the begin pivot, and the edge to the end
+	 * pivot of each contact connected to it.
+	 */
+	private Map<String, Vertex> pivots;
+	private Map<String, List<Edge>> pivot_edges;
+	private Map<String, Edge> to_end_pivot;
+	/* read-only views of the search state */
 	private Map<Vertex, Vertex> predecessors;
 	private Map<Vertex, Double> distances;
-	private Map<Vertex, Integer> hops;
-	private Set<Vertex> settled;
-	private SortedSet<Vertex> unsettled;
-	private Distance<Integer, Vertex, Vertex, Double> distance_measure;
+	private Distance<Integer, Double, Vertex, Double> distance_measure;
 	private double expire_time;
 
+	/* 
+	 * The search runs on int indexes given to the vertices (by id) when they are
+	 * first seen. The state of a vertex is valid only if its stamp equals the
+	 * epoch of the current search, so starting a search does not touch the state
+	 * of all vertices. The indexes of ended vertices are reused.
+	 */
+	private Map<String, Integer> index;
+	private int nrof_indexes;
+	private List<Integer> free_indexes;
+	/* (end, index) of the indexed vertices, the ones ending first at the head */
+	private PriorityQueue<Tuple<Double, Integer>> index_expiry;
+	private Vertex[] vertex_of;
+	private int[] stamp;
+	private double[] dist;
+	private int[] pred;
+	private int[] hops;
+	private boolean[] settled;
+	private int epoch;
+	/* ordered by adjusted begin and id of the vertices */
+	private IndexedHeap unsettled;
+	/* ids of vertices that may not be used as first hop */
+	private Set<String> excluded_first_hops;
+
 	public RouteSearch(Graph g) {
-		vertices = g.get_vertice_map();
-		edges = g.get_edges();
-		init_distances();
-		init_predecessors();
-		init_unsettled();
-		init_settled();
-		init_hops();
+		graph = g;
+		pivots = new HashMap<>();
+		pivot_edges = new HashMap<>();
+		to_end_pivot = new HashMap<>();
+		vertices = new VertexView();
+		edges = new EdgeView();
+		index = new HashMap<>();
+		nrof_indexes = 0;
+		free_indexes = new ArrayList<>();
+		index_expiry = new PriorityQueue<>(Comparator.comparing(Tuple::getKey));
+		init_arrays(64);
+		epoch = 0;
+		unsettled = new IndexedHeap((a, b) -> vertex_of[a].get_id().compareTo(vertex_of[b].get_id()));
+		excluded_first_hops = new HashSet<>();
+		distances = new DistanceView();
+		predecessors = new PredecessorView();
 		distance_measure = least_latency;
 		expire_time = Double.POSITIVE_INFINITY;
 	}
 	
-	private void init_distances() {
-		this.distances = new HashMap<>();
+	private void init_arrays(int n) {
+		vertex_of = new Vertex[n];
+		stamp = new int[n];
+		dist = new double[n];
+		pred = new int[n];
+		hops = new int[n];
+		settled = new boolean[n];
 	}
 	
-	private void init_predecessors() {
-		this.predecessors = new HashMap<>();
+	private void ensure_capacity(int n) {
+		if (n <= stamp.length) {
+			return;
+		}
+		int len = Math.max(n, 2 * stamp.length);
+		vertex_of = Arrays.copyOf(vertex_of, len);
+		stamp = Arrays.copyOf(stamp, len);
+		dist = Arrays.copyOf(dist, len);
+		pred = Arrays.copyOf(pred, len);
+		hops = Arrays.copyOf(hops, len);
+		settled = Arrays.copyOf(settled, len);
 	}
 	
-	private void init_unsettled() {
-		this.unsettled = new TreeSet<>(Comparator.comparing(Vertex::adjusted_begin)
-				.thenComparing(Vertex::get_id));
+	/**
+	 * Return the index of a vertex, giving it one if it has none yet
+	 * @param v the current version of the vertex
+	 * @return the index
+	 */
+	private int index_of(Vertex v) {
+		Integer i = index.get(v.get_id());
+		if (i == null) {
+			if (free_indexes.isEmpty()) {
+				i = nrof_indexes++;
+				ensure_capacity(nrof_indexes);
+			} else {
+				i = free_indexes.remove(free_indexes.size() - 1);
+			}
+			index.put(v.get_id(), i);
+			// the end of a vertex never grows, so the index is free after it
+			index_expiry.add(new Tuple<>(v.end(), i));
+		}
+		vertex_of[i] = v;
+		return i;
 	}
 	
-	private void init_settled() {
-		settled = new HashSet<>();
+	/**
+	 * Free the indexes of the vertices that ended before now
+	 * @param now current simulation time
+	 */
+	private void free_indexes(double now) {
+		while (!index_expiry.isEmpty() && index_expiry.peek().getKey() < now) {
+			int i = index_expiry.poll().getValue();
+			index.remove(vertex_of[i].get_id());
+			vertex_of[i] = null;
+			free_indexes.add(i);
+		}
 	}
 	
-	private void init_hops() {
-		hops = new HashMap<>();
+	/**
+	 * Initialize the state of a vertex if it was not yet seen on this search
+	 * @param i index of the vertex
+	 */
+	private void touch(int i) {
+		if (stamp[i] != epoch) {
+			stamp[i] = epoch;
+			dist[i] = Double.POSITIVE_INFINITY;
+			pred[i] = -1;
+			hops[i] = Integer.MAX_VALUE;
+			settled[i] = false;
+		}
+	}
+	
+	/**
+	 * @return index of the vertex if it was seen on the current search, -1
+	 * otherwise
+	 */
+	private int seen_index(Object o) {
+		if (!(o instanceof Vertex)) {
+			return -1;
+		}
+		Integer i = index.get(((Vertex)o).get_id());
+		return (i == null || stamp[i] != epoch) ? -1 : i;
 	}
 	
 	/**
@@ -79,13 +185,13 @@ public class RouteSearch {
 		public R apply(A a, B b, C c);
 	}
 
-	Distance<Integer, Vertex, Vertex, Double> least_latency = (size, cur, neighbor) -> {
+	Distance<Integer, Double, Vertex, Double> least_latency = (size, cur_distance, neighbor) -> {
 		double neighbor_transmission_time = (double) size / neighbor.get_transmission_speed();
-		return Math.max(distances.get(cur), neighbor.adjusted_begin()) + neighbor_transmission_time;
+		return Math.max(cur_distance, neighbor.adjusted_begin()) + neighbor_transmission_time;
 	};
 
-	Distance<Integer, Vertex, Vertex, Double> num_hops = (size, cur, neighbor) -> {
-		return distances.get(cur) + 1.0;
+	Distance<Integer, Double, Vertex, Double> num_hops = (size, cur_distance, neighbor) -> {
+		return cur_distance + 1.0;
 	};
 
 	/**
@@ -103,7 +209,7 @@ public class RouteSearch {
 	}
 	
 	/**
-	 * Create the a pivot and add it to vertices.
+	 * Create the a pivot of the current search (it is not added to the graph).
 	 * 
 	 * @param v_to_connect
 	 *            Vertices to which this pivot should connect to
@@ -123,17 +229,17 @@ public class RouteSearch {
 
 		Contact c = new Contact(h, h, 0.0, Double.POSITIVE_INFINITY);
 		Vertex pivot = new Vertex(c.get_id(), c, true);
-		String name = c.get_id();
-		vertices.put(name, pivot);
-		edges.put(pivot.get_id(), new LinkedList<>());
+		List<Edge> from_pivot = new LinkedList<>();
+		pivots.put(pivot.get_id(), pivot);
+		pivot_edges.put(pivot.get_id(), from_pivot);
 		pivot_obj_list.add(pivot);
 
 		for (Vertex v : v_to_connect) {
 			if (start) {
-				edges.get(pivot.get_id()).add(new Edge(pivot, v));
+				from_pivot.add(new Edge(pivot, v));
 			} else {
 				Edge to_pivot = new Edge(v, pivot);
-				edges.get(v.get_id()).add(to_pivot);
+				to_end_pivot.put(v.get_id(), to_pivot);
 				pivot_obj_list.add(to_pivot);
 			}
 		}
@@ -151,19 +257,18 @@ public class RouteSearch {
 	 *            Current simulation time
 	 */
 	private void init(Vertex pivot_begin, double now) {
-		settled.clear();
 		unsettled.clear();
-		predecessors.clear();
-		distances.clear();
-
-		for (Vertex v : vertices.values()) {
-			distances.put(v, Double.POSITIVE_INFINITY);
-			hops.put(v, Integer.MAX_VALUE);
-			predecessors.put(v, null);
+		if (epoch == Integer.MAX_VALUE) {
+			Arrays.fill(stamp, 0);
+			epoch = 0;
 		}
-		distances.replace(pivot_begin, now);
-		hops.replace(pivot_begin, 0);
-		unsettled.add(pivot_begin);
+		epoch++;
+
+		int b = index_of(pivot_begin);
+		touch(b);
+		dist[b] = now;
+		hops[b] = 0;
+		unsettled.push_or_update(b, pivot_begin.adjusted_begin());
 	}
 	
 	/**
@@ -189,41 +294,46 @@ public class RouteSearch {
 
 	/**
 	 * Delete ended contacts, their edges and the edges that point to them.
+	 * The pivots of the last search are discarded as well.
 	 * 
 	 * @param now
 	 *            current simulation time
-	 * @return the most recent contact from cur_host with begin before now
 	 */
 	private void prune(double now) {
-		Set<Vertex> to_delete = new HashSet<Vertex>();
-		Set<Edge> edges_to_delete = new HashSet<>();
-
-		for (Vertex v : vertices.values()) {
-			// pivots on vertices map is garbage from old runs.
-			if (v.end() < now || v.is_pivot()) { 
-				to_delete.add(v);
-			}
-		}
-		
-		// prune old vertices and its edges
-		for (Vertex v : to_delete) {
-			edges.remove(v.get_id());
-			vertices.remove(v.get_id());
-		}
-
-		// delete the edges that pointed to the above deleted vertices
-		for (List<Edge> le : edges.values()) {
-			for (Edge e : le) {
-				if (to_delete.contains(e.get_dst_vertex())){
-					edges_to_delete.add(e);
-				}
-			}
+		pivots.clear();
+		pivot_edges.clear();
+		to_end_pivot.clear();
+		graph.prune(now);
+		free_indexes(now);
+	}
+	
+	/**
+	 * @param id vertex id
+	 * @return the pivot or the current version of the vertex of the graph, null
+	 * if it was pruned
+	 */
+	private Vertex get_vertex(String id) {
+		Vertex p = pivots.get(id);
+		return p != null ? p : graph.get_vertex(id);
+	}
+	
+	/**
+	 * @param v vertex of the graph or pivot
+	 * @return the edges parting from the vertex, including the one to the end
+	 * pivot
+	 */
+	private List<Edge> get_edges(Vertex v) {
+		List<Edge> le = pivot_edges.get(v.get_id());
+		if (le != null) {
+			return le;
 		}
-		
-		for (Edge e : edges_to_delete) {
-			String src = e.get_src_vertex().get_id();
-			edges.get(src).remove(e);
+		le = graph.get_edges(v);
+		Edge to_pivot = to_end_pivot.get(v.get_id());
+		if (to_pivot != null) {
+			le = new ArrayList<>(le);
+			le.add(to_pivot);
 		}
+		return le;
 	}
 
 	/**
@@ -237,17 +347,20 @@ public class RouteSearch {
 
 	private void relax(Vertex v, Message m, List<DTNHost> blacklist) {
 		int size = m.getSize();
+		int vi = index_of(v);
+		touch(vi);
 
-		List<Vertex> neighbors = new ArrayList<>();
 		Vertex v_dst;
 		DTNHost h_dst;
 		double h_dst_capacity;
 		
-		List<Edge> toDelete = new ArrayList<>();
-		for (Edge e : edges.get(v.get_id())) {
+		for (Edge e : get_edges(v)) {
 			if (!(e.get_dst_begin() < this.expire_time)) continue;
-			v_dst = vertices.get(e.get_dest_id());
-			if (settled.contains(v_dst)) continue;
+			v_dst = get_vertex(e.get_dest_id());
+			if (v_dst == null) continue; // pruned
+			int n = index_of(v_dst);
+			touch(n);
+			if (settled[n]) continue;
 			if (!Collections.disjoint(v_dst.get_hosts(), blacklist)) continue;
 			if (!(v_dst.current_capacity() > size)) continue;
 			// verify that the destination host has space for the new message
@@ -257,24 +370,20 @@ public class RouteSearch {
 			h_dst_capacity = (v_dst.adjusted_begin() - v_dst.begin())* v_dst.get_transmission_speed();
 			
 			if (h_dst.getRouter().getFreeBufferSize() - h_dst_capacity < m.getSize()) continue;
-			neighbors.add(v_dst);
-		}
-		
-		for (Vertex n : neighbors) {
-			double at = (double) distance_measure.apply(size, v, n);
-			if (at < n.end()) {
-				if (at > distances.get(n)) {
+
+			double at = (double) distance_measure.apply(size, dist[vi], v_dst);
+			if (at < v_dst.end()) {
+				if (at > dist[n]) {
 					continue;
-				} else if (at < distances.get(n)) { // improved distance
-					predecessors.replace(n, v);
-					hops.put(n, hops.get(v) + 1);
-					distances.replace(n, at);
-					unsettled.remove(n); // remove if present, ignore otherwise
-					unsettled.add(n);	 // (re)insert the updated value. No effect if distance is unchanged
+				} else if (at < dist[n]) { // improved distance
+					pred[n] = vi;
+					hops[n] = hops[vi] + 1;
+					dist[n] = at;
+					unsettled.push_or_update(n, v_dst.adjusted_begin());
 				} else { // same distance
-					if (hops.get(n) > hops.get(v) + 1) { // we can achieve the same vertice with less hops
-						predecessors.replace(n, v);
-						hops.put(n, hops.get(v) + 1);
+					if (hops[n] > hops[vi] + 1) { // we can achieve the same vertice with less hops
+						pred[n] = vi;
+						hops[n] = hops[vi] + 1;
 					}
 				}
 			}
@@ -298,18 +407,19 @@ public class RouteSearch {
 	 */
 	public Vertex run_dijkstra(Vertex pivot_begin, Vertex pivot_end, double now, Message m, List<DTNHost> blacklist) {
 		Vertex next = null;
-		Vertex out = null;
 
 		init(pivot_begin, now);
+		int end = index_of(pivot_end);
 
-		while (!unsettled.isEmpty()) {
-			next = unsettled.first(); // unsettled is ordered
-			if (next.equals(pivot_end)) {
+		while (!unsettled.is_empty()) {
+			int i = unsettled.peek(); // unsettled is ordered
+			next = vertex_of[i];
+			if (i == end) {
 				break;
 			}
 			relax(next, m, blacklist);
-			unsettled.remove(next);
-			settled.add(next);
+			unsettled.remove(i);
+			settled[i] = true;
 		}
 		return next;
 	}
@@ -330,19 +440,14 @@ public class RouteSearch {
 		candidates.put("coi_src", new TreeSet<>(Comparator.comparing(Vertex::adjusted_begin).thenComparing(Vertex::get_id)));
 		candidates.put("coi_dst", new TreeSet<>(Comparator.comparing(Vertex::adjusted_begin).thenComparing(Vertex::get_id)));
 
-		for (Vertex c : vertices.values()) {
-			if (c.end() < now && c.adjusted_begin() > m.getTtl()) {
-				continue;
-			}
-			if (c.is_pivot()) {
-				continue;
-			}
-			List<DTNHost> hl = c.get_hosts();
-			// contacts including current host (used for pivot_begin) with enough capacity
-			if (hl.contains(h)  && c.current_capacity() > m.getSize()) {
+		// contacts including current host (used for pivot_begin) with enough capacity
+		for (Vertex c : graph.get_vertices(h)) {
+			if (is_contact_of_interest(c, now, m) && !excluded_first_hops.contains(c.get_id())) {
 				candidates.get("coi_src").add(c);
 			}
-			if (hl.contains(m.getTo()) && c.current_capacity() > m.getSize()) {
+		}
+		for (Vertex c : graph.get_vertices(m.getTo())) {
+			if (is_contact_of_interest(c, now, m)) {
 				candidates.get("coi_dst").add(c);
 			}
 		}
@@ -350,6 +455,13 @@ public class RouteSearch {
 		return candidates;
 	}
 
+	private boolean is_contact_of_interest(Vertex c, double now, Message m) {
+		if (c.end() < now && c.adjusted_begin() > m.getTtl()) {
+			return false;
+		}
+		return !c.is_pivot() && c.current_capacity() > m.getSize();
+	}
+
 	/**
 	 * Search least latency
 	 * 
@@ -383,20 +495,16 @@ public class RouteSearch {
 		pivot_end = run_dijkstra(pivot_begin, pivot_end, now, m, blacklist);
 		
 		//cleanup edges from vertices to end_pivots
-		for (Edge e: (List<Edge>)(Object)p_end.subList(1, p_end.size())) {
-			edges.get(e.get_src_id()).remove(e);
-		}
+		to_end_pivot.clear();
 		
 		return pivot_end;
 	}
 		
 		private double final_distance(Vertex pivot) {
 			double ret = 0.0;
-			if (pivot != null) {
-				if (predecessors.get(pivot) != null) {
-					Vertex pred = predecessors.get(pivot);
-					ret = distances.get(pred);
-				}
+			int i = seen_index(pivot);
+			if (i >= 0 && pred[i] >= 0) {
+				ret = dist[pred[i]];
 			}
 			return ret;
 		}
@@ -422,11 +530,7 @@ public class RouteSearch {
 		/* transform the ttl (minutes) to the expiration in time (time when the message was
 		*	created + original ttl
 		*/
-		if (m.getTtl() == Integer.MAX_VALUE) { // ttl not defined in msg. Get the value from config
-			this.expire_time = Integer.MAX_VALUE;
-		} else { 	// ttl is configured in message
-			this.expire_time = m.getTtl() * 60 + now;
-		}
+		this.expire_time = expire_time(m, now);
 
 		/*
 		 * Choose search type: If we aim for least latency, we are interested in the
@@ -467,4 +571,244 @@ public class RouteSearch {
 		return pivot_end;
 	}
 
+	private double expire_time(Message m, double now) {
+		if (m.getTtl() == Integer.MAX_VALUE) { // ttl not defined in msg. Get the value from config
+			return Integer.MAX_VALUE;
+		} else { 	// ttl is configured in message
+			return m.getTtl() * 60 + now;
+		}
+	}
+
+	/**
+	 * Search up to k routes with different first hops in one call. After each
+	 * search, the first contact of the found route is excluded from the start
+	 * candidates of the next search, so if the first hop of a route can not be
+	 * used, the next route is an alternative to it.
+	 * 
+	 * @param this_host
+	 *            the host calculating the routes
+	 * @param now
+	 *            simulation time
+	 * @param m
+	 *            message to be sent
+	 * @param configTtl
+	 *            the default ttl given in the config file
+	 * @param k
+	 *            maximum number of routes
+	 * @return the routes in the order they were found (best first)
+	 */
+	public List<Path> search_routes(DTNHost this_host, double now, Message m, int configTtl, int k) {
+		List<Path> routes = new ArrayList<>(k);
+		excluded_first_hops.clear();
+		for (int i = 0; i < k; i++) {
+			Vertex pivot_end = search(this_host, now, m, configTtl);
+			if (pivot_end == null || !pivot_end.is_pivot()) {
+				break;
+			}
+			Path p = get_path(pivot_end);
+			if (p.get_path_as_list().isEmpty()) {
+				break;
+			}
+			routes.add(p);
+			excluded_first_hops.add(p.get_path_as_list().get(0).get_id());
+		}
+		excluded_first_hops.clear();
+		return routes;
+	}
+
+	/**
+	 * Return the current version of the vertices of a route found earlier
+	 * @param route ids of the vertices of the route
+	 * @return the vertices or null if some of them were pruned
+	 */
+	public List<Vertex> get_route_vertices(List<String> route) {
+		List<Vertex> lv = new ArrayList<>(route.size());
+		for (String id : route) {
+			Vertex v = graph.get_vertex(id);
+			if (v == null) {
+				return null;
+			}
+			lv.add(v);
+		}
+		return lv;
+	}
+
+	/**
+	 * Check if a route found earlier can still deliver the message (using the
+	 * same criteria as the search) and calculate the arrival time of the message.
+	 * If a contact of the route can not carry the message anymore but a fragment
+	 * was split off its end when capacity was consumed, the fragment is tried
+	 * instead and it replaces the contact on the route.
+	 * 
+	 * @param route
+	 *            the current vertices of the route
+	 * @param this_host
+	 *            the host sending the message
+	 * @param now
+	 *            simulation time
+	 * @param m
+	 *            message to be sent
+	 * @return time when the last contact of the route delivers the message or
+	 *         infinity if the route can not be used
+	 */
+	public double route_arrival(List<Vertex> route, DTNHost this_host, double now, Message m) {
+		int size = m.getSize();
+		double expire = expire_time(m, now);
+		List<DTNHost> blacklist = m.getHops();
+		blacklist.remove(this_host);
+
+		DTNHost common = this_host;
+		double at = now;
+		for (int i = 0, n = route.size(); i < n; i++) {
+			Vertex v = route.get(i);
+			if (!v.get_hosts().contains(common) || !Collections.disjoint(v.get_hosts(), blacklist)) {
+				return Double.POSITIVE_INFINITY;
+			}
+			DTNHost h_dst = v.get_other_host(common);
+			double v_at = Double.POSITIVE_INFINITY;
+			for (; v != null; v = graph.get_fragment(v)) {
+				v_at = hop_arrival(v, h_dst, at, size, expire);
+				if (v_at < Double.POSITIVE_INFINITY) {
+					break;
+				}
+			}
+			if (v == null) {
+				return Double.POSITIVE_INFINITY;
+			}
+			route.set(i, v);
+			at = v_at;
+			common = h_dst;
+		}
+		return at > expire ? Double.POSITIVE_INFINITY : at;
+	}
+
+	/**
+	 * @return the time the contact delivers the message to h_dst, or infinity
+	 * if it can not (like {@link #relax(Vertex, Message, List)} decides it)
+	 */
+	private double hop_arrival(Vertex v, DTNHost h_dst, double at, int size, double expire) {
+		if (!(v.begin() < expire) || !(v.current_capacity() > size)) {
+			return Double.POSITIVE_INFINITY;
+		}
+		// capacity taken in account the messages already planned
+		double h_dst_capacity = (v.adjusted_begin() - v.begin()) * v.get_transmission_speed();
+		if (h_dst.getRouter().getFreeBufferSize() - h_dst_capacity < size) {
+			return Double.POSITIVE_INFINITY;
+		}
+		double v_at = distance_measure.apply(size, at, v);
+		return v_at < v.end() ? v_at : Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Distances of the vertices seen on the last search. Vertices not seen are
+	 * at infinite distance.
+	 */
+	private class DistanceView extends AbstractMap<Vertex, Double> {
+		@Override
+		public Double get(Object v) {
+			int i = seen_index(v);
+			return i < 0 ? Double.POSITIVE_INFINITY : dist[i];
+		}
+
+		@Override
+		public boolean containsKey(Object v) {
+			return seen_index(v) >= 0;
+		}
+
+		@Override
+		public Set<Map.Entry<Vertex, Double>> entrySet() {
+			Set<Map.Entry<Vertex, Double>> entries = new LinkedHashSet<>();
+			for (int i = 0; i < nrof_indexes; i++) {
+				if (stamp[i] == epoch && vertex_of[i] != null) {
+					entries.add(new AbstractMap.SimpleImmutableEntry<>(vertex_of[i], dist[i]));
+				}
+			}
+			return entries;
+		}
+	}
+
+	/**
+	 * Predecessors of the vertices seen on the last search
+	 */
+	private class PredecessorView extends AbstractMap<Vertex, Vertex> {
+		@Override
+		public Vertex get(Object v) {
+			int i = seen_index(v);
+			return (i < 0 || pred[i] < 0) ? null : vertex_of[pred[i]];
+		}
+
+		@Override
+		public boolean containsKey(Object v) {
+			return seen_index(v) >= 0;
+		}
+
+		@Override
+		public Set<Map.Entry<Vertex, Vertex>> entrySet() {
+			Set<Map.Entry<Vertex, Vertex>> entries = new LinkedHashSet<>();
+			for (int i = 0; i < nrof_indexes; i++) {
+				if (stamp[i] == epoch && vertex_of[i] != null) {
+					entries.add(new AbstractMap.SimpleImmutableEntry<>(vertex_of[i], get(vertex_of[i])));
+				}
+			}
+			return entries;
+		}
+	}
+
+	/**
+	 * Vertices kept on the graph and the pivots of the last search
+	 */
+	private class VertexView extends AbstractMap<String, Vertex> {
+		@Override
+		public Vertex get(Object id) {
+			Vertex p = pivots.get(id);
+			return p != null ? p : graph.get_vertice_map().get(id);
+		}
+
+		@Override
+		public boolean containsKey(Object id) {
+			return get(id) != null;
+		}
+
+		@Override
+		public Set<Map.Entry<String, Vertex>> entrySet() {
+			Set<Map.Entry<String, Vertex>> entries = new LinkedHashSet<>(graph.get_vertice_map().entrySet());
+			entries.addAll(pivots.entrySet());
+			return entries;
+		}
+	}
+
+	/**
+	 * Edges kept on the graph and the edges of the pivots of the last search
+	 */
+	private class EdgeView extends AbstractMap<String, List<Edge>> {
+		@Override
+		public List<Edge> get(Object id) {
+			List<Edge> le = pivot_edges.get(id);
+			if (le != null) {
+				return le;
+			}
+			le = graph.get_edges().get(id);
+			Edge to_pivot = to_end_pivot.get(id);
+			if (le != null && to_pivot != null) {
+				le = new ArrayList<>(le);
+				le.add(to_pivot);
+			}
+			return le;
+		}
+
+		@Override
+		public boolean containsKey(Object id) {
+			return get(id) != null;
+		}
+
+		@Override
+		public Set<Map.Entry<String, List<Edge>>> entrySet() {
+			Set<Map.Entry<String, List<Edge>>> entries = new LinkedHashSet<>();
+			for (String id : graph.get_edges().keySet()) {
+				entries.add(new AbstractMap.SimpleImmutableEntry<>(id, get(id)));
+			}
+			entries.addAll(pivot_edges.entrySet());
+			return entries;
+		}
+	}
 }
@@ -59,6 +59,15 @@ public class Vertex {
 		return new Vertex(this);
 	}
 	
+	/**
+	 * Copy this vertex together with its contact, so that the capacity of the
+	 * copy can be consumed without changing this vertex
+	 * @return The copy
+	 */
+	public Vertex deep_copy() {
+		return new Vertex(vid, new Contact(contact), is_pivot);
+	}
+	
 	public double current_capacity() {
 		return contact.get_current_capacity();
 	}
@@ -4,36 +4,48 @@
  */
 package routing.maxprop;
 
-import java.util.Collection;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Queue;
 import java.util.Set;
 
 /**
  * Dijkstra's shortest path implementation for MaxProp Router module.
+ * The search state is kept in int and double arrays indexed by the node
+ * index and the unvisited nodes are in an indexed binary heap, so no objects
+ * are created for the nodes during the search. The arrays are reused between
+ * searches and stamped with a search number instead of clearing them.
  */
 public class MaxPropDijkstra {
 	/** Value for infinite distance  */
-	private static final Double INFINITY = Double.MAX_VALUE;
-	/** Initial size of the priority queue */
-	private static final int PQ_INIT_SIZE = 11;
-
-	/** Map of node distances from the source node */
-	private DistanceMap distancesFromStart;
-	/** Set of already visited nodes (where the shortest path is known) */
-	private Set<Integer> visited;
-	/** Priority queue of unvisited nodes discovered so far */
-	private Queue<Integer> unvisited;
-	/** Map of previous nodes on the shortest path(s) -- only used for
-	 * debugging purposes */
-	private Map<Integer, Integer> prevNodes;
+	private static final double INFINITY = Double.MAX_VALUE;
+	/** Initial size of the node arrays */
+	private static final int INIT_SIZE = 16;
+	/** Position of a node that is not in the heap */
+	private static final int NOT_IN_HEAP = -1;
+
 	/** Mapping of to other nodes' (whom this node has met) probability sets */
 	private Map<Integer, MeetingProbabilitySet> probs;
 
+	/** Probability sets of the nodes indexed by the node index */
+	private MeetingProbabilitySet[] sets;
+	/** Distances of the nodes from the source node */
+	private double[] distances;
+	/** Number of the search when the node's distance was set */
+	private int[] distanceStamps;
+	/** Number of the search when the node was visited */
+	private int[] visitedStamps;
+	/** Number of the search when the node was a target of the search */
+	private int[] targetStamps;
+	/** Positions of the nodes in the heap (or {@link #NOT_IN_HEAP}) */
+	private int[] heapPositions;
+	/** Binary heap of the unvisited nodes discovered so far */
+	private int[] heap;
+	/** Number of nodes in the heap */
+	private int heapSize;
+	/** Number of the current search */
+	private int stamp;
+
 	/**
 	 * Constructor.
 	 * @param probs A reference to the mapping of the known hosts meeting
@@ -41,22 +53,81 @@ public class MaxPropDijkstra {
 	 */
 	public MaxPropDijkstra(Map<Integer, MeetingProbabilitySet> probs) {
 		this.probs = probs;
+		this.stamp = 0;
+		allocate(INIT_SIZE);
+	}
+
+	/**
+	 * Allocates the node arrays for nodes with index smaller than size and
+	 * copies the old contents to the new arrays
+	 * @param size The new size of the arrays
+	 */
+	private void allocate(int size) {
+		int oldSize = distances == null ? 0 : distances.length;
+		if (oldSize == 0) {
+			sets = new MeetingProbabilitySet[size];
+			distances = new double[size];
+			distanceStamps = new int[size];
+			visitedStamps = new int[size];
+			targetStamps = new int[size];
+			heapPositions = new int[size];
+			heap = new int[size];
+		} else {
+			sets = Arrays.copyOf(sets, size);
+			distances = Arrays.copyOf(distances, size);
+			distanceStamps = Arrays.copyOf(distanceStamps, size);
+			visitedStamps = Arrays.copyOf(visitedStamps, size);
+			targetStamps = Arrays.copyOf(targetStamps, size);
+			heapPositions = Arrays.copyOf(heapPositions, size);
+			heap = Arrays.copyOf(heap, size);
+		}
+		Arrays.fill(heapPositions, oldSize, size, NOT_IN_HEAP);
+	}
+
+	/**
+	 * Makes sure the node arrays have room for the given node index
+	 * @param node The node index
+	 */
+	private void ensureCapacity(int node) {
+		if (node >= distances.length) {
+			int size = distances.length;
+			while (size <= node) {
+				size *= 2;
+			}
+			allocate(size);
+		}
 	}
 
 	/**
 	 * Initializes a new search with the first hop router node
 	 * @param firstHop The first hop router node
+	 * @param to The targets of the search
 	 */
-	private void initWith(Integer firstHop) {
-		this.unvisited = new PriorityQueue<Integer>(PQ_INIT_SIZE,
-				new DistanceComparator());
-		this.visited = new HashSet<Integer>();
-		this.prevNodes = new HashMap<Integer, Integer>();
-		this.distancesFromStart = new DistanceMap();
+	private void initWith(int firstHop, Set<Integer> to) {
+		if (++stamp == 0) { /* stamp overflow; clear the old stamps */
+			Arrays.fill(distanceStamps, 0);
+			Arrays.fill(visitedStamps, 0);
+			Arrays.fill(targetStamps, 0);
+			stamp = 1;
+		}
+
+		Arrays.fill(sets, null);
+		for (Map.Entry<Integer, MeetingProbabilitySet> e : probs.entrySet()) {
+			int node = e.getKey();
+			ensureCapacity(node);
+			sets[node] = e.getValue();
+		}
+		for (Integer node : to) {
+			ensureCapacity(node);
+			targetStamps[node] = stamp;
+		}
+		ensureCapacity(firstHop);
 
 		// set distance to source 0 and initialize unvisited queue
-		this.distancesFromStart.put(firstHop, 0);
-		this.unvisited.add(firstHop);
+		while (heapSize > 0) {
+			heapPositions[heap[--heapSize]] = NOT_IN_HEAP;
+		}
+		setDistance(firstHop, 0);
 	}
 
 	/**
@@ -71,21 +142,21 @@ public class MaxPropDijkstra {
 		Map<Integer, Double> distMap = new HashMap<Integer, Double>();
 		int nrofNodesToFind = to.size();
 
-		initWith(from);
-		Integer node = null;
+		initWith(from, to);
 
 		// always take the node with shortest distance
-		while ((node = unvisited.poll()) != null) {
-			if (to.contains(node)) {
+		while (heapSize > 0) {
+			int node = poll();
+			if (targetStamps[node] == stamp) {
 				// found one of the requested nodes
-				distMap.put(node, distancesFromStart.get(node));
+				distMap.put(node, distances[node]);
 				nrofNodesToFind--;
 				if (nrofNodesToFind == 0) {
 					break; // all requested nodes found
 				}
 			}
 
-			visited.add(node); // mark the node as visited
+			visitedStamps[node] = stamp; // mark the node as visited
 			relax(node);       // add/update neighbor nodes' distances
 		}
 
@@ -96,129 +167,134 @@ public class MaxPropDijkstra {
 	 * Relaxes the neighbors of a node (updates the shortest distances).
 	 * @param node The node whose neighbors are relaxed
 	 */
-	private void relax(Integer node) {
-		double nodeDist = distancesFromStart.get(node);
-		Collection<Integer> neighbors;
+	private void relax(int node) {
+		double nodeDist = distances[node];
+		MeetingProbabilitySet set = sets[node];
 
-		if (!this.probs.containsKey(node)) {
+		if (set == null) {
 			return; // node's neighbors are not known
 		}
 
-		neighbors =	this.probs.get(node).getAllProbs().keySet();
-
-		for (Integer n : neighbors) {
-			if (visited.contains(n)) {
+		for (int i = 0, n = set.size(); i < n; i++) {
+			int neighbor = set.getNodeAt(i);
+			ensureCapacity(neighbor);
+			if (visitedStamps[neighbor] == stamp) {
 				continue; // skip visited nodes
 			}
 
-			// n node's distance from path's source node
-			double nDist = nodeDist + getDistance(node, n);
+			// neighbor node's distance from path's source node; the
+			// "distance" between the nodes is the complement of the
+			// probability that the next node "node" meets is "neighbor"
+			double nDist = nodeDist + (1 - set.getProbAt(i));
 
-			if (distancesFromStart.get(n) > nDist) {
+			if (getDistance(neighbor) > nDist) {
 				// stored distance > found dist -> update
-				prevNodes.put(n, node); // for debugging
-				setDistance(n, nDist);
+				setDistance(neighbor, nDist);
 			}
 		}
 	}
 
 	/**
-	 * Sets the distance from source node to a node
-	 * @param n The node whose distance is set
-	 * @param distance The distance of the node from the source node
+	 * Returns the distance of a node from the source node or
+	 * {@link #INFINITY} if the node has not been discovered yet
+	 * @param node The node
+	 * @return The distance of the node
 	 */
-	private void setDistance(Integer n, double distance) {
-		unvisited.remove(n); // remove node from old place in the queue
-		distancesFromStart.put(n, distance); // update distance
-		unvisited.add(n); // insert node to the new place in the queue
+	private double getDistance(int node) {
+		return distanceStamps[node] == stamp ? distances[node] : INFINITY;
 	}
 
 	/**
-	 * Returns the "distance" between two nodes, i.e., the complement of the
-	 * probability that the next node "from" meets is "to". Works only if there
-	 * exist a probability value for "from" meeting "to".
-	 * @param from The first node
-	 * @param to The second node
-	 * @return The distance between the two nodes
+	 * Sets the distance from source node to a node and moves the node to
+	 * its new place in the unvisited queue
+	 * @param n The node whose distance is set
+	 * @param distance The distance of the node from the source node
 	 */
-	private double getDistance(Integer from, Integer to) {
-		assert probs.containsKey(from) : "Node " + from + " has not met " + to +
-			" (it has met nodes " + probs.keySet() + ")";
-		return ( 1 - probs.get(from).getProbFor(to) );
+	private void setDistance(int n, double distance) {
+		distances[n] = distance;
+		distanceStamps[n] = stamp;
+
+		int pos = heapPositions[n];
+		if (pos == NOT_IN_HEAP) {
+			pos = heapSize++;
+			heap[pos] = n;
+			heapPositions[n] = pos;
+		}
+		siftUp(pos); // distances only get smaller
 	}
 
 	/**
-	 * Comparator that compares two nodes by their distance from
-	 * the source node.
+	 * Removes and returns the node with the smallest distance from the heap
+	 * @return The node
 	 */
-	private class DistanceComparator implements
-		Comparator<Integer> {
-
-		/**
-		 * Compares two map nodes by their distance from the source node
-		 * @return -1, 0 or 1 if node1's distance is smaller, equal to, or
-		 * bigger than node2's distance
-		 */
-		public int compare(Integer node1, Integer node2) {
-			double dist1 = distancesFromStart.get(node1);
-			double dist2 = distancesFromStart.get(node2);
-
-			if (dist1 > dist2) {
-				return 1;
+	private int poll() {
+		int first = heap[0];
+		heapPositions[first] = NOT_IN_HEAP;
+		heapSize--;
+		if (heapSize > 0) {
+			heap[0] = heap[heapSize];
+			heapPositions[heap[0]] = 0;
+			siftDown(0);
+		}
+		return first;
+	}
+
+	private void siftUp(int pos) {
+		int node = heap[pos];
+		while (pos > 0) {
+			int parentPos = (pos - 1) >>> 1;
+			int parent = heap[parentPos];
+			if (compare(parent, node) <= 0) {
+				break;
 			}
-			else if (dist1 < dist2) {
-				return -1;
+			heap[pos] = parent;
+			heapPositions[parent] = pos;
+			pos = parentPos;
+		}
+		heap[pos] = node;
+		heapPositions[node] = pos;
+	}
+
+	private void siftDown(int pos) {
+		int node = heap[pos];
+		int half = heapSize >>> 1;
+		while (pos < half) {
+			int childPos = 2 * pos + 1;
+			int child = heap[childPos];
+			int rightPos = childPos + 1;
+			if (rightPos < heapSize && compare(heap[rightPos], child) < 0) {
+				childPos = rightPos;
+				child = heap[childPos];
 			}
-			else {
-				return node1.compareTo(node2);
+			if (compare(node, child) <= 0) {
+				break;
 			}
+			heap[pos] = child;
+			heapPositions[child] = pos;
+			pos = childPos;
 		}
+		heap[pos] = node;
+		heapPositions[node] = pos;
 	}
 
 	/**
-	 * Simple Map implementation for storing distances.
+	 * Compares two nodes by their distance from the source node
+	 * @return -1, 0 or 1 if node1's distance is smaller, equal to, or
+	 * bigger than node2's distance (or node1's index if the distances are
+	 * equal)
 	 */
-	private class DistanceMap {
-		private HashMap<Integer, Double> map;
-
-		/**
-		 * Constructor. Creates an empty distance map
-		 */
-		public DistanceMap() {
-			this.map = new HashMap<Integer, Double>();
-		}
-
-		/**
-		 * Returns the distance to a node. If no distance value
-		 * is found, returns {@link MaxPropDijkstra#INFINITY} as the value.
-		 * @param node The node whose distance is requested
-		 * @return The distance to that node
-		 */
-		public double get(Integer node) {
-			Double value = map.get(node);
-			if (value != null) {
-				return value;
-			}
-			else {
-				return INFINITY;
-			}
-		}
+	private int compare(int node1, int node2) {
+		double dist1 = distances[node1];
+		double dist2 = distances[node2];
 
-		/**
-		 * Puts a new distance value for a map node
-		 * @param node The node
-		 * @param distance Distance to that node
-		 */
-		public void  put(Integer node, double distance) {
-			map.put(node, distance);
+		if (dist1 > dist2) {
+			return 1;
 		}
-
-		/**
-		 * Returns a string representation of the map's contents
-		 * @return a string representation of the map's contents
-		 */
-		public String toString() {
-			return map.toString();
+		else if (dist1 < dist2) {
+			return -1;
+		}
+		else {
+			return node1 < node2 ? -1 : (node1 == node2 ? 0 : 1);
 		}
 	}
 }
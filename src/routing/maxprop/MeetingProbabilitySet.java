@@ -4,7 +4,8 @@
  */
 package routing.maxprop;
 
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -14,12 +15,26 @@ import static core.Constants.DEBUG;
 
 /**
  * Class for storing and manipulating the meeting probabilities for the MaxProp
- * router module.
+ * router module. The probabilities are stored in primitive arrays sorted by
+ * the node index, so a set takes space only for the nodes it has a
+ * probability for. Replicates share the arrays until either of the sets is
+ * modified.
  */
 public class MeetingProbabilitySet {
 	public static final int INFINITE_SET_SIZE = Integer.MAX_VALUE;
-	/** meeting probabilities (probability that the next node one meets is X) */
-	private Map<Integer, Double> probs;
+	/** Initial capacity of the arrays */
+	private static final int INIT_CAPACITY = 16;
+	/** indexes of the nodes that have a probability (in ascending order) */
+	private int[] nodes;
+	/** meeting probabilities (probability that the next node one meets is X)
+	 * in the same order as {@link #nodes} */
+	private double[] probs;
+	/** number of nodes in the set */
+	private int size;
+	/** are the arrays shared with another set (copy before modifying) */
+	private boolean shared;
+	/** number of modifications made to the probabilities */
+	private int version;
 	/** the time when this MPS was last updated */
 	private double lastUpdateTime;
 	/** the alpha parameter */
@@ -34,14 +49,16 @@ public class MeetingProbabilitySet {
 	 */
 	public MeetingProbabilitySet(int maxSetSize, double alpha) {
 		this.alpha = alpha;
-		this.probs = new HashMap<Integer, Double>();
+		this.nodes = new int[INIT_CAPACITY];
+		this.probs = new double[INIT_CAPACITY];
         if (maxSetSize == INFINITE_SET_SIZE || maxSetSize < 1) {
-	this.probs = new HashMap<Integer, Double>();
 	this.maxSetSize = INFINITE_SET_SIZE;
         } else {
-	this.probs = new HashMap<Integer, Double>(maxSetSize);
             this.maxSetSize = maxSetSize;
         }
+		this.size = 0;
+		this.shared = false;
+		this.version = 0;
 		this.lastUpdateTime = 0;
 	}
 
@@ -62,7 +79,7 @@ public class MeetingProbabilitySet {
 		this(INFINITE_SET_SIZE, alpha);
 		double prob = 1.0/initiallyKnownNodes.size();
 		for (Integer i : initiallyKnownNodes) {
-			this.probs.put(i, prob);
+			put(i, prob);
 		}
 	}
 
@@ -74,39 +91,38 @@ public class MeetingProbabilitySet {
 	 * then all the probabilities are normalized so that their sum equals to 1.
 	 * @param index The node index to update the probability for
 	 */
-	public void updateMeetingProbFor(Integer index) {
-        Map.Entry<Integer, Double> smallestEntry = null;
+	public void updateMeetingProbFor(int index) {
+		int smallest = -1;
         double smallestValue = Double.MAX_VALUE;
 
 		this.lastUpdateTime = SimClock.getTime();
 
-		if (probs.size() == 0) { // first entry
-			probs.put(index, 1.0);
+		if (size == 0) { // first entry
+			put(index, 1.0);
 			return;
 		}
 
 		double newValue = getProbFor(index) + alpha;
-		probs.put(index, newValue);
+		put(index, newValue);
 
 		/* now the sum of all entries is 1+alpha;
 		 * normalize to one by dividing all the entries by 1+alpha */
-		for (Map.Entry<Integer, Double> entry : probs.entrySet()) {
-			entry.setValue(entry.getValue() / (1+alpha));
-            if (entry.getValue() < smallestValue) {
-                smallestEntry = entry;
-                smallestValue = entry.getValue();
+		for (int i = 0; i < size; i++) {
+			probs[i] = probs[i] / (1+alpha);
+            if (probs[i] < smallestValue) {
+                smallest = i;
+                smallestValue = probs[i];
             }
-
 		}
 
-        if (probs.size() >= maxSetSize) {
-            if (DEBUG) core.Debug.p("Probsize: " + probs.size() + " dropping " +
-					probs.remove(smallestEntry.getKey()));
+        if (size >= maxSetSize) {
+            if (DEBUG) core.Debug.p("Probsize: " + size + " dropping " +
+					removeAt(smallest));
         }
 	}
 
-	public void updateMeetingProbFor(Integer index, double iet)	{
-		probs.put(index, iet);
+	public void updateMeetingProbFor(int index, double iet)	{
+		put(index, iet);
 	}
 
 	/**
@@ -114,9 +130,10 @@ public class MeetingProbabilitySet {
 	 * @param index The index of the node to look the P for
 	 * @return the current delivery probability value
 	 */
-	public double getProbFor(Integer index) {
-		if (probs.containsKey(index)) {
-			return probs.get(index);
+	public double getProbFor(int index) {
+		int i = Arrays.binarySearch(nodes, 0, size, index);
+		if (i >= 0) {
+			return probs[i];
 		}
 		else {
 			/* the node with the given index has not been met */
@@ -125,11 +142,108 @@ public class MeetingProbabilitySet {
 	}
 
 	/**
-	 * Returns a reference to the probability map of this probability set
-	 * @return a reference to the probability map of this probability set
+	 * Sets the probability of a node
+	 * @param index Index of the node
+	 * @param value The probability
+	 */
+	private void put(int index, double value) {
+		int i = Arrays.binarySearch(nodes, 0, size, index);
+		unshare();
+		version++;
+		if (i >= 0) {
+			probs[i] = value;
+			return;
+		}
+
+		i = -(i + 1); // insertion point
+		if (size == nodes.length) {
+			int capacity = size * 2;
+			nodes = Arrays.copyOf(nodes, capacity);
+			probs = Arrays.copyOf(probs, capacity);
+		}
+		System.arraycopy(nodes, i, nodes, i + 1, size - i);
+		System.arraycopy(probs, i, probs, i + 1, size - i);
+		nodes[i] = index;
+		probs[i] = value;
+		size++;
+	}
+
+	/**
+	 * Removes the probability at the given position of the arrays
+	 * @param i The position
+	 * @return The removed probability
+	 */
+	private double removeAt(int i) {
+		double value = probs[i];
+		unshare();
+		version++;
+		System.arraycopy(nodes, i + 1, nodes, i, size - i - 1);
+		System.arraycopy(probs, i + 1, probs, i, size - i - 1);
+		size--;
+		return value;
+	}
+
+	/**
+	 * Makes own copies of the arrays if they are shared with another set
+	 */
+	private void unshare() {
+		if (shared) {
+			nodes = nodes.clone();
+			probs = probs.clone();
+			shared = false;
+		}
+	}
+
+	/**
+	 * Returns the number of nodes that have a probability in this set
+	 * @return The number of nodes
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the index of the node at the given position of the set. The
+	 * nodes are in ascending order of their indexes.
+	 * @param i The position (0 - size-1)
+	 * @return The node index
+	 */
+	public int getNodeAt(int i) {
+		return this.nodes[i];
+	}
+
+	/**
+	 * Returns the probability of the node at the given position of the set
+	 * @param i The position (0 - size-1)
+	 * @return The probability
+	 * @see #getNodeAt(int)
+	 */
+	public double getProbAt(int i) {
+		return this.probs[i];
+	}
+
+	/**
+	 * Returns a copy of the probabilities of this probability set
+	 * @return A map of node indexes to probabilities (in ascending order of
+	 * the node indexes)
 	 */
 	public Map<Integer, Double> getAllProbs() {
-		return this.probs;
+		Map<Integer, Double> map = new LinkedHashMap<Integer, Double>();
+		for (int i = 0; i < size; i++) {
+			map.put(nodes[i], probs[i]);
+		}
+		return map;
+	}
+
+	/**
+	 * Returns the version of the probabilities. The version changes every
+	 * time the probabilities are modified and replicas have the same version
+	 * as the set they were copied from, so two copies of the same set with
+	 * the same version have the same probabilities.
+	 * @return the version of the probabilities
+	 */
+	public int getVersion() {
+		return this.version;
 	}
 
 	/**
@@ -148,28 +262,37 @@ public class MeetingProbabilitySet {
 	}
 
 	/**
-	 * Returns a deep copy of the probability set
-	 * @return a deep copy of the probability set
+	 * Returns a copy of the probability set. The copy shares the arrays
+	 * with this set until either set is modified.
+	 * @return a copy of the probability set
 	 */
 	public MeetingProbabilitySet replicate() {
-		MeetingProbabilitySet replica = new MeetingProbabilitySet(
-				this.maxSetSize, alpha);
-
-		// do a deep copy
-		for (Map.Entry<Integer, Double> e : probs.entrySet()) {
-			replica.probs.put(e.getKey(), e.getValue().doubleValue());
-		}
-
+		MeetingProbabilitySet replica = new MeetingProbabilitySet(this);
 		replica.lastUpdateTime = this.lastUpdateTime;
 		return replica;
 	}
 
+	/**
+	 * Copy constructor. Shares the arrays of the other set.
+	 * @param other The set to copy
+	 */
+	private MeetingProbabilitySet(MeetingProbabilitySet other) {
+		this.alpha = other.alpha;
+		this.maxSetSize = other.maxSetSize;
+		this.nodes = other.nodes;
+		this.probs = other.probs;
+		this.size = other.size;
+		this.version = other.version;
+		this.shared = true;
+		other.shared = true;
+	}
+
 	/**
 	 * Returns a String presentation of the probabilities
 	 * @return a String presentation of the probabilities
 	 */
     @Override
 	public String toString() {
-		return "probs: " +	this.probs.toString();
+		return "probs: " +	getAllProbs().toString();
 	}
 }
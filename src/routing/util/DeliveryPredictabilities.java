@@ -0,0 +1,301 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import core.DTNHost;
+import core.SimClock;
+
+/**
+ * <P>
+ * Delivery predictabilities of the PRoPHET family routers. The
+ * predictabilities are stored in arrays indexed by the host address.
+ * </P>
+ * <P>
+ * Aging is lazy. Every time the predictabilities are used (read, set, or
+ * used in a transitive update) at a new time, the multiplier
+ * <CODE>gamma^k</CODE> for the k time units since the previous use is
+ * appended to a log. A value is multiplied only when it is read. It is
+ * multiplied by each multiplier logged since it was last up to date, in
+ * the order they were logged. This gives bit for bit the same values as
+ * aging all the values at every use, but a use costs one
+ * <CODE>Math.pow</CODE> call instead of a pass over all the values. When
+ * gamma changes, the new gamma applies to the time since the
+ * predictabilities were last used.
+ * </P>
+ * <P>
+ * When the log gets longer than the number of values, all the values are
+ * brought up to date and the log is cleared, so the log stays short
+ * and the cost of the clearing is spread over the uses.
+ * </P>
+ */
+public class DeliveryPredictabilities {
+	/** Initial size of the arrays */
+	private static final int INIT_SIZE = 16;
+	/** Epoch of an address that doesn't have a predictability */
+	private static final int NO_VALUE = -1;
+
+	/** the aging constant */
+	private double gamma;
+	/** how many seconds one time unit is */
+	private int secondsInTimeUnit;
+
+	/** predictabilities at their epoch (indexed by address) */
+	private double[] values;
+	/** epochs up to which the values are aged or {@link #NO_VALUE} */
+	private int[] epochs;
+	/** the hosts that have a predictability (indexed by address) */
+	private DTNHost[] hosts;
+	/** addresses of the hosts that have a predictability */
+	private int[] addresses;
+	/** number of hosts that have a predictability */
+	private int size;
+	/** time when the predictabilities were last used */
+	private double lastUsed;
+
+	/** aging multipliers of the epochs after {@link #firstEpoch} */
+	private double[] multipliers;
+	/** number of logged multipliers */
+	private int nrofMultipliers;
+	/** the epoch the first logged multiplier ages from */
+	private int firstEpoch;
+
+	/**
+	 * Constructor.
+	 * @param gamma The aging constant
+	 * @param secondsInTimeUnit How many seconds one time unit is when
+	 * calculating aging of the predictabilities
+	 */
+	public DeliveryPredictabilities(double gamma, int secondsInTimeUnit) {
+		this.gamma = gamma;
+		this.secondsInTimeUnit = secondsInTimeUnit;
+		this.values = new double[INIT_SIZE];
+		this.epochs = new int[INIT_SIZE];
+		this.hosts = new DTNHost[INIT_SIZE];
+		this.addresses = new int[INIT_SIZE];
+		Arrays.fill(this.epochs, NO_VALUE);
+		this.size = 0;
+		this.lastUsed = 0;
+		this.multipliers = new double[INIT_SIZE];
+		this.nrofMultipliers = 0;
+		this.firstEpoch = 0;
+	}
+
+	/**
+	 * Sets a new aging constant. The new constant applies from the time the
+	 * predictabilities were last used.
+	 * @param gamma The new aging constant
+	 */
+	public void setGamma(double gamma) {
+		this.gamma = gamma;
+	}
+
+	/**
+	 * Returns the aging constant
+	 * @return the aging constant
+	 */
+	public double getGamma() {
+		return this.gamma;
+	}
+
+	/**
+	 * Returns the current predictability for a host or 0 if there is no
+	 * predictability for the host.
+	 * @param host The host
+	 * @return the current predictability
+	 */
+	public double get(DTNHost host) {
+		use(SimClock.getTime());
+		int i = host.getAddress();
+		if (i >= epochs.length || epochs[i] == NO_VALUE) {
+			return 0;
+		}
+		return current(i);
+	}
+
+	/**
+	 * Sets the current predictability for a host
+	 * @param host The host
+	 * @param value The predictability
+	 */
+	public void put(DTNHost host, double value) {
+		int i = host.getAddress();
+		use(SimClock.getTime());
+		ensureCapacity(i);
+		set(i, host, value);
+	}
+
+	/**
+	 * Sets the current predictability of an address
+	 * @param i The address
+	 * @param host The host with the address
+	 * @param value The predictability
+	 */
+	private void set(int i, DTNHost host, double value) {
+		if (epochs[i] == NO_VALUE) {
+			hosts[i] = host;
+			if (size == addresses.length) {
+				addresses = Arrays.copyOf(addresses, size * 2);
+			}
+			addresses[size++] = i;
+		}
+		values[i] = value;
+		epochs[i] = firstEpoch + nrofMultipliers;
+	}
+
+	/**
+	 * Returns the number of hosts that have a predictability
+	 * @return the number of hosts that have a predictability
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Updates transitive (A->B->C) delivery predictabilities of this (A's)
+	 * predictabilities with the predictabilities of B:
+	 * <CODE>P(a,c) = P(a,c)_old + (1 - P(a,c)_old) * P(a,b) * P(b,c) * beta
+	 * </CODE>
+	 * @param other The predictabilities of B
+	 * @param self The host A (is not added to its own predictabilities)
+	 * @param pForHost P(a,b)
+	 * @param beta The transitivity scaling constant
+	 */
+	public void updateTransitive(DeliveryPredictabilities other, DTNHost self,
+			double pForHost, double beta) {
+		prepareTransitive(other);
+
+		int selfIndex = self.getAddress();
+		for (int k = 0, n = other.size; k < n; k++) {
+			int i = other.addresses[k];
+			if (i == selfIndex) {
+				continue;
+			}
+			double pOld = epochs[i] == NO_VALUE ? 0 : current(i);
+			double pNew = pOld + (1 - pOld) * pForHost * other.current(i) *
+				beta;
+			set(i, other.hosts[i], pNew);
+		}
+	}
+
+	/**
+	 * Updates transitive (A->B->C) delivery predictabilities of this (A's)
+	 * predictabilities with the predictabilities of B using the maximum of
+	 * the old and the transitive value:
+	 * <CODE>P(a,c) = max(P(a,c)_old, P(a,b) * P(b,c) * beta)</CODE>
+	 * @param other The predictabilities of B
+	 * @param self The host A (is not added to its own predictabilities)
+	 * @param pForHost P(a,b)
+	 * @param beta The transitivity scaling constant
+	 */
+	public void updateTransitiveMax(DeliveryPredictabilities other,
+			DTNHost self, double pForHost, double beta) {
+		prepareTransitive(other);
+
+		int selfIndex = self.getAddress();
+		for (int k = 0, n = other.size; k < n; k++) {
+			int i = other.addresses[k];
+			if (i == selfIndex) {
+				continue;
+			}
+			double pOld = epochs[i] == NO_VALUE ? 0 : current(i);
+			double pNew = pForHost * other.current(i) * beta;
+			if (pNew > pOld) {
+				set(i, other.hosts[i], pNew);
+			}
+		}
+	}
+
+	/**
+	 * Marks both this and the other predictabilities used at the current
+	 * time and makes room for all the other's addresses
+	 * @param other The other predictabilities
+	 */
+	private void prepareTransitive(DeliveryPredictabilities other) {
+		double now = SimClock.getTime();
+		other.use(now);
+		this.use(now);
+		ensureCapacity(other.epochs.length - 1);
+	}
+
+	/**
+	 * Marks the predictabilities used at the given time. If the time is new,
+	 * logs the aging multiplier for the time since the previous use.
+	 * @param now The time
+	 */
+	private void use(double now) {
+		if (now == lastUsed) {
+			return;
+		}
+		double timeDiff = (now - lastUsed) / secondsInTimeUnit;
+		lastUsed = now;
+
+		if (nrofMultipliers >= Math.max(size, INIT_SIZE)) {
+			/* bring all the values up to date and start a new log */
+			for (int k = 0; k < size; k++) {
+				current(addresses[k]);
+			}
+			firstEpoch += nrofMultipliers;
+			nrofMultipliers = 0;
+		}
+		if (nrofMultipliers == multipliers.length) {
+			multipliers = Arrays.copyOf(multipliers, nrofMultipliers * 2);
+		}
+		multipliers[nrofMultipliers++] = Math.pow(gamma, timeDiff);
+	}
+
+	/**
+	 * Ages the value of an address to the current epoch
+	 * @param i The address (must have a value)
+	 * @return The aged value
+	 */
+	private double current(int i) {
+		double value = values[i];
+		for (int j = epochs[i] - firstEpoch; j < nrofMultipliers; j++) {
+			value *= multipliers[j];
+		}
+		values[i] = value;
+		epochs[i] = firstEpoch + nrofMultipliers;
+		return value;
+	}
+
+	/**
+	 * Makes sure the arrays have room for the given address
+	 * @param address The address
+	 */
+	private void ensureCapacity(int address) {
+		if (address < epochs.length) {
+			return;
+		}
+		int oldSize = epochs.length;
+		int newSize = oldSize;
+		while (newSize <= address) {
+			newSize *= 2;
+		}
+		values = Arrays.copyOf(values, newSize);
+		epochs = Arrays.copyOf(epochs, newSize);
+		hosts = Arrays.copyOf(hosts, newSize);
+		Arrays.fill(epochs, oldSize, newSize, NO_VALUE);
+	}
+
+	/**
+	 * Returns the current predictabilities of all the hosts that have one
+	 * @return A new map of hosts and their predictabilities (in the order of
+	 * the host addresses)
+	 */
+	public Map<DTNHost, Double> toMap() {
+		Map<DTNHost, Double> map = new LinkedHashMap<DTNHost, Double>();
+		use(SimClock.getTime());
+		for (int i = 0; i < epochs.length; i++) {
+			if (epochs[i] != NO_VALUE) {
+				map.put(hosts[i], current(i));
+			}
+		}
+		return map;
+	}
+}
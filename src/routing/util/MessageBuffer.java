@@ -0,0 +1,407 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+import core.DTNHost;
+import core.Message;
+
+/**
+ * Message buffer of a router. The messages are kept by their ID and indexed
+ * by their destination host and receive time. The indices are updated when
+ * messages are added or removed, so finding the messages for a host or the
+ * oldest message does not require going through the whole buffer. The total
+ * size of the messages is also kept up to date.
+ * <P>
+ * The buffer order is the order the messages were added in: every message
+ * gets a sequence number when it is added, and a message that replaces
+ * another one with the same ID goes to the end. The methods that return
+ * messages give them in the buffer order (or break ties with it), and the
+ * indices keep that order, so the order never needs to be rebuilt.</P>
+ * <P>
+ * If the buffer is created with a queue key seed, each message also gets a
+ * random queue key when it is added. The keys define a random permutation
+ * of the buffer that changes only when messages are added or removed, and
+ * that is the same on every run with the same seed.</P>
+ * <P>
+ * The messages with a finite TTL are also indexed by their expiry time
+ * (see {@link Message#getExpiryTime()}), so the expired messages can be
+ * found without going through the whole buffer.</P>
+ * <P>
+ * The receive time and the TTL of a message are read when the message is
+ * added to the buffer and they must not change while the message is in the
+ * buffer.</P>
+ */
+public class MessageBuffer {
+	/** The messages by message id (iterated in buffer order) */
+	private LinkedHashMap<String, Entry> entries;
+	/** The messages by destination host (each in buffer order) */
+	private HashMap<DTNHost, Map<String, Message>> byDestination;
+	/** The messages by receive time (ties in buffer order) */
+	private TreeSet<Entry> byReceiveTime;
+	/** The messages in random order (by queue key), or null if the buffer
+	 * has no queue keys */
+	private TreeSet<Entry> byQueueKey;
+	/** The messages that have a finite TTL by expiry time (ties in buffer
+	 * order) */
+	private TreeSet<Entry> byExpiryTime;
+	/** Random number generator for the queue keys */
+	private Random queueRng;
+	/** Sum of the sizes of the messages in the buffer */
+	private long occupancy;
+	/** Sequence number of the next message added to the buffer */
+	private long nextSeq;
+	/** Read-only view of the messages */
+	private Collection<Message> messages;
+	/** Comparators of the buffer order and the random order */
+	private Comparator<Message> bufferOrder;
+	private Comparator<Message> randomOrder;
+
+	/**
+	 * Creates an empty buffer without queue keys
+	 */
+	public MessageBuffer() {
+		this(null);
+	}
+
+	/**
+	 * Creates an empty buffer
+	 * @param queueSeed Seed for the random queue keys or null if the
+	 * messages don't need queue keys (see {@link #randomOrder()})
+	 */
+	public MessageBuffer(Long queueSeed) {
+		this.entries = new LinkedHashMap<String, Entry>();
+		this.byDestination = new HashMap<DTNHost, Map<String, Message>>();
+		this.byReceiveTime = new TreeSet<Entry>();
+		if (queueSeed != null) {
+			this.byQueueKey = new TreeSet<Entry>(new Comparator<Entry>() {
+				public int compare(Entry e1, Entry e2) {
+					int c = Long.compare(e1.queueKey, e2.queueKey);
+					return c != 0 ? c : Long.compare(e1.seq, e2.seq);
+				}
+			});
+			this.queueRng = new Random(queueSeed);
+		}
+		this.byExpiryTime = new TreeSet<Entry>(new Comparator<Entry>() {
+			public int compare(Entry e1, Entry e2) {
+				int c = Double.compare(e1.expiryTime, e2.expiryTime);
+				return c != 0 ? c : Long.compare(e1.seq, e2.seq);
+			}
+		});
+		this.occupancy = 0;
+		this.nextSeq = 0;
+		this.messages = new MessageView();
+		this.bufferOrder = new Comparator<Message>() {
+			public int compare(Message m1, Message m2) {
+				return Long.compare(entries.get(m1.getId()).seq,
+						entries.get(m2.getId()).seq);
+			}
+		};
+		this.randomOrder = new Comparator<Message>() {
+			public int compare(Message m1, Message m2) {
+				return byQueueKey.comparator().compare(entries.get(m1.getId()),
+						entries.get(m2.getId()));
+			}
+		};
+	}
+
+	/**
+	 * Adds a message to the end of the buffer. If the buffer already has a
+	 * message with the same ID, that message is removed first.
+	 * @param m The message to add
+	 */
+	public void add(Message m) {
+		Entry old = entries.remove(m.getId());
+		if (old != null) {
+			removeFromIndices(old);
+		}
+		Entry e = new Entry(m, m.getReceiveTime(), nextSeq++,
+				queueRng != null ? queueRng.nextLong() : 0);
+		entries.put(m.getId(), e);
+
+		byReceiveTime.add(e);
+		if (byQueueKey != null) {
+			byQueueKey.add(e);
+		}
+		if (e.expiryTime != Double.POSITIVE_INFINITY) {
+			byExpiryTime.add(e);
+		}
+		Map<String, Message> to = byDestination.get(m.getTo());
+		if (to == null) {
+			to = new LinkedHashMap<String, Message>();
+			byDestination.put(m.getTo(), to);
+		}
+		to.put(m.getId(), m);
+		occupancy += m.getSize();
+	}
+
+	/**
+	 * Removes a message from the buffer
+	 * @param id ID of the message to remove
+	 * @return The removed message or null if the buffer had no message with
+	 * the ID
+	 */
+	public Message remove(String id) {
+		Entry e = entries.remove(id);
+		if (e == null) {
+			return null;
+		}
+
+		/* removing doesn't change the order of the other messages */
+		removeFromIndices(e);
+		return e.msg;
+	}
+
+	/**
+	 * Removes a message's entry from the indices
+	 * @param e The entry
+	 */
+	private void removeFromIndices(Entry e) {
+		byReceiveTime.remove(e);
+		if (byQueueKey != null) {
+			byQueueKey.remove(e);
+		}
+		if (e.expiryTime != Double.POSITIVE_INFINITY) {
+			byExpiryTime.remove(e);
+		}
+		Map<String, Message> to = byDestination.get(e.msg.getTo());
+		to.remove(e.msg.getId());
+		if (to.isEmpty()) {
+			byDestination.remove(e.msg.getTo());
+		}
+		occupancy -= e.msg.getSize();
+	}
+
+	/**
+	 * Sorts a list of messages of this buffer to the buffer order
+	 * @param list The list to sort
+	 */
+	private void sortInBufferOrder(List<Message> list) {
+		if (list.size() > 1) {
+			Collections.sort(list, bufferOrder);
+		}
+	}
+
+	/**
+	 * Returns a message by ID.
+	 * @param id ID of the message
+	 * @return The message or null if the buffer has no message with the ID
+	 */
+	public Message get(String id) {
+		Entry e = entries.get(id);
+		return e == null ? null : e.msg;
+	}
+
+	/**
+	 * Returns true if the buffer has a message with the given ID
+	 * @param id ID of the message
+	 * @return True if the buffer has the message
+	 */
+	public boolean contains(String id) {
+		return entries.containsKey(id);
+	}
+
+	/**
+	 * Returns the number of messages in the buffer
+	 * @return The number of messages
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the sum of the sizes of the messages in the buffer
+	 * @return The occupancy in bytes
+	 */
+	public long getOccupancy() {
+		return occupancy;
+	}
+
+	/**
+	 * Returns a read-only view of the messages in buffer order
+	 * @return The messages
+	 */
+	public Collection<Message> getMessages() {
+		return messages;
+	}
+
+	/**
+	 * Returns the messages whose final recipient is the given host, in
+	 * buffer order
+	 * @param to The host
+	 * @return A new list of the messages (empty if there are none)
+	 */
+	public List<Message> getMessagesTo(DTNHost to) {
+		Map<String, Message> msgs = byDestination.get(to);
+		if (msgs == null) {
+			return new ArrayList<Message>(0);
+		}
+		return new ArrayList<Message>(msgs.values());
+	}
+
+	/**
+	 * Returns the messages ordered by their receive time (the ones received
+	 * first come first). Messages with the same receive time are in buffer
+	 * order.
+	 * @return A new list of the messages
+	 */
+	public List<Message> getMessagesByReceiveTime() {
+		List<Message> list = new ArrayList<Message>(entries.size());
+		for (Entry e : byReceiveTime) {
+			list.add(e.msg);
+		}
+		return list;
+	}
+
+	/**
+	 * Returns an iterator over the messages ordered by their receive time.
+	 * Messages with the same receive time are in buffer order. The buffer
+	 * must not be modified while iterating.
+	 * @return The iterator
+	 */
+	public Iterator<Message> receiveTimeIterator() {
+		final Iterator<Entry> i = byReceiveTime.iterator();
+		return new Iterator<Message>() {
+			public boolean hasNext() {
+				return i.hasNext();
+			}
+			public Message next() {
+				return i.next().msg;
+			}
+		};
+	}
+
+	/**
+	 * Returns the earliest expiry time of the messages in the buffer
+	 * @return The expiry time or Double.POSITIVE_INFINITY if no message has
+	 * a finite TTL
+	 */
+	public double getFirstExpiryTime() {
+		if (byExpiryTime.isEmpty()) {
+			return Double.POSITIVE_INFINITY;
+		}
+		return byExpiryTime.first().expiryTime;
+	}
+
+	/**
+	 * Returns the messages whose expiry time is before the given time, in
+	 * buffer order
+	 * @param time The time
+	 * @return A new list of the messages
+	 */
+	public List<Message> getMessagesExpiringBefore(double time) {
+		List<Message> list = new ArrayList<Message>();
+		for (Entry e : byExpiryTime) {
+			if (!(e.expiryTime < time)) {
+				break;
+			}
+			list.add(e.msg);
+		}
+		sortInBufferOrder(list);
+		return list;
+	}
+
+	/**
+	 * Returns the messages in the random order of their queue keys. The
+	 * buffer must have been created with a queue key seed.
+	 * @return A new list of the messages
+	 */
+	public List<Message> getMessagesInRandomOrder() {
+		List<Message> list = new ArrayList<Message>(entries.size());
+		for (Entry e : byQueueKey) {
+			list.add(e.msg);
+		}
+		return list;
+	}
+
+	/**
+	 * Returns a comparator that orders messages of this buffer in the buffer
+	 * order
+	 * @return The comparator
+	 */
+	public Comparator<Message> bufferOrder() {
+		return bufferOrder;
+	}
+
+	/**
+	 * Returns a comparator that orders messages of this buffer in the random
+	 * order of their queue keys (see {@link #getMessagesInRandomOrder()}).
+	 * The buffer must have been created with a queue key seed.
+	 * @return The comparator
+	 */
+	public Comparator<Message> randomOrder() {
+		return randomOrder;
+	}
+
+	/**
+	 * A message of the buffer with its receive time, expiry time, buffer
+	 * order and queue key
+	 */
+	private static class Entry implements Comparable<Entry> {
+		private Message msg;
+		private double receiveTime;
+		private double expiryTime;
+		private long seq;
+		private long queueKey;
+
+		private Entry(Message msg, double receiveTime, long seq,
+				long queueKey) {
+			this.msg = msg;
+			this.receiveTime = receiveTime;
+			this.expiryTime = msg.getExpiryTime();
+			this.seq = seq;
+			this.queueKey = queueKey;
+		}
+
+		public int compareTo(Entry other) {
+			int c = Double.compare(this.receiveTime, other.receiveTime);
+			return c != 0 ? c : Long.compare(this.seq, other.seq);
+		}
+	}
+
+	/**
+	 * Read-only view of the messages in buffer order
+	 */
+	private class MessageView extends AbstractCollection<Message> {
+		@Override
+		public Iterator<Message> iterator() {
+			final Iterator<Entry> i = entries.values().iterator();
+			return new Iterator<Message>() {
+				public boolean hasNext() {
+					return i.hasNext();
+				}
+				public Message next() {
+					return i.next().msg;
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return entries.size();
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			if (!(o instanceof Message)) {
+				return false;
+			}
+			Entry e = entries.get(((Message)o).getId());
+			return e != null && e.msg.equals(o);
+		}
+	}
+}
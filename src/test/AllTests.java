@@ -50,6 +50,19 @@ public class AllTests {
 		suite.addTestSuite(MessageTest.class);
 		suite.addTestSuite(ModuleCommunicationBusTest.class);
 		suite.addTestSuite(DTNHostTest.class);
+		suite.addTestSuite(MovementModelTest.class);
+		suite.addTestSuite(ConnectivityGridTest.class);
+		suite.addTestSuite(ConnectivityOptimizerTest.class);
+		suite.addTestSuite(ContactPredictorTest.class);
+		suite.addTestSuite(TransferSchedulerTest.class);
+		suite.addTestSuite(MessageBufferTest.class);
+		suite.addTestSuite(IntHashSetTest.class);
+		suite.addTestSuite(DeliveryPredictabilitiesTest.class);
+		suite.addTestSuite(ReportWriterTest.class);
+		suite.addTestSuite(StreamingStatisticsTest.class);
+		suite.addTestSuite(BinaryEventsTest.class);
+		suite.addTestSuite(FileTokenizerTest.class);
+		suite.addTestSuite(PhasedUpdateTest.class);
 		//$JUnit-END$
 		return suite;
 	}
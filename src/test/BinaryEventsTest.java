@@ -0,0 +1,137 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import input.BinaryEventsReader;
+import input.ConnectionEvent;
+import input.EventsConverter;
+import input.ExternalEvent;
+import input.MessageCreateEvent;
+import input.MessageDeleteEvent;
+import input.MessageRelayEvent;
+import input.StandardEventsReader;
+import junit.framework.TestCase;
+import core.SimError;
+
+/**
+ * Tests for the binary external events format and the converter
+ */
+public class BinaryEventsTest extends TestCase {
+	private File binFile;
+	private File textFile;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		binFile = File.createTempFile("binaryEventsTest",
+				BinaryEventsReader.BINARY_EXT);
+		textFile = File.createTempFile("binaryEventsTest", ".txt");
+		binFile.deleteOnExit();
+		textFile.deleteOnExit();
+	}
+
+	public void testRoundTrip() throws Exception {
+		List<ExternalEvent> events = new ArrayList<ExternalEvent>();
+		events.add(new MessageCreateEvent(1, 2, "M1", 1000, 0, 0.1));
+		events.add(new MessageCreateEvent(2, 300000, "M2", 2000000, 100,
+				1.0 / 3)); // raw time
+		events.add(new MessageRelayEvent(1, 5, "M1", 12.5,
+				MessageRelayEvent.SENDING));
+		events.add(new MessageRelayEvent(1, 5, "M1", 12.0,
+				MessageRelayEvent.TRANSFERRED)); // time goes backwards
+		events.add(new MessageRelayEvent(5, 2, "M2", 20,
+				MessageRelayEvent.ABORTED));
+		events.add(new MessageDeleteEvent(5, "M1", 30, true));
+		events.add(new MessageDeleteEvent(2, "*", 1e13, false));
+		events.add(new ConnectionEvent(1, 2, null, true, 40));
+		events.add(new ConnectionEvent(2, 1, "bt", false, 41.001));
+		events.add(new ExternalEvent(50));
+		for (int i = 0; i < 20000; i++) { // many buffers' worth of events
+			events.add(new MessageRelayEvent(i, i + 1, "M" + (i % 1000),
+					100 + i * 0.7, MessageRelayEvent.SENDING));
+		}
+
+		BinaryEventsReader.storeToBinaryFile(binFile.getAbsolutePath(),
+				events);
+		assertTrue(BinaryEventsReader.isBinaryEeFile(binFile));
+
+		BinaryEventsReader reader = new BinaryEventsReader(binFile);
+		List<ExternalEvent> read = new ArrayList<ExternalEvent>();
+		List<ExternalEvent> batch = reader.readEvents(333);
+		while (batch.size() > 0) {
+			read.addAll(batch);
+			batch = reader.readEvents(333);
+		}
+		reader.close();
+
+		assertEquals(events.size(), read.size());
+		for (int i = 0; i < events.size(); i++) {
+			ExternalEvent e = events.get(i);
+			ExternalEvent r = read.get(i);
+			assertEquals(e.getClass(), r.getClass());
+			assertEquals(e.getTime(), r.getTime());
+			assertEquals(e.toString(), r.toString());
+			if (e.getClass() != ExternalEvent.class) {
+				assertEquals(EventsConverter.toText(e),
+						EventsConverter.toText(r));
+			}
+		}
+	}
+
+	public void testConverter() throws Exception {
+		PrintWriter out = new PrintWriter(textFile);
+		out.println("# comment");
+		out.println("63.3\tC\tM1\t107\t523\t787779");
+		out.println("70 C M2 p1 p2 10k 500");
+		out.println("80 S M1 107 5");
+		out.println("90.25 DE M1 107 5");
+		out.println("91 A M2 1 2");
+		out.println("100 DR M1 5");
+		out.println("101 R * 5");
+		out.println("110 CONN 1 2 up");
+		out.println("120 CONN 1 2 down wlan");
+		out.close();
+
+		assertEquals(9, EventsConverter.toBinary(textFile,
+				binFile.getAbsolutePath()));
+		File textFile2 = File.createTempFile("binaryEventsTest", ".txt");
+		textFile2.deleteOnExit();
+		assertEquals(9, EventsConverter.toText(binFile,
+				textFile2.getAbsolutePath()));
+
+		List<ExternalEvent> orig =
+			new StandardEventsReader(textFile).readEvents(100);
+		List<ExternalEvent> converted =
+			new StandardEventsReader(textFile2).readEvents(100);
+		List<ExternalEvent> binary =
+			new BinaryEventsReader(binFile).readEvents(100);
+		assertEquals(9, orig.size());
+		assertEquals(9, converted.size());
+		for (int i = 0; i < orig.size(); i++) {
+			String text = EventsConverter.toText(orig.get(i));
+			assertEquals(text, EventsConverter.toText(converted.get(i)));
+			assertEquals(text, EventsConverter.toText(binary.get(i)));
+		}
+	}
+
+	public void testInvalidFile() throws Exception {
+		FileOutputStream out = new FileOutputStream(binFile);
+		out.write(new byte[] {'O', 'N', 'E', 'E', 99});
+		out.close();
+		assertFalse(BinaryEventsReader.isBinaryEeFile(binFile));
+		try {
+			new BinaryEventsReader(binFile);
+			fail("Unsupported version was accepted");
+		} catch (SimError e) {
+			// expected
+		}
+	}
+}
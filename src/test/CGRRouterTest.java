@@ -2,6 +2,7 @@ package test;
 
 import static org.junit.Assert.assertNotEquals;
 
+import java.io.File;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -23,6 +24,8 @@ import interfaces.SimpleBroadcastInterface;
 import routing.ContactGraphRouter;
 import routing.MessageRouter;
 import routing.cgr.Contact;
+import routing.cgr.ContactPlan;
+import routing.cgr.ContactPlanFile;
 import routing.cgr.Edge;
 import routing.cgr.Graph;
 import routing.cgr.Path;
@@ -700,7 +703,177 @@ public class CGRRouterTest extends AbstractCGRRouterTest {
 		p.construct(end_pivot,  predecessors);
 		g09.consume_path(p, m, 10);
 	}
-	
+
+	/*
+	 * Alternative routes have different first hops, the first one is the route
+	 * a single search finds, and a route found earlier can be checked again.
+	 */
+	public void test_search_routes() {
+		Message m = new Message(hx10, hx9,  "TestMessage", 10);
+		end_pivot = rs09.search(hx10, 105.0, m, TTL);
+		List<Vertex> best = rs09.get_path(end_pivot).get_path_as_list();
+
+		List<Path> routes = rs09.search_routes(hx10, 105.0, m, TTL, 3);
+		assertTrue(routes.size() > 1);
+		assertEquals(best, routes.get(0).get_path_as_list());
+		for (int i = 1; i < routes.size(); i++) {
+			for (int j = 0; j < i; j++) {
+				assertNotEquals(routes.get(i).get_path_as_list().get(0).get_id(),
+						routes.get(j).get_path_as_list().get(0).get_id());
+			}
+		}
+
+		double arrival = rs09.route_arrival(new ArrayList<>(best), hx10, 105.0, m);
+		assertEquals(201.0, arrival);
+		for (Path p : routes) {
+			assertTrue(rs09.route_arrival(new ArrayList<>(p.get_path_as_list()), hx10, 105.0, m) >= arrival);
+		}
+
+		// the first contact ends at 110.0
+		assertEquals(Double.POSITIVE_INFINITY, rs09.route_arrival(new ArrayList<>(best), hx10, 110.0, m));
+		// a message that does not fit into the first contact
+		m = new Message(hx10, hx9,  "TestMessage", 100);
+		assertEquals(Double.POSITIVE_INFINITY, rs09.route_arrival(new ArrayList<>(best), hx10, 105.0, m));
+	}
+
+	/*
+	 * Consuming a path does not change the contact version, and a route found
+	 * before continues on the fragment split off a consumed contact.
+	 */
+	public void test_route_arrival_on_fragment() {
+		Message m = new Message(h10, h12,  "TestMessage", 40);
+		Path p = rs10.get_path(rs10.search(h10, 120.0, m, TTL));
+		List<String> ids = new ArrayList<>();
+		for (Vertex v : p.get_path_as_list()) {
+			ids.add(v.get_id());
+		}
+		assertEquals(2, ids.size()); // v421 --> v42
+		assertEquals(128.0, rs10.route_arrival(rs10.get_route_vertices(ids), h10, 120.0, m));
+
+		int version = g10.get_contact_version();
+		g10.consume_path(p, m, 10);
+		assertEquals(version, g10.get_contact_version());
+		Vertex fragment = g10.get_fragment(g10.get_vertex(ids.get(1)));
+		assertEquals(128.0, fragment.begin());
+		assertEquals(130.0, fragment.end());
+
+		// v42 ends at 124.0 now, the message arrives on the fragment
+		Message small = new Message(h10, h12,  "TestMessage", 10);
+		List<Vertex> route = rs10.get_route_vertices(ids);
+		assertEquals(129.0, rs10.route_arrival(route, h10, 120.0, small));
+		assertEquals(fragment, route.get(1));
+		// the fragment is too small for the first message
+		assertEquals(Double.POSITIVE_INFINITY,
+				rs10.route_arrival(rs10.get_route_vertices(ids), h10, 120.0, m));
+
+		g10.add_vertex(new Vertex(v61, 200.0, 210.0));
+		assertEquals(version + 1, g10.get_contact_version());
+	}
+
+	/*
+	 * Graphs on top of a shared contact plan find the same routes as a graph with
+	 * all the edges, and consuming a path changes only the graph that consumed it.
+	 */
+	public void test_shared_contact_plan() throws Exception {
+		List<Contact> contacts = new ArrayList<>();
+		for (Vertex v : vertex_list09) {
+			contacts.add(new Contact(v.get_hosts().get(0), v.get_hosts().get(1), v.begin(), v.end()));
+		}
+		ContactPlan plan = new ContactPlan(contacts);
+		Graph ga = new Graph(plan);
+		Graph gb = new Graph(plan);
+		RouteSearch rsa = new RouteSearch(ga);
+		RouteSearch rsb = new RouteSearch(gb);
+		Map<Vertex, Double> distances_a = (Map<Vertex, Double>) get_private("distances", rsa);
+		Map<Vertex, Double> distances_b = (Map<Vertex, Double>) get_private("distances", rsb);
+
+		Message m = new Message(hx10, hx9,  "TestMessage", 10);
+		end_pivot = rs09.search(hx10, 105.0, m, TTL);
+		List<Vertex> expected = rs09.get_path(end_pivot).get_path_as_list();
+
+		end_pivot = rsa.search(hx10, 105.0, m, TTL);
+		assertEquals(distances_a.get(end_pivot), 202.0);
+		Path p = rsa.get_path(end_pivot);
+		assertEquals(expected.size(), p.get_path_as_list().size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).begin(), p.get_path_as_list().get(i).begin());
+			assertEquals(expected.get(i).get_hosts(), p.get_path_as_list().get(i).get_hosts());
+		}
+
+		String first = p.get_path_as_list().get(0).get_id();
+		ga.consume_path(p, m, 10);
+		assertEquals(ga.get_vertex(first).adjusted_begin(), 101.0);
+		assertEquals(plan.get_vertex(first).adjusted_begin(), 100.0);
+		assertEquals(gb.get_vertex(first).adjusted_begin(), 100.0);
+
+		end_pivot = rsb.search(hx10, 105.0, m, TTL);
+		assertEquals(distances_b.get(end_pivot), 202.0);
+	}
+
+	/*
+	 * The pivots of a search are not added to the graph, and pruning removes the
+	 * vertices copied or created on the graph once they end.
+	 */
+	public void test_incremental_prune() {
+		List<Contact> contacts = new ArrayList<>();
+		for (Vertex v : vertex_list09) {
+			contacts.add(new Contact(v.get_hosts().get(0), v.get_hosts().get(1), v.begin(), v.end()));
+		}
+		ContactPlan plan = new ContactPlan(contacts);
+		Graph g = new Graph(plan);
+		RouteSearch rs = new RouteSearch(g);
+
+		Message m = new Message(hx10, hx9,  "TestMessage", 10);
+		end_pivot = rs.search(hx10, 105.0, m, TTL);
+		assertTrue(end_pivot.is_pivot());
+		assertTrue(g.get_vertice_map().isEmpty());
+		assertTrue(g.get_edges().isEmpty());
+
+		Path p = rs.get_path(end_pivot);
+		g.consume_path(p, m, 10);
+		int kept = g.get_vertice_map().size();
+		assertTrue(kept > 0);
+		for (Vertex v : g.get_vertice_map().values()) {
+			assertFalse(v.is_pivot());
+		}
+
+		// the first contact ends at 110.0, the others later
+		g.prune(111.0);
+		assertEquals(kept - 1, g.get_vertice_map().size());
+		assertNull(g.get_vertex(p.get_path_as_list().get(0).get_id()));
+
+		end_pivot = rs.search(hx10, 1000.0, m, TTL);
+		assertTrue(g.get_vertice_map().isEmpty());
+		assertTrue(g.get_edges().isEmpty());
+	}
+
+	/*
+	 * Contacts read from a binary contact plan are the ones that were written
+	 */
+	public void test_contact_plan_file() throws Exception {
+		List<DTNHost> hosts = Arrays.asList(hx6, hx7, hx10, hp4, hp5);
+		List<Contact> contacts = Arrays.asList(c_x10_p4_100_110, c_p4_x6_130_150, c_p5_x7_325_340);
+		c_p5_x7_325_340.set_transmission_speed(7);
+		File f = File.createTempFile("contact_plan", ".bin");
+		f.deleteOnExit();
+
+		ContactPlanFile.write(f, 1234, hosts, contacts);
+		List<Contact> read = ContactPlanFile.read(f, 1234, hosts);
+		assertEquals(contacts.size(), read.size());
+		for (int i = 0; i < contacts.size(); i++) {
+			assertEquals(contacts.get(i).get_hosts(), read.get(i).get_hosts());
+			assertEquals(contacts.get(i).begin(), read.get(i).begin());
+			assertEquals(contacts.get(i).end(), read.get(i).end());
+			assertEquals(contacts.get(i).get_transmission_speed(), read.get(i).get_transmission_speed());
+			assertEquals(contacts.get(i).get_id(), read.get(i).get_id());
+		}
+
+		// other scenario
+		assertNull(ContactPlanFile.read(f, 4321, hosts));
+		assertNull(ContactPlanFile.read(f, 1234, Arrays.asList(hx6, hx7, hx10, hp4)));
+		assertNull(ContactPlanFile.read(new File(f.getPath() + ".none"), 1234, hosts));
+	}
+
 	
 	/*
 	 * BLACK BOX TESTS
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import interfaces.ConnectivityGrid;
+import interfaces.ConnectivityOptimizer.InterfaceVisitor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import core.Coord;
+import core.DTNHost;
+import core.NetworkInterface;
+
+/**
+ * Tests for the ConnectivityGrid's near interface queries
+ */
+public class ConnectivityGridTest extends TestCase {
+	private static final int NROF_HOSTS = 300;
+	/** size of the area the hosts are placed on */
+	private static final double AREA_SIZE = 30;
+	private List<NetworkInterface> interfaces;
+	private ConnectivityGrid grid;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		TestSettings ts = new TestSettings();
+		ConnectivityGrid.reset();
+		TestUtils utils = new TestUtils(null, null, ts);
+		Random rng = new Random(1);
+
+		interfaces = new ArrayList<NetworkInterface>();
+		for (int i=0; i < NROF_HOSTS; i++) {
+			DTNHost h = utils.createHost(new Coord(
+					rng.nextDouble() * AREA_SIZE,
+					rng.nextDouble() * AREA_SIZE));
+			interfaces.add(h.getInterface(1));
+		}
+		NetworkInterface ni = interfaces.get(0);
+		grid = ConnectivityGrid.ConnectivityGridFactory(
+				ni.getInterfaceType().hashCode(), ni.getTransmitRange());
+		/* interfaces are added to the grid before hosts get a location */
+		for (NetworkInterface i : interfaces) {
+			grid.updateLocation(i);
+		}
+	}
+
+	public void testVisitorFindsSameInterfacesAsCollection() {
+		for (NetworkInterface ni : interfaces) {
+			final List<NetworkInterface> visited =
+				new ArrayList<NetworkInterface>();
+			grid.forEachNearInterface(ni, new InterfaceVisitor() {
+				public void visit(NetworkInterface near) {
+					visited.add(near);
+				}
+			});
+			assertEquals(grid.getNearInterfaces(ni), visited);
+		}
+	}
+
+	public void testHalfNeighborhoodVisitsEveryPairOnce() {
+		checkHalfNeighborhood();
+	}
+
+	private void checkHalfNeighborhood() {
+		final Map<String, Integer> pairs = new HashMap<String, Integer>();
+
+		for (final NetworkInterface ni : interfaces) {
+			grid.forEachHalfNearInterface(ni, new InterfaceVisitor() {
+				public void visit(NetworkInterface near) {
+					assertNotSame(ni, near);
+					String key = pairKey(ni, near);
+					Integer count = pairs.get(key);
+					pairs.put(key, count == null ? 1 : count + 1);
+				}
+			});
+		}
+
+		int nrofPairs = 0;
+		for (NetworkInterface ni : interfaces) {
+			for (NetworkInterface near : grid.getNearInterfaces(ni)) {
+				if (near == ni) {
+					continue;
+				}
+				assertEquals(Integer.valueOf(1), pairs.get(pairKey(ni, near)));
+				nrofPairs++;
+			}
+		}
+		/* every pair was counted from both sides above */
+		assertEquals(nrofPairs / 2, pairs.size());
+	}
+
+	public void testRemoveInterface() {
+		NetworkInterface removed = interfaces.get(0);
+		grid.removeInterface(removed);
+
+		assertEquals(-1, removed.getOptimizerIndex());
+		assertEquals(NROF_HOSTS - 1, grid.getAllInterfaces().size());
+		for (NetworkInterface ni : grid.getAllInterfaces()) {
+			assertFalse(grid.getNearInterfaces(ni).contains(removed));
+		}
+		assertTrue(grid.getNearInterfaces(removed).isEmpty());
+
+		/* the positions in the cells are kept up to date in removes and
+		 * moves between the cells */
+		interfaces.remove(removed);
+		Random rng = new Random(2);
+		for (int i=0; i < NROF_HOSTS; i++) {
+			NetworkInterface ni = interfaces.get(rng.nextInt(
+					interfaces.size()));
+			ni.getHost().setLocation(new Coord(rng.nextDouble() * AREA_SIZE,
+					rng.nextDouble() * AREA_SIZE));
+			grid.updateLocation(ni);
+		}
+		checkHalfNeighborhood();
+	}
+
+	private String pairKey(NetworkInterface a, NetworkInterface b) {
+		int addrA = a.getHost().getAddress();
+		int addrB = b.getHost().getAddress();
+		return Math.min(addrA, addrB) + "-" + Math.max(addrA, addrB);
+	}
+}
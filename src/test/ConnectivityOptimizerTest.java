@@ -0,0 +1,234 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import interfaces.ConnectivityGrid;
+import interfaces.ConnectivityOptimizer;
+import interfaces.ConnectivityOptimizer.InterfaceVisitor;
+import interfaces.IndexedOptimizer;
+import interfaces.KdTreeOptimizer;
+import interfaces.SortAndSweepOptimizer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import core.Coord;
+import core.DTNHost;
+import core.NetworkInterface;
+
+/**
+ * Tests for the sort-and-sweep and k-d tree connectivity optimizers. The
+ * near interfaces they find are compared to a brute force search.
+ */
+public class ConnectivityOptimizerTest extends TestCase {
+	private static final int NROF_HOSTS = 300;
+	/** size of the area the hosts are placed on */
+	private static final double AREA_SIZE = 30;
+	private static final int NROF_MOVES = 20;
+	private List<DTNHost> hosts;
+	private List<NetworkInterface> interfaces;
+	private Random rng;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		TestSettings ts = new TestSettings();
+		TestUtils utils = new TestUtils(null, null, ts);
+		rng = new Random(1);
+
+		hosts = new ArrayList<DTNHost>();
+		interfaces = new ArrayList<NetworkInterface>();
+		for (int i=0; i < NROF_HOSTS; i++) {
+			DTNHost h = utils.createHost(randomCoord());
+			hosts.add(h);
+			interfaces.add(h.getInterface(1));
+		}
+	}
+
+	public void testSortAndSweep() {
+		checkOptimizer(new SortAndSweepOptimizer());
+	}
+
+	public void testKdTree() {
+		checkOptimizer(new KdTreeOptimizer(
+				interfaces.get(0).getTransmitRange()));
+	}
+
+	public void testGridNearInterfacesOf() {
+		ConnectivityGrid.reset();
+		checkNearInterfacesOf(ConnectivityGrid.ConnectivityGridFactory(
+				interfaces.get(0).getInterfaceType().hashCode(),
+				interfaces.get(0).getTransmitRange()));
+	}
+
+	public void testSortAndSweepNearInterfacesOf() {
+		checkNearInterfacesOf(new SortAndSweepOptimizer());
+	}
+
+	public void testKdTreeNearInterfacesOf() {
+		checkNearInterfacesOf(new KdTreeOptimizer(
+				interfaces.get(0).getTransmitRange()));
+	}
+
+	public void testSortAndSweepRemove() {
+		checkRemove(new SortAndSweepOptimizer());
+	}
+
+	public void testKdTreeRemove() {
+		checkRemove(new KdTreeOptimizer(
+				interfaces.get(0).getTransmitRange()));
+	}
+
+	private void checkOptimizer(ConnectivityOptimizer opt) {
+		opt.addInterfaces(interfaces);
+		checkNearInterfaces(opt);
+		checkHalfNeighborhood(opt);
+
+		/* small moves; the k-d tree is rebuilt only now and then */
+		for (int i=0; i < NROF_MOVES; i++) {
+			for (DTNHost h : hosts) {
+				Coord c = h.getLocation();
+				h.setLocation(new Coord(
+						c.getX() + rng.nextDouble() - 0.5,
+						c.getY() + rng.nextDouble() - 0.5));
+				opt.updateLocation(h.getInterface(1));
+			}
+			checkNearInterfaces(opt);
+			checkHalfNeighborhood(opt);
+		}
+	}
+
+	/**
+	 * Checks that the near interfaces visited among candidates are the same
+	 * and in the same order as the near interfaces visited by
+	 * forEachNearInterface. Half of the hosts move without their location
+	 * being updated to the optimizer.
+	 */
+	private void checkNearInterfacesOf(ConnectivityOptimizer opt) {
+		opt.addInterfaces(interfaces);
+		for (int i=0; i < NROF_MOVES; i++) {
+			for (DTNHost h : hosts) {
+				Coord c = h.getLocation();
+				h.setLocation(new Coord(
+						Math.max(0, c.getX() + rng.nextDouble() * 4 - 2),
+						Math.max(0, c.getY() + rng.nextDouble() * 4 - 2)));
+				if (rng.nextBoolean()) {
+					opt.updateLocation(h.getInterface(1));
+				}
+			}
+
+			for (NetworkInterface ni : interfaces) {
+				final Set<NetworkInterface> candidates =
+					new HashSet<NetworkInterface>();
+				for (NetworkInterface other : interfaces) {
+					if (other != ni && rng.nextInt(3) == 0) {
+						candidates.add(other);
+					}
+				}
+
+				final List<NetworkInterface> expected =
+					new ArrayList<NetworkInterface>();
+				opt.forEachNearInterface(ni, new InterfaceVisitor() {
+					public void visit(NetworkInterface near) {
+						if (candidates.contains(near)) {
+							expected.add(near);
+						}
+					}
+				});
+				final List<NetworkInterface> visited =
+					new ArrayList<NetworkInterface>();
+				opt.forEachNearInterfaceOf(ni,
+						new ArrayList<NetworkInterface>(candidates),
+						new InterfaceVisitor() {
+					public void visit(NetworkInterface near) {
+						visited.add(near);
+					}
+				});
+				assertEquals(expected, visited);
+			}
+		}
+	}
+
+	private void checkRemove(IndexedOptimizer opt) {
+		opt.addInterfaces(interfaces);
+		NetworkInterface removed = interfaces.remove(0);
+		opt.removeInterface(removed);
+
+		assertEquals(-1, removed.getOptimizerIndex());
+		assertEquals(NROF_HOSTS - 1, opt.getAllInterfaces().size());
+		assertTrue(opt.getNearInterfaces(removed).isEmpty());
+		checkNearInterfaces(opt);
+		checkHalfNeighborhood(opt);
+	}
+
+	private void checkNearInterfaces(ConnectivityOptimizer opt) {
+		for (NetworkInterface ni : interfaces) {
+			Set<NetworkInterface> found = new HashSet<NetworkInterface>();
+			for (NetworkInterface near : opt.getNearInterfaces(ni)) {
+				assertNotSame(ni, near);
+				assertTrue(found.add(near));
+			}
+
+			for (NetworkInterface other : interfaces) {
+				if (other != ni && isNear(ni, other)) {
+					assertTrue(found.remove(other));
+				}
+			}
+			/* only interfaces within the range on both axes are returned */
+			assertTrue(found.isEmpty());
+		}
+	}
+
+	private void checkHalfNeighborhood(ConnectivityOptimizer opt) {
+		final Map<String, Integer> pairs = new HashMap<String, Integer>();
+
+		for (final NetworkInterface ni : interfaces) {
+			opt.forEachHalfNearInterface(ni, new InterfaceVisitor() {
+				public void visit(NetworkInterface near) {
+					assertNotSame(ni, near);
+					String key = pairKey(ni, near);
+					Integer count = pairs.get(key);
+					pairs.put(key, count == null ? 1 : count + 1);
+				}
+			});
+		}
+
+		int nrofPairs = 0;
+		for (NetworkInterface ni : interfaces) {
+			for (NetworkInterface other : interfaces) {
+				if (other != ni && isNear(ni, other)) {
+					assertEquals(Integer.valueOf(1),
+							pairs.get(pairKey(ni, other)));
+					nrofPairs++;
+				}
+			}
+		}
+		assertEquals(nrofPairs / 2, pairs.size());
+	}
+
+	private boolean isNear(NetworkInterface a, NetworkInterface b) {
+		double range = a.getTransmitRange();
+		Coord ca = a.getLocation();
+		Coord cb = b.getLocation();
+		return Math.abs(ca.getX() - cb.getX()) <= range &&
+			Math.abs(ca.getY() - cb.getY()) <= range;
+	}
+
+	private Coord randomCoord() {
+		return new Coord(rng.nextDouble() * AREA_SIZE,
+				rng.nextDouble() * AREA_SIZE);
+	}
+
+	private String pairKey(NetworkInterface a, NetworkInterface b) {
+		int addrA = a.getHost().getAddress();
+		int addrB = b.getHost().getAddress();
+		return Math.min(addrA, addrB) + "-" + Math.max(addrA, addrB);
+	}
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.EventQueue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import movement.MovementModel;
+import movement.Path;
+import core.ConnectionListener;
+import core.Coord;
+import core.DTNHost;
+import core.NetworkInterface;
+import core.SimClock;
+import core.UpdateListener;
+import core.World;
+import util.ActivenessHandler;
+
+/**
+ * Tests for the event-driven contact detection
+ */
+public class ContactPredictorTest extends TestCase {
+	/* accuracy of the predicted times */
+	private static final double TIME_DELTA = 0.000001;
+	/** update interval that doesn't divide the contact times */
+	private static final double UP_INTERVAL = 0.7;
+	private TestUtils utils;
+	private List<DTNHost> hosts;
+	private List<Double> upTimes;
+	private List<Double> downTimes;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		TestSettings ts = new TestSettings();
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				World.PREDICT_CONTACTS_S, "true");
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				World.RANDOMIZE_UPDATES_S, "false");
+
+		upTimes = new ArrayList<Double>();
+		downTimes = new ArrayList<Double>();
+		List<ConnectionListener> cl = new ArrayList<ConnectionListener>();
+		cl.add(new ConnectionListener() {
+			public void hostsConnected(DTNHost host1, DTNHost host2) {
+				upTimes.add(SimClock.getTime());
+			}
+			public void hostsDisconnected(DTNHost host1, DTNHost host2) {
+				downTimes.add(SimClock.getTime());
+			}
+		});
+
+		utils = new TestUtils(cl, null, ts);
+		hosts = new ArrayList<DTNHost>();
+	}
+
+	public void testPassingHost() {
+		/* range is 1.0: in range when x is within [-1, 1] */
+		hosts.add(utils.createHost(new Coord(0, 0)));
+		hosts.add(utils.createHost(new LineMovement(new Coord(10, 0),
+				new Coord(-10, 0), 1), null));
+
+		runWorld(15);
+
+		assertEquals(1, upTimes.size());
+		assertEquals(9.0, upTimes.get(0), TIME_DELTA);
+		assertEquals(1, downTimes.size());
+		assertEquals(11.0, downTimes.get(0), TIME_DELTA);
+	}
+
+	public void testPassingAtDistance() {
+		/* closest distance 0.6: in range when x distance is at most 0.8 */
+		hosts.add(utils.createHost(new LineMovement(new Coord(-5, 0.3),
+				new Coord(5, 0.3), 2), null));
+		hosts.add(utils.createHost(new LineMovement(new Coord(5, -0.3),
+				new Coord(-5, -0.3), 2), null));
+
+		runWorld(5);
+
+		assertEquals(1, upTimes.size());
+		assertEquals(9.2 / 4, upTimes.get(0), TIME_DELTA);
+		assertEquals(1, downTimes.size());
+		assertEquals(10.8 / 4, downTimes.get(0), TIME_DELTA);
+	}
+
+	public void testStationaryHostsInRange() {
+		hosts.add(utils.createHost(new Coord(0, 0)));
+		hosts.add(utils.createHost(new Coord(0.5, 0.5)));
+		hosts.add(utils.createHost(new Coord(5, 5)));
+
+		runWorld(2);
+
+		assertEquals(1, upTimes.size());
+		assertEquals(0.0, upTimes.get(0), TIME_DELTA);
+		assertEquals(0, downTimes.size());
+	}
+
+	public void testInactiveRadio() {
+		/* in range all the time, but the other radio is active only
+		 * after 3 seconds */
+		hosts.add(utils.createHost(new Coord(0, 0)));
+		DTNHost inactive = utils.createHost(new Coord(0.5, 0.5));
+		hosts.add(inactive);
+		TestSettings gs = new TestSettings("inactiveGroup");
+		gs.putSetting(NetworkInterface.NET_SUB_NS + "." +
+				ActivenessHandler.ACTIVE_TIMES_S, "3,100");
+		inactive.getInterfaces().get(0).setGroupSettings(gs);
+
+		runWorld(5);
+
+		assertEquals(1, upTimes.size());
+		assertTrue(upTimes.get(0) >= 3.0);
+		assertTrue(upTimes.get(0) < 3.0 + UP_INTERVAL);
+		assertEquals(0, downTimes.size());
+	}
+
+	private void runWorld(double endTime) {
+		World world = new World(hosts, 100, 100, UP_INTERVAL,
+				new ArrayList<UpdateListener>(), true,
+				new ArrayList<EventQueue>());
+		while (SimClock.getTime() < endTime) {
+			world.update();
+		}
+	}
+
+	/**
+	 * Movement model that moves once from a location to another
+	 */
+	private static class LineMovement extends MovementModel {
+		private Coord from;
+		private Coord to;
+		private double speed;
+		private boolean moved;
+
+		public LineMovement(Coord from, Coord to, double speed) {
+			this.from = from;
+			this.to = to;
+			this.speed = speed;
+			this.moved = false;
+		}
+
+		@Override
+		public Coord getInitialLocation() {
+			return from.clone();
+		}
+
+		@Override
+		public Path getPath() {
+			Path p = new Path(speed);
+			p.addWaypoint(from.clone());
+			p.addWaypoint(to.clone());
+			moved = true;
+			return p;
+		}
+
+		@Override
+		public double nextPathAvailable() {
+			return moved ? Double.MAX_VALUE : 0;
+		}
+
+		@Override
+		public boolean isActive() {
+			return true;
+		}
+
+		@Override
+		public LineMovement replicate() {
+			return new LineMovement(from, to, speed);
+		}
+	}
+}
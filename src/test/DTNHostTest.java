@@ -1,6 +1,7 @@
 package test;
 
 
+import core.Connection;
 import core.Coord;
 import core.DTNHost;
 import core.MessageListener;
@@ -18,6 +19,7 @@ import routing.MessageRouter;
 import routing.PassiveRouter;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import junit.framework.TestCase;
 
@@ -67,6 +69,43 @@ public class DTNHostTest extends TestCase {
     assertFalse("Radio reported as active.", host.isRadioActive());
   }
 
+  /**
+   * Tests that the connection list is reused until a connection comes up or
+   * goes down and that a returned list doesn't change.
+   */
+  @Test
+  public void testConnectionsView() {
+    final TestUtils utils = new TestUtils(null, null, new TestSettings());
+    final DTNHost h1 = utils.createHost();
+    final DTNHost h2 = utils.createHost();
+    final DTNHost h3 = utils.createHost();
+
+    final List<Connection> none = h1.getConnections();
+    assertTrue(none.isEmpty());
+    assertSame(none, h1.getConnections());
+
+    h1.forceConnection(h2, null, true);
+    h3.forceConnection(h1, null, true);
+    final List<Connection> two = h1.getConnections();
+    assertEquals(2, two.size());
+    assertTrue(none.isEmpty());
+    assertSame(two, h1.getConnections());
+    assertEquals(1, h2.getConnections().size());
+
+    h1.forceConnection(h2, null, false);
+    assertEquals(2, two.size());
+    assertEquals(1, h1.getConnections().size());
+    assertEquals(h3, h1.getConnections().get(0).getOtherNode(h1));
+    assertTrue(h2.getConnections().isEmpty());
+
+    try {
+      h1.getConnections().clear();
+      fail("Connection list was modifiable.");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+  }
+
   private static MovementModel makeMovementModel() {
     return new MovementModel() {
       @Override
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import routing.util.DeliveryPredictabilities;
+import core.DTNHost;
+import core.SimClock;
+
+/**
+ * Tests for the lazily aged delivery predictabilities
+ */
+public class DeliveryPredictabilitiesTest extends TestCase {
+	private static final double DELTA = 0.000001;
+	private static final double GAMMA = 0.98;
+	private static final int TIME_UNIT = 30;
+
+	private SimClock clock;
+	private DTNHost h0, h1, h2, h3;
+	private DeliveryPredictabilities preds;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		TestSettings ts = new TestSettings();
+		TestUtils utils = new TestUtils(null, null, ts);
+		h0 = utils.createHost();
+		h1 = utils.createHost();
+		h2 = utils.createHost();
+		h3 = utils.createHost();
+
+		clock = SimClock.getInstance();
+		clock.setTime(0);
+		preds = new DeliveryPredictabilities(GAMMA, TIME_UNIT);
+	}
+
+	public void testAging() {
+		assertEquals(0.0, preds.get(h1));
+		preds.put(h1, 0.5);
+		clock.setTime(10);
+		preds.put(h2, 0.8);
+		assertEquals(2, preds.size());
+
+		clock.setTime(60); // 2 time units for h1, 2 - 1/3 for h2
+		assertEquals(0.5 * Math.pow(GAMMA, 2), preds.get(h1), DELTA);
+		assertEquals(0.8 * Math.pow(GAMMA, 2 - 1.0/3), preds.get(h2), DELTA);
+
+		clock.setTime(TIME_UNIT * 2000);
+		assertEquals(0.5 * Math.pow(GAMMA, 2000), preds.get(h1), DELTA);
+	}
+
+	/**
+	 * Checks that the values are exactly the same as when all the values
+	 * are aged at every use, also when the multiplier log is cleared
+	 */
+	public void testSameAsEagerAging() {
+		DTNHost[] hosts = {h0, h1, h2, h3};
+		DeliveryPredictabilities other =
+			new DeliveryPredictabilities(GAMMA, TIME_UNIT);
+		EagerPreds eager = new EagerPreds();
+		EagerPreds eagerOther = new EagerPreds();
+		Random rng = new Random(1);
+
+		for (int round = 0; round < 2000; round++) {
+			clock.advance(rng.nextInt(4) * 0.1 * rng.nextInt(100));
+			DTNHost h = hosts[rng.nextInt(hosts.length)];
+			double p = rng.nextDouble();
+			switch (rng.nextInt(5)) {
+			case 0:
+				preds.put(h, p);
+				eager.put(h, p);
+				break;
+			case 1:
+				other.put(h, p);
+				eagerOther.put(h, p);
+				break;
+			case 2:
+				preds.updateTransitive(other, h0, p, 0.25);
+				eager.updateTransitive(eagerOther, h0, p, 0.25, false);
+				break;
+			case 3:
+				preds.updateTransitiveMax(other, h0, p, 0.25);
+				eager.updateTransitive(eagerOther, h0, p, 0.25, true);
+				break;
+			default:
+				if (rng.nextInt(10) == 0) {
+					preds.setGamma(p);
+					eager.gamma = p;
+				}
+			}
+			if (rng.nextInt(3) == 0) {
+				assertEquals(eager.get(h), preds.get(h), 0.0);
+			}
+		}
+
+		for (DTNHost h : hosts) {
+			assertEquals(eager.get(h), preds.get(h), 0.0);
+			assertEquals(eagerOther.get(h), other.get(h), 0.0);
+		}
+	}
+
+	public void testSetGamma() {
+		preds.put(h1, 0.5);
+		preds.put(h2, 0.8);
+
+		/* the old gamma applies up to the last use, the new one after it */
+		clock.setTime(60);
+		assertEquals(0.5 * Math.pow(GAMMA, 2), preds.get(h1), DELTA);
+		clock.setTime(90);
+		preds.setGamma(0.5);
+		assertEquals(0.5, preds.getGamma());
+		clock.setTime(120);
+		assertEquals(0.5 * Math.pow(GAMMA, 2) * Math.pow(0.5, 2),
+				preds.get(h1), DELTA);
+		assertEquals(0.8 * Math.pow(GAMMA, 2) * Math.pow(0.5, 2),
+				preds.get(h2), DELTA);
+
+		/* not used since the values were set: new gamma for all the time */
+		DeliveryPredictabilities other =
+			new DeliveryPredictabilities(GAMMA, TIME_UNIT);
+		other.put(h1, 0.5);
+		clock.setTime(150);
+		other.setGamma(0.5);
+		assertEquals(0.5 * Math.pow(0.5, 1), other.get(h1), DELTA);
+	}
+
+	public void testTransitive() {
+		DeliveryPredictabilities other =
+			new DeliveryPredictabilities(GAMMA, TIME_UNIT);
+		preds.put(h2, 0.4);
+		other.put(h0, 0.9);
+		other.put(h2, 0.5);
+		other.put(h3, 0.6);
+
+		clock.setTime(30);
+		double pForHost = 0.75;
+		double beta = 0.25;
+		preds.updateTransitive(other, h0, pForHost, beta);
+
+		double p2 = 0.4 * GAMMA;
+		double p3 = 0.6 * GAMMA;
+		assertEquals(p2 + (1 - p2) * pForHost * 0.5 * GAMMA * beta,
+				preds.get(h2), DELTA);
+		assertEquals(pForHost * p3 * beta, preds.get(h3), DELTA);
+		assertEquals(0.0, preds.get(h0)); // not added to own preds
+		assertEquals(2, preds.size());
+
+		Map<DTNHost, Double> map = preds.toMap();
+		assertEquals(2, map.size());
+		assertEquals(preds.get(h3), map.get(h3), DELTA);
+	}
+
+	public void testTransitiveMax() {
+		DeliveryPredictabilities other =
+			new DeliveryPredictabilities(GAMMA, TIME_UNIT);
+		preds.put(h2, 0.4);
+		other.put(h2, 0.5);
+		other.put(h3, 0.6);
+
+		preds.updateTransitiveMax(other, h0, 0.5, 0.5);
+		assertEquals(0.4, preds.get(h2), DELTA); // 0.125 < 0.4
+		assertEquals(0.5 * 0.6 * 0.5, preds.get(h3), DELTA);
+
+		preds.put(h2, 0.1);
+		preds.updateTransitiveMax(other, h0, 0.5, 0.5);
+		assertEquals(0.5 * 0.5 * 0.5, preds.get(h2), DELTA);
+	}
+
+	/**
+	 * Predictabilities that are all aged at every use, like the PRoPHET
+	 * routers originally did
+	 */
+	private class EagerPreds {
+		private Map<DTNHost, Double> preds = new HashMap<DTNHost, Double>();
+		private double gamma = GAMMA;
+		private double lastAgeUpdate = 0;
+
+		private void age() {
+			double timeDiff = (SimClock.getTime() - lastAgeUpdate) / TIME_UNIT;
+			if (timeDiff == 0) {
+				return;
+			}
+			double mult = Math.pow(gamma, timeDiff);
+			for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
+				e.setValue(e.getValue() * mult);
+			}
+			lastAgeUpdate = SimClock.getTime();
+		}
+
+		private double get(DTNHost host) {
+			age();
+			return preds.containsKey(host) ? preds.get(host) : 0;
+		}
+
+		private void put(DTNHost host, double value) {
+			age();
+			preds.put(host, value);
+		}
+
+		private void updateTransitive(EagerPreds other, DTNHost self,
+				double pForHost, double beta, boolean max) {
+			age();
+			other.age();
+			for (Map.Entry<DTNHost, Double> e : other.preds.entrySet()) {
+				if (e.getKey() == self) {
+					continue;
+				}
+				double pOld = get(e.getKey());
+				if (max) {
+					double pNew = pForHost * e.getValue() * beta;
+					if (pNew > pOld) {
+						preds.put(e.getKey(), pNew);
+					}
+				} else {
+					preds.put(e.getKey(),
+							pOld + (1 - pOld) * pForHost * e.getValue() * beta);
+				}
+			}
+		}
+	}
+}
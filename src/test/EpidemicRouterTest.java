@@ -616,7 +616,11 @@ public class EpidemicRouterTest extends AbstractRouterTest {
 
 		String orderedIds = "1 2 3 4 5 ";
 
-		assertNotSame(orderedIds, runMessageExchange(true));
-		assertNotSame(orderedIds, runMessageExchange(false));
+		String ids = runMessageExchange(true);
+		assertFalse(orderedIds.equals(ids));
+		assertFalse(orderedIds.equals(runMessageExchange(false)));
+		/* the order is the same on every run with the same hosts */
+		this.setUp();
+		assertEquals(ids, runMessageExchange(true));
 	}
 }
@@ -9,6 +9,7 @@ import input.ExternalEvent;
 import input.ExternalEventsQueue;
 import input.ExternalEventsReader;
 import input.MessageCreateEvent;
+import input.ReadAheadEventsReader;
 import input.StandardEventsReader;
 
 import java.io.File;
@@ -82,6 +83,28 @@ public class ExternalEventsQueueTest extends TestCase {
 	}
 
 
+	public void testReadAhead() {
+		ExternalEventsReader r = new ReadAheadEventsReader(
+				new StandardEventsReader(tempFile), 3);
+		int i = 0;
+		List<ExternalEvent> events = r.readEvents(2);
+		while (events.size() > 0) {
+			assertTrue(events.size() <= 2);
+			for (ExternalEvent ee : events) {
+				assertEquals(msgTimes[i++], ee.getTime());
+			}
+			events = r.readEvents(2);
+		}
+		assertEquals(msgTimes.length, i);
+		assertEquals(0, r.readEvents(2).size());
+		r.close();
+
+		/* closing before all events are read */
+		r = new ReadAheadEventsReader(new StandardEventsReader(tempFile), 1);
+		assertEquals(msgTimes[0], r.readEvents(1).get(0).getTime());
+		r.close();
+	}
+
 	private void checkEeq(ExternalEventsQueue eeq, int preloadVal) {
 		ExternalEvent ee;
 		assertEquals(msgTimes[0],eeq.nextEventsTime());
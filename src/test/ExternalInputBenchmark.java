@@ -0,0 +1,183 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import input.BinaryEventsReader;
+import input.ExternalEvent;
+import input.ExternalEventsReader;
+import input.ExternalMovementReader;
+import input.StandardEventsReader;
+
+/**
+ * <P>
+ * Benchmark of the external input readers (not a unit test). Reads the
+ * external events files of a directory (default: the bundled
+ * <CODE>ee</CODE> directory) with {@link StandardEventsReader} and, after
+ * converting them, with {@link BinaryEventsReader}. Then reads a generated
+ * external movement trace with {@link ExternalMovementReader}. The reading
+ * speeds are compared to reading the same bytes from the file without
+ * parsing.
+ * </P>
+ * <P>
+ * Usage: <CODE>java test.ExternalInputBenchmark [eeDir [rounds]]</CODE>
+ * </P>
+ */
+public class ExternalInputBenchmark {
+	/** Number of events read at a time */
+	private static final int BATCH_SIZE = 500;
+	/** Number of nodes in the generated movement trace */
+	private static final int TRACE_NODES = 1000;
+	/** Number of time instances in the generated movement trace */
+	private static final int TRACE_INSTANCES = 1000;
+
+	/**
+	 * Runs the benchmark
+	 * @param args Directory of the events files and number of rounds
+	 */
+	public static void main(String[] args) throws IOException {
+		File dir = new File(args.length > 0 ? args[0] : "ee");
+		int rounds = (args.length > 1 ? Integer.parseInt(args[1]) : 50);
+
+		File[] files = dir.listFiles();
+		if (files == null) {
+			System.err.println("Can't list directory " + dir);
+			System.exit(1);
+		}
+		Arrays.sort(files);
+
+		System.out.println("# file, reader, events, ms/round, " +
+				"events/s, MB/s (disk MB/s)");
+		for (File f : files) {
+			if (!f.getName().endsWith(".txt")) {
+				continue;
+			}
+			benchmarkEvents(f, rounds);
+		}
+
+		File trace = File.createTempFile("benchmarkTrace", ".txt");
+		trace.deleteOnExit();
+		writeTrace(trace);
+		benchmarkMovement(trace, Math.max(rounds / 10, 1));
+	}
+
+	/**
+	 * Reads an events file with the standard and the binary reader
+	 */
+	private static void benchmarkEvents(File f, int rounds)
+			throws IOException {
+		List<ExternalEvent> events = new ArrayList<ExternalEvent>();
+		ExternalEventsReader r = new StandardEventsReader(f);
+		List<ExternalEvent> batch = r.readEvents(BATCH_SIZE);
+		while (batch.size() > 0) {
+			events.addAll(batch);
+			batch = r.readEvents(BATCH_SIZE);
+		}
+		r.close();
+
+		File bin = File.createTempFile("benchmark",
+				BinaryEventsReader.BINARY_EXT);
+		bin.deleteOnExit();
+		BinaryEventsReader.storeToBinaryFile(bin.getPath(), events);
+
+		for (int binary = 0; binary < 2; binary++) {
+			File in = (binary == 1 ? bin : f);
+			double disk = diskTime(in, rounds);
+			long start = System.nanoTime();
+			int nrof = 0;
+			for (int i = 0; i < rounds; i++) {
+				r = (binary == 1 ? new BinaryEventsReader(in) :
+					new StandardEventsReader(in));
+				batch = r.readEvents(BATCH_SIZE);
+				while (batch.size() > 0) {
+					nrof += batch.size();
+					batch = r.readEvents(BATCH_SIZE);
+				}
+				r.close();
+			}
+			report(f.getName(), (binary == 1 ? "binary" : "standard"),
+					nrof / rounds, in.length(), System.nanoTime() - start,
+					rounds, disk);
+		}
+	}
+
+	/**
+	 * Reads a movement trace with the external movement reader
+	 */
+	private static void benchmarkMovement(File trace, int rounds) {
+		double disk = diskTime(trace, rounds);
+		long start = System.nanoTime();
+		int nrof = 0;
+		for (int i = 0; i < rounds; i++) {
+			ExternalMovementReader r =
+				new ExternalMovementReader(trace.getPath());
+			int moves = r.readNextMovements().size();
+			while (moves > 0) {
+				nrof += moves;
+				moves = r.readNextMovements().size();
+			}
+			r.close();
+		}
+		report("movement trace", "movement", nrof / rounds, trace.length(),
+				System.nanoTime() - start, rounds, disk);
+	}
+
+	/**
+	 * Writes a random movement trace
+	 */
+	private static void writeTrace(File trace) throws IOException {
+		Random rng = new Random(1);
+		PrintWriter out = new PrintWriter(trace);
+		out.println("0 " + TRACE_INSTANCES + " 0 10000 0 10000");
+		for (int t = 0; t < TRACE_INSTANCES; t++) {
+			for (int n = 0; n < TRACE_NODES; n++) {
+				out.println(String.format(Locale.US, "%d n%d %.3f %.3f", t,
+						n, rng.nextDouble() * 10000, rng.nextDouble() * 10000));
+			}
+		}
+		out.close();
+	}
+
+	/**
+	 * Returns the time (ns) of reading a file without parsing per round
+	 */
+	private static double diskTime(File f, int rounds) {
+		ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+		long start = System.nanoTime();
+		try {
+			for (int i = 0; i < rounds; i++) {
+				FileChannel ch = new FileInputStream(f).getChannel();
+				while (ch.read(buffer) >= 0) {
+					buffer.clear();
+				}
+				ch.close();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return (System.nanoTime() - start) / (double)rounds;
+	}
+
+	private static void report(String name, String reader, int nrof,
+			long bytes, long time, int rounds, double diskTime) {
+		double roundTime = time / (double)rounds;
+		System.out.println(String.format(Locale.US,
+				"%s, %s, %d, %.2f, %.0f, %.1f (%.1f)", name, reader, nrof,
+				roundTime / 1e6, nrof / (roundTime / 1e9),
+				bytes / (roundTime / 1e9) / 1e6,
+				bytes / (diskTime / 1e9) / 1e6));
+	}
+}
@@ -63,6 +63,14 @@ public class ExternalMovementReaderTest extends TestCase {
 		assertEquals(0, list.size());
 	}
 
+	public void testReadAhead() {
+		r.setReadAhead(1);
+		testReader();
+		assertEquals(0, r.readNextMovements().size()); // end stays
+		assertEquals(times[times.length - 1], r.getLastTimeStamp());
+		r.close();
+	}
+
 	private void checkTuples(List<Tuple<String, Coord>> list, String[] ids,
 			Coord[] coords) {
 
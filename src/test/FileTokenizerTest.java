@@ -0,0 +1,177 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import input.FileTokenizer;
+import junit.framework.TestCase;
+
+/**
+ * Tests for the byte level file tokenizer
+ */
+public class FileTokenizerTest extends TestCase {
+	private File file;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		file = File.createTempFile("fileTokenizerTest", ".txt");
+		file.deleteOnExit();
+	}
+
+	private FileTokenizer tokenizer(String contents) throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(contents.getBytes());
+		out.close();
+		return new FileTokenizer(file);
+	}
+
+	public void testLinesLikeBufferedReader() throws Exception {
+		String contents = "a b\n\nc\r\nd\re\r\r\n  \n\tf  g\t\nlast";
+		FileTokenizer t = tokenizer(contents);
+		BufferedReader br = new BufferedReader(new FileReader(file));
+
+		String line = br.readLine();
+		while (line != null) {
+			assertTrue(t.nextLine());
+			assertEquals(line, t.getLine());
+			line = br.readLine();
+			assertEquals(line != null, t.hasNextLine());
+		}
+		br.close();
+		assertFalse(t.nextLine());
+		t.close();
+
+		t = tokenizer("x\r\n");
+		assertTrue(t.nextLine());
+		assertFalse(t.hasNextLine());
+		assertFalse(t.nextLine());
+		t.close();
+	}
+
+	public void testTokens() throws Exception {
+		FileTokenizer t = tokenizer("  12 abc\t-7 x9 1e3 \n#c\n");
+		assertTrue(t.nextLine());
+		assertTrue(t.hasNextInt());
+		assertEquals(12, t.nextInt());
+		assertFalse(t.hasNextInt());
+		assertEquals("abc", t.next());
+		assertEquals(-7.0, t.nextDouble());
+		assertEquals("x9", t.next());
+		assertEquals(1000.0, t.nextDouble());
+		assertFalse(t.hasNext());
+		try {
+			t.next();
+			fail("Token after the end of the line");
+		} catch (NoSuchElementException e) {
+			// expected
+		}
+
+		t.resetLine();
+		assertEquals("12", t.next());
+		assertTrue(t.nextLine());
+		assertTrue(t.lineStartsWith('#'));
+		assertFalse(t.nextLine());
+		t.close();
+	}
+
+	public void testNumbersLikeParseMethods() throws Exception {
+		Random rng = new Random(3);
+		List<String> tokens = new ArrayList<String>();
+		String[] special = {"0", "-0", "-0.0", "+5", ".5", "5.", "0.1",
+				"63.3", "1e-5", "1E22", "1e23", "123456789012345678",
+				"0.000000000000000000000000001", "4.9e-324",
+				"1.7976931348623157e308", "1e400", "NaN", "-Infinity",
+				"0x1p3", "2d", "2147483647", "-2147483648", "2147483648",
+				"007", "1.2.3", "-", "e5", "1e"};
+		for (String s : special) {
+			tokens.add(s);
+		}
+		for (int i = 0; i < 10000; i++) {
+			switch (i % 4) {
+			case 0:
+				tokens.add(Double.toString(rng.nextDouble() * 1e6));
+				break;
+			case 1:
+				tokens.add(String.format(Locale.US, "%.3f",
+						rng.nextDouble() * 5000));
+				break;
+			case 2:
+				tokens.add(Long.toString(rng.nextLong() % 100000000000L));
+				break;
+			default:
+				tokens.add(Double.toString(rng.nextGaussian() *
+						Math.pow(10, rng.nextInt(60) - 30)));
+			}
+		}
+
+		StringBuilder sb = new StringBuilder();
+		for (String s : tokens) {
+			sb.append(s).append(' ');
+		}
+		FileTokenizer t = tokenizer(sb.toString());
+		assertTrue(t.nextLine());
+
+		for (String s : tokens) {
+			t.hasNextInt(); // doesn't consume
+			parse(t, true, s);
+		}
+		t.resetLine();
+		for (String s : tokens) {
+			parse(t, false, s);
+		}
+		t.close();
+	}
+
+	/**
+	 * Parses the next token with the tokenizer and checks the result (or
+	 * exception) against the parse methods
+	 */
+	private void parse(FileTokenizer t, boolean asDouble, String token) {
+		Object expected;
+		Object actual;
+		try {
+			expected = asDouble ? (Object)Double.parseDouble(token) :
+				(Object)Integer.parseInt(token);
+		} catch (NumberFormatException e) {
+			expected = e.getClass();
+		}
+		try {
+			actual = asDouble ? (Object)t.nextDouble() : (Object)t.nextInt();
+		} catch (NumberFormatException e) {
+			actual = e.getClass();
+		}
+		assertEquals("Token '" + token + "'", expected, actual);
+	}
+
+	public void testLongLines() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		int nrof = 300000; // longer than the initial buffer
+		for (int i = 0; i < nrof; i++) {
+			sb.append(i).append(' ');
+		}
+		sb.append("\n1 2\n");
+		FileTokenizer t = tokenizer(sb.toString());
+		assertTrue(t.nextLine());
+		for (int i = 0; i < nrof; i++) {
+			assertEquals(i, t.nextInt());
+		}
+		assertFalse(t.hasNext());
+		assertTrue(t.hasNextLine());
+		assertTrue(t.nextLine());
+		assertEquals("1 2", t.getLine());
+		t.close();
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+import junit.framework.TestCase;
+import util.IntHashMap;
+import util.IntHashSet;
+import core.Message;
+
+/**
+ * Tests for the primitive int sets and maps and the interned message IDs
+ */
+public class IntHashSetTest extends TestCase {
+
+	public void testAddRemove() {
+		IntHashSet set = new IntHashSet();
+		assertTrue(set.isEmpty());
+		assertTrue(set.add(1));
+		assertFalse(set.add(1));
+		assertTrue(set.add(Integer.MIN_VALUE));
+		assertTrue(set.add(0));
+		assertEquals(3, set.size());
+		assertTrue(set.contains(Integer.MIN_VALUE));
+		assertFalse(set.contains(2));
+
+		assertTrue(set.remove(Integer.MIN_VALUE));
+		assertFalse(set.remove(Integer.MIN_VALUE));
+		assertTrue(set.remove(1));
+		assertEquals(1, set.size());
+		assertTrue(set.contains(0));
+		set.clear();
+		assertTrue(set.isEmpty());
+	}
+
+	public void testAgainstHashSet() {
+		IntHashSet set = new IntHashSet(4);
+		Set<Integer> ref = new HashSet<Integer>();
+		Random rng = new Random(1);
+
+		/* small value range -> lots of collisions and removals */
+		for (int i = 0; i < 20000; i++) {
+			int v = rng.nextInt(500);
+			if (rng.nextBoolean()) {
+				assertEquals(ref.add(v), set.add(v));
+			} else {
+				assertEquals(ref.remove(v), set.remove(v));
+			}
+		}
+		assertEquals(ref.size(), set.size());
+		for (int v = 0; v < 500; v++) {
+			assertEquals(ref.contains(v), set.contains(v));
+		}
+
+		int[] values = set.toArray();
+		Arrays.sort(values);
+		assertEquals(ref.size(), values.length);
+		for (int v : values) {
+			assertTrue(ref.contains(v));
+		}
+
+		IntHashSet copy = new IntHashSet();
+		copy.addAll(set);
+		assertEquals(set.size(), copy.size());
+		final int[] sum = {0};
+		copy.forEach(new IntConsumer() {
+			public void accept(int v) {
+				sum[0] += v;
+			}
+		});
+		int expected = 0;
+		for (int v : ref) {
+			expected += v;
+		}
+		assertEquals(expected, sum[0]);
+	}
+
+	public void testMap() {
+		IntHashMap<String> map = new IntHashMap<String>();
+		for (int i = 0; i < 100; i++) {
+			assertNull(map.put(i * 16, "v" + i));
+		}
+		assertEquals(100, map.size());
+		assertEquals("v3", map.put(48, "x"));
+		assertEquals("x", map.get(48));
+		assertNull(map.get(1));
+		assertNull(map.put(Integer.MIN_VALUE, "min"));
+		assertEquals(101, map.size());
+
+		for (int i = 0; i < 100; i += 2) {
+			assertNotNull(map.remove(i * 16));
+		}
+		assertEquals(51, map.size());
+		assertEquals(51, map.values().size());
+		for (int i = 1; i < 100; i += 2) {
+			assertTrue(map.containsKey(i * 16));
+			assertFalse(map.containsKey((i - 1) * 16));
+		}
+		assertEquals("min", map.remove(Integer.MIN_VALUE));
+		assertNull(map.get(Integer.MIN_VALUE));
+	}
+
+	public void testMessageIntIds() {
+		TestSettings ts = new TestSettings();
+		TestUtils utils = new TestUtils(null, null, ts);
+		Message.reset();
+		Message m1 = new Message(utils.createHost(), utils.createHost(),
+				"M1", 10);
+		Message m2 = new Message(m1.getFrom(), m1.getTo(), "M2", 10);
+
+		assertTrue(m1.getIntId() != m2.getIntId());
+		assertEquals(m1.getIntId(), m1.replicate().getIntId());
+		assertEquals(m1.getIntId(),
+				new Message(m2.getFrom(), m2.getTo(), "M1", 5).getIntId());
+		assertEquals(m2.getIntId(), Message.getIntId("M2"));
+		assertEquals(-1, Message.getIntId("M3"));
+	}
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+import routing.util.MessageBuffer;
+import core.DTNHost;
+import core.Message;
+import core.SimClock;
+
+/**
+ * Tests for the indices of the message buffer
+ */
+public class MessageBufferTest extends TestCase {
+
+	private MessageBuffer buffer;
+	private DTNHost h1;
+	private DTNHost h2;
+	private Message m1, m2, m3, m4;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		TestSettings ts = new TestSettings();
+		TestUtils utils = new TestUtils(null, null, ts);
+		h1 = utils.createHost();
+		h2 = utils.createHost();
+
+		m1 = msg(h1, "M1", 10, 30.0);
+		m2 = msg(h2, "M2", 20, 10.0);
+		m3 = msg(h1, "M3", 30, 20.0);
+		m4 = msg(h2, "M4", 40, 10.0);
+
+		buffer = new MessageBuffer(0L);
+		for (Message m : Arrays.asList(m1, m2, m3, m4)) {
+			buffer.add(m);
+		}
+	}
+
+	private Message msg(DTNHost to, String id, int size, double receiveTime) {
+		Message m = new Message(h1, to, id, size);
+		m.setReceiveTime(receiveTime);
+		return m;
+	}
+
+	public void testBufferOrder() {
+		assertEquals(4, buffer.size());
+		assertEquals(Arrays.asList(m1, m2, m3, m4),
+				new ArrayList<Message>(buffer.getMessages()));
+		assertTrue(buffer.getMessages().contains(m3));
+		assertEquals(100, buffer.getOccupancy());
+
+		/* removing and adding keeps the order of the others */
+		buffer.remove("M2");
+		Message m5 = msg(h1, "M5", 1, 0.0);
+		buffer.add(m5);
+		buffer.add(m2);
+		assertEquals(Arrays.asList(m1, m3, m4, m5, m2),
+				new ArrayList<Message>(buffer.getMessages()));
+		assertTrue(buffer.bufferOrder().compare(m4, m5) < 0);
+		assertTrue(buffer.bufferOrder().compare(m2, m1) > 0);
+	}
+
+	public void testMessagesTo() {
+		assertEquals(Arrays.asList(m1, m3), buffer.getMessagesTo(h1));
+		assertEquals(Arrays.asList(m2, m4), buffer.getMessagesTo(h2));
+
+		Message m5 = msg(h1, "M5", 1, 0.0);
+		buffer.add(m5);
+		assertEquals(Arrays.asList(m1, m3, m5), buffer.getMessagesTo(h1));
+
+		buffer.remove("M1");
+		buffer.remove("M3");
+		buffer.remove("M5");
+		assertTrue(buffer.getMessagesTo(h1).isEmpty());
+		assertEquals(60, buffer.getOccupancy());
+	}
+
+	public void testReceiveTimeOrder() {
+		/* m2 and m4 have the same receive time: buffer order */
+		List<Message> expected = Arrays.asList(m2, m4, m3, m1);
+		assertEquals(expected, buffer.getMessagesByReceiveTime());
+
+		List<Message> iterated = new ArrayList<Message>();
+		Iterator<Message> i = buffer.receiveTimeIterator();
+		while (i.hasNext()) {
+			iterated.add(i.next());
+		}
+		assertEquals(expected, iterated);
+
+		assertEquals(m2, buffer.remove("M2"));
+		assertNull(buffer.remove("M2"));
+		assertEquals(m4, buffer.receiveTimeIterator().next());
+	}
+
+	public void testRandomOrder() {
+		List<Message> order = buffer.getMessagesInRandomOrder();
+		assertEquals(4, order.size());
+		assertTrue(order.containsAll(buffer.getMessages()));
+		for (int i = 1; i < order.size(); i++) {
+			assertTrue(buffer.randomOrder().compare(order.get(i - 1),
+					order.get(i)) < 0);
+		}
+
+		/* same seed, same order */
+		MessageBuffer other = new MessageBuffer(0L);
+		for (Message m : Arrays.asList(m1, m2, m3, m4)) {
+			other.add(m);
+		}
+		assertEquals(order, other.getMessagesInRandomOrder());
+
+		/* removing a message doesn't change the order of the others */
+		buffer.remove("M3");
+		List<Message> expected = new ArrayList<Message>(order);
+		expected.remove(m3);
+		assertEquals(expected, buffer.getMessagesInRandomOrder());
+	}
+
+	public void testExpiryOrder() {
+		/* no TTLs */
+		assertEquals(Double.POSITIVE_INFINITY, buffer.getFirstExpiryTime());
+		assertTrue(buffer.getMessagesExpiringBefore(1e9).isEmpty());
+
+		/* created at time 0: expiry time is one minute before the TTL */
+		SimClock.getInstance().setTime(0);
+		Message t1 = msg(h1, "T1", 1, 0.0);
+		t1.setTtl(3);
+		Message t2 = msg(h2, "T2", 1, 0.0);
+		t2.setTtl(2);
+		Message t3 = msg(h2, "T3", 1, 0.0);
+		t3.setTtl(2);
+		buffer.add(t1);
+		buffer.add(t2);
+		buffer.add(t3);
+
+		assertEquals(60.0, buffer.getFirstExpiryTime());
+		assertTrue(buffer.getMessagesExpiringBefore(60.0).isEmpty());
+		assertEquals(Arrays.asList(t2, t3),
+				buffer.getMessagesExpiringBefore(61.0));
+		/* in buffer order, not in expiry order */
+		assertEquals(Arrays.asList(t1, t2, t3),
+				buffer.getMessagesExpiringBefore(121.0));
+
+		buffer.remove("T2");
+		assertEquals(Arrays.asList(t3),
+				buffer.getMessagesExpiringBefore(61.0));
+		buffer.remove("T3");
+		assertEquals(120.0, buffer.getFirstExpiryTime());
+	}
+
+	public void testReplace() {
+		Message newM1 = msg(h2, "M1", 5, 5.0);
+		buffer.add(newM1);
+
+		/* the new message goes to the end */
+		assertEquals(Arrays.asList(m2, m3, m4, newM1),
+				new ArrayList<Message>(buffer.getMessages()));
+		assertEquals(4, buffer.size());
+		assertEquals(newM1, buffer.get("M1"));
+		assertEquals(95, buffer.getOccupancy());
+		assertEquals(Arrays.asList(m3), buffer.getMessagesTo(h1));
+		assertEquals(Arrays.asList(m2, m4, newM1), buffer.getMessagesTo(h2));
+		assertEquals(newM1, buffer.getMessagesByReceiveTime().get(0));
+		assertTrue(buffer.bufferOrder().compare(m2, newM1) < 0);
+	}
+}
@@ -4,6 +4,9 @@
  */
 package test;
 
+import java.util.Arrays;
+import java.util.List;
+
 import junit.framework.TestCase;
 
 import org.junit.Before;
@@ -60,5 +63,50 @@ public class MessageTest extends TestCase {
 		assertEquals(value2, msg.getProperty("bar"));
 	}
 
+	@Test
+	public void testReplicateProperties() {
+		msg.addProperty("foo", "value1");
+		Message replica = msg.replicate();
+		assertEquals("value1", replica.getProperty("foo"));
+
+		replica.updateProperty("foo", "value2");
+		replica.addProperty("bar", "value3");
+		assertEquals("value1", msg.getProperty("foo"));
+		assertNull(msg.getProperty("bar"));
+
+		msg.updateProperty("foo", "value4");
+		assertEquals("value2", replica.getProperty("foo"));
+		assertEquals("value4", msg.getProperty("foo"));
+	}
+
+	@Test
+	public void testReplicatePath() {
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		DTNHost h1 = utils.createHost();
+		DTNHost h2 = utils.createHost();
+		DTNHost h3 = utils.createHost();
+		Message m = new Message(h1, h3, "P", 100);
+		List<DTNHost> hops = m.getHops();
+		m.addNodeOnPath(h2);
+		assertEquals(Arrays.asList(h1, h2), hops);
+		assertEquals(1, m.getHopCount());
+
+		Message r1 = m.replicate();
+		Message r2 = m.replicate();
+		r1.addNodeOnPath(h3);
+		r2.addNodeOnPath(h1);
+		assertEquals(Arrays.asList(h1, h2, h3), r1.getHops());
+		assertEquals(Arrays.asList(h1, h2, h1), r2.getHops());
+		assertEquals(Arrays.asList(h1, h2), m.getHops());
+
+		/* changes through the view change only that message's path */
+		assertTrue(r2.getHops().remove(h2));
+		assertEquals(Arrays.asList(h1, h1), r2.getHops());
+		assertEquals(1, r2.getHopCount());
+		assertEquals(Arrays.asList(h1, h2, h3), r1.getHops());
+		assertTrue(r1.getHops().contains(h3));
+		assertFalse(m.getHops().contains(h3));
+	}
+
 
 }
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import movement.MovementModel;
+import movement.Path;
+import movement.RandomWaypoint;
+import core.Coord;
+
+/**
+ * Tests for the random number generation of movement models
+ */
+public class MovementModelTest extends TestCase {
+	private static final int NROF_PATHS = 10;
+	private TestSettings ts;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		ts = new TestSettings();
+		ts.putSetting(MovementModel.MOVEMENT_MODEL_NS + "." +
+				MovementModel.RNG_SEED, "3");
+	}
+
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		new TestSettings();
+		MovementModel.reset();
+	}
+
+	public void testPerHostRngIsIndependentOfOtherHosts() {
+		ts.putSetting(MovementModel.MOVEMENT_MODEL_NS + "." +
+				MovementModel.PER_HOST_RNG_S, "true");
+
+		/* first host moves first */
+		MovementModel.reset();
+		MovementModel[] mms = createModels(2);
+		List<Coord> first = getWaypoints(mms[0]);
+		getWaypoints(mms[1]);
+
+		/* second host moves first */
+		MovementModel.reset();
+		mms = createModels(2);
+		getWaypoints(mms[1]);
+		List<Coord> second = getWaypoints(mms[0]);
+
+		assertEquals(first, second);
+	}
+
+	public void testPerHostRngsDiffer() {
+		ts.putSetting(MovementModel.MOVEMENT_MODEL_NS + "." +
+				MovementModel.PER_HOST_RNG_S, "true");
+		MovementModel.reset();
+		MovementModel[] mms = createModels(2);
+
+		assertFalse(getWaypoints(mms[0]).equals(getWaypoints(mms[1])));
+	}
+
+	public void testSharedRngDependsOnOtherHosts() {
+		MovementModel.reset();
+		MovementModel[] mms = createModels(2);
+		List<Coord> first = getWaypoints(mms[0]);
+
+		MovementModel.reset();
+		mms = createModels(2);
+		getWaypoints(mms[1]);
+		List<Coord> second = getWaypoints(mms[0]);
+
+		assertFalse(first.equals(second));
+	}
+
+	private MovementModel[] createModels(int nrof) {
+		RandomWaypoint proto = new RandomWaypoint(ts);
+		MovementModel[] mms = new MovementModel[nrof];
+		for (int i=0; i < nrof; i++) {
+			mms[i] = proto.replicate();
+		}
+		return mms;
+	}
+
+	private List<Coord> getWaypoints(MovementModel mm) {
+		List<Coord> waypoints = new ArrayList<Coord>();
+		waypoints.add(mm.getInitialLocation());
+		for (int i=0; i < NROF_PATHS; i++) {
+			Path p = mm.getPath();
+			waypoints.addAll(p.getCoords());
+		}
+		return waypoints;
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import interfaces.ConnectivityGrid;
+import interfaces.ConnectivityOptimizer;
+
+import java.io.ByteArrayInputStream;
+import java.util.Locale;
+
+import movement.MovementModel;
+import ui.DTNSimUI;
+import core.DTNHost;
+import core.Message;
+import core.NetworkInterface;
+import core.Settings;
+import core.SimClock;
+import core.SimScenario;
+
+/**
+ * <P>
+ * Benchmark of the phased host update (not a unit test). Runs a dense
+ * random waypoint scenario without messages with the sequential update and
+ * with the phased update using different numbers of threads, and prints the
+ * time the world updates took. Every run has the same connections, so
+ * only the time differs.
+ * </P>
+ * <P>
+ * Usage: <CODE>java test.PhasedUpdateBenchmark [nrofHosts [endTime
+ * [threads...]]]</CODE>; by default 2000 hosts, 300 seconds, and 0 (the
+ * sequential update), 1, 2, and 4 threads.
+ * </P>
+ */
+public class PhasedUpdateBenchmark {
+	private static final String SETTINGS =
+		"Scenario.name = PhasedUpdateBenchmark\n" +
+		"Scenario.simulateConnections = true\n" +
+		"Scenario.updateInterval = 0.1\n" +
+		"Scenario.nrofHostGroups = 1\n" +
+		"btInterface.type = SimpleBroadcastInterface\n" +
+		"btInterface.transmitSpeed = 250k\n" +
+		"btInterface.transmitRange = 10\n" +
+		"Group.groupID = n\n" +
+		"Group.movementModel = RandomWaypoint\n" +
+		"Group.router = PassiveRouter\n" +
+		"Group.bufferSize = 5M\n" +
+		"Group.waitTime = 0, 60\n" +
+		"Group.nrofInterfaces = 1\n" +
+		"Group.interface1 = btInterface\n" +
+		"Group.speed = 0.5, 1.5\n" +
+		"MovementModel.rngSeed = 1\n" +
+		"MovementModel.worldSize = 1000, 1000\n" +
+		"Events.nrof = 0\n" +
+		"Report.nrofReports = 0\n";
+
+	/**
+	 * Runs the benchmark
+	 * @param args Number of hosts, end time and the numbers of threads
+	 */
+	public static void main(String[] args) {
+		int nrofHosts = (args.length > 0 ? Integer.parseInt(args[0]) : 2000);
+		double endTime = (args.length > 1 ? Double.parseDouble(args[1]) :
+			300);
+		int[] threads = {0, 1, 2, 4};
+		if (args.length > 2) {
+			threads = new int[args.length - 2];
+			for (int i = 2; i < args.length; i++) {
+				threads[i - 2] = Integer.parseInt(args[i]);
+			}
+		}
+
+		System.out.println("# hosts: " + nrofHosts + ", end time: " +
+				endTime + ", processors: " +
+				Runtime.getRuntime().availableProcessors());
+		System.out.println("# threads, update time (s), speedup");
+		run(nrofHosts, endTime, 0); // warm up the JIT
+		double sequential = 0;
+		for (int t : threads) {
+			double time = run(nrofHosts, endTime, t);
+			if (t == 0) {
+				sequential = time;
+			}
+			System.out.println(String.format(Locale.US, "%d, %.2f, %s", t,
+					time, sequential > 0 ? String.format(Locale.US, "%.2f",
+							sequential / time) : "-"));
+		}
+	}
+
+	/**
+	 * Runs the scenario and returns the time the world updates took
+	 * @param nrofHosts Number of hosts
+	 * @param endTime End time of the scenario
+	 * @param threads Number of threads (0 for the sequential update)
+	 * @return The time (seconds)
+	 */
+	private static double run(int nrofHosts, double endTime, int threads) {
+		String all = SETTINGS + "Group.nrofHosts = " + nrofHosts + "\n" +
+			"Scenario.endTime = " + endTime + "\n" +
+			"Optimization.parallelHosts = " + threads + "\n";
+		Settings.initFromStream(new ByteArrayInputStream(all.getBytes()));
+		SimClock.reset();
+		NetworkInterface.reset();
+		SimScenario.reset();
+		Message.reset();
+		DTNHost.reset();
+		MovementModel.reset();
+		ConnectivityOptimizer.reset();
+		ConnectivityGrid.reset();
+
+		final long[] time = new long[1];
+		new DTNSimUI() {
+			protected void runSim() {
+				long start = System.nanoTime();
+				while (SimClock.getTime() < scen.getEndTime()) {
+					world.update();
+				}
+				time[0] = System.nanoTime() - start;
+				done();
+			}
+		}.start();
+		return time[0] / 1e9;
+	}
+}
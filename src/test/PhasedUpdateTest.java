@@ -0,0 +1,165 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import ui.DTNSimUI;
+import core.DTNHost;
+import core.Message;
+import core.NetworkInterface;
+import core.Settings;
+import core.SimClock;
+import core.SimScenario;
+import core.World;
+import interfaces.ConnectivityGrid;
+import interfaces.ConnectivityOptimizer;
+import movement.MovementModel;
+
+/**
+ * Tests that the phased (parallel) host update gives the same results as
+ * the sequential update. The same scenario is run with both updates and the
+ * outputs of the reports are compared.
+ */
+public class PhasedUpdateTest extends TestCase {
+	private static final String SETTINGS =
+		"Scenario.name = PhasedUpdateTest\n" +
+		"Scenario.simulateConnections = true\n" +
+		"Scenario.updateInterval = 0.1\n" +
+		"Scenario.endTime = 1000\n" +
+		"Scenario.nrofHostGroups = 2\n" +
+		"btInterface.type = SimpleBroadcastInterface\n" +
+		"btInterface.transmitSpeed = 250k\n" +
+		"btInterface.transmitRange = 10\n" +
+		"Group.movementModel = RandomWaypoint\n" +
+		"Group.router = EpidemicRouter\n" +
+		"Group.bufferSize = 5M\n" +
+		"Group.waitTime = 0, 60\n" +
+		"Group.nrofInterfaces = 1\n" +
+		"Group.interface1 = btInterface\n" +
+		"Group.speed = 0.5, 1.5\n" +
+		"Group.msgTtl = 60\n" +
+		"Group.nrofHosts = 30\n" +
+		"Group1.groupID = p\n" +
+		"Group2.groupID = c\n" +
+		"Group2.speed = 2.7, 13.9\n" +
+		"MovementModel.rngSeed = 1\n" +
+		"MovementModel.worldSize = 300, 300\n" +
+		"Events.nrof = 1\n" +
+		"Events1.class = MessageEventGenerator\n" +
+		"Events1.interval = 5, 15\n" +
+		"Events1.size = 50k, 500k\n" +
+		"Events1.hosts = 0, 59\n" +
+		"Events1.prefix = M\n" +
+		"Report.nrofReports = 2\n" +
+		"Report.report1 = EventLogReport\n" +
+		"Report.report2 = MessageStatsReport\n";
+	/** number of threads in the phased runs */
+	private static final int NROF_THREADS = 4;
+
+	private File reportDir;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		reportDir = File.createTempFile("phasedUpdateTest", "");
+		reportDir.delete();
+		reportDir.mkdir();
+	}
+
+	protected void tearDown() throws Exception {
+		for (File f : reportDir.listFiles()) {
+			f.delete();
+		}
+		reportDir.delete();
+		resetSimulation(); // don't leave the scenario for other tests
+		super.tearDown();
+	}
+
+	public void testSameReports() throws Exception {
+		checkSameReports("");
+	}
+
+	public void testSameReportsWithActiveTimes() throws Exception {
+		/* activeness checks change the ranges during the update */
+		checkSameReports("Group2.net.activeTimes = 0,300, 400,1000\n");
+	}
+
+	public void testSameReportsWithSortAndSweep() throws Exception {
+		checkSameReports("Optimization.connectivityOptimizer = " +
+				"SortAndSweepOptimizer\n");
+	}
+
+	public void testSameReportsWithKdTree() throws Exception {
+		checkSameReports("Optimization.connectivityOptimizer = " +
+				"KdTreeOptimizer\n");
+	}
+
+	private void checkSameReports(String settings) throws Exception {
+		String ns = World.OPTIMIZATION_SETTINGS_NS + "." +
+			World.PARALLEL_HOSTS_S + " = ";
+		String sequential = runScenario(settings + ns + "0\n");
+		String phased = runScenario(settings + ns + NROF_THREADS + "\n");
+
+		assertTrue(sequential.contains(" CONN "));
+		assertTrue(sequential.contains(" DE "));
+		assertEquals(sequential, phased);
+	}
+
+	/**
+	 * Resets the static state of the classes the scenario uses, like
+	 * {@link core.DTNSim} does between batch runs
+	 */
+	private void resetSimulation() {
+		SimClock.reset();
+		NetworkInterface.reset();
+		SimScenario.reset();
+		Message.reset();
+		DTNHost.reset();
+		MovementModel.reset();
+		ConnectivityOptimizer.reset();
+		ConnectivityGrid.reset();
+	}
+
+	/**
+	 * Runs the scenario and returns the outputs of the reports
+	 * @param settings Settings to add to the scenario's settings
+	 * @return The contents of the report files
+	 */
+	private String runScenario(String settings) throws IOException {
+		String all = SETTINGS + settings + "Report.reportDir = " +
+			reportDir.getPath().replace('\\', '/') + "/\n";
+		Settings.initFromStream(new ByteArrayInputStream(all.getBytes()));
+		resetSimulation();
+
+		new DTNSimUI() {
+			protected void runSim() {
+				while (SimClock.getTime() < scen.getEndTime()) {
+					world.update();
+				}
+				done();
+			}
+		}.start();
+
+		StringBuilder sb = new StringBuilder();
+		File[] files = reportDir.listFiles();
+		Arrays.sort(files);
+		for (File f : files) {
+			sb.append("# ").append(f.getName()).append('\n');
+			BufferedReader reader = new BufferedReader(new FileReader(f));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				sb.append(line).append('\n');
+			}
+			reader.close();
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Formatter;
+
+import junit.framework.TestCase;
+import report.ReportRecord;
+import report.ReportWriter;
+
+/**
+ * Tests for the background report writer
+ */
+public class ReportWriterTest extends TestCase {
+	private File outFile;
+	private File refFile;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		outFile = File.createTempFile("reportWriterTest", ".txt");
+		refFile = File.createTempFile("reportWriterRef", ".txt");
+		outFile.deleteOnExit();
+		refFile.deleteOnExit();
+	}
+
+	public void testSameOutputAsPrintWriter() throws Exception {
+		ReportWriter writer = new ReportWriter(outFile.getAbsolutePath());
+		PrintWriter ref = new PrintWriter(new FileWriter(refFile));
+
+		/* enough lines for many batches and output buffers */
+		for (int i = 0; i < 20000; i++) {
+			final double value = i / 3.0;
+			String prefix = (i % 7 == 0 ? "[" + i + "] " : "");
+			if (i % 2 == 0) {
+				writer.println(prefix, "line " + i + " ä€");
+				ref.println(prefix + "line " + i + " ä€");
+			}
+			else {
+				writer.println(prefix, new ReportRecord() {
+					public void appendTo(StringBuilder line, Formatter f) {
+						line.append(value).append(' ');
+						f.format("%.4f", value);
+					}
+				});
+				ref.println(prefix + value + " " +
+						String.format("%.4f", value));
+			}
+		}
+		writer.close();
+		ref.close();
+
+		assertTrue(Arrays.equals(Files.readAllBytes(refFile.toPath()),
+				Files.readAllBytes(outFile.toPath())));
+
+		/* lines after closing are ignored */
+		writer.println(null, "ignored");
+		writer.close();
+		assertEquals(refFile.length(), outFile.length());
+	}
+
+	public void testEmptyOutput() throws Exception {
+		ReportWriter writer = new ReportWriter(outFile.getAbsolutePath());
+		writer.close();
+		assertEquals(0, outFile.length());
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import util.StreamingStatistics;
+
+/**
+ * Tests for the streaming statistics
+ */
+public class StreamingStatisticsTest extends TestCase {
+	private static final double DELTA = 0.000001;
+
+	public void testEmpty() {
+		StreamingStatistics s = new StreamingStatistics();
+		assertEquals(0, s.getCount());
+		assertTrue(Double.isNaN(s.getMean()));
+		assertTrue(Double.isNaN(s.getVariance()));
+		assertTrue(Double.isNaN(s.getMedian()));
+		assertTrue(Double.isNaN(new StreamingStatistics(3).getMedian()));
+	}
+
+	public void testExact() {
+		StreamingStatistics s = new StreamingStatistics();
+		List<Double> values = new ArrayList<Double>();
+		Random rng = new Random(1);
+		double sum = 0;
+		for (int i = 0; i < 1001; i++) {
+			double v = rng.nextDouble() * 1000 - 100;
+			s.add(v);
+			values.add(v);
+			sum += v;
+		}
+		assertTrue(s.isExact());
+		Collections.sort(values);
+
+		assertEquals(1001, s.getCount());
+		assertEquals(sum / 1001, s.getMean()); // same summing order
+		assertEquals(values.get(500), s.getMedian());
+		assertEquals(values.get(900), s.getPercentile(0.9));
+		assertEquals(values.get(0), s.getMin());
+		assertEquals(values.get(1000), s.getMax());
+		assertEquals(values.get(1000), s.getPercentile(1));
+
+		double sum2 = 0;
+		for (double v : values) {
+			sum2 += (v - sum / 1001) * (v - sum / 1001);
+		}
+		assertEquals(sum2 / 1001, s.getVariance(), DELTA);
+
+		/* adding values after a percentile query */
+		s.add(-1000);
+		assertEquals(-1000.0, s.getPercentile(0));
+	}
+
+	public void testSketch() {
+		int digits = 3;
+		StreamingStatistics s = new StreamingStatistics(digits);
+		List<Double> values = new ArrayList<Double>();
+		Random rng = new Random(2);
+		for (int i = 0; i < 100000; i++) {
+			double v = Math.exp(rng.nextDouble() * 20 - 5);
+			s.add(v);
+			values.add(v);
+		}
+		assertFalse(s.isExact());
+		Collections.sort(values);
+
+		for (double p : new double[] {0, 0.1, 0.5, 0.9, 0.99, 1}) {
+			double exact = values.get(Math.min((int)(p * values.size()),
+					values.size() - 1));
+			assertEquals(exact, s.getPercentile(p),
+					exact * Math.pow(10, -digits));
+		}
+
+		final long[] total = new long[1];
+		final double[] prev = {Double.NEGATIVE_INFINITY};
+		s.forEachValue(new StreamingStatistics.ValueVisitor() {
+			public void visit(double value, long count) {
+				assertTrue(value > prev[0]);
+				prev[0] = value;
+				total[0] += count;
+			}
+		});
+		assertEquals(values.size(), total[0]);
+	}
+
+	public void testSketchNegativesAndZero() {
+		StreamingStatistics s = new StreamingStatistics(2);
+		s.add(-5);
+		s.add(0);
+		s.add(0);
+		s.add(3);
+		s.add(-0.5);
+
+		assertEquals(-5.0, s.getPercentile(0));
+		assertEquals(-0.5, s.getPercentile(0.2), 0.5 * 0.01);
+		assertEquals(0.0, s.getMedian());
+		assertEquals(3.0, s.getPercentile(1));
+		assertEquals(-2.5 / 5, s.getMean(), DELTA);
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.EventQueue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import routing.EpidemicRouter;
+import routing.MessageRouter;
+import core.Coord;
+import core.DTNHost;
+import core.Message;
+import core.MessageListener;
+import core.NetworkInterface;
+import core.SimClock;
+import core.UpdateListener;
+import core.World;
+
+/**
+ * Tests for the event-driven transfer completion
+ */
+public class TransferSchedulerTest extends TestCase {
+	private static final double TIME_DELTA = 0.000001;
+	/** update interval that is much longer than the transfers */
+	private static final double UP_INTERVAL = 10;
+	private static final int TRANSMIT_SPEED = 10;
+	private static final int BUFFER_SIZE = 100;
+	private List<Double> doneTimes;
+	private List<DTNHost> hosts;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		doneTimes = new ArrayList<Double>();
+	}
+
+	private void createHosts(boolean scheduleTransfers) {
+		TestSettings ts = new TestSettings();
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				World.SCHEDULE_TRANSFERS_S, "" + scheduleTransfers);
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				World.RANDOMIZE_UPDATES_S, "false");
+		ts.putSetting(TestUtils.IFACE_NS + "." +
+				NetworkInterface.TRANSMIT_RANGE_S, "1.0");
+		ts.putSetting(TestUtils.IFACE_NS + "." +
+				NetworkInterface.TRANSMIT_SPEED_S, "" + TRANSMIT_SPEED);
+		ts.putSetting(MessageRouter.B_SIZE_S, "" + BUFFER_SIZE);
+
+		List<MessageListener> ml = new ArrayList<MessageListener>();
+		ml.add(new MessageListener() {
+			public void newMessage(Message m) {}
+			public void messageTransferStarted(Message m, DTNHost from,
+					DTNHost to) {}
+			public void messageDeleted(Message m, DTNHost where,
+					boolean dropped) {}
+			public void messageTransferAborted(Message m, DTNHost from,
+					DTNHost to) {}
+			public void messageTransferred(Message m, DTNHost from,
+					DTNHost to, boolean firstDelivery) {
+				doneTimes.add(SimClock.getTime());
+			}
+		});
+
+		TestUtils utils = new TestUtils(null, ml, ts);
+		utils.setMessageRouterProto(new EpidemicRouter(ts));
+		hosts = new ArrayList<DTNHost>();
+		hosts.add(utils.createHost(new Coord(0, 0)));
+		hosts.add(utils.createHost(new Coord(0.5, 0)));
+
+		/* two transfers of 2.5 seconds one after the other */
+		DTNHost from = hosts.get(0);
+		DTNHost to = hosts.get(1);
+		from.forceConnection(to, null, true);
+		from.createNewMessage(new Message(from, to, "M1", 25));
+		from.createNewMessage(new Message(from, to, "M2", 25));
+	}
+
+	public void testScheduledTransfers() {
+		createHosts(true);
+		runWorld(30);
+
+		/* the transfers start at the first update (t=10) */
+		assertEquals(2, doneTimes.size());
+		assertEquals(12.5, doneTimes.get(0), TIME_DELTA);
+		assertEquals(15.0, doneTimes.get(1), TIME_DELTA);
+	}
+
+	public void testPolledTransfers() {
+		createHosts(false);
+		runWorld(30);
+
+		/* transfers are finalized only at the update intervals */
+		assertEquals(2, doneTimes.size());
+		assertEquals(20.0, doneTimes.get(0), TIME_DELTA);
+		assertEquals(30.0, doneTimes.get(1), TIME_DELTA);
+	}
+
+	private void runWorld(double endTime) {
+		World world = new World(hosts, 100, 100, UP_INTERVAL,
+				new ArrayList<UpdateListener>(), true,
+				new ArrayList<EventQueue>());
+		while (SimClock.getTime() < endTime) {
+			world.update();
+		}
+	}
+}
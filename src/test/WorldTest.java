@@ -5,6 +5,8 @@
 package test;
 
 import input.EventQueue;
+import interfaces.ConnectivityGrid;
+import interfaces.ConnectivityOptimizer;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -36,6 +38,9 @@ public class WorldTest extends TestCase {
 	protected void setUp() throws Exception {
 		super.setUp();
 		SimClock.reset();
+		/* don't use the world size or grids of the earlier tests */
+		ConnectivityOptimizer.reset();
+		ConnectivityGrid.reset();
 		TestSettings testSettings = new TestSettings();
 		testSettings.setNameSpace(TestUtils.IFACE_NS);
 		testSettings.putSetting(NetworkInterface.TRANSMIT_RANGE_S, "1.0");
@@ -80,6 +85,28 @@ public class WorldTest extends TestCase {
 		}
 	}
 
+	public void testPhasedUpdate() {
+		TestSettings ts = new TestSettings();
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				World.PARALLEL_HOSTS_S, "4");
+		TestScenario scen = new TestScenario();
+		this.world = new World(scen.getHosts(),scen.getWorldSizeX(),
+				scen.getWorldSizeY(),scen.getUpdateInterval(),
+				scen.getUpdateListeners(), scen.simulateConnections(),
+				scen.getExternalEvents() );
+		int nrofRounds = 100;
+
+		for (int i=0; i<nrofRounds; i++) {
+			world.update();
+		}
+		world.shutdown();
+		world.update();
+
+		assertEquals((nrofRounds + 1) * upInterval, SimClock.getTime(),
+				TIME_DELTA);
+		assertNrofUpdates(nrofRounds + 1);
+	}
+
 	public void testUpdateScheduling() {
 		world.scheduleUpdate(0.25);
 
@@ -129,6 +129,9 @@ public abstract class DTNSimUI {
 	 * Runs maintenance jobs that are needed before exiting.
 	 */
 	public void done() {
+		if (this.world != null) {
+			this.world.shutdown();
+		}
 		for (Report r : this.reports) {
 			r.done();
 		}
@@ -101,6 +101,15 @@ public class ActivenessHandler {
 		return timesList;
 	}
 
+	/**
+	 * Returns true if the node is active all the time (there are no active
+	 * times nor periods)
+	 * @return true if the node is always active
+	 */
+	public boolean isAlwaysActive() {
+		return this.activeTimes == null && this.activePeriods == null;
+	}
+
 	/**
 	 * Returns true if node should be active at the moment
 	 * @return true if node should be active at the moment
@@ -132,12 +141,21 @@ public class ActivenessHandler {
 			}
 		}
 
+		return isInActiveTimes(SimClock.getTime() + offset);
+	}
+
+	/**
+	 * Returns true if the given time is within the active times. Handlers
+	 * are shared by all the nodes of a group and may be queried concurrently
+	 * by the nodes, so the active times queue is accessed synchronized.
+	 * @param time The time to check
+	 * @return true if the time is within active times, false if not
+	 */
+	private synchronized boolean isInActiveTimes(double time) {
 		if (curRange == null) {
 			return false; // out of active times
 		}
 
-		double time = SimClock.getTime() + offset;
-
 		if (this.curRange.isOut(time)) { // time for the next time range
 			this.curRange = activeTimes.poll();
 			if (curRange == null) {
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Map from primitive int keys to objects. The mappings are stored in an
+ * open addressing hash table with linear probing, so no objects are created
+ * for the keys. Null values are not allowed.
+ * @param <V> Type of the values
+ */
+public class IntHashMap<V> {
+	/** Marker of a free slot (the value of the key is kept separately) */
+	private static final int FREE = Integer.MIN_VALUE;
+	/** Maximum fill ratio of the table before it is grown */
+	private static final double LOAD_FACTOR = 0.5;
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private int[] keys;
+	private Object[] values;
+	/** number of mappings in the table (excluding the FREE key) */
+	private int size;
+	/** value of the FREE key or null if it is not mapped */
+	private V freeValue;
+	private int mask;
+	private int growAt;
+
+	/**
+	 * Creates an empty map
+	 */
+	public IntHashMap() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty map
+	 * @param expectedSize How many mappings the map is expected to hold
+	 */
+	public IntHashMap(int expectedSize) {
+		allocate(tableSize(expectedSize, LOAD_FACTOR));
+	}
+
+	/**
+	 * Returns the table size for the expected number of entries
+	 * @param expectedSize Expected number of entries
+	 * @param loadFactor Maximum fill ratio of the table
+	 * @return A power of two
+	 */
+	static int tableSize(int expectedSize, double loadFactor) {
+		int capacity = DEFAULT_CAPACITY;
+		while (capacity * loadFactor < expectedSize) {
+			capacity *= 2;
+		}
+		return capacity;
+	}
+
+	/**
+	 * Returns the home slot of a key
+	 * @param k The key
+	 * @param mask Table size - 1
+	 * @return The slot index
+	 */
+	static int slot(int k, int mask) {
+		int h = k * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		values = new Object[capacity];
+		Arrays.fill(keys, FREE);
+		mask = capacity - 1;
+		growAt = (int)(capacity * LOAD_FACTOR);
+	}
+
+	/**
+	 * Returns the value of a key
+	 * @param k The key
+	 * @return The value or null if the key is not mapped
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(int k) {
+		if (k == FREE) {
+			return freeValue;
+		}
+		int i = slot(k, mask);
+		while (keys[i] != FREE) {
+			if (keys[i] == k) {
+				return (V)values[i];
+			}
+			i = (i + 1) & mask;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns true if the key is mapped
+	 * @param k The key
+	 * @return True if the map has a value for the key
+	 */
+	public boolean containsKey(int k) {
+		return get(k) != null;
+	}
+
+	/**
+	 * Maps a key to a value
+	 * @param k The key
+	 * @param v The value (not null)
+	 * @return The previous value of the key or null if it was not mapped
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(int k, V v) {
+		if (v == null) {
+			throw new NullPointerException("Null values are not allowed");
+		}
+		if (k == FREE) {
+			V old = freeValue;
+			freeValue = v;
+			return old;
+		}
+		int i = slot(k, mask);
+		while (keys[i] != FREE) {
+			if (keys[i] == k) {
+				V old = (V)values[i];
+				values[i] = v;
+				return old;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = k;
+		values[i] = v;
+		if (++size > growAt) {
+			rehash(keys.length * 2);
+		}
+		return null;
+	}
+
+	/**
+	 * Removes the mapping of a key
+	 * @param k The key
+	 * @return The removed value or null if the key was not mapped
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(int k) {
+		if (k == FREE) {
+			V old = freeValue;
+			freeValue = null;
+			return old;
+		}
+		int i = slot(k, mask);
+		while (keys[i] != FREE) {
+			if (keys[i] == k) {
+				V old = (V)values[i];
+				shiftKeys(i);
+				size--;
+				return old;
+			}
+			i = (i + 1) & mask;
+		}
+		return null;
+	}
+
+	/**
+	 * Closes the gap left by a removed mapping by moving the following
+	 * mappings of the probe sequence backwards
+	 * @param gap The slot of the removed mapping
+	 */
+	private void shiftKeys(int gap) {
+		int i = gap;
+		while (true) {
+			i = (i + 1) & mask;
+			int k = keys[i];
+			if (k == FREE) {
+				break;
+			}
+			int home = slot(k, mask);
+			/* move the mapping if its home slot is not between the gap and
+			 * the mapping (cyclically) */
+			if (((i - home) & mask) >= ((i - gap) & mask)) {
+				keys[gap] = k;
+				values[gap] = values[i];
+				gap = i;
+			}
+		}
+		keys[gap] = FREE;
+		values[gap] = null;
+	}
+
+	private void rehash(int capacity) {
+		int[] oldKeys = keys;
+		Object[] oldValues = values;
+		allocate(capacity);
+		for (int j = 0; j < oldKeys.length; j++) {
+			int k = oldKeys[j];
+			if (k != FREE) {
+				int i = slot(k, mask);
+				while (keys[i] != FREE) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = k;
+				values[i] = oldValues[j];
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of mappings in the map
+	 * @return The size of the map
+	 */
+	public int size() {
+		return size + (freeValue != null ? 1 : 0);
+	}
+
+	/**
+	 * Returns true if the map is empty
+	 * @return True if the map is empty
+	 */
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Removes all mappings from the map
+	 */
+	public void clear() {
+		Arrays.fill(keys, FREE);
+		Arrays.fill(values, null);
+		size = 0;
+		freeValue = null;
+	}
+
+	/**
+	 * Returns the values of the map (in no particular order)
+	 * @return A new list of the values
+	 */
+	@SuppressWarnings("unchecked")
+	public List<V> values() {
+		List<V> list = new ArrayList<V>(size());
+		if (freeValue != null) {
+			list.add(freeValue);
+		}
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != FREE) {
+				list.add((V)values[i]);
+			}
+		}
+		return list;
+	}
+}
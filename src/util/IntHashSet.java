@@ -0,0 +1,230 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package util;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Set of primitive int values. The values are stored in an open addressing
+ * hash table with linear probing, so no objects are created for the values
+ * and a lookup doesn't follow any references.
+ */
+public class IntHashSet {
+	/** Marker of a free slot (the value itself is kept in a flag) */
+	private static final int FREE = Integer.MIN_VALUE;
+	/** Maximum fill ratio of the table before it is grown */
+	private static final double LOAD_FACTOR = 0.5;
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private int[] keys;
+	/** number of values in the table (excluding the FREE value) */
+	private int size;
+	/** is the FREE value in the set */
+	private boolean hasFreeKey;
+	private int mask;
+	private int growAt;
+
+	/**
+	 * Creates an empty set
+	 */
+	public IntHashSet() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty set
+	 * @param expectedSize How many values the set is expected to hold
+	 */
+	public IntHashSet(int expectedSize) {
+		allocate(IntHashMap.tableSize(expectedSize, LOAD_FACTOR));
+	}
+
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		Arrays.fill(keys, FREE);
+		mask = capacity - 1;
+		growAt = (int)(capacity * LOAD_FACTOR);
+	}
+
+	/**
+	 * Adds a value to the set
+	 * @param k The value
+	 * @return True if the value was not in the set yet
+	 */
+	public boolean add(int k) {
+		if (k == FREE) {
+			boolean added = !hasFreeKey;
+			hasFreeKey = true;
+			return added;
+		}
+		int i = IntHashMap.slot(k, mask);
+		while (keys[i] != FREE) {
+			if (keys[i] == k) {
+				return false;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = k;
+		if (++size > growAt) {
+			rehash(keys.length * 2);
+		}
+		return true;
+	}
+
+	/**
+	 * Adds all the values of another set to this set
+	 * @param other The other set
+	 */
+	public void addAll(IntHashSet other) {
+		if (other.hasFreeKey) {
+			hasFreeKey = true;
+		}
+		for (int k : other.keys) {
+			if (k != FREE) {
+				add(k);
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the value is in the set
+	 * @param k The value
+	 * @return True if the value is in the set
+	 */
+	public boolean contains(int k) {
+		if (k == FREE) {
+			return hasFreeKey;
+		}
+		int i = IntHashMap.slot(k, mask);
+		while (keys[i] != FREE) {
+			if (keys[i] == k) {
+				return true;
+			}
+			i = (i + 1) & mask;
+		}
+		return false;
+	}
+
+	/**
+	 * Removes a value from the set
+	 * @param k The value
+	 * @return True if the value was in the set
+	 */
+	public boolean remove(int k) {
+		if (k == FREE) {
+			boolean removed = hasFreeKey;
+			hasFreeKey = false;
+			return removed;
+		}
+		int i = IntHashMap.slot(k, mask);
+		while (keys[i] != FREE) {
+			if (keys[i] == k) {
+				shiftKeys(i);
+				size--;
+				return true;
+			}
+			i = (i + 1) & mask;
+		}
+		return false;
+	}
+
+	/**
+	 * Closes the gap left by a removed value by moving the following values
+	 * of the probe sequence backwards
+	 * @param gap The slot of the removed value
+	 */
+	private void shiftKeys(int gap) {
+		int i = gap;
+		while (true) {
+			i = (i + 1) & mask;
+			int k = keys[i];
+			if (k == FREE) {
+				break;
+			}
+			int home = IntHashMap.slot(k, mask);
+			/* move the value if its home slot is not between the gap and
+			 * the value (cyclically) */
+			if (((i - home) & mask) >= ((i - gap) & mask)) {
+				keys[gap] = k;
+				gap = i;
+			}
+		}
+		keys[gap] = FREE;
+	}
+
+	private void rehash(int capacity) {
+		int[] old = keys;
+		allocate(capacity);
+		for (int k : old) {
+			if (k != FREE) {
+				int i = IntHashMap.slot(k, mask);
+				while (keys[i] != FREE) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = k;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of values in the set
+	 * @return The size of the set
+	 */
+	public int size() {
+		return size + (hasFreeKey ? 1 : 0);
+	}
+
+	/**
+	 * Returns true if the set is empty
+	 * @return True if the set is empty
+	 */
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Removes all values from the set
+	 */
+	public void clear() {
+		Arrays.fill(keys, FREE);
+		size = 0;
+		hasFreeKey = false;
+	}
+
+	/**
+	 * Calls the action for each value of the set (in no particular order).
+	 * The set must not be modified by the action.
+	 * @param action The action
+	 */
+	public void forEach(IntConsumer action) {
+		if (hasFreeKey) {
+			action.accept(FREE);
+		}
+		for (int k : keys) {
+			if (k != FREE) {
+				action.accept(k);
+			}
+		}
+	}
+
+	/**
+	 * Returns the values of the set in an array (in no particular order)
+	 * @return The values
+	 */
+	public int[] toArray() {
+		int[] values = new int[size()];
+		int n = 0;
+		if (hasFreeKey) {
+			values[n++] = FREE;
+		}
+		for (int k : keys) {
+			if (k != FREE) {
+				values[n++] = k;
+			}
+		}
+		return values;
+	}
+}
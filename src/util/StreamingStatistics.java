@@ -0,0 +1,292 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package util;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <P>
+ * Accumulates statistics of a stream of values: count, sum, mean, variance,
+ * minimum, maximum and percentiles. The mean is the sum of the values
+ * (added in the order they were given) divided by the count, and the
+ * variance is accumulated with Welford's algorithm.</P>
+ * <P>
+ * For the percentiles the values are either stored in a primitive array
+ * (exact mode) or counted in a logarithmic histogram (sketch mode). In
+ * sketch mode every bucket covers values whose relative difference is at
+ * most 10^-digits, so the memory use depends only on the range of the
+ * values, and the percentiles are accurate to the given number of
+ * significant digits.</P>
+ */
+public class StreamingStatistics {
+	/** Maximum number of significant digits in sketch mode */
+	public static final int MAX_DIGITS = 5;
+	/** Initial size of the value array */
+	private static final int INIT_SIZE = 16;
+	/** Offset that makes the bucket keys of all positive values positive */
+	private static final int EXPONENT_OFFSET = Double.MAX_EXPONENT + 100;
+
+	private long count;
+	private double sum;
+	/** mean and sum of squared differences for Welford's algorithm */
+	private double welfordMean;
+	private double welfordM2;
+	private double min;
+	private double max;
+
+	/** the values (exact mode) */
+	private double[] values;
+	/** are the values sorted */
+	private boolean sorted;
+	/** number of mantissa bits of the bucket keys (sketch mode) */
+	private int subBucketBits;
+	/** value counts of the histogram buckets (sketch mode) */
+	private TreeMap<Integer, long[]> buckets;
+
+	/**
+	 * Creates statistics that compute exact percentiles
+	 */
+	public StreamingStatistics() {
+		this(0);
+	}
+
+	/**
+	 * Creates statistics with the given precision of the percentiles
+	 * @param digits Number of significant decimal digits of the
+	 * percentiles (1-{@value #MAX_DIGITS}) or 0 for exact percentiles
+	 */
+	public StreamingStatistics(int digits) {
+		this.count = 0;
+		this.sum = 0;
+		this.welfordMean = 0;
+		this.welfordM2 = 0;
+		this.min = Double.NaN;
+		this.max = Double.NaN;
+
+		if (digits <= 0) {
+			this.values = new double[INIT_SIZE];
+			this.sorted = true;
+		}
+		else {
+			/* bucket width 2^-bits relative to the value must be <=10^-d */
+			this.subBucketBits = (int)Math.ceil(Math.min(digits, MAX_DIGITS) *
+					Math.log(10) / Math.log(2));
+			this.buckets = new TreeMap<Integer, long[]>();
+		}
+	}
+
+	/**
+	 * Adds a value to the statistics
+	 * @param value The value
+	 */
+	public void add(double value) {
+		if (count == 0 || value < min) {
+			min = value;
+		}
+		if (count == 0 || value > max) {
+			max = value;
+		}
+		count++;
+		sum += value;
+
+		double delta = value - welfordMean;
+		welfordMean += delta / count;
+		welfordM2 += delta * (value - welfordMean);
+
+		if (values != null) {
+			int n = (int)count - 1;
+			if (n == values.length) {
+				values = Arrays.copyOf(values, n * 2);
+			}
+			values[n] = value;
+			sorted = false;
+		}
+		else {
+			int key = bucketKey(value);
+			long[] c = buckets.get(key);
+			if (c == null) {
+				c = new long[1];
+				buckets.put(key, c);
+			}
+			c[0]++;
+		}
+	}
+
+	/**
+	 * Returns true if the percentiles are exact
+	 * @return true if the statistics are in exact mode
+	 */
+	public boolean isExact() {
+		return this.values != null;
+	}
+
+	/**
+	 * Returns the number of values
+	 * @return the number of values
+	 */
+	public long getCount() {
+		return this.count;
+	}
+
+	/**
+	 * Returns the sum of the values
+	 * @return the sum of the values
+	 */
+	public double getSum() {
+		return this.sum;
+	}
+
+	/**
+	 * Returns the average of the values
+	 * @return the average or NaN if there are no values
+	 */
+	public double getMean() {
+		return count > 0 ? sum / count : Double.NaN;
+	}
+
+	/**
+	 * Returns the (population) variance of the values
+	 * @return the variance or NaN if there are no values
+	 */
+	public double getVariance() {
+		return count > 0 ? welfordM2 / count : Double.NaN;
+	}
+
+	/**
+	 * Returns the smallest value
+	 * @return the smallest value or NaN if there are no values
+	 */
+	public double getMin() {
+		return this.min;
+	}
+
+	/**
+	 * Returns the largest value
+	 * @return the largest value or NaN if there are no values
+	 */
+	public double getMax() {
+		return this.max;
+	}
+
+	/**
+	 * Returns the median of the values, i.e., the value at index count/2
+	 * of the sorted values
+	 * @return the median or NaN if there are no values
+	 */
+	public double getMedian() {
+		return getPercentile(0.5);
+	}
+
+	/**
+	 * Returns a percentile of the values, i.e., the value at index
+	 * floor(p * count) of the sorted values. In sketch mode the value is
+	 * the middle of the histogram bucket that contains that index.
+	 * @param p The percentile as a fraction (0 - 1)
+	 * @return the percentile or NaN if there are no values
+	 */
+	public double getPercentile(double p) {
+		if (count == 0) {
+			return Double.NaN;
+		}
+		long index = Math.min((long)(p * count), count - 1);
+
+		if (values != null) {
+			sortValues();
+			return values[(int)index];
+		}
+
+		long seen = 0;
+		for (Map.Entry<Integer, long[]> e : buckets.entrySet()) {
+			seen += e.getValue()[0];
+			if (seen > index) {
+				return bucketValue(e.getKey());
+			}
+		}
+		return max; /* not reached */
+	}
+
+	/**
+	 * Goes through the values in ascending order. In exact mode every value
+	 * is visited separately, in sketch mode once per bucket with the number
+	 * of values in the bucket.
+	 * @param visitor The visitor
+	 */
+	public void forEachValue(ValueVisitor visitor) {
+		if (values != null) {
+			sortValues();
+			for (int i = 0; i < count; i++) {
+				visitor.visit(values[i], 1);
+			}
+			return;
+		}
+
+		for (Map.Entry<Integer, long[]> e : buckets.entrySet()) {
+			visitor.visit(bucketValue(e.getKey()), e.getValue()[0]);
+		}
+	}
+
+	private void sortValues() {
+		if (!sorted) {
+			Arrays.sort(values, 0, (int)count);
+			sorted = true;
+		}
+	}
+
+	/**
+	 * Returns the key of the histogram bucket of a value. The keys are in the
+	 * same order as the values: zero has key 0, positive values have
+	 * positive keys and negative values negative keys.
+	 * @param value The value
+	 * @return The bucket key
+	 */
+	private int bucketKey(double value) {
+		if (value == 0) {
+			return 0;
+		}
+		double abs = Math.abs(value);
+		long mantissa = Double.doubleToRawLongBits(abs) &
+			0x000fffffffffffffL;
+		int sub = (int)(mantissa >>> (52 - subBucketBits));
+		int key = ((Math.getExponent(abs) + EXPONENT_OFFSET) <<
+				subBucketBits) | sub;
+		return value > 0 ? key : -key;
+	}
+
+	/**
+	 * Returns the value that represents a histogram bucket: the middle of
+	 * the bucket's range limited to the range of the added values
+	 * @param key The bucket key
+	 * @return The value of the bucket
+	 */
+	private double bucketValue(int key) {
+		if (key == 0) {
+			return 0;
+		}
+		int abs = Math.abs(key);
+		int exponent = (abs >>> subBucketBits) - EXPONENT_OFFSET;
+		int sub = abs & ((1 << subBucketBits) - 1);
+		double lower = Math.scalb(1.0 + Math.scalb((double)sub,
+				-subBucketBits), exponent);
+		double value = lower + Math.scalb(1.0, exponent - subBucketBits - 1);
+		if (key < 0) {
+			value = -value;
+		}
+		return Math.max(min, Math.min(max, value));
+	}
+
+	/**
+	 * Visitor of the values of the statistics
+	 */
+	public interface ValueVisitor {
+		/**
+		 * Visits a value
+		 * @param value The value
+		 * @param count How many times the value occurs
+		 */
+		public void visit(double value, long count);
+	}
+}